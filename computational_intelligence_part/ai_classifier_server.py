@@ -1,6 +1,8 @@
 from flask import Flask, request, jsonify
 import pandas as pd
 import numpy as np
+import json
+import os
 import time  # Import the time library for measuring performance
 
 # Import models and tools from scikit-learn
@@ -10,23 +12,25 @@ from sklearn.svm import SVC
 from sklearn.model_selection import train_test_split
 from sklearn.metrics import accuracy_score
 
-app = Flask(_name_)
+app = Flask(__name__)
 
 # --- Global variables for the trained model ---
 model = None
+tree_model = None  # The best tree-based model, which can be exported to the Java simulation
 idx_to_class = {}  # To convert model output back to labels like "HIGH"
+FEATURES = ['traffic_density', 'time_of_day', 'weather', 'visibility']
 
 def train_model():
     """
     Loads data, trains, compares models, and prints all evaluation metrics.
     Runs only once when the server starts.
     """
-    global model, idx_to_class
+    global model, tree_model, idx_to_class
 
     # 1. Load and prepare the dataset
     try:
         df = pd.read_csv("priority_dataset.csv")
-        X = df[['traffic_density', 'time_of_day', 'weather', 'visibility']].values
+        X = df[FEATURES].values
 
         y_labels = df['priority'].values
         classes = list(pd.unique(y_labels))
@@ -76,13 +80,44 @@ def train_model():
     best_model_name = max(models, key=lambda name: models[name][1])
     model = models[best_model_name][0]
     print(f"\n--- Best model selected: {best_model_name} with accuracy {models[best_model_name][1]:.4f} ---")
+    tree_model = rf_model if rf_acc > dt_acc else dt_model
 
     # 4. Interpretability Check: Print the rules for the Decision Tree
     print("\n--- Decision Tree Rules (Interpretability Check) ---")
-    feature_names = ['traffic_density', 'time_of_day', 'weather', 'visibility']
-    tree_rules = export_text(dt_model, feature_names=feature_names)
+    tree_rules = export_text(dt_model, feature_names=FEATURES)
     print(tree_rules)
 
+def export_model(path):
+    """
+    Writes the best tree-based model to a JSON file, which iFogSimulator.TreeEnsemblePredictor evaluates in the
+    Java simulation without this server. Each tree is stored as flat node arrays: the feature tested (-1 for a
+    leaf), the threshold, the left and right children, and for each node the probabilities of the classes.
+    An SVM cannot be stored this way, so the better of the decision tree and random forest is exported.
+    """
+    estimators = tree_model.estimators_ if isinstance(tree_model, RandomForestClassifier) else [tree_model]
+    trees = []
+    for estimator in estimators:
+        tree = estimator.tree_
+        value = tree.value[:, 0, :]
+        probabilities = value / value.sum(axis=1, keepdims=True)
+        trees.append({
+            "feature": [int(f) if f >= 0 else -1 for f in tree.feature],
+            "threshold": [float(t) for t in tree.threshold],
+            "left": [int(c) for c in tree.children_left],
+            "right": [int(c) for c in tree.children_right],
+            "value": [[float(p) for p in row] for row in probabilities]
+        })
+    exported = {
+        "format": "tree-ensemble",
+        "version": 1,
+        "features": FEATURES,
+        "classes": [idx_to_class[int(c)] for c in tree_model.classes_],
+        "trees": trees
+    }
+    with open(path, "w") as f:
+        json.dump(exported, f)
+    print(f"Exported {type(tree_model).__name__} with {len(trees)} tree(s) to {path}")
+
 # --- API Endpoint ---
 @app.route("/predict_priority", methods=["POST"])
 def predict_priority():
@@ -115,8 +150,37 @@ def predict_priority():
     except Exception as e:
         return jsonify({"error": str(e)}), 400
 
+@app.route("/predict_priority_batch", methods=["POST"])
+def predict_priority_batch():
+    """
+    Predicts the priorities of many samples with a single call to the model.
+    Expects {"samples": [{"traffic_density": ..., "time_of_day": ..., "weather": ..., "visibility": ...}, ...]}
+    and returns the priorities in the same order, with the latency of the batch.
+    """
+    if not model:
+        return jsonify({"error": "Model is not trained yet"}), 500
+    try:
+        samples = request.json["samples"]
+        X = np.array([[sample[f] for f in FEATURES] for sample in samples], dtype=float).reshape(-1, len(FEATURES))
+        if len(X) == 0:
+            return jsonify({"priorities": [], "batch_size": 0, "latency_ms": 0.0})
+
+        # Measure the latency of the whole batch
+        pred_start_time = time.perf_counter()
+        pred_idx = model.predict(X)
+        pred_latency_ms = (time.perf_counter() - pred_start_time) * 1000  # in milliseconds
+
+        print(f"Batch Prediction Latency: {pred_latency_ms:.4f} ms for {len(X)} samples")
+
+        priorities = [idx_to_class[int(i)] for i in pred_idx]
+        return jsonify({"priorities": priorities, "batch_size": len(X), "latency_ms": pred_latency_ms})
+
+    except Exception as e:
+        return jsonify({"error": str(e)}), 400
+
 # --- Run Server ---
-if _name_ == "_main_":
+if __name__ == "__main__":
     train_model()
+    export_model(os.environ.get("PRIORITY_MODEL_EXPORT", "priority_model.json"))
     print("--- AI Classifier Server Ready ---")
     app.run(host="0.0.0.0", port=5000)
\ No newline at end of file
@@ -1,10 +1,11 @@
 # fuzzy_allocator_server.py
 from flask import Flask, request, jsonify
+import time
 import numpy as np
 import skfuzzy as fuzz
 from skfuzzy import control as ctrl
 
-app = Flask(_name_)
+app = Flask(__name__)
 
 # --- Fuzzy System Definition (runs once at startup) ---
 priority = ctrl.Antecedent(np.arange(0, 11, 1), 'priority')
@@ -21,29 +22,55 @@ rule1 = ctrl.Rule(priority['low'], [bandwidth['low'], cpu['low']])
 rule2 = ctrl.Rule(priority['medium'], [bandwidth['medium'], cpu['medium']])
 rule3 = ctrl.Rule(priority['high'], [bandwidth['high'], cpu['high']])
 allocation_ctrl = ctrl.ControlSystem([rule1, rule2, rule3])
-allocation_sim = ctrl.ControlSystemSimulation(allocation_ctrl)
+priority_map = {"LOW": 2, "MEDIUM": 5, "HIGH": 8}
 print("--- Fuzzy Allocator Server ---")
 print("Fuzzy control system ready.")
 
-# --- API Endpoint ---
+def allocate(priority_labels):
+    """
+    Evaluates the fuzzy system for a list of priority labels. Each distinct input is computed once, by a
+    simulation owned by the request, as a ControlSystemSimulation shared between requests is not thread safe.
+    """
+    allocation_sim = ctrl.ControlSystemSimulation(allocation_ctrl)
+    outputs = {}
+    decisions = []
+    for priority_label in priority_labels:
+        value = priority_map.get(priority_label, 2)
+        if value not in outputs:
+            allocation_sim.input['priority'] = value
+            allocation_sim.compute()
+            outputs[value] = (round(allocation_sim.output['bandwidth'], 2), round(allocation_sim.output['cpu'], 2))
+        bw, cpu_alloc = outputs[value]
+        decisions.append({
+            "priority": priority_label,
+            "bandwidth_allocation": f"{bw}%",
+            "cpu_allocation": f"{cpu_alloc}%",
+            "decision": f"Allocate {bw}% bandwidth and {cpu_alloc}% CPU for {priority_label} priority"
+        })
+    return decisions
+
+# --- API Endpoints ---
 @app.route('/allocate_resources', methods=['POST'])
 def allocate_resources():
     data = request.get_json()
     priority_label = data.get("priority", "LOW").upper()
-    priority_map = {"LOW": 2, "MEDIUM": 5, "HIGH": 8}
-    allocation_sim.input['priority'] = priority_map.get(priority_label, 2)
-    allocation_sim.compute()
-    bw = round(allocation_sim.output['bandwidth'], 2)
-    cpu_alloc = round(allocation_sim.output['cpu'], 2)
-    decision = {
-        "priority": priority_label,
-        "bandwidth_allocation": f"{bw}%",
-        "cpu_allocation": f"{cpu_alloc}%",
-        "decision": f"Allocate {bw}% bandwidth and {cpu_alloc}% CPU for {priority_label} priority"
-    }
-    return jsonify(decision)
+    return jsonify(allocate([priority_label])[0])
+
+@app.route('/allocate_resources_batch', methods=['POST'])
+def allocate_resources_batch():
+    """
+    Allocates resources for many priorities. Expects {"priorities": ["HIGH", "LOW", ...]} and returns the
+    decisions in the same order, with the latency of the batch.
+    """
+    data = request.get_json()
+    priority_labels = [str(label).upper() for label in data.get("priorities", [])]
+    start_time = time.perf_counter()
+    decisions = allocate(priority_labels)
+    latency_ms = (time.perf_counter() - start_time) * 1000
+    print(f"Batch Allocation Latency: {latency_ms:.4f} ms for {len(priority_labels)} priorities")
+    return jsonify({"decisions": decisions, "batch_size": len(decisions), "latency_ms": latency_ms})
 
 # --- Run Server ---
 
-if _name_ == '_main_':
+if __name__ == '__main__':
     app.run(host="0.0.0.0", port=8080)
\ No newline at end of file
@@ -0,0 +1,97 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Calendar;
+import java.util.Random;
+
+import org.fog.benchmark.Benchmark;
+
+/**
+ * Measures {@link CloudSim#runClockTick()} on a synthetic graph of entities, each forwarding every
+ * event it gets to one of its neighbours after a short delay. The results are given per processed
+ * event, with or without {@link CloudSim#setEventPooling(boolean) event pooling}.
+ */
+public class ClockTickBenchmark extends Benchmark {
+
+	/** The number of neighbours of each entity. */
+	private static final int DEGREE = 3;
+
+	private static final int TAG = 1;
+
+	private final boolean pooled;
+
+	private long processed;
+
+	/**
+	 * Creates the benchmark.
+	 *
+	 * @param pooled whether the events are pooled
+	 */
+	public ClockTickBenchmark(boolean pooled) {
+		super("CloudSim.runClockTick:" + (pooled ? "pooled" : "allocated"), TOPOLOGY_SIZES);
+		this.pooled = pooled;
+	}
+
+	@Override
+	public void setUp(int size) {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		CloudSim.setEventPooling(pooled);
+		Random random = new Random(42);
+		Node[] nodes = new Node[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new Node("node-" + i, random.nextLong());
+		}
+		for (Node node : nodes) {
+			for (int n = 0; n < DEGREE; n++) {
+				node.neighbours[n] = nodes[random.nextInt(size)].getId();
+			}
+		}
+		processed = 0;
+		CloudSim.runStart();
+	}
+
+	@Override
+	public long run() {
+		long before = processed;
+		CloudSim.runClockTick();
+		return processed - before;
+	}
+
+	/**
+	 * An entity forwarding its events to a random neighbour.
+	 */
+	private class Node extends SimEntity {
+
+		private final int[] neighbours = new int[DEGREE];
+
+		private final Random random;
+
+		Node(String name, long seed) {
+			super(name);
+			random = new Random(seed);
+		}
+
+		@Override
+		public void startEntity() {
+			send(neighbours[0], 0.1, TAG);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			processed++;
+			send(neighbours[random.nextInt(DEGREE)], 0.1 * (1 + random.nextInt(10)), TAG);
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+}
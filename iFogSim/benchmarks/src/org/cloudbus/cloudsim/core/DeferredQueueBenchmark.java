@@ -0,0 +1,82 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Random;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.core.predicates.PredicateAny;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
+import org.fog.benchmark.Benchmark;
+
+/**
+ * Measures the deferred queue of an entity holding a given number of events with a few tags. Each
+ * operation adds an event and takes one, alternately the first one and the first one with a given
+ * tag, as entities waiting for a reply do.
+ *
+ * @see DeferredQueue
+ */
+public class DeferredQueueBenchmark extends Benchmark {
+
+	/** The number of distinct tags of the events. */
+	private static final int TAGS = 8;
+
+	/** The number of operations per invocation. */
+	private static final int OPERATIONS = 1000;
+
+	private static final Predicate ANY = new PredicateAny();
+
+	private final boolean indexByTag;
+
+	private final Predicate[] byTag = new Predicate[TAGS];
+
+	private DeferredQueue queue;
+
+	private Random random;
+
+	private double time;
+
+	/**
+	 * Creates the benchmark.
+	 *
+	 * @param indexByTag whether the queue links the events per tag
+	 */
+	public DeferredQueueBenchmark(boolean indexByTag) {
+		super("DeferredQueue.addTake:" + (indexByTag ? "indexed" : "list"), 10, 100, 1000, 10000);
+		this.indexByTag = indexByTag;
+		for (int tag = 0; tag < TAGS; tag++) {
+			byTag[tag] = new PredicateType(tag);
+		}
+	}
+
+	@Override
+	public void setUp(int size) {
+		queue = new DeferredQueue(indexByTag);
+		random = new Random(42);
+		time = 0;
+		for (int i = 0; i < size; i++) {
+			queue.addEvent(new SimEvent(SimEvent.SEND, time += 0.1, 0, 0, random.nextInt(TAGS), null));
+		}
+	}
+
+	@Override
+	public long run() {
+		SimEvent spare = new SimEvent(SimEvent.SEND, time, 0, 0, 0, null);
+		for (int i = 0; i < OPERATIONS; i++) {
+			spare.reset(SimEvent.SEND, time += 0.1, 0, 0, random.nextInt(TAGS), null);
+			queue.addEvent(spare);
+			spare = queue.removeFirst(i % 2 == 0 ? ANY : byTag[random.nextInt(TAGS)]);
+			if (spare == null) {
+				spare = queue.removeFirst(ANY);
+			}
+		}
+		return OPERATIONS;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Random;
+
+import org.fog.benchmark.Benchmark;
+
+/**
+ * Measures the future event queues with the classic hold model: the queue keeps a given number of
+ * events, and each operation polls the first event and adds it back later in time. Event times are
+ * multiples of the minimal time between events, so many events share the same time as in the fog
+ * simulations.
+ *
+ * @see EventQueue
+ */
+public class EventQueueBenchmark extends Benchmark {
+
+	public static final String HEAP = "heap";
+
+	public static final String FUTURE = "future";
+
+	public static final String CALENDAR = "calendar";
+
+	/** The number of hold operations per invocation. */
+	private static final int HOLDS = 1000;
+
+	private final String kind;
+
+	private EventQueue queue;
+
+	private Random random;
+
+	/**
+	 * Creates the benchmark of a queue.
+	 *
+	 * @param kind {@link #HEAP}, {@link #FUTURE} or {@link #CALENDAR}
+	 */
+	public EventQueueBenchmark(String kind) {
+		super("EventQueue.hold:" + kind, 10, 100, 1000, 10000, 100000);
+		this.kind = kind;
+	}
+
+	@Override
+	public void setUp(int size) {
+		if (kind.equals(HEAP)) {
+			queue = new HeapEventQueue();
+		} else if (kind.equals(FUTURE)) {
+			queue = new FutureQueue();
+		} else if (kind.equals(CALENDAR)) {
+			queue = new CalendarEventQueue();
+		} else {
+			throw new IllegalArgumentException("Unknown queue: " + kind);
+		}
+		random = new Random(42);
+		for (int i = 0; i < size; i++) {
+			queue.addEvent(new SimEvent(SimEvent.SEND, increment(), 0, 0, i % 8, null));
+		}
+	}
+
+	@Override
+	public long run() {
+		for (int i = 0; i < HOLDS; i++) {
+			SimEvent e = queue.poll();
+			// reuse the event, only the queue is measured
+			e.reset(SimEvent.SEND, e.eventTime() + increment(), 0, 0, e.getTag(), null);
+			queue.addEvent(e);
+		}
+		return HOLDS;
+	}
+
+	private double increment() {
+		return 0.1 * (1 + random.nextInt(50));
+	}
+
+}
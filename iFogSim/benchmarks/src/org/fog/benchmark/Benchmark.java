@@ -0,0 +1,65 @@
+package org.fog.benchmark;
+
+/**
+ * A micro-benchmark run by {@link BenchmarkRunner}. Each measurement iteration calls {@link #setUp(int)}, then
+ * {@link #run()} repeatedly until the iteration time is over, then {@link #tearDown()}; only the calls to
+ * {@link #run()} are measured. A benchmark whose invocations change the state they run on can ask for
+ * {@link #setUpInvocation()} to be called before each call to {@link #run()}, which is not measured either. Each iteration runs in a new simulation context, so a benchmark can initialise
+ * CloudSim and the monitors in {@link #setUp(int)} without cleaning them up.
+ */
+public abstract class Benchmark {
+
+	/** The topology sizes, in fog devices, of the benchmarks that build a topology. */
+	public static final int[] TOPOLOGY_SIZES = {10, 100, 1000, 10000};
+
+	private final String name;
+	private final int[] sizes;
+
+	protected Benchmark(String name, int... sizes) {
+		this.name = name;
+		this.sizes = sizes;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the sizes the benchmark is run with, e.g. the number of fog devices or of queued events.
+	 */
+	public int[] getSizes() {
+		return sizes.clone();
+	}
+
+	/**
+	 * Prepares a measurement iteration. Not measured.
+	 * @param size the size of the problem
+	 */
+	public abstract void setUp(int size) throws Exception;
+
+	/**
+	 * Runs one invocation of the benchmark.
+	 * @return the number of operations performed, the results are given per operation
+	 */
+	public abstract long run() throws Exception;
+
+	/**
+	 * Tells whether {@link #setUpInvocation()} must be called before each invocation.
+	 */
+	public boolean isSetUpPerInvocation() {
+		return false;
+	}
+
+	/**
+	 * Prepares an invocation, if {@link #isSetUpPerInvocation()}. Not measured.
+	 */
+	public void setUpInvocation() throws Exception {
+	}
+
+	/**
+	 * Ends a measurement iteration. Not measured.
+	 */
+	public void tearDown() throws Exception {
+	}
+
+}
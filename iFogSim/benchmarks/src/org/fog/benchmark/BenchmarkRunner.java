@@ -0,0 +1,285 @@
+package org.fog.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.ClockTickBenchmark;
+import org.cloudbus.cloudsim.core.DeferredQueueBenchmark;
+import org.cloudbus.cloudsim.core.EventQueueBenchmark;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
+/**
+ * Runs the benchmarks of the simulation kernel and of the fog hot paths, and reports the time and the memory
+ * allocated per operation, with the error of the time at 99.9% confidence. The results can be written to a CSV file
+ * and compared with the CSV file of an earlier run, to catch performance regressions:
+ * <pre>
+ * java -cp ... org.fog.benchmark.BenchmarkRunner -f 'EventQueue|ClockTick' -s 100,10000 -o after.csv -b before.csv
+ * </pre>
+ * Options: <tt>-f</tt> a regular expression selecting the benchmarks by name, <tt>-s</tt> the sizes to run among
+ * those of each benchmark, <tt>-wi</tt> and <tt>-i</tt> the number of warmup and measurement iterations (default 3
+ * and 5), <tt>-t</tt> the time of an iteration in milliseconds (default 1000), <tt>-o</tt> the CSV file of the
+ * results, <tt>-b</tt> the CSV file of a baseline and <tt>-r</tt> the slowdown reported as a regression (default
+ * 0.1, i.e. 10%, beyond the errors). The exit status is 1 if a regression was found.
+ */
+public class BenchmarkRunner {
+
+	private static final double CONFIDENCE = 0.999;
+
+	private Pattern filter = Pattern.compile(".*");
+	private int[] sizes = null;
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long iterationMillis = 1000;
+	private File output = null;
+	private File baseline = null;
+	private double threshold = 0.1;
+
+	/**
+	 * Gets all the benchmarks of the suite.
+	 */
+	public static List<Benchmark> getBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new EventQueueBenchmark(EventQueueBenchmark.HEAP));
+		benchmarks.add(new EventQueueBenchmark(EventQueueBenchmark.FUTURE));
+		benchmarks.add(new EventQueueBenchmark(EventQueueBenchmark.CALENDAR));
+		benchmarks.add(new DeferredQueueBenchmark(true));
+		benchmarks.add(new DeferredQueueBenchmark(false));
+		benchmarks.add(new ClockTickBenchmark(false));
+		benchmarks.add(new ClockTickBenchmark(true));
+		benchmarks.add(new TupleArrivalBenchmark());
+		benchmarks.add(new ResultantTuplesBenchmark());
+		benchmarks.add(new RoutingTableBenchmark());
+		for (String placement : ModulePlacementBenchmark.PLACEMENTS)
+			benchmarks.add(new ModulePlacementBenchmark(placement));
+		return benchmarks;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value of option " + option);
+			String value = args[++i];
+			if (option.equals("-f"))
+				runner.filter = Pattern.compile(value);
+			else if (option.equals("-s")) {
+				String[] values = value.split(",");
+				runner.sizes = new int[values.length];
+				for (int s = 0; s < values.length; s++)
+					runner.sizes[s] = Integer.parseInt(values[s].trim());
+			} else if (option.equals("-wi"))
+				runner.warmupIterations = Integer.parseInt(value);
+			else if (option.equals("-i"))
+				runner.iterations = Integer.parseInt(value);
+			else if (option.equals("-t"))
+				runner.iterationMillis = Long.parseLong(value);
+			else if (option.equals("-o"))
+				runner.output = new File(value);
+			else if (option.equals("-b"))
+				runner.baseline = new File(value);
+			else if (option.equals("-r"))
+				runner.threshold = Double.parseDouble(value);
+			else
+				throw new IllegalArgumentException("Unknown option " + option);
+		}
+		if (runner.run() > 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Runs the selected benchmarks.
+	 * @return the number of regressions found against the baseline
+	 */
+	public int run() throws Exception {
+		Map<String, Result> previous = baseline != null ? readResults(baseline) : new HashMap<String, Result>();
+		List<Result> results = new ArrayList<Result>();
+		int regressions = 0;
+		System.out.println(String.format("%-52s %8s %14s %12s %14s", "Benchmark", "Size", "ns/op", "error", "B/op"));
+		for (Benchmark benchmark : getBenchmarks()) {
+			if (!filter.matcher(benchmark.getName()).find())
+				continue;
+			for (int size : benchmark.getSizes()) {
+				if (sizes != null && Arrays.binarySearch(sortedSizes(), size) < 0)
+					continue;
+				Result result = measure(benchmark, size);
+				results.add(result);
+				Result before = previous.get(result.key());
+				String verdict = "";
+				if (before != null) {
+					double change = (result.nanos - before.nanos) / before.nanos;
+					verdict = String.format(" %+.1f%%", 100 * change);
+					if (result.nanos - result.error > (before.nanos + before.error) * (1 + threshold)) {
+						verdict += " REGRESSION";
+						regressions++;
+					}
+				}
+				System.out.println(String.format("%-52s %8d %14.1f %12.1f %14.1f%s", benchmark.getName(), size,
+						result.nanos, result.error, result.bytes, verdict));
+			}
+		}
+		if (output != null)
+			writeResults(output, results);
+		return regressions;
+	}
+
+	private int[] sortedSizes() {
+		int[] sorted = sizes.clone();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private Result measure(final Benchmark benchmark, final int size) throws Exception {
+		PrintStream console = System.out;
+		// the simulations print a lot, only the results are shown
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		Log.disable();
+		SummaryStatistics nanos = new SummaryStatistics();
+		SummaryStatistics bytes = new SummaryStatistics();
+		try {
+			for (int i = 0; i < warmupIterations + iterations; i++) {
+				double[] iteration = new SimulationContext().call(new Callable<double[]>() {
+					@Override
+					public double[] call() throws Exception {
+						return iterate(benchmark, size);
+					}
+				});
+				if (i >= warmupIterations) {
+					nanos.addValue(iteration[0]);
+					bytes.addValue(iteration[1]);
+				}
+			}
+		} finally {
+			System.setOut(console);
+		}
+		double error = 0;
+		if (nanos.getN() > 1) {
+			double t = new TDistribution(nanos.getN() - 1).inverseCumulativeProbability((1 + CONFIDENCE) / 2);
+			error = t * nanos.getStandardDeviation() / Math.sqrt(nanos.getN());
+		}
+		return new Result(benchmark.getName(), size, nanos.getMean(), error, bytes.getMean());
+	}
+
+	/**
+	 * Runs one iteration.
+	 * @return the time and the memory allocated per operation
+	 */
+	private double[] iterate(Benchmark benchmark, int size) throws Exception {
+		benchmark.setUp(size);
+		try {
+			long operations = 0;
+			long nanos = 0;
+			long allocated = 0;
+			long end = System.nanoTime() + iterationMillis * 1000000L;
+			if (benchmark.isSetUpPerInvocation()) {
+				// only the invocations are measured, not their set-up
+				do {
+					benchmark.setUpInvocation();
+					long allocatedBefore = allocatedBytes();
+					long start = System.nanoTime();
+					operations += benchmark.run();
+					nanos += System.nanoTime() - start;
+					allocated += allocatedBytes() - allocatedBefore;
+				} while (System.nanoTime() < end);
+			} else {
+				long allocatedBefore = allocatedBytes();
+				long start = System.nanoTime();
+				long now;
+				do {
+					operations += benchmark.run();
+					now = System.nanoTime();
+				} while (now < end);
+				nanos = now - start;
+				allocated = allocatedBytes() - allocatedBefore;
+			}
+			operations = Math.max(operations, 1);
+			return new double[] {(double) nanos / operations, (double) allocated / operations};
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Gets the memory allocated by the current thread so far, if the JVM can measure it.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	private static void writeResults(File file, List<Result> results) throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println("benchmark,size,ns_per_op,error,bytes_per_op");
+			for (Result result : results)
+				out.println(result.benchmark + "," + result.size + "," + result.nanos + "," + result.error + ","
+						+ result.bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Map<String, Result> readResults(File file) throws IOException {
+		Map<String, Result> results = new HashMap<String, Result>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			in.readLine();
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split(",");
+				if (fields.length < 5)
+					continue;
+				Result result = new Result(fields[0], Integer.parseInt(fields[1]), Double.parseDouble(fields[2]),
+						Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+				results.put(result.key(), result);
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+	private static class Result {
+
+		private final String benchmark;
+		private final int size;
+		private final double nanos;
+		private final double error;
+		private final double bytes;
+
+		Result(String benchmark, int size, double nanos, double error, double bytes) {
+			this.benchmark = benchmark;
+			this.size = size;
+			this.nanos = nanos;
+			this.error = error;
+			this.bytes = bytes;
+		}
+
+		String key() {
+			return benchmark + "/" + size;
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.fog.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.fog.application.Application;
+import org.fog.placement.ClusteredMicroservicePlacementLogic;
+import org.fog.placement.ModulePlacementEdgewards;
+import org.fog.placement.ModulePlacementMapping;
+import org.fog.placement.ModulePlacementOnlyCloud;
+
+/**
+ * Measures a module placement of the application of a {@link SyntheticTopology}. The results are given per
+ * placement of the whole application. A placement fills the devices it places modules on, so each placement runs on
+ * a new topology, built before it is measured.
+ */
+public class ModulePlacementBenchmark extends Benchmark {
+
+	public static final String EDGEWARDS = "edgewards";
+	public static final String ONLY_CLOUD = "cloud";
+	public static final String MAPPING = "mapping";
+	public static final String CLUSTERED_MICROSERVICES = "clustered-microservices";
+
+	/** The placements that can be measured. */
+	public static final String[] PLACEMENTS = {EDGEWARDS, ONLY_CLOUD, MAPPING, CLUSTERED_MICROSERVICES};
+
+	private final String placement;
+	private int size;
+	private SyntheticTopology topology;
+
+	/**
+	 * Creates the benchmark.
+	 * @param placement one of {@link #PLACEMENTS}
+	 */
+	public ModulePlacementBenchmark(String placement) {
+		super("ModulePlacement:" + placement, TOPOLOGY_SIZES);
+		boolean known = false;
+		for (String name : PLACEMENTS)
+			known |= name.equals(placement);
+		if (!known)
+			throw new IllegalArgumentException("Unknown placement:" + placement);
+		this.placement = placement;
+	}
+
+	@Override
+	public void setUp(int size) {
+		this.size = size;
+	}
+
+	@Override
+	public boolean isSetUpPerInvocation() {
+		return true;
+	}
+
+	@Override
+	public void setUpInvocation() throws Exception {
+		// the previous topology can be collected while the next one is built
+		topology = null;
+		topology = new SyntheticTopology(size, placement.equals(CLUSTERED_MICROSERVICES));
+		topology.connect();
+	}
+
+	@Override
+	public long run() {
+		Application application = topology.getApplication();
+		if (placement.equals(EDGEWARDS))
+			new ModulePlacementEdgewards(topology.getFogDevices(), topology.getSensors(), topology.getActuators(),
+					application, topology.createModuleMapping());
+		else if (placement.equals(ONLY_CLOUD))
+			new ModulePlacementOnlyCloud(topology.getFogDevices(), topology.getSensors(), topology.getActuators(),
+					application);
+		else if (placement.equals(MAPPING))
+			new ModulePlacementMapping(topology.getFogDevices(), application, topology.createModuleMapping());
+		else {
+			Map<String, Application> applications = new HashMap<String, Application>();
+			applications.put(application.getAppId(), application);
+			// the cloud orchestrates the placement, as when the clustered placement runs centrally
+			new ClusteredMicroservicePlacementLogic(topology.getFogDevices().get(0).getId()).run(
+					topology.getFogDevices(), applications, topology.getResourceAvailability(),
+					topology.createPlacementRequests());
+		}
+		return 1;
+	}
+
+}
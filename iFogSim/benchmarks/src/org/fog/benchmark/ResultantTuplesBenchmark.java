@@ -0,0 +1,49 @@
+package org.fog.benchmark;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.fog.application.AppEdge;
+import org.fog.application.Application;
+import org.fog.application.selectivity.FractionalSelectivity;
+import org.fog.entities.Tuple;
+import org.fog.utils.FogUtils;
+
+/**
+ * Measures {@link Application#getResultantTuples(String, Tuple, int, int)} for a module with as many outgoing edges
+ * as the size, each emitting a tuple for the input tuple. The results are given per resultant tuple.
+ */
+public class ResultantTuplesBenchmark extends Benchmark {
+
+	private static final String MODULE = "module";
+
+	private Application application;
+	private Tuple input;
+
+	public ResultantTuplesBenchmark() {
+		super("Application.getResultantTuples", 10, 100, 1000);
+	}
+
+	@Override
+	public void setUp(int size) {
+		application = Application.createApplication("benchmark", 1);
+		application.addAppModule("source", 10);
+		application.addAppModule(MODULE, 10);
+		application.addAppEdge("source", MODULE, 1000, 500, "IN", Tuple.UP, AppEdge.MODULE);
+		for (int i = 0; i < size; i++) {
+			application.addAppModule("sink-" + i, 10);
+			application.addAppEdge(MODULE, "sink-" + i, 1000, 500, "OUT-" + i, Tuple.UP, AppEdge.MODULE);
+			application.addTupleMapping(MODULE, "IN", "OUT-" + i, new FractionalSelectivity(1.0));
+		}
+		input = new Tuple("benchmark", FogUtils.generateTupleId(), Tuple.UP, 1000, 1, 500, 500,
+				new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
+		input.setUserId(1);
+		input.setTupleType("IN");
+		input.setSrcModuleName("source");
+		input.setDestModuleName(MODULE);
+	}
+
+	@Override
+	public long run() {
+		return application.getResultantTuples(MODULE, input, 0, 0).size();
+	}
+
+}
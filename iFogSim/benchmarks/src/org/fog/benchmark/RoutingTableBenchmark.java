@@ -0,0 +1,30 @@
+package org.fog.benchmark;
+
+import org.fog.utils.ShortestPathRoutingGenerator;
+
+/**
+ * Measures {@link ShortestPathRoutingGenerator#generateRoutingTable(java.util.List)} on a {@link SyntheticTopology}.
+ * The results are given per routing table. The tables have an entry per pair of devices, so the largest topology is
+ * left out.
+ */
+public class RoutingTableBenchmark extends Benchmark {
+
+	private SyntheticTopology topology;
+
+	public RoutingTableBenchmark() {
+		super("ShortestPathRoutingGenerator.generateRoutingTable", 10, 100, 1000);
+	}
+
+	@Override
+	public void setUp(int size) throws Exception {
+		topology = new SyntheticTopology(size, false);
+		topology.connect();
+	}
+
+	@Override
+	public long run() {
+		ShortestPathRoutingGenerator.generateRoutingTable(topology.getFogDevices());
+		return 1;
+	}
+
+}
@@ -0,0 +1,258 @@
+package org.fog.benchmark;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.cloudbus.cloudsim.sdn.overbooking.BwProvisionerOverbooking;
+import org.cloudbus.cloudsim.sdn.overbooking.PeProvisionerOverbooking;
+import org.fog.application.AppEdge;
+import org.fog.application.AppLoop;
+import org.fog.application.Application;
+import org.fog.application.selectivity.FractionalSelectivity;
+import org.fog.entities.Actuator;
+import org.fog.entities.ControllerComponent;
+import org.fog.entities.FogBroker;
+import org.fog.entities.FogDevice;
+import org.fog.entities.FogDeviceCharacteristics;
+import org.fog.entities.MicroserviceFogDevice;
+import org.fog.entities.PlacementRequest;
+import org.fog.entities.Sensor;
+import org.fog.entities.Tuple;
+import org.fog.placement.ModuleMapping;
+import org.fog.policy.AppModuleAllocationPolicy;
+import org.fog.scheduler.StreamOperatorScheduler;
+import org.fog.utils.FogLinearPowerModel;
+import org.fog.utils.FogUtils;
+import org.fog.utils.distribution.DeterministicDistribution;
+
+/**
+ * A fog topology of any size for the benchmarks: a tree rooted at the cloud where each device has up to
+ * {@link #FAN_OUT} children, filled level by level, with a sensor and an actuator on each leaf. Its application
+ * follows the sense-process-actuate pattern of the examples: a client module on the leaves, an analytics module placed
+ * by the placement policy and a storage module in the cloud.
+ */
+public class SyntheticTopology {
+
+	public static final int FAN_OUT = 10;
+	public static final String APP_ID = "benchmark";
+	public static final String CLIENT = "client";
+	public static final String ANALYTICS = "analytics";
+	public static final String STORAGE = "storage";
+
+	private final List<FogDevice> fogDevices = new ArrayList<FogDevice>();
+	private final List<Sensor> sensors = new ArrayList<Sensor>();
+	private final List<Actuator> actuators = new ArrayList<Actuator>();
+	private final Application application;
+	private final boolean microservices;
+	private long tupleArrivals = 0;
+
+	/**
+	 * Initialises CloudSim and builds the topology in the current simulation context.
+	 * @param size the number of fog devices, including the cloud
+	 * @param microservices whether the devices are microservice devices, as needed by the microservice placements
+	 */
+	public SyntheticTopology(int size, boolean microservices) throws Exception {
+		if (size < 2)
+			throw new IllegalArgumentException("The topology needs at least 2 devices, but has:" + size);
+		this.microservices = microservices;
+		Log.disable();
+		CloudSim.init(1, Calendar.getInstance(), false);
+		FogBroker broker = new FogBroker("broker");
+		application = createApplication(broker.getId());
+
+		for (int i = 0; i < size; i++) {
+			int level = 0;
+			for (int parent = i; parent > 0; parent = (parent - 1) / FAN_OUT)
+				level++;
+			boolean leaf = i * FAN_OUT + 1 >= size;
+			FogDevice device;
+			if (i == 0)
+				device = createFogDevice("cloud", 44800, 40000, 100, 10000, 0, 0.01, 16 * 103, 16 * 83.25,
+						MicroserviceFogDevice.CLOUD);
+			else if (leaf)
+				device = createFogDevice("d-" + i, 1000, 1000, 10000, 10000, level, 0, 87.53, 82.44,
+						MicroserviceFogDevice.CLIENT);
+			else
+				device = createFogDevice("d-" + i, 2800, 4000, 10000, 10000, level, 0, 107.339, 83.4333,
+						MicroserviceFogDevice.FON);
+			if (i == 0) {
+				device.setParentId(-1);
+			} else {
+				FogDevice parent = fogDevices.get((i - 1) / FAN_OUT);
+				device.setParentId(parent.getId());
+				device.setUplinkLatency(level == 1 ? 100 : 2);
+			}
+			fogDevices.add(device);
+			if (leaf) {
+				Sensor sensor = new Sensor("s-" + i, "SENSE", broker.getId(), APP_ID, new DeterministicDistribution(5));
+				sensor.setGatewayDeviceId(device.getId());
+				sensor.setLatency(1.0);
+				sensors.add(sensor);
+				Actuator actuator = new Actuator("a-" + i, broker.getId(), APP_ID, "DISPLAY");
+				actuator.setGatewayDeviceId(device.getId());
+				actuator.setLatency(1.0);
+				actuators.add(actuator);
+			}
+		}
+	}
+
+	/**
+	 * Links the devices to their children, as the controllers do. Only needed when no controller is created.
+	 */
+	public void connect() {
+		Map<Integer, FogDevice> byId = new HashMap<Integer, FogDevice>();
+		for (FogDevice device : fogDevices)
+			byId.put(device.getId(), device);
+		for (FogDevice device : fogDevices) {
+			FogDevice parent = byId.get(device.getParentId());
+			if (parent == null)
+				continue;
+			parent.getChildToLatencyMap().put(device.getId(), device.getUplinkLatency());
+			parent.getChildrenIds().add(device.getId());
+		}
+	}
+
+	/**
+	 * Gets the module mapping of the examples: the client on every leaf and the storage in the cloud.
+	 */
+	public ModuleMapping createModuleMapping() {
+		ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
+		for (Sensor sensor : sensors)
+			moduleMapping.addModuleToDevice(CLIENT, CloudSim.getEntityName(sensor.getGatewayDeviceId()));
+		moduleMapping.addModuleToDevice(STORAGE, "cloud");
+		return moduleMapping;
+	}
+
+	/**
+	 * Gets the placement requests of the microservice placements, one per sensor with the client already placed.
+	 */
+	public List<PlacementRequest> createPlacementRequests() {
+		List<PlacementRequest> placementRequests = new ArrayList<PlacementRequest>();
+		for (Sensor sensor : sensors) {
+			Map<String, Integer> placed = new HashMap<String, Integer>();
+			placed.put(CLIENT, sensor.getGatewayDeviceId());
+			placementRequests.add(new PlacementRequest(APP_ID, sensor.getId(), sensor.getGatewayDeviceId(), placed));
+		}
+		return placementRequests;
+	}
+
+	/**
+	 * Gets the resources of each device, as the microservice controllers track them.
+	 */
+	public Map<Integer, Map<String, Double>> getResourceAvailability() {
+		Map<Integer, Map<String, Double>> resources = new HashMap<Integer, Map<String, Double>>();
+		for (FogDevice device : fogDevices) {
+			Map<String, Double> perDevice = new HashMap<String, Double>();
+			perDevice.put(ControllerComponent.CPU, (double) device.getHost().getTotalMips());
+			perDevice.put(ControllerComponent.RAM, (double) device.getHost().getRam());
+			perDevice.put(ControllerComponent.STORAGE, (double) device.getHost().getStorage());
+			resources.put(device.getId(), perDevice);
+		}
+		return resources;
+	}
+
+	public List<FogDevice> getFogDevices() {
+		return fogDevices;
+	}
+
+	public List<Sensor> getSensors() {
+		return sensors;
+	}
+
+	public List<Actuator> getActuators() {
+		return actuators;
+	}
+
+	public Application getApplication() {
+		return application;
+	}
+
+	/**
+	 * Gets the number of tuples the fog devices have received so far.
+	 */
+	public long getTupleArrivals() {
+		return tupleArrivals;
+	}
+
+	private FogDevice createFogDevice(String nodeName, long mips, int ram, long upBw, long downBw, int level,
+			double ratePerMips, double busyPower, double idlePower, String deviceType) throws Exception {
+		List<Pe> peList = new ArrayList<Pe>();
+		peList.add(new Pe(0, new PeProvisionerOverbooking(mips)));
+		PowerHost host = new PowerHost(FogUtils.generateEntityId(), new RamProvisionerSimple(ram),
+				new BwProvisionerOverbooking(10000), 1000000, peList, new StreamOperatorScheduler(peList),
+				new FogLinearPowerModel(busyPower, idlePower));
+		List<Host> hostList = new ArrayList<Host>();
+		hostList.add(host);
+		FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics("x86", "Linux", "Xen", host, 10.0,
+				3.0, 0.05, 0.001, 0.0);
+		FogDevice device;
+		if (microservices)
+			device = new MicroserviceFogDevice(nodeName, characteristics, new AppModuleAllocationPolicy(hostList),
+					new LinkedList<Storage>(), 10, upBw, downBw, 1250000, 0, ratePerMips, deviceType);
+		else
+			device = new CountingFogDevice(nodeName, characteristics, new AppModuleAllocationPolicy(hostList),
+					new LinkedList<Storage>(), 10, upBw, downBw, 0, ratePerMips);
+		device.setLevel(level);
+		return device;
+	}
+
+	@SuppressWarnings("serial")
+	private static Application createApplication(int userId) {
+		Application application = Application.createApplication(APP_ID, userId);
+		application.addAppModule(CLIENT, 10, 100, 10000);
+		application.addAppModule(ANALYTICS, 10, 100, 10000);
+		application.addAppModule(STORAGE, 10, 100, 10000);
+
+		application.addAppEdge("SENSE", CLIENT, 1000, 500, "SENSE", Tuple.UP, AppEdge.SENSOR);
+		application.addAppEdge(CLIENT, ANALYTICS, 2000, 500, "DATA", Tuple.UP, AppEdge.MODULE);
+		application.addAppEdge(ANALYTICS, CLIENT, 500, 100, "RESPONSE", Tuple.DOWN, AppEdge.MODULE);
+		application.addAppEdge(ANALYTICS, STORAGE, 1000, 1000, "RECORD", Tuple.UP, AppEdge.MODULE);
+		application.addAppEdge(CLIENT, "DISPLAY", 100, 28, 100, "CONTROL", Tuple.DOWN, AppEdge.ACTUATOR);
+
+		application.addTupleMapping(CLIENT, "SENSE", "DATA", new FractionalSelectivity(1.0));
+		application.addTupleMapping(ANALYTICS, "DATA", "RESPONSE", new FractionalSelectivity(1.0));
+		application.addTupleMapping(ANALYTICS, "DATA", "RECORD", new FractionalSelectivity(0.1));
+		application.addTupleMapping(CLIENT, "RESPONSE", "CONTROL", new FractionalSelectivity(1.0));
+
+		final AppLoop loop = new AppLoop(new ArrayList<String>() {{
+			add("SENSE"); add(CLIENT); add(ANALYTICS); add(CLIENT); add("DISPLAY");
+		}});
+		List<AppLoop> loops = new ArrayList<AppLoop>();
+		loops.add(loop);
+		application.setLoops(loops);
+		application.setSpecialPlacementInfo(STORAGE, "cloud");
+		return application;
+	}
+
+	/**
+	 * A fog device counting the tuples it receives.
+	 */
+	private class CountingFogDevice extends FogDevice {
+
+		CountingFogDevice(String name, FogDeviceCharacteristics characteristics, AppModuleAllocationPolicy policy,
+				List<Storage> storageList, double schedulingInterval, double uplinkBandwidth,
+				double downlinkBandwidth, double uplinkLatency, double ratePerMips) throws Exception {
+			super(name, characteristics, policy, storageList, schedulingInterval, uplinkBandwidth, downlinkBandwidth,
+					uplinkLatency, ratePerMips);
+		}
+
+		@Override
+		protected void processTupleArrival(SimEvent ev) {
+			tupleArrivals++;
+			super.processTupleArrival(ev);
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.fog.benchmark;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.placement.Controller;
+import org.fog.placement.ModulePlacementEdgewards;
+import org.fog.utils.Config;
+
+/**
+ * Measures the processing of tuples by the fog devices: a {@link SyntheticTopology} runs its application, placed
+ * edgewards as in the examples, and the simulation is stepped one clock tick at a time. The results are given per
+ * tuple arrival on a fog device, which includes the events the arrival causes (routing, execution, acknowledgements).
+ */
+public class TupleArrivalBenchmark extends Benchmark {
+
+	private SyntheticTopology topology;
+	private int maxSimulationTime;
+
+	public TupleArrivalBenchmark() {
+		super("FogDevice.processTupleArrival", TOPOLOGY_SIZES);
+	}
+
+	@Override
+	public void setUp(int size) throws Exception {
+		// the simulation must not stop before the end of the iteration
+		maxSimulationTime = Config.MAX_SIMULATION_TIME;
+		Config.MAX_SIMULATION_TIME = Integer.MAX_VALUE;
+		topology = new SyntheticTopology(size, false);
+		Controller controller = new Controller("master-controller", topology.getFogDevices(), topology.getSensors(),
+				topology.getActuators());
+		controller.submitApplication(topology.getApplication(), new ModulePlacementEdgewards(topology.getFogDevices(),
+				topology.getSensors(), topology.getActuators(), topology.getApplication(),
+				topology.createModuleMapping()));
+		CloudSim.runStart();
+	}
+
+	@Override
+	public long run() {
+		long before = topology.getTupleArrivals();
+		CloudSim.runClockTick();
+		return topology.getTupleArrivals() - before;
+	}
+
+	@Override
+	public void tearDown() {
+		Config.MAX_SIMULATION_TIME = maxSimulationTime;
+	}
+
+}
@@ -1,100 +1,288 @@
 package iFogSimulator;
 
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.ExternalServiceEntity;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.entities.Tuple;
+import org.fog.utils.FogEvents;
+import org.fog.utils.FogUtils;
 import org.json.JSONObject;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random; // Import Random
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class AdaptiveAllocatorModule extends SimEntity {
 
     private String appId;
     private PythonClient pythonClient;
+    private PriorityPredictor priorityPredictor;
+    private ResourceAllocator resourceAllocator;
+    private ExternalServiceEntity ciService;
     private int v2vTransmitterId;
     private double simulationPeriod;
     private Random randomGenerator; // Add a random generator
+    private final PowerModel energyAccount = new PowerModel(); // The energy of this vehicle
+    private InferenceOffloader offloader;
+    private AdaptiveSamplingController samplingController;
+    private String lastPriority = "MEDIUM"; // The priority of the last decision, which sets where the next one runs
+    private boolean verbose = true;
+    private int decisions = 0;
+    private int alerts = 0;
+    /** The decisions waiting for their inference, by id of its tuple */
+    private final Map<Integer, PendingDecision> inferences = new HashMap<>();
+
+    /** The tag of the response of the CI service to a context */
+    private static final int DECISION = 2001;
+    /** The tag of the arrival of the result of an offloaded inference */
+    private static final int INFERENCE_RESULT = 2002;
+    /** The tag of the tuple of an offloaded inference, returned once its target ran it, see {@link VehicleBroker} */
+    static final int INFERENCE_COMPLETED = 2003;
+
+    /** A context sent to the CI servers, waiting for their answer */
+    private static class PendingDecision {
+        double trafficDensity;
+        double drowsiness;
+        CompletableFuture<String> priority;
+        CompletableFuture<ResourceAllocation> allocation;
+        InferenceOffloader.Offload offload;
+        /** Whether the CI service returned the decision, and whether the result of the inference is back */
+        boolean answered;
+        boolean inferred;
+    }
 
     public AdaptiveAllocatorModule(String name, String appId, int v2vTransmitterId, double period) {
+        this(name, appId, v2vTransmitterId, period, null, null, null);
+    }
+
+    /**
+     * @param priorityPredictor the predictor of the priorities, e.g. a {@link TreeEnsemblePredictor}, or null to ask
+     *                          the AI server
+     * @param resourceAllocator the allocator of the resources, e.g. a {@link FuzzyAllocator}, or null to ask the
+     *                          fuzzy allocator server
+     * @param ciService the service through which the decisions are returned, which sets their simulated latency,
+     *                  or null for a service answering after the minimum time between events, shared by all the
+     *                  allocators of the simulation created without one
+     */
+    public AdaptiveAllocatorModule(String name, String appId, int v2vTransmitterId, double period,
+                                   PriorityPredictor priorityPredictor, ResourceAllocator resourceAllocator,
+                                   ExternalServiceEntity ciService) {
         super(name);
         this.appId = appId;
-        this.pythonClient = new PythonClient();
+        if (priorityPredictor == null || resourceAllocator == null)
+            this.pythonClient = new PythonClient();
+        this.priorityPredictor = priorityPredictor != null ? priorityPredictor : pythonClient;
+        this.resourceAllocator = resourceAllocator != null ? resourceAllocator : pythonClient;
+        this.ciService = ciService != null ? ciService : defaultCiService();
         this.v2vTransmitterId = v2vTransmitterId;
         this.simulationPeriod = period;
-        this.randomGenerator = new Random(); // Initialize the random generator
+        this.randomGenerator = FogUtils.createRandom(); // Initialize the random generator, seeded from the simulation
+    }
+
+    /** The CI service of the allocators of a simulation created without one */
+    private static class DefaultCiService {
+        ExternalServiceEntity service;
+    }
+
+    /**
+     * Gets the CI service of the allocators created without one, so that a fleet of them adds a single entity.
+     */
+    private static ExternalServiceEntity defaultCiService() {
+        DefaultCiService holder = SimulationContext.current().getState(DefaultCiService.class, DefaultCiService::new);
+        synchronized (holder) {
+            // a new service is needed after CloudSim.init, which drops the entities
+            if (holder.service == null || CloudSim.getEntity(holder.service.getName()) != holder.service)
+                holder.service = new ExternalServiceEntity("ci-service", CloudSim.getMinTimeBetweenEvents());
+            return holder.service;
+        }
     }
 
     @Override
     public void startEntity() {
-        System.out.println("AdaptiveAllocatorModule started.");
+        if (verbose)
+            System.out.println("AdaptiveAllocatorModule started.");
+    }
+
+    /**
+     * Sets whether each cycle is printed, which is too much output for a fleet.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the offloader of the inferences of the CI models, which runs each of them as a tuple on one of its targets
+     * and sets the simulated latency of the decision, or null for the latency of the CI service only. The broker of
+     * the application must then be a {@link VehicleBroker}, which returns the tuples to the allocator.
+     */
+    public void setOffloader(InferenceOffloader offloader) {
+        this.offloader = offloader;
+    }
+
+    public InferenceOffloader getOffloader() {
+        return offloader;
+    }
+
+    /**
+     * Sets the controller of the sampling of the sensors of the vehicle, to which the decisions are applied, or null.
+     */
+    public void setSamplingController(AdaptiveSamplingController samplingController) {
+        this.samplingController = samplingController;
+    }
+
+    public AdaptiveSamplingController getSamplingController() {
+        return samplingController;
+    }
+
+    public PowerModel getEnergyAccount() {
+        return energyAccount;
+    }
+
+    public int getDecisions() {
+        return decisions;
+    }
+
+    public int getAlerts() {
+        return alerts;
     }
 
     @Override
     public void processEvent(SimEvent ev) {
         if (ev.getTag() == 2000) {
-            String contextLabel = (String) ev.getData();
+            requestDecision((String) ev.getData());
+        } else if (ev.getTag() == DECISION) {
+            @SuppressWarnings("unchecked")
+            ExternalServiceEntity.Response<PendingDecision> response = (ExternalServiceEntity.Response<PendingDecision>) ev.getData();
+            PendingDecision decision;
+            try {
+                decision = response.getResult();
+            } catch (ExecutionException e) {
+                // the decision is returned whether the requests succeeded or not
+                throw new IllegalStateException(e);
+            }
+            decision.answered = true;
+            if (decision.offload != null && !decision.inferred) {
+                // the models answered before the inference completed on its target
+                return;
+            }
+            if (verbose)
+                System.out.printf("AI BRAIN: Decision latency = %.4f\n", response.getLatency());
+            applyDecision(decision);
+        } else if (ev.getTag() == INFERENCE_COMPLETED) {
+            PendingDecision decision = inferences.remove(((Tuple) ev.getData()).getCloudletId());
+            if (decision == null)
+                return;
+            double resultTime = offloader.complete(decision.offload, CloudSim.clock());
+            send(getId(), resultTime - CloudSim.clock(), INFERENCE_RESULT, decision);
+        } else if (ev.getTag() == INFERENCE_RESULT) {
+            PendingDecision decision = (PendingDecision) ev.getData();
+            decision.inferred = true;
+            if (!decision.answered)
+                return;
+            if (verbose)
+                System.out.printf("AI BRAIN: Decision latency = %.4f on %s\n", decision.offload.getLatency(),
+                        decision.offload.getOption().getTarget().getName());
+            applyDecision(decision);
+        }
+    }
+
+    /**
+     * Sends the context to the CI servers through the CI service, without waiting for their answer, which is applied
+     * when the service returns it in a {@link #DECISION} event. The simulation goes on while the requests are in flight.
+     * With an offloader, the inference also runs on the target chosen from the priority of the last decision: its
+     * tuple is sent to the device of the target, which returns it in an {@link #INFERENCE_COMPLETED} event once it ran,
+     * and the decision is applied once its result is back, in an {@link #INFERENCE_RESULT} event if that is later.
+     */
+    private void requestDecision(String contextLabel) {
+        if (verbose) {
             System.out.println("\n----------------------------------------------------------");
             System.out.println("adaptive-allocator-module received context event: " + contextLabel);
+        }
 
-            // Generate feature values
-            double trafficDensity = getTrafficDensityForContext(contextLabel);
-            int timeOfDay = getTimeOfDayForContext(contextLabel);
-            int weather = getWeatherForContext(contextLabel);
-            double visibility = getVisibilityForContext(contextLabel);
-            double drowsiness = generateRandomDrowsiness(); // Generate random drowsiness
+        // Generate feature values
+        PendingDecision decision = new PendingDecision();
+        decision.trafficDensity = getTrafficDensityForContext(contextLabel);
+        int timeOfDay = getTimeOfDayForContext(contextLabel);
+        int weather = getWeatherForContext(contextLabel);
+        double visibility = getVisibilityForContext(contextLabel);
+        decision.drowsiness = generateRandomDrowsiness(); // Generate random drowsiness
 
+        if (verbose) {
             // <<< MODIFIED: Print ALL simulated sensor values for this cycle >>>
             System.out.println("SIMULATED SENSORS:");
-            System.out.printf("  - Traffic Density: %.1f\n", trafficDensity);
+            System.out.printf("  - Traffic Density: %.1f\n", decision.trafficDensity);
             System.out.printf("  - Time of Day    : %d (1=Day, 0=Night)\n", timeOfDay);
             System.out.printf("  - Weather        : %d (0=Clear, 1=Rainy, 2=Foggy)\n", weather);
             System.out.printf("  - Visibility     : %.1f\n", visibility);
-            System.out.printf("  - Drowsiness     : %.1f\n", drowsiness);
+            System.out.printf("  - Drowsiness     : %.1f\n", decision.drowsiness);
             // <<< END OF MODIFICATION >>>
+        }
 
-            try {
-                // Get AI priority prediction
-                System.out.println("AI BRAIN: Querying AI server for priority...");
-                String priorityLabel = pythonClient.predictPriority(trafficDensity, timeOfDay, weather, visibility);
+        // Get AI priority prediction, then Fuzzy allocation
+        if (verbose)
+            System.out.println("AI BRAIN: Querying AI server for priority...");
+        if (offloader != null) {
+            decision.offload = offloader.offload(lastPriority, CloudSim.clock(), energyAccount, getId());
+            Tuple tuple = decision.offload.getTuple();
+            inferences.put(tuple.getCloudletId(), decision);
+            send(decision.offload.getOption().getTarget().getDevice().getId(),
+                    decision.offload.getArrivalTime() - CloudSim.clock(), FogEvents.TUPLE_ARRIVAL, tuple);
+        }
+        decision.priority = priorityPredictor.predictPriorityAsync(decision.trafficDensity, timeOfDay, weather, visibility);
+        decision.allocation = decision.priority.thenCompose(resourceAllocator::allocateAsync);
+        ciService.submit(getId(), DECISION, decision.allocation.handle((allocation, failure) -> decision));
+    }
+
+    private void applyDecision(PendingDecision decision) {
+        try {
+            String priorityLabel = PythonClient.await(decision.priority);
+            ResourceAllocation allocation = PythonClient.await(decision.allocation);
+            decisions++;
+            lastPriority = priorityLabel;
+            if (samplingController != null)
+                samplingController.onDecision(allocation);
+            if (verbose) {
                 System.out.println("AI BRAIN: Received Overall Priority = " + priorityLabel);
+                System.out.println("AI BRAIN: Querying Fuzzy allocator for resource allocation...");
+                System.out.println("AI BRAIN: Received Action = " + allocation);
+            }
 
-                // Get Fuzzy allocation
-                System.out.println("AI BRAIN: Querying Fuzzy server for resource allocation...");
-                String allocationDecisionJson = pythonClient.allocateResources(priorityLabel);
-                System.out.println("AI BRAIN: Received Action = " + allocationDecisionJson);
-
-                // --- Alert Logic ---
-                boolean sendAlert = false;
-                String alertReason = "";
-                boolean highDrowsiness = drowsiness > 0.7;
-                boolean highTraffic = trafficDensity > 0.7;
-
-                if (highDrowsiness && highTraffic) {
-                    sendAlert = true;
-                    alertReason = "High Traffic and Drowsiness Detected";
-                } else if (highDrowsiness) {
-                    sendAlert = true;
-                    alertReason = "High Drowsiness Detected - Driver Alert";
-                } else if (highTraffic) {
-                    sendAlert = true;
-                    alertReason = "High Traffic Detected - Proceed with Caution";
-                } else if ("HIGH".equalsIgnoreCase(priorityLabel)) {
-                    sendAlert = true;
-                    alertReason = "High risk scenario detected by AI";
-                }
-
-                // Assign power modes based on conditions AND AI prediction
-                logEnergyConsumption(priorityLabel, drowsiness, highTraffic);
-
-                // If any condition was met, send the specific alert
-                if (sendAlert) {
-                    System.out.println("ALERT TRIGGER: " + alertReason + "! Activating critical systems.");
-                    send(v2vTransmitterId, 0.0, 3000, "V2V_ALERT: " + alertReason);
-                }
+            // --- Alert Logic ---
+            boolean sendAlert = false;
+            String alertReason = "";
+            boolean highDrowsiness = decision.drowsiness > 0.7;
+            boolean highTraffic = decision.trafficDensity > 0.7;
 
-            } catch (Exception e) {
-                System.err.println("Could not connect to a Python CI server. Error: " + e.getMessage());
+            if (highDrowsiness && highTraffic) {
+                sendAlert = true;
+                alertReason = "High Traffic and Drowsiness Detected";
+            } else if (highDrowsiness) {
+                sendAlert = true;
+                alertReason = "High Drowsiness Detected - Driver Alert";
+            } else if (highTraffic) {
+                sendAlert = true;
+                alertReason = "High Traffic Detected - Proceed with Caution";
+            } else if ("HIGH".equalsIgnoreCase(priorityLabel)) {
+                sendAlert = true;
+                alertReason = "High risk scenario detected by AI";
             }
+
+            // Assign power modes based on conditions AND AI prediction
+            logEnergyConsumption(priorityLabel, decision.drowsiness, highTraffic);
+
+            // If any condition was met, send the specific alert
+            if (sendAlert) {
+                alerts++;
+                if (verbose)
+                    System.out.println("ALERT TRIGGER: " + alertReason + "! Activating critical systems.");
+                send(v2vTransmitterId, 0.0, 3000, "V2V_ALERT: " + alertReason);
+            }
+
+        } catch (Exception e) {
+            System.err.println("Could not connect to a Python CI server. Error: " + (e.getMessage() != null ? e.getMessage() : e));
         }
     }
 
@@ -165,17 +353,20 @@ public class AdaptiveAllocatorModule extends SimEntity {
         finalModes.put("Driver Drowsiness Sensor", drowsinessMode);
         finalPowerMw.put("Driver Drowsiness Sensor", drowsinessPowerMw);
 
-        // 3. Log the final modes and calculate total energy for this cycle
-        StringBuilder report = new StringBuilder("ENERGY MODEL: Assigning final power modes:\n");
+        // 3. Log the final modes and calculate the energy of this vehicle for this cycle
+        StringBuilder report = verbose ? new StringBuilder("ENERGY MODEL: Assigning final power modes:\n") : null;
         // Use sensorRoles to ensure consistent order in the report
         for (String sensor : sensorRoles.keySet()) {
             String mode = finalModes.get(sensor);
             double powerMw = finalPowerMw.get(sensor);
-            PowerModel.addEnergyConsumption(powerMw, this.simulationPeriod);
-            report.append(String.format("  - %-30s: %s\n", sensor, mode));
+            energyAccount.consume(powerMw, this.simulationPeriod);
+            if (verbose)
+                report.append(String.format("  - %-30s: %s\n", sensor, mode));
+        }
+        if (verbose) {
+            report.append(String.format("Total Energy: %.2f mJ", energyAccount.getEnergyConsumed()));
+            System.out.println(report.toString());
         }
-        report.append(String.format("Total Energy: %.2f mJ", PowerModel.getTotalEnergyConsumed()));
-        System.out.println(report.toString());
     }
 
     /**
@@ -0,0 +1,67 @@
+package iFogSimulator;
+
+/**
+ * Chooses the target of each inference from the priority of the request, the length of the queues of the targets
+ * and the latency of their links. A HIGH priority request runs where its result is expected first. The other requests
+ * run where the vehicle spends the least energy among the targets expected to answer within the deadline of their
+ * priority, the first expected on a tie, or where their result is expected first if none is. The energy of the other
+ * targets is not counted, so that the requests which can wait are offloaded until the queues make them too slow.
+ */
+public class AdaptiveOffloadingPolicy implements OffloadingPolicy {
+
+    public static final double DEFAULT_MEDIUM_DEADLINE = 0.1;
+    public static final double DEFAULT_LOW_DEADLINE = 0.5;
+
+    private final double mediumDeadline;
+    private final double lowDeadline;
+
+    public AdaptiveOffloadingPolicy() {
+        this(DEFAULT_MEDIUM_DEADLINE, DEFAULT_LOW_DEADLINE);
+    }
+
+    /**
+     * @param mediumDeadline the latency within which the result of a MEDIUM priority request is expected
+     * @param lowDeadline the latency within which the result of a LOW priority request is expected
+     */
+    public AdaptiveOffloadingPolicy(double mediumDeadline, double lowDeadline) {
+        if (!(mediumDeadline > 0) || !(lowDeadline > 0))
+            throw new IllegalArgumentException("The deadlines should be positive, but are:" + mediumDeadline + " and "
+                    + lowDeadline);
+        this.mediumDeadline = mediumDeadline;
+        this.lowDeadline = lowDeadline;
+    }
+
+    @Override
+    public InferenceOffloader.Option select(InferenceOffloader offloader, String priority, double time) {
+        double deadline = "HIGH".equalsIgnoreCase(priority) ? 0 : "MEDIUM".equalsIgnoreCase(priority) ? mediumDeadline : lowDeadline;
+        InferenceOffloader.Option fastest = null;
+        double fastestLatency = Double.MAX_VALUE;
+        InferenceOffloader.Option cheapest = null;
+        double cheapestEnergy = Double.MAX_VALUE;
+        double cheapestLatency = Double.MAX_VALUE;
+        for (InferenceOffloader.Option option : offloader.getOptions()) {
+            double latency = offloader.estimateLatency(option);
+            if (latency < fastestLatency) {
+                fastest = option;
+                fastestLatency = latency;
+            }
+            if (latency <= deadline) {
+                double energy = offloader.estimateVehicleEnergy(option);
+                if (energy < cheapestEnergy || energy == cheapestEnergy && latency < cheapestLatency) {
+                    cheapest = option;
+                    cheapestEnergy = energy;
+                    cheapestLatency = latency;
+                }
+            }
+        }
+        return cheapest != null ? cheapest : fastest;
+    }
+
+    public double getMediumDeadline() {
+        return mediumDeadline;
+    }
+
+    public double getLowDeadline() {
+        return lowDeadline;
+    }
+}
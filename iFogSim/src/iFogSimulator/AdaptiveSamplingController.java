@@ -0,0 +1,193 @@
+package iFogSimulator;
+
+import org.fog.entities.FogDevice;
+import org.fog.entities.Sensor;
+import org.fog.utils.distribution.Distribution;
+import org.fog.utils.distribution.ScaledDistribution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adapts the sampling of the sensors of a vehicle to the decisions of its allocator. The sensors send tuples at the
+ * share of their full rate given by the bandwidth allocation, and of their full size given by the CPU allocation, so
+ * that a LOW priority period sends fewer and smaller tuples than a HIGH one.
+ * <p>
+ * The sampling changes with hysteresis, to avoid flapping between two decisions: an allocation is only applied if
+ * its bandwidth share differs from the applied one by more than a dead band. A higher share is applied at once, not to
+ * miss the samples of a critical period, while a lower one must be asked for by several decisions in a row, and the
+ * highest of them is applied.
+ * <p>
+ * The vehicle spends {@link InferenceOffloader#RADIO_POWER_MW} while the tuples of its sensors are sent over the
+ * uplink of its device, which is charged to its energy account at each decision. Without adaptation, the sensors
+ * keep their full rate and size, and only their energy is charged.
+ */
+public class AdaptiveSamplingController {
+
+    public static final double DEFAULT_MIN_SHARE = 0.1;
+    public static final double DEFAULT_DEAD_BAND = 0.15;
+    public static final int DEFAULT_DECISIONS_TO_LOWER = 3;
+
+    private final List<Sensor> sensors;
+    private final Distribution[] fullRateDistributions;
+    private final long[] fullSizes;
+    private final FogDevice vehicle;
+    private final PowerModel energyAccount;
+    private final double minShare;
+    private final double deadBand;
+    private final int decisionsToLower;
+
+    private boolean adaptive = true;
+    private double rateShare = 1;
+    private double sizeShare = 1;
+    // the decisions in a row asking for a lower share, and the highest shares they ask for
+    private int lowerDecisions = 0;
+    private double pendingRateShare;
+    private double pendingSizeShare;
+
+    private int changes = 0;
+    private long bytesCharged = 0;
+    private double radioEnergy = 0;
+
+    /**
+     * @param sensors the sensors of the vehicle, at their full rate
+     * @param fullSizes the size of the tuples of each sensor at its full rate
+     * @param vehicle the device of the vehicle, to which the sensors send their tuples
+     * @param energyAccount the energy account of the vehicle
+     */
+    public AdaptiveSamplingController(List<Sensor> sensors, long[] fullSizes, FogDevice vehicle, PowerModel energyAccount) {
+        this(sensors, fullSizes, vehicle, energyAccount, DEFAULT_MIN_SHARE, DEFAULT_DEAD_BAND, DEFAULT_DECISIONS_TO_LOWER);
+    }
+
+    /**
+     * @param minShare the lowest share of the full rate and size
+     * @param deadBand the change of the bandwidth share below which an allocation is not applied
+     * @param decisionsToLower the decisions in a row asking for a lower share before it is applied
+     */
+    public AdaptiveSamplingController(List<Sensor> sensors, long[] fullSizes, FogDevice vehicle, PowerModel energyAccount,
+                                      double minShare, double deadBand, int decisionsToLower) {
+        if (sensors.size() != fullSizes.length)
+            throw new IllegalArgumentException("The sensors and their sizes should match, but are " + sensors.size()
+                    + " and " + fullSizes.length);
+        if (!(minShare > 0 && minShare <= 1) || !(deadBand >= 0) || decisionsToLower < 1)
+            throw new IllegalArgumentException("The minimum share should be in (0, 1], the dead band should not be "
+                    + "negative and a share should be lowered after one decision at least, but are:" + minShare + ", "
+                    + deadBand + " and " + decisionsToLower);
+        this.sensors = new ArrayList<>(sensors);
+        this.fullRateDistributions = new Distribution[sensors.size()];
+        for (int i = 0; i < fullRateDistributions.length; i++)
+            fullRateDistributions[i] = sensors.get(i).getTransmitDistribution();
+        this.fullSizes = fullSizes.clone();
+        this.vehicle = vehicle;
+        this.energyAccount = energyAccount;
+        this.minShare = minShare;
+        this.deadBand = deadBand;
+        this.decisionsToLower = decisionsToLower;
+    }
+
+    /**
+     * Adapts the sampling to a decision of the allocator, once the simulation has started.
+     */
+    public void onDecision(ResourceAllocation allocation) {
+        chargeEnergy();
+        if (!adaptive)
+            return;
+        double requestedRateShare = toShare(allocation.getBandwidthAllocation());
+        double requestedSizeShare = toShare(allocation.getCpuAllocation());
+        if (requestedRateShare > rateShare + deadBand) {
+            lowerDecisions = 0;
+            apply(requestedRateShare, requestedSizeShare);
+        } else if (requestedRateShare < rateShare - deadBand) {
+            if (lowerDecisions++ == 0 || requestedRateShare > pendingRateShare) {
+                pendingRateShare = requestedRateShare;
+                pendingSizeShare = requestedSizeShare;
+            }
+            if (lowerDecisions >= decisionsToLower) {
+                lowerDecisions = 0;
+                apply(pendingRateShare, pendingSizeShare);
+            }
+        } else {
+            lowerDecisions = 0;
+        }
+    }
+
+    private double toShare(double percent) {
+        return Math.max(minShare, Math.min(1, percent / 100));
+    }
+
+    private void apply(double newRateShare, double newSizeShare) {
+        rateShare = newRateShare;
+        sizeShare = newSizeShare;
+        changes++;
+        for (int i = 0; i < sensors.size(); i++) {
+            sensors.get(i).setTupleNwLength(Math.max(1, Math.round(fullSizes[i] * sizeShare)));
+            sensors.get(i).changeTransmitDistribution(rateShare == 1 ? fullRateDistributions[i]
+                    : new ScaledDistribution(fullRateDistributions[i], 1 / rateShare));
+        }
+    }
+
+    /**
+     * Charges the energy of the radio for the tuples sent since the last charge to the vehicle.
+     */
+    public void chargeEnergy() {
+        long bytes = getBytesEmitted();
+        double radioTime = (bytes - bytesCharged) * InferenceOffloader.MILLISECOND / vehicle.getUplinkBandwidth();
+        bytesCharged = bytes;
+        if (radioTime > 0) {
+            energyAccount.consume(InferenceOffloader.RADIO_POWER_MW, radioTime);
+            radioEnergy += InferenceOffloader.RADIO_POWER_MW * radioTime;
+        }
+    }
+
+    /**
+     * Sets whether the sampling adapts to the decisions, or stays at the full rate and size.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public List<Sensor> getSensors() {
+        return Collections.unmodifiableList(sensors);
+    }
+
+    public double getRateShare() {
+        return rateShare;
+    }
+
+    public double getSizeShare() {
+        return sizeShare;
+    }
+
+    /**
+     * Gets the number of times the sampling changed.
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    public long getTuplesEmitted() {
+        long tuples = 0;
+        for (Sensor sensor : sensors)
+            tuples += sensor.getTuplesEmitted();
+        return tuples;
+    }
+
+    public long getBytesEmitted() {
+        long bytes = 0;
+        for (Sensor sensor : sensors)
+            bytes += sensor.getBytesEmitted();
+        return bytes;
+    }
+
+    /**
+     * Gets the energy charged for the radio of the sensors, in mJ.
+     */
+    public double getRadioEnergy() {
+        return radioEnergy;
+    }
+}
@@ -2,12 +2,14 @@ package iFogSimulator;
 
 import org.cloudbus.cloudsim.core.SimEvent;
 import org.cloudbus.cloudsim.core.SimEntity;
+import org.fog.utils.FogUtils;
 
 public class ContextGeneratorModule extends SimEntity {
 
     private String appId;
     private double period;
     private int allocatorId;
+    private boolean verbose = true;
 
     public ContextGeneratorModule(String name, String appId, double period, int allocatorId) {
         super(name);
@@ -18,7 +20,8 @@ public class ContextGeneratorModule extends SimEntity {
 
     @Override
     public void startEntity() {
-        System.out.println("ContextGeneratorModule is starting. Scheduling first context event at time 1.");
+        if (verbose)
+            System.out.println("ContextGeneratorModule is starting. Scheduling first context event at time 1.");
         schedule(getId(), 1.0, 1000);
     }
 
@@ -26,16 +29,22 @@ public class ContextGeneratorModule extends SimEntity {
     public void processEvent(SimEvent ev) {
         if (ev.getTag() == 1000) {
             String label = generateContextLabel();
-            System.out.println("\nContextGeneratorModule is generating new context: " + label);
-            System.out.println("----------------------------------------------------------");
+            if (verbose) {
+                System.out.println("\nContextGeneratorModule is generating new context: " + label);
+                System.out.println("----------------------------------------------------------");
+            }
             send(allocatorId, 0.0, 2000, label);
             schedule(getId(), period, 1000);
         }
     }
 
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
     // <<< MODIFIED: Added a new LOW_CLEAR context >>>
     private String generateContextLabel() {
-        double r = Math.random();
+        double r = FogUtils.getRandom().nextDouble();
         if (r < 0.25) return "CONTEXT_TUPLE_LOW_CLEAR";   // 25% chance for LOW
         if (r < 0.50) return "CONTEXT_TUPLE_HIGH_CLEAR";  // 25% chance for HIGH
         if (r < 0.75) return "CONTEXT_TUPLE_LOW_RAINY";   // 25% chance for HIGH-risk rainy
@@ -44,6 +53,7 @@ public class ContextGeneratorModule extends SimEntity {
 
     @Override
     public void shutdownEntity() {
-        System.out.println("ContextGeneratorModule shutdown.");
+        if (verbose)
+            System.out.println("ContextGeneratorModule shutdown.");
     }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package iFogSimulator;
+
+/**
+ * Runs every inference on the same tier, whatever the load: on the vehicle, on the nearest other device, e.g. its
+ * edge server, or in the cloud, the root of the fog device tree. It is the baseline of the
+ * {@link AdaptiveOffloadingPolicy}.
+ */
+public class FixedOffloadingPolicy implements OffloadingPolicy {
+
+    public enum Tier { LOCAL, EDGE, CLOUD }
+
+    private final Tier tier;
+
+    public FixedOffloadingPolicy(Tier tier) {
+        this.tier = tier;
+    }
+
+    @Override
+    public InferenceOffloader.Option select(InferenceOffloader offloader, String priority, double time) {
+        InferenceOffloader.Option selected = null;
+        for (InferenceOffloader.Option option : offloader.getOptions()) {
+            boolean cloud = option.getTarget().getDevice().getParentId() < 0;
+            switch (tier) {
+                case LOCAL:
+                    if (option.isLocal())
+                        return option;
+                    break;
+                case CLOUD:
+                    if (cloud)
+                        return option;
+                    break;
+                default:
+                    if (!option.isLocal() && !cloud && (selected == null || option.getLinkLatency() < selected.getLinkLatency()))
+                        selected = option;
+                    break;
+            }
+        }
+        if (selected == null)
+            throw new IllegalStateException("The vehicle has no " + tier.name().toLowerCase() + " inference target");
+        return selected;
+    }
+
+    public Tier getTier() {
+        return tier;
+    }
+}
@@ -0,0 +1,320 @@
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.VmAllocationPolicySimple;
+import org.cloudbus.cloudsim.VmSchedulerTimeShared;
+import org.cloudbus.cloudsim.core.ExternalServiceEntity;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.fog.application.Application;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogDevice;
+import org.fog.entities.FogDeviceCharacteristics;
+import org.fog.entities.Sensor;
+import org.fog.placement.ModuleMapping;
+import org.fog.placement.ModulePlacement;
+import org.fog.placement.ModulePlacementEdgewards;
+import org.fog.placement.ModulePlacementMapping;
+import org.fog.utils.FogLinearPowerModel;
+import org.fog.utils.FogUtils;
+import org.fog.utils.distribution.DeterministicDistribution;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Builds a fleet of vehicles from a {@link FleetSpec}: the cloud, the edge servers, the road-side units (RSUs) and the
+ * vehicles, each vehicle with its own context generator, adaptive allocator and V2V transmitter. The transmitters
+ * broadcast the alerts through one {@link V2VNetwork}, where the vehicles are placed at random. The allocators share
+ * one CI service, which sets the simulated latency of their decisions, and may offload the inferences of its models
+ * to the vehicle itself, its edge server or the cloud, where they run as the tuples of the inference module of the
+ * application.
+ */
+public class FleetBuilder {
+
+    /** A vehicle and the entities of its pipeline */
+    public static class Vehicle {
+        private final FogDevice device;
+        private final FogDevice rsu;
+        private final ContextGeneratorModule contextGenerator;
+        private final AdaptiveAllocatorModule allocator;
+        private final V2VTransmitterModule transmitter;
+
+        Vehicle(FogDevice device, FogDevice rsu, ContextGeneratorModule contextGenerator,
+                AdaptiveAllocatorModule allocator, V2VTransmitterModule transmitter) {
+            this.device = device;
+            this.rsu = rsu;
+            this.contextGenerator = contextGenerator;
+            this.allocator = allocator;
+            this.transmitter = transmitter;
+        }
+
+        public String getName() {
+            return device.getName();
+        }
+
+        public FogDevice getDevice() {
+            return device;
+        }
+
+        public FogDevice getRsu() {
+            return rsu;
+        }
+
+        public ContextGeneratorModule getContextGenerator() {
+            return contextGenerator;
+        }
+
+        public AdaptiveAllocatorModule getAllocator() {
+            return allocator;
+        }
+
+        public V2VTransmitterModule getTransmitter() {
+            return transmitter;
+        }
+
+        public double getEnergyConsumed() {
+            return allocator.getEnergyAccount().getEnergyConsumed();
+        }
+    }
+
+    /** The tuples of the sensors, see VehicleSimulation.createApplication */
+    static final String SENSOR_TUPLE_TYPE = "SENSOR_DATA";
+    static final long SENSOR_TUPLE_SIZE = 500;
+    /** The latency between a sensor and its vehicle */
+    static final double SENSOR_LATENCY = 0.001;
+
+    private final FleetSpec spec;
+    private final List<FogDevice> fogDevices = new ArrayList<>();
+    private final List<FogDevice> rsus = new ArrayList<>();
+    private final List<Vehicle> vehicles = new ArrayList<>();
+    private ExternalServiceEntity ciService;
+    private Application application;
+    private V2VNetwork network;
+    private final List<InferenceTarget> inferenceTargets = new ArrayList<>();
+    private double inferenceCpuLength = 0;
+    private final List<Sensor> sensors = new ArrayList<>();
+
+    public FleetBuilder(FleetSpec spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Creates the devices and the entities of the fleet, and the application of the pipelines, in the simulation
+     * initialised by CloudSim.init.
+     * @param appId the application of the pipelines
+     * @param userId the user of the application, i.e. its broker, a {@link VehicleBroker} if the inferences are
+     *               modelled
+     * @throws IOException if the model of the priorities cannot be read
+     */
+    public FleetBuilder build(String appId, int userId) throws IOException {
+        if (ciService != null)
+            throw new IllegalStateException("The fleet is already built");
+        FogDevice cloud = createFogDevice("cloud", spec.getCloud(), 0, -1);
+
+        List<FogDevice> edgeServers = new ArrayList<>();
+        for (int i = 0; i < spec.getEdgeServers(); i++)
+            edgeServers.add(createFogDevice("edge-" + i, spec.getEdge(), 1, cloud.getId()));
+        for (int i = 0; i < spec.getRsus(); i++)
+            rsus.add(createFogDevice("rsu-" + i, spec.getRsu(), 2, edgeServers.get(i % edgeServers.size()).getId()));
+
+        // the predictor and the allocator have no state, so that the vehicles share them
+        ciService = new ExternalServiceEntity("ci-service", spec.getCiLatency());
+        PriorityPredictor priorityPredictor = spec.getModel() != null ? TreeEnsemblePredictor.load(spec.getModel()) : new PythonClient();
+        ResourceAllocator resourceAllocator = new FuzzyAllocator();
+
+        OffloadingPolicy offloadingPolicy = null;
+        InferenceTarget cloudTarget = null;
+        List<InferenceTarget> edgeTargets = new ArrayList<>();
+        if (spec.getInferencePolicy() != null) {
+            offloadingPolicy = OffloadingPolicy.forName(spec.getInferencePolicy());
+            double latency = spec.getInferenceLatency();
+            if (spec.isInferenceLatencyMeasured()) {
+                try {
+                    latency = InferenceOffloader.measureLatency(priorityPredictor, resourceAllocator, 1000);
+                } catch (Exception e) {
+                    throw new IOException("Could not measure the latency of the CI models: " + e, e);
+                }
+            }
+            inferenceCpuLength = latency * spec.getVehicle().mips;
+            cloudTarget = new InferenceTarget(cloud);
+            inferenceTargets.add(cloudTarget);
+            for (FogDevice edgeServer : edgeServers) {
+                InferenceTarget target = new InferenceTarget(edgeServer);
+                edgeTargets.add(target);
+                inferenceTargets.add(target);
+            }
+        }
+        application = VehicleSimulation.createApplication(appId, userId, inferenceCpuLength,
+                spec.getInferenceRequestSize());
+
+        network = new V2VNetwork(spec.getAreaWidth(), spec.getAreaHeight(), spec.getRadioRange(), spec.getMaxSpeed(),
+                spec.getMobilityStep(), spec.getMaxHops(), FogUtils.createRandom());
+        for (int i = 0; i < spec.getVehicles(); i++) {
+            FogDevice rsu = rsus.get(i % rsus.size());
+            FogDevice device = createFogDevice("vehicle-" + i, spec.getVehicle(), 3, rsu.getId());
+            V2VTransmitterModule transmitter = new V2VTransmitterModule("v2v-transmitter-" + i, appId, -1);
+            AdaptiveAllocatorModule allocator = new AdaptiveAllocatorModule("adaptive-allocator-" + i, appId,
+                    transmitter.getId(), spec.getContextPeriod(), priorityPredictor, resourceAllocator, ciService);
+            ContextGeneratorModule contextGenerator = new ContextGeneratorModule("context-generator-" + i, appId,
+                    spec.getContextPeriod(), allocator.getId());
+            if (offloadingPolicy != null) {
+                InferenceTarget local = new InferenceTarget(device);
+                inferenceTargets.add(local);
+                InferenceTarget edge = edgeTargets.get(i % rsus.size() % edgeTargets.size());
+                allocator.setOffloader(InferenceOffloader.create(device, Arrays.asList(local, edge, cloudTarget),
+                        fogDevices, offloadingPolicy, application, spec.getInferenceResultSize()));
+            }
+            if (spec.getSensors() > 0) {
+                List<Sensor> vehicleSensors = new ArrayList<>();
+                long[] fullSizes = new long[spec.getSensors()];
+                for (int k = 0; k < spec.getSensors(); k++) {
+                    Sensor sensor = new Sensor("sensor-" + i + "-" + k, SENSOR_TUPLE_TYPE, userId, appId,
+                            new DeterministicDistribution(spec.getSensorPeriod()));
+                    sensor.setGatewayDeviceId(device.getId());
+                    sensor.setLatency(SENSOR_LATENCY);
+                    vehicleSensors.add(sensor);
+                    fullSizes[k] = SENSOR_TUPLE_SIZE;
+                }
+                sensors.addAll(vehicleSensors);
+                AdaptiveSamplingController samplingController = new AdaptiveSamplingController(vehicleSensors,
+                        fullSizes, device, allocator.getEnergyAccount());
+                samplingController.setAdaptive(spec.isAdaptiveSampling());
+                allocator.setSamplingController(samplingController);
+            }
+            network.addVehicle(transmitter.getId());
+            transmitter.setNetwork(network);
+            transmitter.setVerbose(spec.isVerbose());
+            allocator.setVerbose(spec.isVerbose());
+            contextGenerator.setVerbose(spec.isVerbose());
+            vehicles.add(new Vehicle(device, rsu, contextGenerator, allocator, transmitter));
+        }
+        return this;
+    }
+
+    /**
+     * Creates the placement of the modules of the application. If the vehicles have sensors, the context module runs
+     * on each RSU, so that their tuples go through the uplinks of the vehicles. If the inferences are modelled, the
+     * inference module runs on each of their targets, whose instance is picked for each inference by the offloading
+     * policy. The other modules, which get no tuples, are then not placed.
+     */
+    public ModulePlacement createModulePlacement(Application application, List<Sensor> sensors, List<Actuator> actuators) {
+        ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
+        if (sensors.isEmpty() && inferenceTargets.isEmpty())
+            return new ModulePlacementEdgewards(fogDevices, sensors, actuators, application, moduleMapping);
+        if (!sensors.isEmpty()) {
+            for (FogDevice rsu : rsus)
+                moduleMapping.addModuleToDevice("context-module", rsu.getName());
+        }
+        for (InferenceTarget target : inferenceTargets)
+            moduleMapping.addModuleToDevice(VehicleSimulation.INFERENCE_MODULE, target.getName());
+        return new ModulePlacementMapping(fogDevices, application, moduleMapping);
+    }
+
+    private FogDevice createFogDevice(String name, FleetSpec.Tier tier, int level, int parentId) {
+        FogDevice device = createFogDevice(name, tier.mips, tier.ram, tier.upBw, tier.downBw, level, tier.ratePerMips,
+                tier.busyPower, tier.idlePower);
+        device.setParentId(parentId);
+        device.setUplinkLatency(tier.uplinkLatency);
+        fogDevices.add(device);
+        return device;
+    }
+
+    static FogDevice createFogDevice(String nodeName, long mips,
+                                     int ram, long upBw, long downBw, int level, double ratePerMips, double busyPower, double idlePower) {
+        List<Pe> peList = new ArrayList<>();
+        peList.add(new Pe(0, new PeProvisionerSimple(mips)));
+        int hostId = FogUtils.generateEntityId();
+        long storage = 1000000;
+        int bw = 10000;
+        PowerHost host = new PowerHost(
+                hostId,
+                new RamProvisionerSimple(ram),
+                new BwProvisionerSimple(bw),
+                storage,
+                peList,
+                new VmSchedulerTimeShared(peList),
+                new FogLinearPowerModel(busyPower, idlePower)
+        );
+        List<Host> hostList = new ArrayList<>();
+        hostList.add(host);
+        String arch = "x86";
+        String os = "Linux";
+        String vmm = "Xen";
+        double time_zone = 10.0;
+        double cost = 3.0;
+        double costPerMem = 0.05;
+        double costPerStorage = 0.001;
+        double costPerBw = 0.0;
+        LinkedList<Storage> storageList = new LinkedList<>();
+        FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics(
+                arch, os, vmm, host, time_zone, cost, costPerMem,
+                costPerStorage, costPerBw);
+        FogDevice fogdevice = null;
+        try {
+            fogdevice = new FogDevice(nodeName, characteristics,
+                    new VmAllocationPolicySimple(hostList), storageList, 10, upBw, downBw, 0, ratePerMips);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        fogdevice.setLevel(level);
+        return fogdevice;
+    }
+
+    public List<FogDevice> getFogDevices() {
+        return Collections.unmodifiableList(fogDevices);
+    }
+
+    public List<FogDevice> getRsus() {
+        return Collections.unmodifiableList(rsus);
+    }
+
+    public List<Vehicle> getVehicles() {
+        return Collections.unmodifiableList(vehicles);
+    }
+
+    /**
+     * Gets the sensors of all the vehicles.
+     */
+    public List<Sensor> getSensors() {
+        return Collections.unmodifiableList(sensors);
+    }
+
+    /**
+     * Gets the application of the pipelines, with the inference module if the inferences are modelled.
+     */
+    public Application getApplication() {
+        return application;
+    }
+
+    public ExternalServiceEntity getCiService() {
+        return ciService;
+    }
+
+    /**
+     * Gets the targets of the inferences, the cloud, the edge servers and the vehicles, or none if the inferences are
+     * not modelled.
+     */
+    public List<InferenceTarget> getInferenceTargets() {
+        return Collections.unmodifiableList(inferenceTargets);
+    }
+
+    /**
+     * Gets the CPU length of an inference, or 0 if the inferences are not modelled.
+     */
+    public double getInferenceCpuLength() {
+        return inferenceCpuLength;
+    }
+
+    public V2VNetwork getNetwork() {
+        return network;
+    }
+}
@@ -0,0 +1,186 @@
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.application.Application;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogBroker;
+import org.fog.entities.Sensor;
+import org.fog.placement.Controller;
+import org.fog.entities.FogDevice;
+import org.fog.utils.Config;
+import org.fog.utils.NetworkUsageMonitor;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Simulates a fleet of vehicles built from the {@link FleetSpec} file given as argument, or from the default spec,
+ * and reports the decisions, alerts and energy of the vehicles.
+ */
+public class FleetSimulation {
+
+    public static void main(String[] args) {
+        try {
+            FleetSpec spec = args.length > 0 ? FleetSpec.load(new File(args[0])) : new FleetSpec(new Properties());
+            System.out.println("Starting Fleet Simulation of " + spec.getVehicles() + " vehicles, " + spec.getRsus()
+                    + " RSUs and " + spec.getEdgeServers() + " edge servers...");
+            long start = System.currentTimeMillis();
+
+            Config.MAX_SIMULATION_TIME = spec.getDuration();
+            // a millisecond between events, so that the devices complete the tuples, e.g. the inferences, in time
+            CloudSim.init(1, Calendar.getInstance(), false, InferenceOffloader.MILLISECOND);
+            FogBroker broker = new VehicleBroker("broker");
+            PowerModel.reset();
+
+            String appId = "vehicular-app";
+            FleetBuilder fleet = new FleetBuilder(spec).build(appId, broker.getId());
+            Application application = fleet.getApplication();
+
+            List<Sensor> sensors = new ArrayList<Sensor>(fleet.getSensors());
+            List<Actuator> actuators = new ArrayList<Actuator>();
+            Controller controller = new Controller("master-controller", fleet.getFogDevices(), sensors, actuators);
+            controller.submitApplication(application, 0, fleet.createModulePlacement(application, sensors, actuators));
+
+            CloudSim.startSimulation();
+            CloudSim.stopSimulation();
+
+            report(fleet, System.currentTimeMillis() - start);
+            if (spec.getOutput() != null)
+                writeVehicles(fleet, spec.getOutput());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void report(FleetBuilder fleet, long wallTimeMillis) {
+        long decisions = 0;
+        long alerts = 0;
+        long received = 0;
+        long duplicates = 0;
+        double minEnergy = Double.MAX_VALUE;
+        double maxEnergy = 0;
+        // the tuples of the sensors since the last decision of each vehicle
+        for (FleetBuilder.Vehicle vehicle : fleet.getVehicles()) {
+            if (vehicle.getAllocator().getSamplingController() != null)
+                vehicle.getAllocator().getSamplingController().chargeEnergy();
+        }
+        for (FleetBuilder.Vehicle vehicle : fleet.getVehicles()) {
+            decisions += vehicle.getAllocator().getDecisions();
+            alerts += vehicle.getAllocator().getAlerts();
+            received += vehicle.getTransmitter().getAlertsReceived();
+            duplicates += vehicle.getTransmitter().getDuplicates();
+            minEnergy = Math.min(minEnergy, vehicle.getEnergyConsumed());
+            maxEnergy = Math.max(maxEnergy, vehicle.getEnergyConsumed());
+        }
+        int count = fleet.getVehicles().size();
+        System.out.println("\nFleet Simulation finished!");
+        System.out.println("----------------------------------------------------------");
+        System.out.printf("FLEET: %d vehicles, %d decisions, %d alerts\n", count, decisions, alerts);
+        V2VNetwork network = fleet.getNetwork();
+        System.out.printf("V2V: %d alerts received, %.2f receivers per alert, %d duplicates dropped, mean delay = %.6f, max delay = %.6f, max hops = %d\n",
+                received, alerts == 0 ? 0.0 : (double) received / alerts, duplicates, network.getMeanDeliveryDelay(),
+                network.getMaxDeliveryDelay(), network.getMaxDeliveryHops());
+        System.out.printf("FINAL ENERGY REPORT: Total consumption = %.2f mJ, per vehicle mean = %.2f, min = %.2f, max = %.2f mJ\n",
+                PowerModel.getTotalEnergyConsumed(), PowerModel.getTotalEnergyConsumed() / count, minEnergy, maxEnergy);
+        System.out.printf("CI SERVICE: %d decisions, mean latency = %.4f, max latency = %.4f\n",
+                fleet.getCiService().getCompletedCalls(), fleet.getCiService().getMeanLatency(),
+                fleet.getCiService().getMaxLatency());
+        if (!fleet.getInferenceTargets().isEmpty()) {
+            double radioEnergy = 0;
+            for (FleetBuilder.Vehicle vehicle : fleet.getVehicles())
+                radioEnergy += vehicle.getAllocator().getOffloader().getRadioEnergy();
+            System.out.printf("INFERENCE: %.2f MI per request, vehicle radio energy = %.2f mJ\n",
+                    fleet.getInferenceCpuLength(), radioEnergy);
+            reportInference(fleet.getInferenceTargets());
+        }
+        if (!fleet.getSensors().isEmpty())
+            reportSampling(fleet);
+        if (!fleet.getInferenceTargets().isEmpty() || !fleet.getSensors().isEmpty())
+            reportDevices(fleet);
+        System.out.printf("WALL TIME: %.3f s\n", wallTimeMillis / 1000.0);
+        System.out.println("----------------------------------------------------------");
+    }
+
+    /**
+     * Prints the tuples of the sensors and the energy of the radios of the vehicles.
+     */
+    private static void reportSampling(FleetBuilder fleet) {
+        long tuples = 0;
+        long bytes = 0;
+        long changes = 0;
+        double radioEnergy = 0;
+        boolean adaptive = false;
+        for (FleetBuilder.Vehicle vehicle : fleet.getVehicles()) {
+            AdaptiveSamplingController controller = vehicle.getAllocator().getSamplingController();
+            tuples += controller.getTuplesEmitted();
+            bytes += controller.getBytesEmitted();
+            changes += controller.getChanges();
+            radioEnergy += controller.getRadioEnergy();
+            adaptive = controller.isAdaptive();
+        }
+        System.out.printf("SAMPLING (%s): %d sensors, %d tuples, %d bytes, %d rate changes, sensor radio energy = %.2f mJ\n",
+                adaptive ? "adaptive" : "fixed", fleet.getSensors().size(), tuples, bytes, changes, radioEnergy);
+    }
+
+    /**
+     * Prints the network usage of the fog devices and their energy, which include the sensor tuples and the
+     * inferences.
+     */
+    private static void reportDevices(FleetBuilder fleet) {
+        double deviceEnergy = 0;
+        for (FogDevice device : fleet.getFogDevices())
+            deviceEnergy += device.getEnergyConsumption();
+        System.out.printf("NETWORK USAGE: %.2f, fog device energy = %.2f\n", NetworkUsageMonitor.getNetworkUsage(), deviceEnergy);
+    }
+
+    /**
+     * Prints the requests, latencies, queue lengths and energy of the inference targets, summed over the targets of
+     * each level of the fog device tree.
+     */
+    static void reportInference(List<InferenceTarget> targets) {
+        Map<Integer, List<InferenceTarget>> targetsByLevel = new TreeMap<>();
+        for (InferenceTarget target : targets)
+            targetsByLevel.computeIfAbsent(target.getDevice().getLevel(), level -> new ArrayList<>()).add(target);
+        for (List<InferenceTarget> level : targetsByLevel.values()) {
+            long requests = 0;
+            double totalLatency = 0;
+            double maxLatency = 0;
+            int maxQueueLength = 0;
+            double energy = 0;
+            for (InferenceTarget target : level) {
+                requests += target.getRequests();
+                totalLatency += target.getMeanLatency() * target.getRequests();
+                maxLatency = Math.max(maxLatency, target.getMaxLatency());
+                maxQueueLength = Math.max(maxQueueLength, target.getMaxQueueLength());
+                energy += target.getEnergyConsumed();
+            }
+            String name = level.size() == 1 ? level.get(0).getName() : level.size() + " devices like " + level.get(0).getName();
+            System.out.printf("  - %-30s: %d requests, mean latency = %.4f, max latency = %.4f, max queue = %d, energy = %.2f mJ\n",
+                    name, requests, requests == 0 ? 0.0 : totalLatency / requests, maxLatency, maxQueueLength, energy);
+        }
+    }
+
+    /**
+     * Writes the decisions, alerts sent and received, sensor tuples and energy of each vehicle in CSV.
+     */
+    private static void writeVehicles(FleetBuilder fleet, File output) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+            out.println("vehicle,rsu,decisions,alerts,alerts_received,sensor_tuples,energy_mJ");
+            for (FleetBuilder.Vehicle vehicle : fleet.getVehicles()) {
+                AdaptiveSamplingController controller = vehicle.getAllocator().getSamplingController();
+                out.println(vehicle.getName() + "," + vehicle.getRsu().getName() + ","
+                        + vehicle.getAllocator().getDecisions() + "," + vehicle.getAllocator().getAlerts() + ","
+                        + vehicle.getTransmitter().getAlertsReceived() + ","
+                        + (controller != null ? controller.getTuplesEmitted() : 0) + "," + vehicle.getEnergyConsumed());
+            }
+        }
+    }
+}
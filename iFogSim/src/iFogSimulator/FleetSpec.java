@@ -0,0 +1,313 @@
+package iFogSimulator;
+
+import org.fog.utils.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The description of a fleet of vehicles, read from a properties file:
+ * <pre>
+ * vehicles=1000
+ * rsus=50
+ * edgeServers=5
+ * contextPeriod=2.0
+ * ciLatency=0.01
+ * model=priority_model.json
+ * output=fleet-energy.csv
+ * verbose=false
+ * duration=2000
+ * areaWidth=2000
+ * areaHeight=2000
+ * radioRange=300
+ * maxSpeed=15
+ * mobilityStep=0.1
+ * maxHops=1
+ * inference.policy=adaptive
+ * inference.latency=0.02
+ * inference.requestSize=500
+ * inference.resultSize=500
+ * sensors=3
+ * sensors.period=0.5
+ * sampling=adaptive
+ * vehicle.mips=3000
+ * rsu.uplinkLatency=5
+ * </pre>
+ * The vehicles are attached to the road-side units (RSUs) in turn, and the RSUs to the edge servers, which are
+ * attached to the cloud. Each tier, <tt>cloud</tt>, <tt>edge</tt>, <tt>rsu</tt> or <tt>vehicle</tt>, takes the
+ * optional keys <tt>mips</tt>, <tt>ram</tt>, <tt>upBw</tt>, <tt>downBw</tt>, <tt>ratePerMips</tt>,
+ * <tt>busyPower</tt>, <tt>idlePower</tt> and <tt>uplinkLatency</tt>, prefixed by its name.
+ * <p>
+ * The priorities are predicted by the model exported by the AI server if <tt>model</tt> is given, else by the
+ * server. The energy of each vehicle is written to <tt>output</tt> when given.
+ * <p>
+ * The vehicles move in an area of <tt>areaWidth</tt> by <tt>areaHeight</tt> metres, at up to <tt>maxSpeed</tt> metres
+ * per second, and broadcast their alerts to the vehicles within <tt>radioRange</tt> metres, which forward them up to
+ * <tt>maxHops</tt> hops (see {@link V2VNetwork}).
+ * <p>
+ * If <tt>inference.policy</tt> is given, <tt>adaptive</tt>, <tt>local</tt>, <tt>edge</tt> or <tt>cloud</tt> (see
+ * {@link OffloadingPolicy#forName}), each inference of the CI models runs on the vehicle, its edge server or the
+ * cloud, as a workload of <tt>inference.latency</tt> seconds on a vehicle, or of the latency measured on this machine
+ * if it is <tt>measured</tt> (see {@link InferenceOffloader}).
+ * <p>
+ * Each vehicle has <tt>sensors</tt> sensors, none by default, sending a SENSOR_DATA tuple every
+ * <tt>sensors.period</tt> seconds at full rate to the context module on its RSU. Their rate and tuple size follow
+ * the decisions of the allocator if <tt>sampling</tt> is <tt>adaptive</tt>, the default, and stay at full rate if it
+ * is <tt>fixed</tt> (see {@link AdaptiveSamplingController}). Each tuple costs the CPU length of the SENSOR_DATA
+ * edge on the RSU, whose <tt>rsu.mips</tt> should sustain the full rate of its vehicles.
+ */
+public class FleetSpec {
+
+    /** The characteristics of the devices of a tier */
+    public static class Tier {
+        public final long mips;
+        public final int ram;
+        public final long upBw;
+        public final long downBw;
+        public final double ratePerMips;
+        public final double busyPower;
+        public final double idlePower;
+        public final double uplinkLatency;
+
+        public Tier(long mips, int ram, long upBw, long downBw, double ratePerMips, double busyPower, double idlePower,
+                    double uplinkLatency) {
+            this.mips = mips;
+            this.ram = ram;
+            this.upBw = upBw;
+            this.downBw = downBw;
+            this.ratePerMips = ratePerMips;
+            this.busyPower = busyPower;
+            this.idlePower = idlePower;
+            this.uplinkLatency = uplinkLatency;
+        }
+
+        private Tier(Properties properties, String prefix, Tier defaults) {
+            this(Long.parseLong(get(properties, prefix + "mips", defaults.mips)),
+                    Integer.parseInt(get(properties, prefix + "ram", defaults.ram)),
+                    Long.parseLong(get(properties, prefix + "upBw", defaults.upBw)),
+                    Long.parseLong(get(properties, prefix + "downBw", defaults.downBw)),
+                    Double.parseDouble(get(properties, prefix + "ratePerMips", defaults.ratePerMips)),
+                    Double.parseDouble(get(properties, prefix + "busyPower", defaults.busyPower)),
+                    Double.parseDouble(get(properties, prefix + "idlePower", defaults.idlePower)),
+                    Double.parseDouble(get(properties, prefix + "uplinkLatency", defaults.uplinkLatency)));
+        }
+    }
+
+    // the defaults of the tiers are the devices of VehicleSimulation
+    public static final Tier DEFAULT_CLOUD = new Tier(10000, 40000, 100, 10000, 0.01, 107.339, 83.4333, 0);
+    public static final Tier DEFAULT_EDGE = new Tier(4000, 4000, 10000, 10000, 0.0, 107.339, 83.4333, 100);
+    public static final Tier DEFAULT_RSU = new Tier(2000, 2000, 10000, 10000, 0.0, 87.53, 82.44, 5);
+    public static final Tier DEFAULT_VEHICLE = new Tier(3000, 2000, 10000, 10000, 0.0, 87.53, 82.44, 2);
+
+    private final int vehicles;
+    private final int rsus;
+    private final int edgeServers;
+    private final double contextPeriod;
+    private final double ciLatency;
+    private final File model;
+    private final File output;
+    private final boolean verbose;
+    private final int duration;
+    private final double areaWidth;
+    private final double areaHeight;
+    private final double radioRange;
+    private final double maxSpeed;
+    private final double mobilityStep;
+    private final int maxHops;
+    private final String inferencePolicy;
+    private final double inferenceLatency;
+    private final double inferenceRequestSize;
+    private final double inferenceResultSize;
+    private final int sensors;
+    private final double sensorPeriod;
+    private final boolean adaptiveSampling;
+    private final Tier cloud;
+    private final Tier edge;
+    private final Tier rsu;
+    private final Tier vehicle;
+
+    public FleetSpec(Properties properties) {
+        vehicles = Integer.parseInt(properties.getProperty("vehicles", "100").trim());
+        rsus = Integer.parseInt(properties.getProperty("rsus", "10").trim());
+        edgeServers = Integer.parseInt(properties.getProperty("edgeServers", "2").trim());
+        contextPeriod = Double.parseDouble(properties.getProperty("contextPeriod", "2.0").trim());
+        ciLatency = Double.parseDouble(properties.getProperty("ciLatency", "0.01").trim());
+        model = properties.containsKey("model") ? new File(properties.getProperty("model").trim()) : null;
+        output = properties.containsKey("output") ? new File(properties.getProperty("output").trim()) : null;
+        verbose = Boolean.parseBoolean(properties.getProperty("verbose", "false").trim());
+        duration = Integer.parseInt(properties.getProperty("duration", String.valueOf(Config.MAX_SIMULATION_TIME)).trim());
+        areaWidth = Double.parseDouble(properties.getProperty("areaWidth", "2000").trim());
+        areaHeight = Double.parseDouble(properties.getProperty("areaHeight", "2000").trim());
+        radioRange = Double.parseDouble(properties.getProperty("radioRange", "300").trim());
+        maxSpeed = Double.parseDouble(properties.getProperty("maxSpeed", "15").trim());
+        mobilityStep = Double.parseDouble(properties.getProperty("mobilityStep", "0.1").trim());
+        maxHops = Integer.parseInt(properties.getProperty("maxHops", "1").trim());
+        inferencePolicy = properties.containsKey("inference.policy") ? properties.getProperty("inference.policy").trim() : null;
+        String latency = properties.getProperty("inference.latency", "0.02").trim();
+        inferenceLatency = "measured".equals(latency) ? Double.NaN : Double.parseDouble(latency);
+        inferenceRequestSize = Double.parseDouble(properties.getProperty("inference.requestSize", "500").trim());
+        inferenceResultSize = Double.parseDouble(properties.getProperty("inference.resultSize", "500").trim());
+        sensors = Integer.parseInt(properties.getProperty("sensors", "0").trim());
+        sensorPeriod = Double.parseDouble(properties.getProperty("sensors.period", "0.5").trim());
+        String sampling = properties.getProperty("sampling", "adaptive").trim();
+        if (!"adaptive".equals(sampling) && !"fixed".equals(sampling))
+            throw new IllegalArgumentException("The sampling should be adaptive or fixed, but is:" + sampling);
+        adaptiveSampling = "adaptive".equals(sampling);
+        cloud = new Tier(properties, "cloud.", DEFAULT_CLOUD);
+        edge = new Tier(properties, "edge.", DEFAULT_EDGE);
+        rsu = new Tier(properties, "rsu.", DEFAULT_RSU);
+        vehicle = new Tier(properties, "vehicle.", DEFAULT_VEHICLE);
+        if (vehicles < 1 || rsus < 1 || edgeServers < 1)
+            throw new IllegalArgumentException("The fleet needs at least one vehicle, RSU and edge server, but has "
+                    + vehicles + ", " + rsus + " and " + edgeServers);
+        if (!(contextPeriod > 0))
+            throw new IllegalArgumentException("The context period should be positive, but is:" + contextPeriod);
+        if (!(ciLatency >= 0))
+            throw new IllegalArgumentException("The CI latency should not be negative, but is:" + ciLatency);
+        if (duration < 1)
+            throw new IllegalArgumentException("The duration should be positive, but is:" + duration);
+        if (!(inferenceLatency > 0) && !isInferenceLatencyMeasured())
+            throw new IllegalArgumentException("The inference latency should be positive, but is:" + inferenceLatency);
+        if (sensors < 0 || !(sensorPeriod > 0))
+            throw new IllegalArgumentException("The sensors should not be negative and their period should be "
+                    + "positive, but are:" + sensors + " and " + sensorPeriod);
+    }
+
+    public static FleetSpec load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return new FleetSpec(properties);
+    }
+
+    private static String get(Properties properties, String key, Object defaultValue) {
+        return properties.getProperty(key, String.valueOf(defaultValue)).trim();
+    }
+
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    public int getRsus() {
+        return rsus;
+    }
+
+    public int getEdgeServers() {
+        return edgeServers;
+    }
+
+    public double getContextPeriod() {
+        return contextPeriod;
+    }
+
+    public double getCiLatency() {
+        return ciLatency;
+    }
+
+    public File getModel() {
+        return model;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Gets the simulated time after which the simulation stops.
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    public double getAreaWidth() {
+        return areaWidth;
+    }
+
+    public double getAreaHeight() {
+        return areaHeight;
+    }
+
+    public double getRadioRange() {
+        return radioRange;
+    }
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public double getMobilityStep() {
+        return mobilityStep;
+    }
+
+    public int getMaxHops() {
+        return maxHops;
+    }
+
+    /**
+     * Gets the name of the policy offloading the inferences, or null if they are not modelled.
+     */
+    public String getInferencePolicy() {
+        return inferencePolicy;
+    }
+
+    /**
+     * Gets the latency of an inference on a vehicle, or NaN if it is measured.
+     */
+    public double getInferenceLatency() {
+        return inferenceLatency;
+    }
+
+    public boolean isInferenceLatencyMeasured() {
+        return Double.isNaN(inferenceLatency);
+    }
+
+    public double getInferenceRequestSize() {
+        return inferenceRequestSize;
+    }
+
+    public double getInferenceResultSize() {
+        return inferenceResultSize;
+    }
+
+    /**
+     * Gets the number of sensors of each vehicle.
+     */
+    public int getSensors() {
+        return sensors;
+    }
+
+    /**
+     * Gets the time between the tuples of a sensor at full rate.
+     */
+    public double getSensorPeriod() {
+        return sensorPeriod;
+    }
+
+    public boolean isAdaptiveSampling() {
+        return adaptiveSampling;
+    }
+
+    public Tier getCloud() {
+        return cloud;
+    }
+
+    public Tier getEdge() {
+        return edge;
+    }
+
+    public Tier getRsu() {
+        return rsu;
+    }
+
+    public Tier getVehicle() {
+        return vehicle;
+    }
+}
@@ -0,0 +1,178 @@
+package iFogSimulator;
+
+import java.util.Arrays;
+
+/**
+ * The fuzzy allocator of <code>fuzzy_allocator_server.py</code>, evaluated in the simulation.
+ * <p>
+ * The Mamdani system of the server is rebuilt with the same triangular membership functions and rules: a low, medium
+ * or high priority, on a universe from 0 to 10, allocates a low, medium or high share of bandwidth and CPU, on
+ * universes from 0 to 100. As in scikit-fuzzy, the output terms are clipped at the activation of their rule, combined
+ * with max and defuzzified by the centroid of the resulting piecewise linear function.
+ * <p>
+ * The inference is run once per sample of a control surface, when the allocator is created. The allocation of a
+ * priority is then interpolated in that surface, and is exact for the priorities on the samples, which include the
+ * crisp priorities of the labels.
+ */
+public class FuzzyAllocator implements ResourceAllocator {
+
+    public static final double PRIORITY_MIN = 0;
+    public static final double PRIORITY_MAX = 10;
+    public static final double ALLOCATION_MIN = 0;
+    public static final double ALLOCATION_MAX = 100;
+
+    /** The vertices of the low, medium and high priority terms */
+    private static final double[][] PRIORITY_TERMS = {{0, 0, 4}, {2, 5, 8}, {6, 10, 10}};
+    /**
+     * The vertices of the low, medium and high allocation terms, the same for bandwidth and CPU. The rule of each
+     * priority term yields the allocation term of the same index for both, so both have the same control surface.
+     */
+    private static final double[][] ALLOCATION_TERMS = {{0, 0, 40}, {30, 50, 70}, {60, 100, 100}};
+
+    /** The samples of the control surface per unit of priority */
+    public static final int DEFAULT_RESOLUTION = 100;
+
+    private final int resolution;
+    private final double[] surface;
+
+    public FuzzyAllocator() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * @param resolution the samples of the control surface per unit of priority
+     */
+    public FuzzyAllocator(int resolution) {
+        if (resolution < 1)
+            throw new IllegalArgumentException("The resolution must be positive, but is:" + resolution);
+        this.resolution = resolution;
+        int samples = (int) Math.round((PRIORITY_MAX - PRIORITY_MIN) * resolution) + 1;
+        surface = new double[samples];
+        for (int i = 0; i < samples; i++)
+            surface[i] = infer(PRIORITY_MIN + (double) i / resolution);
+    }
+
+    /**
+     * Gets the crisp priority of a label, as the server does: 2 for LOW, 5 for MEDIUM, 8 for HIGH and 2 otherwise.
+     */
+    public static double getCrispPriority(String priorityLabel) {
+        switch (priorityLabel.toUpperCase()) {
+            case "HIGH": return 8;
+            case "MEDIUM": return 5;
+            default: return 2;
+        }
+    }
+
+    @Override
+    public ResourceAllocation allocate(String priorityLabel) {
+        String label = priorityLabel.toUpperCase();
+        double allocation = Math.round(getAllocation(getCrispPriority(label)) * 100) / 100.0;
+        return new ResourceAllocation(label, allocation, allocation);
+    }
+
+    /**
+     * Gets the share of bandwidth and CPU allocated for a priority, interpolated in the control surface.
+     * @param priority the priority, clamped to the universe from {@link #PRIORITY_MIN} to {@link #PRIORITY_MAX}
+     * @return the share in percent
+     */
+    public double getAllocation(double priority) {
+        double position = (Math.max(PRIORITY_MIN, Math.min(PRIORITY_MAX, priority)) - PRIORITY_MIN) * resolution;
+        int index = (int) position;
+        if (index >= surface.length - 1)
+            return surface[surface.length - 1];
+        double fraction = position - index;
+        return fraction == 0 ? surface[index] : surface[index] + fraction * (surface[index + 1] - surface[index]);
+    }
+
+    /**
+     * Runs the Mamdani inference for a priority.
+     * @return the share of bandwidth and CPU in percent
+     */
+    public static double infer(double priority) {
+        // the activation of each rule is the membership of the priority in its term
+        double clamped = Math.max(PRIORITY_MIN, Math.min(PRIORITY_MAX, priority));
+        double[] activations = new double[PRIORITY_TERMS.length];
+        for (int i = 0; i < activations.length; i++)
+            activations[i] = triangle(PRIORITY_TERMS[i], clamped);
+
+        // the output is sampled on its universe, plus the points where the terms cross their activation, so that
+        // the clipped triangles are exact
+        int universe = (int) (ALLOCATION_MAX - ALLOCATION_MIN) + 1;
+        double[] x = new double[universe + 2 * ALLOCATION_TERMS.length];
+        int n = 0;
+        for (int i = 0; i < universe; i++)
+            x[n++] = ALLOCATION_MIN + i;
+        for (int i = 0; i < ALLOCATION_TERMS.length; i++) {
+            double cut = activations[i];
+            double[] term = ALLOCATION_TERMS[i];
+            if (cut <= 0 || cut >= 1)
+                continue;
+            if (term[1] > term[0])
+                x[n++] = term[0] + cut * (term[1] - term[0]);
+            if (term[2] > term[1])
+                x[n++] = term[2] - cut * (term[2] - term[1]);
+        }
+        x = Arrays.copyOf(x, n);
+        Arrays.sort(x);
+
+        // centroid of the piecewise linear function, in the way of skfuzzy.defuzz.centroid
+        double sumMoment = 0;
+        double sumArea = 0;
+        double previousX = x[0];
+        double previousY = output(activations, previousX);
+        for (int i = 1; i < x.length; i++) {
+            double x1 = previousX;
+            double x2 = x[i];
+            double y1 = previousY;
+            double y2 = output(activations, x2);
+            previousX = x2;
+            previousY = y2;
+            if ((y1 == 0 && y2 == 0) || x1 == x2)
+                continue;
+            double moment;
+            double area;
+            if (y1 == y2) {
+                moment = 0.5 * (x1 + x2);
+                area = (x2 - x1) * y1;
+            } else if (y1 == 0) {
+                moment = 2.0 / 3.0 * (x2 - x1) + x1;
+                area = 0.5 * (x2 - x1) * y2;
+            } else if (y2 == 0) {
+                moment = 1.0 / 3.0 * (x2 - x1) + x1;
+                area = 0.5 * (x2 - x1) * y1;
+            } else {
+                moment = (2.0 / 3.0 * (x2 - x1) * (y2 + 0.5 * y1)) / (y1 + y2) + x1;
+                area = 0.5 * (x2 - x1) * (y1 + y2);
+            }
+            sumMoment += moment * area;
+            sumArea += area;
+        }
+        return sumArea > 0 ? sumMoment / sumArea : 0;
+    }
+
+    /**
+     * Gets the membership of an allocation in the output: the maximum of the terms clipped at their activation.
+     */
+    private static double output(double[] activations, double x) {
+        double y = 0;
+        for (int i = 0; i < ALLOCATION_TERMS.length; i++)
+            y = Math.max(y, Math.min(activations[i], triangle(ALLOCATION_TERMS[i], x)));
+        return y;
+    }
+
+    /**
+     * Gets the membership of a value in a triangular term, as skfuzzy.trimf does.
+     */
+    private static double triangle(double[] term, double x) {
+        double a = term[0];
+        double b = term[1];
+        double c = term[2];
+        if (x == b)
+            return 1;
+        if (a < x && x < b)
+            return (x - a) / (b - a);
+        if (b < x && x < c)
+            return (c - x) / (c - b);
+        return 0;
+    }
+}
@@ -0,0 +1,328 @@
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.UtilizationModelFull;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.application.AppEdge;
+import org.fog.application.Application;
+import org.fog.entities.FogDevice;
+import org.fog.entities.Tuple;
+import org.fog.utils.FogUtils;
+import org.fog.utils.NetworkUsageMonitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offloads the inference of the CI models of a vehicle to one of its {@link InferenceTarget}s, chosen for each
+ * request by an {@link OffloadingPolicy}. An inference is a tuple of the edge of the application to the inference
+ * module (see {@link VehicleSimulation#createApplication}), whose CPU length is e.g. the measured latency of the models
+ * times the MIPS of the device it was measured on. {@link #offload} creates the tuple, which the vehicle sends to the
+ * instance of the module on the chosen target, where the device runs it. The device returns the tuple to the broker
+ * once it ran, which passes it back to the vehicle (see {@link VehicleBroker}), and {@link #complete} sends its result.
+ * <p>
+ * The tuple and the result are sent straight between the vehicle and the device of the target, as a sensor sends its
+ * tuples to its gateway, in the time the links between them take. A link is crossed in its uplink latency plus the size of the data over its uplink bandwidth, in both directions.
+ * The latencies and bandwidths of the fog devices are per millisecond, while the simulation of the vehicles runs in
+ * seconds. The vehicle spends {@link #RADIO_POWER_MW} while it sends or receives on the link next to it, and the busy power
+ * of its device while it runs an inference itself, which is charged to its energy account. The request and result are
+ * counted by the {@link NetworkUsageMonitor} as tuples sent over each link, in the latency units of the fog devices.
+ */
+public class InferenceOffloader {
+
+    /** The simulated time of a millisecond of the fog devices */
+    public static final double MILLISECOND = 0.001;
+    /** The power of the radio of a vehicle while it sends or receives */
+    public static final double RADIO_POWER_MW = 1300;
+
+    /** A target as seen from the vehicle */
+    public static class Option {
+        private final InferenceTarget target;
+        private final boolean local;
+        /** The one-way latency of the links to the target */
+        private final double linkLatency;
+        /** The sum of the uplink latencies of the links to the target, as counted by the network usage */
+        private final double networkLatency;
+        /** The one-way transfer time of a byte over the links to the target */
+        private final double transferTimePerByte;
+        /** The transfer time of a byte over the link of the vehicle, during which its radio is on */
+        private final double radioTimePerByte;
+
+        Option(InferenceTarget target, boolean local, double linkLatency, double networkLatency,
+               double transferTimePerByte, double radioTimePerByte) {
+            this.target = target;
+            this.local = local;
+            this.linkLatency = linkLatency;
+            this.networkLatency = networkLatency;
+            this.transferTimePerByte = transferTimePerByte;
+            this.radioTimePerByte = radioTimePerByte;
+        }
+
+        public InferenceTarget getTarget() {
+            return target;
+        }
+
+        /**
+         * Tells whether the target is the vehicle itself.
+         */
+        public boolean isLocal() {
+            return local;
+        }
+
+        public double getLinkLatency() {
+            return linkLatency;
+        }
+    }
+
+    /** An inference sent to a target */
+    public static class Offload {
+        private final Option option;
+        private final Tuple tuple;
+        private final double requestTime;
+        private final double arrivalTime;
+        private double resultTime = Double.NaN;
+
+        Offload(Option option, Tuple tuple, double requestTime, double arrivalTime) {
+            this.option = option;
+            this.tuple = tuple;
+            this.requestTime = requestTime;
+            this.arrivalTime = arrivalTime;
+        }
+
+        public Option getOption() {
+            return option;
+        }
+
+        /**
+         * Gets the tuple of the inference, to be sent to the device of the target.
+         */
+        public Tuple getTuple() {
+            return tuple;
+        }
+
+        /**
+         * Gets the time the request reaches the target.
+         */
+        public double getArrivalTime() {
+            return arrivalTime;
+        }
+
+        /**
+         * Gets the time the result reaches the vehicle, or NaN until the inference ran.
+         */
+        public double getResultTime() {
+            return resultTime;
+        }
+
+        public double getLatency() {
+            return resultTime - requestTime;
+        }
+    }
+
+    private final List<Option> options;
+    private final OffloadingPolicy policy;
+    private final Application application;
+    private final AppEdge edge;
+    private final long cpuLength;
+    private final long requestSize;
+    private final double resultSize;
+    private double radioEnergy = 0;
+
+    private InferenceOffloader(List<Option> options, OffloadingPolicy policy, Application application, AppEdge edge,
+                               double resultSize) {
+        this.options = options;
+        this.policy = policy;
+        this.application = application;
+        this.edge = edge;
+        // the tuples have whole lengths, of at least one MI so that running them takes time
+        this.cpuLength = Math.max(1, Math.round(edge.getTupleCpuLength()));
+        this.requestSize = Math.round(edge.getTupleNwLength());
+        this.resultSize = resultSize;
+    }
+
+    /**
+     * @param vehicle the device of the vehicle
+     * @param targets the targets the vehicle can offload to, which may include the vehicle itself
+     * @param devices the fog devices, through which the targets are reached
+     * @param policy the policy choosing the target of each inference
+     * @param application the application, whose edge to the inference module sets the CPU length of an inference
+     *                    and the size of its request, sent to its target
+     * @param resultSize the size of the result of an inference, sent back to the vehicle
+     */
+    public static InferenceOffloader create(FogDevice vehicle, List<InferenceTarget> targets, List<FogDevice> devices,
+                                            OffloadingPolicy policy, Application application, double resultSize) {
+        if (targets.isEmpty())
+            throw new IllegalArgumentException("The vehicle " + vehicle.getName() + " has no inference target");
+        AppEdge edge = application.getEdgeMap().get(VehicleSimulation.INFERENCE_TUPLE_TYPE);
+        if (edge == null)
+            throw new IllegalArgumentException("The application " + application.getAppId() + " has no edge to the "
+                    + VehicleSimulation.INFERENCE_MODULE);
+        if (!(edge.getTupleCpuLength() > 0) || !(edge.getTupleNwLength() >= 0) || !(resultSize >= 0))
+            throw new IllegalArgumentException("The CPU length should be positive and the sizes should not be "
+                    + "negative, but are:" + edge.getTupleCpuLength() + ", " + edge.getTupleNwLength() + " and "
+                    + resultSize);
+        Map<Integer, FogDevice> devicesById = new HashMap<>();
+        for (FogDevice device : devices)
+            devicesById.put(device.getId(), device);
+        List<Option> options = new ArrayList<>(targets.size());
+        for (InferenceTarget target : targets) {
+            List<FogDevice> links = linksBetween(vehicle, target.getDevice(), devicesById);
+            double latency = 0;
+            double networkLatency = 0;
+            double timePerByte = 0;
+            double radioTimePerByte = 0;
+            for (FogDevice link : links) {
+                latency += link.getUplinkLatency() * MILLISECOND;
+                networkLatency += link.getUplinkLatency();
+                timePerByte += MILLISECOND / link.getUplinkBandwidth();
+                // the link of the vehicle, to its parent or to a child
+                if (link == vehicle || link.getParentId() == vehicle.getId())
+                    radioTimePerByte = MILLISECOND / link.getUplinkBandwidth();
+            }
+            options.add(new Option(target, target.getDevice() == vehicle, latency, networkLatency, timePerByte,
+                    radioTimePerByte));
+        }
+        return new InferenceOffloader(Collections.unmodifiableList(options), policy, application, edge, resultSize);
+    }
+
+    /**
+     * Gets the devices whose uplinks join two devices of the tree, i.e. those below their lowest common ancestor.
+     */
+    private static List<FogDevice> linksBetween(FogDevice from, FogDevice to, Map<Integer, FogDevice> devicesById) {
+        List<FogDevice> fromPath = pathToRoot(from, devicesById);
+        List<FogDevice> toPath = pathToRoot(to, devicesById);
+        // drop the common ancestors, from the root
+        int i = fromPath.size() - 1;
+        int j = toPath.size() - 1;
+        if (fromPath.get(i) != toPath.get(j))
+            throw new IllegalArgumentException("The devices " + from.getName() + " and " + to.getName()
+                    + " are not in the same tree");
+        while (i >= 0 && j >= 0 && fromPath.get(i) == toPath.get(j)) {
+            i--;
+            j--;
+        }
+        List<FogDevice> links = new ArrayList<>(fromPath.subList(0, i + 1));
+        links.addAll(toPath.subList(0, j + 1));
+        return links;
+    }
+
+    private static List<FogDevice> pathToRoot(FogDevice device, Map<Integer, FogDevice> devicesById) {
+        List<FogDevice> path = new ArrayList<>();
+        for (FogDevice d = device; d != null; d = devicesById.get(d.getParentId()))
+            path.add(d);
+        return path;
+    }
+
+    /**
+     * Measures the mean wall-clock time of a decision of the CI models on this machine, i.e. a prediction of the
+     * priority and an allocation, over samples of the contexts after as many to warm up.
+     */
+    public static double measureLatency(PriorityPredictor priorityPredictor, ResourceAllocator resourceAllocator,
+                                        int samples) throws Exception {
+        if (samples < 1)
+            throw new IllegalArgumentException("The latency should be measured on at least one sample, but is on:" + samples);
+        long start = 0;
+        for (int i = 0; i < 2 * samples; i++) {
+            if (i == samples)
+                start = System.nanoTime();
+            String priority = priorityPredictor.predictPriority(i % 10 / 10.0, i % 2, i % 3, i % 7 / 6.0);
+            resourceAllocator.allocate(priority);
+        }
+        return (System.nanoTime() - start) / 1e9 / samples;
+    }
+
+    /**
+     * Estimates the time between the request of an inference on a target now and the arrival of its result, from the
+     * length of the queue of the target, whose inferences share its MIPS. The device completes a tuple the minimum
+     * time between events after it ran.
+     */
+    public double estimateLatency(Option option) {
+        double serviceTime = option.target.getServiceTime(cpuLength);
+        return 2 * option.linkLatency + (requestSize + resultSize) * option.transferTimePerByte
+                + option.target.getQueueLength() * serviceTime + serviceTime + CloudSim.getMinTimeBetweenEvents();
+    }
+
+    /**
+     * Estimates the energy the vehicle spends on an inference on a target, in mJ: that of running it if the target is
+     * the vehicle, and that of its radio.
+     */
+    public double estimateVehicleEnergy(Option option) {
+        return (option.local ? option.target.getEnergy(cpuLength) : 0)
+                + RADIO_POWER_MW * (requestSize + resultSize) * option.radioTimePerByte;
+    }
+
+    /**
+     * Offloads an inference to the target chosen by the policy, and charges its energy to the vehicle. The tuple of the
+     * inference must be sent to the device of the target, to arrive at its {@link Offload#getArrivalTime() arrival
+     * time}, and the inference completed with {@link #complete} when the tuple is returned.
+     *
+     * @param priority the priority of the request, e.g. "HIGH"
+     * @param time the current time
+     * @param energyAccount the energy account of the vehicle
+     * @param allocatorId the allocator of the vehicle, the source of the tuple, to which it is returned
+     */
+    public Offload offload(String priority, double time, PowerModel energyAccount, int allocatorId) {
+        Option option = policy.select(this, priority, time);
+        Tuple tuple = new Tuple(application.getAppId(), FogUtils.generateTupleId(), edge.getDirection(), cpuLength, 1,
+                requestSize, Math.round(resultSize), new UtilizationModelFull(), new UtilizationModelFull(),
+                new UtilizationModelFull());
+        tuple.setUserId(application.getUserId());
+        tuple.setTupleType(edge.getTupleType());
+        tuple.setSrcModuleName(edge.getSource());
+        tuple.setDestModuleName(edge.getDestination());
+        tuple.setSourceModuleId(allocatorId);
+        tuple.setDestinationDeviceId(option.target.getDevice().getId());
+        Offload offload = new Offload(option, tuple, time,
+                time + option.linkLatency + requestSize * option.transferTimePerByte);
+        option.target.sent();
+        NetworkUsageMonitor.sendingTuple(option.networkLatency, requestSize);
+
+        double radioTime = (requestSize + resultSize) * option.radioTimePerByte;
+        if (radioTime > 0) {
+            energyAccount.consume(RADIO_POWER_MW, radioTime);
+            radioEnergy += RADIO_POWER_MW * radioTime;
+        }
+        if (option.local)
+            energyAccount.consume(option.target.getDynamicPowerMw(), option.target.getServiceTime(cpuLength));
+        return offload;
+    }
+
+    /**
+     * Completes an inference once its target ran it, and sends its result back to the vehicle.
+     *
+     * @param time the current time, when the tuple of the inference is returned
+     * @return the time the result reaches the vehicle
+     */
+    public double complete(Offload offload, double time) {
+        Option option = offload.option;
+        option.target.completed(cpuLength);
+        offload.resultTime = time + option.linkLatency + resultSize * option.transferTimePerByte;
+        NetworkUsageMonitor.sendingTuple(option.networkLatency, resultSize);
+        option.target.recordLatency(offload.getLatency());
+        return offload.resultTime;
+    }
+
+    public List<Option> getOptions() {
+        return options;
+    }
+
+    public OffloadingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the CPU length of an inference, that of the edge to the inference module rounded to a whole MI.
+     */
+    public double getCpuLength() {
+        return cpuLength;
+    }
+
+    /**
+     * Gets the energy spent by the radio of the vehicle on the inferences, in mJ.
+     */
+    public double getRadioEnergy() {
+        return radioEnergy;
+    }
+}
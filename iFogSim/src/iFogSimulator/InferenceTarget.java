@@ -0,0 +1,142 @@
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.fog.entities.FogDevice;
+
+/**
+ * A device on which the inference of the CI models can run, e.g. a vehicle, an edge server or the cloud, shared by
+ * the vehicles offloading to it. The inferences are tuples run by the instance of the inference module placed on the
+ * device (see {@link VehicleSimulation#createApplication}), so that the device shares its MIPS between the inferences
+ * running at the same time, and accounts their energy in {@link FogDevice#getEnergyConsumption()}.
+ * <p>
+ * The target counts the inferences sent to it and not completed yet, which is the queue length read by the
+ * {@link OffloadingPolicy}s, and the latency of their results. The vehicles sharing a target may run in other
+ * partitions of a parallel simulation, so that the counts are updated in the order of the simulation, see
+ * {@link CloudSim#runOrdered}.
+ *
+ * @see InferenceOffloader
+ */
+public class InferenceTarget {
+
+    private final FogDevice device;
+    private final double mips;
+    /** The power spent by the device on top of its idle power while it runs an inference, in mW */
+    private final double dynamicPowerMw;
+
+    private int queueLength = 0;
+    private int maxQueueLength = 0;
+    private long requests = 0;
+    private double totalLatency = 0;
+    private double maxLatency = 0;
+    private double energyConsumed = 0;
+
+    public InferenceTarget(FogDevice device) {
+        this.device = device;
+        this.mips = device.getHost().getTotalMips();
+        this.dynamicPowerMw = 1000 * (device.getHost().getPowerModel().getPower(1) - device.getHost().getPowerModel().getPower(0));
+    }
+
+    /**
+     * Gets the number of inferences sent to the target and not completed yet, travelling, waiting or running.
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    /**
+     * Gets the time the device takes to run an inference, alone.
+     */
+    public double getServiceTime(double cpuLength) {
+        return cpuLength / mips;
+    }
+
+    /**
+     * Gets the energy the device spends to run an inference on top of its idle power, in mJ.
+     */
+    public double getEnergy(double cpuLength) {
+        return dynamicPowerMw * getServiceTime(cpuLength);
+    }
+
+    /**
+     * Counts an inference sent to the target.
+     */
+    void sent() {
+        CloudSim.runOrdered(new Runnable() {
+            @Override
+            public void run() {
+                maxQueueLength = Math.max(maxQueueLength, ++queueLength);
+            }
+        });
+    }
+
+    /**
+     * Counts an inference completed by the device.
+     */
+    void completed(double cpuLength) {
+        final double energy = getEnergy(cpuLength);
+        CloudSim.runOrdered(new Runnable() {
+            @Override
+            public void run() {
+                queueLength--;
+                energyConsumed += energy;
+            }
+        });
+    }
+
+    /**
+     * Counts an inference, whose result reached the vehicle after the given latency.
+     */
+    void recordLatency(final double latency) {
+        CloudSim.runOrdered(new Runnable() {
+            @Override
+            public void run() {
+                requests++;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+            }
+        });
+    }
+
+    public FogDevice getDevice() {
+        return device;
+    }
+
+    public String getName() {
+        return device.getName();
+    }
+
+    public double getMips() {
+        return mips;
+    }
+
+    public double getDynamicPowerMw() {
+        return dynamicPowerMw;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Gets the mean time between the request of an inference and the arrival of its result, or 0 if none is.
+     */
+    public double getMeanLatency() {
+        return requests == 0 ? 0 : totalLatency / requests;
+    }
+
+    public double getMaxLatency() {
+        return maxLatency;
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength;
+    }
+
+    /**
+     * Gets the energy spent by the device on the inferences it completed on top of its idle power, in mJ, which is
+     * part of the energy of the device.
+     */
+    public double getEnergyConsumed() {
+        return energyConsumed;
+    }
+}
@@ -0,0 +1,25 @@
+package iFogSimulator;
+
+/**
+ * Chooses the target of each inference of a vehicle, see {@link InferenceOffloader}.
+ */
+public interface OffloadingPolicy {
+
+    /**
+     * @param offloader the offloader of the vehicle, with its options and their estimates
+     * @param priority the priority of the request, e.g. "HIGH"
+     * @param time the current time
+     * @return one of the options of the offloader
+     */
+    InferenceOffloader.Option select(InferenceOffloader offloader, String priority, double time);
+
+    /**
+     * Gets a policy by name: <tt>adaptive</tt> for an {@link AdaptiveOffloadingPolicy} with its default deadlines, or
+     * <tt>local</tt>, <tt>edge</tt> or <tt>cloud</tt> for a {@link FixedOffloadingPolicy}.
+     */
+    static OffloadingPolicy forName(String name) {
+        if ("adaptive".equals(name))
+            return new AdaptiveOffloadingPolicy();
+        return new FixedOffloadingPolicy(FixedOffloadingPolicy.Tier.valueOf(name.toUpperCase()));
+    }
+}
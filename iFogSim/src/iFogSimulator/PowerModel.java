@@ -1,10 +1,14 @@
-.package iFogSimulator;
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.core.SimulationContext;
 
 /**
  * PowerModel - NEW HELPER CLASS
  *
  * This class defines the power consumption for different sensor modes
  * and tracks the total energy consumed during the simulation.
+ * An instance accounts for the energy of one vehicle, which is also
+ * added to the total.
  */
 public class PowerModel {
 
@@ -13,8 +17,31 @@ public class PowerModel {
     public static final double REDUCED_POWER_MW = 2.0;
     public static final double STANDBY_POWER_MW = 0.5;
 
-    // Static variable to accumulate total energy consumption
-    private static double totalEnergyConsumed_mJ = 0.0;
+    // Accumulates the total energy consumption of one simulation, see SimulationContext,
+    // or of one vehicle for the instances created by the simulation
+    private double totalEnergyConsumed_mJ = 0.0;
+
+    private static PowerModel current() {
+        return SimulationContext.current().getState(PowerModel.class, PowerModel::new);
+    }
+
+    /**
+     * Adds energy consumption to this vehicle and to the total.
+     * @param powerIn_mW The power consumption in mW (e.g., FULL_POWER_MW)
+     * @param timeDuration The duration for which the power is consumed
+     */
+    public void consume(double powerIn_mW, double timeDuration) {
+        totalEnergyConsumed_mJ += powerIn_mW * timeDuration;
+        addEnergyConsumption(powerIn_mW, timeDuration);
+    }
+
+    /**
+     * Returns the energy consumed by this vehicle.
+     * @return Energy in milliJoules (mJ)
+     */
+    public double getEnergyConsumed() {
+        return totalEnergyConsumed_mJ;
+    }
 
     /**
      * Adds energy consumption for a given time duration and power mode.
@@ -23,7 +50,10 @@ public class PowerModel {
      */
     public static void addEnergyConsumption(double powerIn_mW, double timeDuration) {
         double energy_mJ = powerIn_mW * timeDuration;
-        totalEnergyConsumed_mJ += energy_mJ;
+        PowerModel model = current();
+        synchronized (model) {
+            model.totalEnergyConsumed_mJ += energy_mJ;
+        }
     }
 
     /**
@@ -31,13 +61,13 @@ public class PowerModel {
      * @return Total energy in milliJoules (mJ)
      */
     public static double getTotalEnergyConsumed() {
-        return totalEnergyConsumed_mJ;
+        return current().totalEnergyConsumed_mJ;
     }
 
     /**
      * Resets the energy counter, typically for a new simulation run.
      */
     public static void reset() {
-        totalEnergyConsumed_mJ = 0.0;
+        current().totalEnergyConsumed_mJ = 0.0;
     }
 }
\ No newline at end of file
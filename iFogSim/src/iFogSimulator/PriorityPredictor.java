@@ -0,0 +1,25 @@
+package iFogSimulator;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Predicts the priority of a driving context, e.g. "HIGH", from its features.
+ */
+public interface PriorityPredictor {
+
+    String predictPriority(double trafficDensity, int timeOfDay, int weather, double visibility) throws Exception;
+
+    /**
+     * Predicts the priority of a context without waiting for it, for the predictors that answer remotely. By
+     * default, the priority is predicted at once.
+     */
+    default CompletableFuture<String> predictPriorityAsync(double trafficDensity, int timeOfDay, int weather, double visibility) {
+        try {
+            return CompletableFuture.completedFuture(predictPriority(trafficDensity, timeOfDay, weather, visibility));
+        } catch (Exception e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
@@ -1,76 +1,236 @@
 package iFogSimulator;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
-public class PythonClient {
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
-    private final String aiServerUrl = "http://127.0.0.1:5000";
-    private final String fuzzyServerUrl = "http://127.0.0.1:8080";
+/**
+ * Client of the Python CI servers: the AI classifier, which predicts the priority of a context, and the fuzzy
+ * allocator, which turns a priority into a resource allocation.
+ * <p>
+ * The requests share one {@link HttpClient}, which keeps the connections to the servers alive between requests.
+ * They are sent asynchronously, at most a given number at a time, the others waiting in order for a free slot.
+ */
+public class PythonClient implements PriorityPredictor, ResourceAllocator {
 
-    public PythonClient() {}
+    public static final String DEFAULT_AI_SERVER_URL = "http://127.0.0.1:5000";
+    public static final String DEFAULT_FUZZY_SERVER_URL = "http://127.0.0.1:8080";
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    private final String aiServerUrl;
+    private final String fuzzyServerUrl;
+    private final int maxConcurrentRequests;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    /** The requests waiting for a free slot */
+    private final Queue<Runnable> waitingRequests = new ArrayDeque<>();
+    private int requestsInFlight = 0;
+
+    public PythonClient() {
+        this(DEFAULT_AI_SERVER_URL, DEFAULT_FUZZY_SERVER_URL, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_TIMEOUT);
+    }
 
     /**
-     * This method now accepts the correct features and builds the correct JSON payload.
+     * @param maxConcurrentRequests the number of requests sent at the same time, the others waiting
+     * @param timeout the timeout of connecting to a server and of each request
      */
-    public String predictPriority(double trafficDensity, int timeOfDay, int weather, double visibility) throws Exception {
-        String endpoint = "/predict_priority";
+    public PythonClient(String aiServerUrl, String fuzzyServerUrl, int maxConcurrentRequests, Duration timeout) {
+        if (maxConcurrentRequests < 1)
+            throw new IllegalArgumentException("The number of concurrent requests must be positive, but is:" + maxConcurrentRequests);
+        this.aiServerUrl = aiServerUrl;
+        this.fuzzyServerUrl = fuzzyServerUrl;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
 
-        String payload = String.format(
-                "{\"traffic_density\": %.2f, \"time_of_day\": %d, \"weather\": %d, \"visibility\": %.2f}",
-                trafficDensity, timeOfDay, weather, visibility
-        );
+    /**
+     * Predicts the priority of a context, waiting for the answer.
+     */
+    @Override
+    public String predictPriority(double trafficDensity, int timeOfDay, int weather, double visibility) throws Exception {
+        return await(predictPriorityAsync(trafficDensity, timeOfDay, weather, visibility));
+    }
 
-        String response = post(aiServerUrl + endpoint, payload);
-        JSONObject jsonResponse = new JSONObject(response);
-        return jsonResponse.getString("priority");
+    /**
+     * Predicts the priority of a context.
+     * @return the priority label, e.g. "HIGH"
+     */
+    @Override
+    public CompletableFuture<String> predictPriorityAsync(double trafficDensity, int timeOfDay, int weather, double visibility) {
+        JSONObject payload = new JSONObject();
+        payload.put("traffic_density", trafficDensity);
+        payload.put("time_of_day", timeOfDay);
+        payload.put("weather", weather);
+        payload.put("visibility", visibility);
+        return post(aiServerUrl + "/predict_priority", payload.toString())
+                .thenApply(response -> new JSONObject(response).getString("priority"));
     }
 
+    /**
+     * Gets the resource allocation of a priority, waiting for the answer.
+     */
     public String allocateResources(String priorityLabel) throws Exception {
-        String endpoint = "/allocate_resources";
-        String payload = String.format("{\"priority\": \"%s\"}", priorityLabel);
-        String response = post(fuzzyServerUrl + endpoint, payload);
-        return response; // Return the full JSON string
+        return await(allocateResourcesAsync(priorityLabel));
+    }
+
+    /**
+     * Gets the resource allocation of a priority.
+     * @return the allocation decision, as the JSON string returned by the server
+     */
+    public CompletableFuture<String> allocateResourcesAsync(String priorityLabel) {
+        JSONObject payload = new JSONObject();
+        payload.put("priority", priorityLabel);
+        return post(fuzzyServerUrl + "/allocate_resources", payload.toString());
     }
 
-    private String post(String urlString, String jsonPayload) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setConnectTimeout(5000);
-        conn.setReadTimeout(5000);
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(jsonPayload.getBytes());
-            os.flush();
+    @Override
+    public ResourceAllocation allocate(String priorityLabel) throws Exception {
+        return await(allocateAsync(priorityLabel));
+    }
+
+    @Override
+    public CompletableFuture<ResourceAllocation> allocateAsync(String priorityLabel) {
+        return allocateResourcesAsync(priorityLabel).thenApply(ResourceAllocation::fromJson);
+    }
+
+    /**
+     * Predicts the priorities of many contexts in one request, waiting for the answer.
+     */
+    public List<String> predictPriorityBatch(List<double[]> contexts) throws Exception {
+        return await(predictPriorityBatchAsync(contexts));
+    }
+
+    /**
+     * Predicts the priorities of many contexts in one request.
+     * @param contexts the features of each context: traffic density, time of day, weather and visibility
+     * @return the priority labels, in the order of the contexts
+     */
+    public CompletableFuture<List<String>> predictPriorityBatchAsync(List<double[]> contexts) {
+        JSONArray samples = new JSONArray();
+        for (double[] context : contexts) {
+            if (context.length != 4)
+                throw new IllegalArgumentException("A context must have 4 features, but has:" + context.length);
+            JSONObject sample = new JSONObject();
+            sample.put("traffic_density", context[0]);
+            sample.put("time_of_day", (int) context[1]);
+            sample.put("weather", (int) context[2]);
+            sample.put("visibility", context[3]);
+            samples.put(sample);
+        }
+        JSONObject payload = new JSONObject();
+        payload.put("samples", samples);
+        return post(aiServerUrl + "/predict_priority_batch", payload.toString())
+                .thenApply(response -> {
+                    JSONArray priorities = new JSONObject(response).getJSONArray("priorities");
+                    List<String> result = new ArrayList<>(priorities.length());
+                    for (int i = 0; i < priorities.length(); i++)
+                        result.add(priorities.getString(i));
+                    return result;
+                });
+    }
+
+    /**
+     * Gets the resource allocations of many priorities in one request, waiting for the answer.
+     */
+    public List<String> allocateResourcesBatch(List<String> priorityLabels) throws Exception {
+        return await(allocateResourcesBatchAsync(priorityLabels));
+    }
+
+    /**
+     * Gets the resource allocations of many priorities in one request.
+     * @return the allocation decisions as JSON strings, in the order of the priorities
+     */
+    public CompletableFuture<List<String>> allocateResourcesBatchAsync(List<String> priorityLabels) {
+        JSONArray priorities = new JSONArray();
+        for (String priorityLabel : priorityLabels)
+            priorities.put(priorityLabel);
+        JSONObject payload = new JSONObject();
+        payload.put("priorities", priorities);
+        return post(fuzzyServerUrl + "/allocate_resources_batch", payload.toString())
+                .thenApply(response -> {
+                    JSONArray decisions = new JSONObject(response).getJSONArray("decisions");
+                    List<String> result = new ArrayList<>(decisions.length());
+                    for (int i = 0; i < decisions.length(); i++)
+                        result.add(decisions.getJSONObject(i).toString());
+                    return result;
+                });
+    }
+
+    /**
+     * Waits for the answer of a request, throwing the exception it failed with.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
         }
+    }
 
-        int status = conn.getResponseCode();
-        if (status != 200) {
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getErrorStream()))) {
-                StringBuilder errorResponse = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    errorResponse.append(line);
-                }
-                throw new RuntimeException("Python server returned HTTP Status " + status + " with message: " + errorResponse.toString());
-            }
+    private CompletableFuture<String> post(String url, String jsonPayload) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
+                .build();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Runnable send = () -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    releaseSlot();
+                    if (error != null) {
+                        result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    } else if (response.statusCode() != 200) {
+                        result.completeExceptionally(new RuntimeException("Python server returned HTTP Status " + response.statusCode()
+                                + " with message: " + response.body()));
+                    } else {
+                        result.complete(response.body());
+                    }
+                });
+        boolean sendNow;
+        synchronized (waitingRequests) {
+            sendNow = requestsInFlight < maxConcurrentRequests;
+            if (sendNow)
+                requestsInFlight++;
+            else
+                waitingRequests.add(send);
         }
+        if (sendNow)
+            send.run();
+        return result;
+    }
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
-            }
-            conn.disconnect();
-            return sb.toString();
+    /**
+     * Gives the slot of a finished request to the next waiting request, if any.
+     */
+    private void releaseSlot() {
+        Runnable next;
+        synchronized (waitingRequests) {
+            next = waitingRequests.poll();
+            if (next == null)
+                requestsInFlight--;
         }
+        if (next != null)
+            next.run();
     }
-}
\ No newline at end of file
+}
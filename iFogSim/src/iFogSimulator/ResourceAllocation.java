@@ -0,0 +1,57 @@
+package iFogSimulator;
+
+import org.json.JSONObject;
+
+/**
+ * The shares of bandwidth and CPU allocated for a priority, in percent.
+ */
+public class ResourceAllocation {
+
+    private final String priority;
+    private final double bandwidthAllocation;
+    private final double cpuAllocation;
+
+    public ResourceAllocation(String priority, double bandwidthAllocation, double cpuAllocation) {
+        this.priority = priority;
+        this.bandwidthAllocation = bandwidthAllocation;
+        this.cpuAllocation = cpuAllocation;
+    }
+
+    /**
+     * Reads an allocation returned by the fuzzy allocator server, e.g.
+     * <code>{"priority": "HIGH", "bandwidth_allocation": "84.44%", "cpu_allocation": "84.44%", ...}</code>.
+     */
+    public static ResourceAllocation fromJson(String json) {
+        JSONObject object = new JSONObject(json);
+        return new ResourceAllocation(object.getString("priority"), parsePercent(object.getString("bandwidth_allocation")),
+                parsePercent(object.getString("cpu_allocation")));
+    }
+
+    private static double parsePercent(String value) {
+        return Double.parseDouble(value.endsWith("%") ? value.substring(0, value.length() - 1) : value);
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    public double getBandwidthAllocation() {
+        return bandwidthAllocation;
+    }
+
+    public double getCpuAllocation() {
+        return cpuAllocation;
+    }
+
+    /**
+     * Gets the decision in the words of the fuzzy allocator server.
+     */
+    public String getDecision() {
+        return "Allocate " + bandwidthAllocation + "% bandwidth and " + cpuAllocation + "% CPU for " + priority + " priority";
+    }
+
+    @Override
+    public String toString() {
+        return getDecision();
+    }
+}
@@ -0,0 +1,25 @@
+package iFogSimulator;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decides the resources allocated to a vehicle from the priority of its context.
+ */
+public interface ResourceAllocator {
+
+    ResourceAllocation allocate(String priorityLabel) throws Exception;
+
+    /**
+     * Decides the allocation without waiting for it, for the allocators that answer remotely. By default, the
+     * allocation is decided at once.
+     */
+    default CompletableFuture<ResourceAllocation> allocateAsync(String priorityLabel) {
+        try {
+            return CompletableFuture.completedFuture(allocate(priorityLabel));
+        } catch (Exception e) {
+            CompletableFuture<ResourceAllocation> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package iFogSimulator;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates in the simulation the priority classifier exported by <code>ai_classifier_server.export_model</code>, a
+ * decision tree or a random forest, so that no Python server is needed.
+ * <p>
+ * The nodes of all the trees are stored in flat arrays: the feature tested, -1 for a leaf, the threshold and the
+ * indexes of the children, a sample going left when its feature is at most the threshold. Each leaf has the
+ * probabilities of the classes, which are averaged over the trees, the class with the highest probability being
+ * predicted, as by scikit-learn. The features are compared as floats, as scikit-learn does.
+ */
+public class TreeEnsemblePredictor implements PriorityPredictor {
+
+    public static final String[] FEATURES = {"traffic_density", "time_of_day", "weather", "visibility"};
+
+    private final String[] classes;
+    private final int[] roots;
+    private final int[] feature;
+    private final double[] threshold;
+    private final int[] left;
+    private final int[] right;
+    /** The class probabilities of the nodes, numClasses per node */
+    private final double[] value;
+
+    private TreeEnsemblePredictor(String[] classes, int[] roots, int[] feature, double[] threshold, int[] left,
+                                  int[] right, double[] value) {
+        this.classes = classes;
+        this.roots = roots;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.value = value;
+    }
+
+    public static TreeEnsemblePredictor load(File file) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Reads an exported model.
+     * @throws IOException if the model cannot be read or is not valid
+     */
+    public static TreeEnsemblePredictor load(Reader reader) throws IOException {
+        JSONObject model;
+        try {
+            model = (JSONObject) new JSONParser().parse(reader);
+        } catch (ParseException | ClassCastException e) {
+            throw new IOException("Invalid model: " + e, e);
+        }
+        if (!"tree-ensemble".equals(model.get("format")) || ((Number) model.get("version")).intValue() != 1)
+            throw new IOException("Unsupported model format: " + model.get("format") + " " + model.get("version"));
+        if (!Arrays.asList(FEATURES).equals(model.get("features")))
+            throw new IOException("The model does not use the features " + Arrays.toString(FEATURES) + " but " + model.get("features"));
+        JSONArray classList = (JSONArray) model.get("classes");
+        String[] classes = new String[classList.size()];
+        for (int i = 0; i < classes.length; i++)
+            classes[i] = (String) classList.get(i);
+
+        JSONArray trees = (JSONArray) model.get("trees");
+        if (trees.isEmpty())
+            throw new IOException("The model has no tree");
+        int numNodes = 0;
+        for (Object tree : trees)
+            numNodes += ((JSONArray) ((JSONObject) tree).get("feature")).size();
+        int[] roots = new int[trees.size()];
+        int[] feature = new int[numNodes];
+        double[] threshold = new double[numNodes];
+        int[] left = new int[numNodes];
+        int[] right = new int[numNodes];
+        double[] value = new double[numNodes * classes.length];
+
+        int offset = 0;
+        for (int t = 0; t < trees.size(); t++) {
+            JSONObject tree = (JSONObject) trees.get(t);
+            List<?> treeFeature = (List<?>) tree.get("feature");
+            List<?> treeThreshold = (List<?>) tree.get("threshold");
+            List<?> treeLeft = (List<?>) tree.get("left");
+            List<?> treeRight = (List<?>) tree.get("right");
+            List<?> treeValue = (List<?>) tree.get("value");
+            int size = treeFeature.size();
+            roots[t] = offset;
+            for (int n = 0; n < size; n++) {
+                int node = offset + n;
+                feature[node] = ((Number) treeFeature.get(n)).intValue();
+                threshold[node] = ((Number) treeThreshold.get(n)).doubleValue();
+                if (feature[node] >= FEATURES.length)
+                    throw new IOException("Invalid feature " + feature[node] + " at node " + n + " of tree " + t);
+                if (feature[node] >= 0) {
+                    int leftChild = ((Number) treeLeft.get(n)).intValue();
+                    int rightChild = ((Number) treeRight.get(n)).intValue();
+                    if (leftChild <= n || leftChild >= size || rightChild <= n || rightChild >= size)
+                        throw new IOException("Invalid children at node " + n + " of tree " + t);
+                    left[node] = offset + leftChild;
+                    right[node] = offset + rightChild;
+                } else {
+                    feature[node] = -1;
+                    List<?> probabilities = (List<?>) treeValue.get(n);
+                    if (probabilities.size() != classes.length)
+                        throw new IOException("Invalid class probabilities at node " + n + " of tree " + t);
+                    for (int c = 0; c < classes.length; c++)
+                        value[node * classes.length + c] = ((Number) probabilities.get(c)).doubleValue();
+                }
+            }
+            offset += size;
+        }
+        return new TreeEnsemblePredictor(classes, roots, feature, threshold, left, right, value);
+    }
+
+    @Override
+    public String predictPriority(double trafficDensity, int timeOfDay, int weather, double visibility) {
+        return classes[predictClass((float) trafficDensity, timeOfDay, weather, (float) visibility)];
+    }
+
+    /**
+     * Gets the index of the class predicted for a sample.
+     */
+    public int predictClass(float trafficDensity, float timeOfDay, float weather, float visibility) {
+        int numClasses = classes.length;
+        if (roots.length == 1)
+            return argmax(leaf(roots[0], trafficDensity, timeOfDay, weather, visibility) * numClasses, numClasses, value);
+        double[] sum = new double[numClasses];
+        for (int root : roots) {
+            int base = leaf(root, trafficDensity, timeOfDay, weather, visibility) * numClasses;
+            for (int c = 0; c < numClasses; c++)
+                sum[c] += value[base + c];
+        }
+        return argmax(0, numClasses, sum);
+    }
+
+    private int leaf(int node, float trafficDensity, float timeOfDay, float weather, float visibility) {
+        while (feature[node] >= 0) {
+            float x;
+            switch (feature[node]) {
+                case 0: x = trafficDensity; break;
+                case 1: x = timeOfDay; break;
+                case 2: x = weather; break;
+                default: x = visibility; break;
+            }
+            node = x <= threshold[node] ? left[node] : right[node];
+        }
+        return node;
+    }
+
+    /**
+     * Gets the index of the highest value, the first one on ties.
+     */
+    private static int argmax(int from, int length, double[] values) {
+        int best = 0;
+        for (int c = 1; c < length; c++) {
+            if (values[from + c] > values[from + best])
+                best = c;
+        }
+        return best;
+    }
+
+    public String[] getClasses() {
+        return classes.clone();
+    }
+
+    public int getNumTrees() {
+        return roots.length;
+    }
+}
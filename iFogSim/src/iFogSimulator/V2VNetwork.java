@@ -0,0 +1,348 @@
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The radio network between the V2V transmitters of the vehicles. The vehicles move in straight lines in a
+ * rectangular area, bouncing off its borders, and an alert is received by the vehicles within radio range of its
+ * sender, after a delay growing with their distance.
+ * <p>
+ * The positions are indexed in a uniform grid whose cells are as large as the radio range, so that the neighbours of
+ * a vehicle are found in the 3x3 cells around it, in a time proportional to their number rather than to the size of
+ * the fleet. The vehicles are moved lazily, when a lookup happens at least one mobility step after the last move, and
+ * only those leaving their cell are moved in the grid.
+ * <p>
+ * Distances are in metres and times in seconds, the unit of the context period.
+ */
+public class V2VNetwork {
+
+    /** Receives the neighbours of a vehicle */
+    public interface NeighbourConsumer {
+        void accept(int transmitterId, double distance);
+    }
+
+    /**
+     * The delay of a hop to a receiver next to the sender besides the propagation, i.e. the access to the channel,
+     * the transmission and the processing
+     */
+    public static final double DEFAULT_HOP_DELAY = 0.002;
+    /**
+     * The propagation delay of the radio waves per metre.
+     * <p>
+     * The propagation over a radio range of a few hundred metres takes about a microsecond, which is negligible
+     * against the hop delay, so the delay mostly grows with the distance through the MAC layer: the signal weakens
+     * with the square of the distance, so the farther receivers get the alert at a lower data rate and after more
+     * retransmissions and contention. A hop over a distance d within the radio range R takes
+     * <pre>
+     * hopDelay * (1 + EDGE_DELAY_FACTOR * (d / R)^2) + d * PROPAGATION_DELAY_PER_METRE
+     * </pre>
+     */
+    public static final double PROPAGATION_DELAY_PER_METRE = 1 / 3e8;
+    /** The share of the hop delay added at the edge of the radio range, see {@link #PROPAGATION_DELAY_PER_METRE} */
+    public static final double EDGE_DELAY_FACTOR = 1.0;
+
+    private final double width;
+    private final double height;
+    private final double radioRange;
+    private final double maxSpeed;
+    private final double mobilityStep;
+    private final int maxHops;
+    private final Random random;
+    private double hopDelay = DEFAULT_HOP_DELAY;
+
+    private final int columns;
+    private final int rows;
+    private final double cellSize;
+    /** The vehicles of each cell, in the first cellSizes[cell] slots */
+    private final int[][] cells;
+    private final int[] cellSizes;
+
+    // the vehicles, by index
+    private int vehicles = 0;
+    private int[] transmitterIds = new int[16];
+    private double[] x = new double[16];
+    private double[] y = new double[16];
+    private double[] vx = new double[16];
+    private double[] vy = new double[16];
+    private int[] cell = new int[16];
+    private int[] slot = new int[16];
+    /** The index of the vehicle of each transmitter id, or -1 */
+    private int[] indexById = new int[0];
+    private double lastMove = 0;
+
+    private long deliveries = 0;
+    private double totalDeliveryDelay = 0;
+    private double maxDeliveryDelay = 0;
+    private int maxDeliveryHops = 0;
+
+    /**
+     * @param width the width of the area
+     * @param height the height of the area
+     * @param radioRange the range of the transmitters
+     * @param maxSpeed the maximum speed of the vehicles
+     * @param mobilityStep the time after which the vehicles are moved again, during which their positions are fixed
+     * @param maxHops the number of hops of an alert, 1 for a broadcast to the neighbours of its sender only
+     * @param random the generator of the positions and velocities
+     */
+    public V2VNetwork(double width, double height, double radioRange, double maxSpeed, double mobilityStep,
+                      int maxHops, Random random) {
+        if (!(width > 0) || !(height > 0) || !(radioRange > 0))
+            throw new IllegalArgumentException("The area and the radio range should be positive, but are:" + width
+                    + "x" + height + " and " + radioRange);
+        if (!(maxSpeed >= 0) || !(mobilityStep > 0))
+            throw new IllegalArgumentException("The speed should not be negative and the mobility step should be "
+                    + "positive, but are:" + maxSpeed + " and " + mobilityStep);
+        if (maxHops < 1)
+            throw new IllegalArgumentException("An alert should make at least one hop, but makes:" + maxHops);
+        this.width = width;
+        this.height = height;
+        this.radioRange = radioRange;
+        this.maxSpeed = maxSpeed;
+        this.mobilityStep = mobilityStep;
+        this.maxHops = maxHops;
+        this.random = random;
+        this.cellSize = radioRange;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cells = new int[columns * rows][];
+        this.cellSizes = new int[columns * rows];
+    }
+
+    /**
+     * Adds a vehicle at a random position, moving in a random direction at a random speed up to the maximum.
+     */
+    public void addVehicle(int transmitterId) {
+        double angle = random.nextDouble() * 2 * Math.PI;
+        double speed = random.nextDouble() * maxSpeed;
+        addVehicle(transmitterId, random.nextDouble() * width, random.nextDouble() * height,
+                speed * Math.cos(angle), speed * Math.sin(angle));
+    }
+
+    public void addVehicle(int transmitterId, double x, double y, double vx, double vy) {
+        if (transmitterId < indexById.length && indexById[transmitterId] >= 0)
+            throw new IllegalArgumentException("The transmitter " + transmitterId + " is already in the network");
+        if (!(x >= 0 && x <= width && y >= 0 && y <= height))
+            throw new IllegalArgumentException("The position (" + x + ", " + y + ") is outside the area");
+        if (vehicles == transmitterIds.length) {
+            int capacity = 2 * vehicles;
+            transmitterIds = Arrays.copyOf(transmitterIds, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.vx = Arrays.copyOf(this.vx, capacity);
+            this.vy = Arrays.copyOf(this.vy, capacity);
+            cell = Arrays.copyOf(cell, capacity);
+            slot = Arrays.copyOf(slot, capacity);
+        }
+        if (transmitterId >= indexById.length) {
+            int length = indexById.length;
+            indexById = Arrays.copyOf(indexById, Math.max(transmitterId + 1, 2 * length));
+            Arrays.fill(indexById, length, indexById.length, -1);
+        }
+        int index = vehicles++;
+        indexById[transmitterId] = index;
+        transmitterIds[index] = transmitterId;
+        this.x[index] = x;
+        this.y[index] = y;
+        this.vx[index] = vx;
+        this.vy[index] = vy;
+        insert(index, cellOf(x, y));
+    }
+
+    /**
+     * Moves a vehicle to the given position, e.g. from a mobility trace.
+     */
+    public void setPosition(int transmitterId, double x, double y) {
+        if (!(x >= 0 && x <= width && y >= 0 && y <= height))
+            throw new IllegalArgumentException("The position (" + x + ", " + y + ") is outside the area");
+        int index = indexOf(transmitterId);
+        this.x[index] = x;
+        this.y[index] = y;
+        relocate(index);
+    }
+
+    /**
+     * Calls the consumer with each vehicle within radio range of the given one, at the current simulation time.
+     *
+     * @return the number of neighbours
+     */
+    public int forEachNeighbour(int transmitterId, NeighbourConsumer consumer) {
+        moveTo(CloudSim.clock());
+        int index = indexOf(transmitterId);
+        double px = x[index];
+        double py = y[index];
+        double rangeSquared = radioRange * radioRange;
+        int column = cell[index] % columns;
+        int row = cell[index] / columns;
+        int neighbours = 0;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                int[] members = cells[r * columns + c];
+                for (int i = 0, size = cellSizes[r * columns + c]; i < size; i++) {
+                    int other = members[i];
+                    if (other == index)
+                        continue;
+                    double dx = x[other] - px;
+                    double dy = y[other] - py;
+                    double distanceSquared = dx * dx + dy * dy;
+                    if (distanceSquared <= rangeSquared) {
+                        neighbours++;
+                        consumer.accept(transmitterIds[other], Math.sqrt(distanceSquared));
+                    }
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Gets the delay of a hop over the given distance, see {@link #PROPAGATION_DELAY_PER_METRE}.
+     */
+    public double getDelay(double distance) {
+        double share = distance / radioRange;
+        return hopDelay * (1 + EDGE_DELAY_FACTOR * share * share) + distance * PROPAGATION_DELAY_PER_METRE;
+    }
+
+    /**
+     * Gets the longest time an alert can travel, after which it cannot be received anymore.
+     */
+    public double getAlertLifetime() {
+        return maxHops * getDelay(radioRange);
+    }
+
+    /**
+     * Counts the first reception of an alert by a vehicle.
+     */
+    void recordDelivery(double delay, int hops) {
+        deliveries++;
+        totalDeliveryDelay += delay;
+        maxDeliveryDelay = Math.max(maxDeliveryDelay, delay);
+        maxDeliveryHops = Math.max(maxDeliveryHops, hops);
+    }
+
+    /**
+     * Moves the vehicles to the given time if it is at least one mobility step after their last move.
+     */
+    private void moveTo(double time) {
+        double elapsed = time - lastMove;
+        if (elapsed < mobilityStep)
+            return;
+        for (int i = 0; i < vehicles; i++) {
+            x[i] = bounce(x[i] + vx[i] * elapsed, width, i, true);
+            y[i] = bounce(y[i] + vy[i] * elapsed, height, i, false);
+            relocate(i);
+        }
+        lastMove = time;
+    }
+
+    /**
+     * Folds a coordinate back into [0, size], reversing the velocity of the vehicle for each odd number of borders
+     * crossed.
+     */
+    private double bounce(double position, double size, int index, boolean horizontal) {
+        if (position >= 0 && position <= size)
+            return position;
+        double period = 2 * size;
+        double folded = position % period;
+        if (folded < 0)
+            folded += period;
+        // the number of borders crossed is odd when the unfolded position is in the second half of its period
+        boolean reversed = (Math.floor(position / size) % 2 + 2) % 2 == 1;
+        if (reversed) {
+            if (horizontal)
+                vx[index] = -vx[index];
+            else
+                vy[index] = -vy[index];
+        }
+        return folded <= size ? folded : period - folded;
+    }
+
+    private int cellOf(double x, double y) {
+        int column = Math.min(columns - 1, (int) (x / cellSize));
+        int row = Math.min(rows - 1, (int) (y / cellSize));
+        return row * columns + column;
+    }
+
+    private void relocate(int index) {
+        int newCell = cellOf(x[index], y[index]);
+        if (newCell == cell[index])
+            return;
+        remove(index);
+        insert(index, newCell);
+    }
+
+    private void insert(int index, int c) {
+        int[] members = cells[c];
+        if (members == null)
+            members = cells[c] = new int[4];
+        else if (cellSizes[c] == members.length)
+            members = cells[c] = Arrays.copyOf(members, 2 * members.length);
+        cell[index] = c;
+        slot[index] = cellSizes[c];
+        members[cellSizes[c]++] = index;
+    }
+
+    private void remove(int index) {
+        int c = cell[index];
+        int last = cells[c][--cellSizes[c]];
+        cells[c][slot[index]] = last;
+        slot[last] = slot[index];
+    }
+
+    private int indexOf(int transmitterId) {
+        int index = transmitterId >= 0 && transmitterId < indexById.length ? indexById[transmitterId] : -1;
+        if (index < 0)
+            throw new IllegalArgumentException("The transmitter " + transmitterId + " is not in the network");
+        return index;
+    }
+
+    public void setHopDelay(double hopDelay) {
+        if (!(hopDelay >= 0))
+            throw new IllegalArgumentException("The hop delay should not be negative, but is:" + hopDelay);
+        this.hopDelay = hopDelay;
+    }
+
+    public double getRadioRange() {
+        return radioRange;
+    }
+
+    public int getMaxHops() {
+        return maxHops;
+    }
+
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    public double getX(int transmitterId) {
+        return x[indexOf(transmitterId)];
+    }
+
+    public double getY(int transmitterId) {
+        return y[indexOf(transmitterId)];
+    }
+
+    /**
+     * Gets the number of first receptions of the alerts by the vehicles.
+     */
+    public long getDeliveries() {
+        return deliveries;
+    }
+
+    /**
+     * Gets the mean time between the sending of an alert and its first reception by a vehicle, or 0 if none is.
+     */
+    public double getMeanDeliveryDelay() {
+        return deliveries == 0 ? 0 : totalDeliveryDelay / deliveries;
+    }
+
+    public double getMaxDeliveryDelay() {
+        return maxDeliveryDelay;
+    }
+
+    public int getMaxDeliveryHops() {
+        return maxDeliveryHops;
+    }
+}
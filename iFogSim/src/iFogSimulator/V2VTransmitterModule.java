@@ -1,12 +1,55 @@
 package iFogSimulator;
 
+import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
 
+import java.util.HashSet;
+import java.util.Set;
+
 public class V2VTransmitterModule extends SimEntity {
 
+    /** The tag of an alert received from another vehicle */
+    static final int V2V_RECEIVE = 3001;
+
+    /** An alert travelling between the vehicles */
+    static class Alert {
+        final int originId;
+        final int sequence;
+        final String reason;
+        final double originTime;
+        final int hops;
+
+        Alert(int originId, int sequence, String reason, double originTime, int hops) {
+            this.originId = originId;
+            this.sequence = sequence;
+            this.reason = reason;
+            this.originTime = originTime;
+            this.hops = hops;
+        }
+
+        long key() {
+            return (long) originId << 32 | sequence & 0xffffffffL;
+        }
+
+        Alert nextHop() {
+            return new Alert(originId, sequence, reason, originTime, hops + 1);
+        }
+    }
+
     private String appId;
     private int neighborId;
+    private V2VNetwork network;
+    private boolean verbose = true;
+    private int alertsSent = 0;
+    private int alertsReceived = 0;
+    private int alertsForwarded = 0;
+    private int duplicates = 0;
+
+    // the alerts already received, over the last two lifetimes of an alert, to drop their copies
+    private Set<Long> seenAlerts = new HashSet<>();
+    private Set<Long> previousSeenAlerts = new HashSet<>();
+    private double seenSince = 0;
 
     public V2VTransmitterModule(String name, String appId, int neighborId) {
         super(name);
@@ -16,7 +59,8 @@ public class V2VTransmitterModule extends SimEntity {
 
     @Override
     public void startEntity() {
-        System.out.println("V2VTransmitterModule started. Ready to transmit V2V alerts.");
+        if (verbose)
+            System.out.println("V2VTransmitterModule started. Ready to transmit V2V alerts.");
     }
 
     @Override
@@ -27,14 +71,118 @@ public class V2VTransmitterModule extends SimEntity {
             if (data instanceof String && ((String) data).startsWith("V2V_ALERT")) {
                 String alertMessage = (String) data;
                 String reason = alertMessage.replace("V2V_ALERT: ", "");
-                System.out.println("V2V-TRANSMITTER: Broadcasting alert! REASON: " + reason);
-                System.out.println("ALERT-RECEIVER: Received alert: " + reason);
+                Alert alert = new Alert(getId(), ++alertsSent, reason, CloudSim.clock(), 0);
+                markSeen(alert);
+                if (verbose)
+                    System.out.println("V2V-TRANSMITTER: Broadcasting alert! REASON: " + reason);
+                if (network == null && neighborId < 0) {
+                    // no other vehicle to send it to
+                    if (verbose)
+                        System.out.println("ALERT-RECEIVER: Received alert: " + reason);
+                } else {
+                    broadcast(alert);
+                }
             }
+        } else if (ev.getTag() == V2V_RECEIVE) {
+            receive((Alert) ev.getData());
+        }
+    }
+
+    private void receive(Alert alert) {
+        if (!markSeen(alert)) {
+            duplicates++;
+            return;
+        }
+        alertsReceived++;
+        if (network != null)
+            network.recordDelivery(CloudSim.clock() - alert.originTime, alert.hops);
+        if (verbose)
+            System.out.println("ALERT-RECEIVER: " + getName() + " received alert from " + CloudSim.getEntityName(alert.originId)
+                    + " after " + alert.hops + " hop(s): " + alert.reason);
+        if (network != null && alert.hops < network.getMaxHops()) {
+            alertsForwarded++;
+            broadcast(alert);
+        }
+    }
+
+    /**
+     * Sends the next hop of the alert to the vehicles within radio range, or to the neighbour without a network.
+     */
+    private void broadcast(Alert alert) {
+        Alert hop = alert.nextHop();
+        if (network == null) {
+            send(neighborId, V2VNetwork.DEFAULT_HOP_DELAY, V2V_RECEIVE, hop);
+            return;
+        }
+        network.forEachNeighbour(getId(), (transmitterId, distance) ->
+                send(transmitterId, network.getDelay(distance), V2V_RECEIVE, hop));
+    }
+
+    /**
+     * Records the alert as received.
+     *
+     * @return false if it already was
+     */
+    private boolean markSeen(Alert alert) {
+        // the copies of an alert arrive within its lifetime, so that older alerts can be forgotten
+        double lifetime = network != null ? network.getAlertLifetime() : V2VNetwork.DEFAULT_HOP_DELAY;
+        if (CloudSim.clock() - seenSince > lifetime) {
+            Set<Long> recycled = previousSeenAlerts;
+            previousSeenAlerts = seenAlerts;
+            seenAlerts = recycled;
+            seenAlerts.clear();
+            seenSince = CloudSim.clock();
         }
+        long key = alert.key();
+        return !previousSeenAlerts.contains(key) && seenAlerts.add(key);
     }
 
     @Override
     public void shutdownEntity() {
-        System.out.println("V2VTransmitterModule shutdown.");
+        if (verbose)
+            System.out.println("V2VTransmitterModule shutdown.");
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the network through which the alerts are broadcast, or null to send them to the neighbour only.
+     * The transmitter must already be a vehicle of the network.
+     */
+    public void setNetwork(V2VNetwork network) {
+        this.network = network;
+    }
+
+    public V2VNetwork getNetwork() {
+        return network;
+    }
+
+    public void setNeighborId(int neighborId) {
+        this.neighborId = neighborId;
+    }
+
+    public int getNeighborId() {
+        return neighborId;
+    }
+
+    public int getAlertsSent() {
+        return alertsSent;
+    }
+
+    public int getAlertsReceived() {
+        return alertsReceived;
+    }
+
+    public int getAlertsForwarded() {
+        return alertsForwarded;
+    }
+
+    /**
+     * Gets the number of copies of alerts already received, which were dropped.
+     */
+    public int getDuplicates() {
+        return duplicates;
     }
-}
\ No newline at end of file
+}
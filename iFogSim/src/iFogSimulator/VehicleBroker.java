@@ -0,0 +1,29 @@
+package iFogSimulator;
+
+import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.fog.entities.FogBroker;
+import org.fog.entities.Tuple;
+
+/**
+ * The broker of the vehicular application. The fog devices return the tuples they ran to the user of the application,
+ * and the broker passes those of the inferences on to the allocators which offloaded them, see
+ * {@link InferenceOffloader}.
+ */
+public class VehicleBroker extends FogBroker {
+
+    public VehicleBroker(String name) throws Exception {
+        super(name);
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        super.processEvent(ev);
+        if (ev.getTag() == CloudSimTags.CLOUDLET_RETURN && ev.getData() instanceof Tuple) {
+            Tuple tuple = (Tuple) ev.getData();
+            // the source module of an inference is the allocator which sent it
+            if (VehicleSimulation.INFERENCE_TUPLE_TYPE.equals(tuple.getTupleType()))
+                sendNow(tuple.getSourceModuleId(), AdaptiveAllocatorModule.INFERENCE_COMPLETED, tuple);
+        }
+    }
+}
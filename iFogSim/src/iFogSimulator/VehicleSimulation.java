@@ -1,15 +1,7 @@
 package iFogSimulator;
 
-import org.cloudbus.cloudsim.Host;
-import org.cloudbus.cloudsim.Pe;
-import org.cloudbus.cloudsim.Storage;
-import org.cloudbus.cloudsim.VmAllocationPolicySimple;
-import org.cloudbus.cloudsim.VmSchedulerTimeShared;
 import org.cloudbus.cloudsim.core.CloudSim;
-import org.cloudbus.cloudsim.power.PowerHost;
-import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
-import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
-import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.cloudbus.cloudsim.core.ExternalServiceEntity;
 import org.fog.application.AppEdge;
 import org.fog.application.AppLoop;
 import org.fog.application.Application;
@@ -18,12 +10,11 @@ import org.fog.placement.Controller;
 import org.fog.placement.ModuleMapping;
 import org.fog.placement.ModulePlacement;
 import org.fog.placement.ModulePlacementEdgewards;
-import org.fog.utils.FogLinearPowerModel;
-import org.fog.utils.FogUtils;
+import org.fog.utils.NetworkUsageMonitor;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.LinkedList;
 import java.util.List;
 
 public class VehicleSimulation {
@@ -33,6 +24,13 @@ public class VehicleSimulation {
     static List<Actuator> actuators = new ArrayList<Actuator>();
 
     static final double CONTEXT_GENERATION_PERIOD = 2.0;
+    /** The simulated latency of a decision of the CI models */
+    static final double CI_SERVICE_LATENCY = 0.01;
+    /** The latency of an inference of the CI models on car-edge-1, which sets its CPU length */
+    static final double INFERENCE_LATENCY = 0.02;
+    /** The module running the inferences of the CI models, and the type of their tuples */
+    static final String INFERENCE_MODULE = "inference-module";
+    static final String INFERENCE_TUPLE_TYPE = "INFERENCE_REQUEST";
 
     public static void main(String[] args) {
         try {
@@ -41,20 +39,27 @@ public class VehicleSimulation {
             int numUser = 1;
             Calendar calendar = Calendar.getInstance();
             boolean traceFlag = false;
-            CloudSim.init(numUser, calendar, traceFlag);
+            // the devices complete the tuples the minimum time between events after they ran, 0.1 by default, which
+            // is too coarse for the inferences as the vehicles run in seconds
+            CloudSim.init(numUser, calendar, traceFlag, InferenceOffloader.MILLISECOND);
 
-            FogBroker broker = new FogBroker("broker");
+            FogBroker broker = new VehicleBroker("broker");
             int brokerId = broker.getId();
 
             PowerModel.reset();
 
             createFogDevices();
 
-            Application application = createApplication("vehicular-app", brokerId);
+            FogDevice carEdge1 = fogDevices.get(1);
+            double inferenceCpuLength = INFERENCE_LATENCY * carEdge1.getHost().getTotalMips();
+            Application application = createApplication("vehicular-app", brokerId, inferenceCpuLength, 500);
 
             Controller controller = new Controller("master-controller", fogDevices, sensors, actuators);
 
+            // The inference module runs on every device, and the policy picks the instance of each inference
             ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
+            for (FogDevice device : fogDevices)
+                moduleMapping.addModuleToDevice(INFERENCE_MODULE, device.getName());
             ModulePlacement modulePlacement = new ModulePlacementEdgewards(fogDevices, sensors, actuators, application, moduleMapping);
 
             controller.submitApplication(application, 0, modulePlacement);
@@ -62,7 +67,18 @@ public class VehicleSimulation {
             V2VTransmitterModule v2v = new V2VTransmitterModule("v2v-transmitter", application.getAppId(), -1);
             CloudSim.addEntity(v2v);
 
-            AdaptiveAllocatorModule allocator = new AdaptiveAllocatorModule("adaptive-allocator", application.getAppId(), v2v.getId(), CONTEXT_GENERATION_PERIOD);
+            // The priorities are predicted by the model exported by the AI server if its file is given, else by the server
+            PriorityPredictor priorityPredictor = args.length > 0 ? TreeEnsemblePredictor.load(new File(args[0])) : null;
+            ExternalServiceEntity ciService = new ExternalServiceEntity("ci-service", CI_SERVICE_LATENCY);
+            AdaptiveAllocatorModule allocator = new AdaptiveAllocatorModule("adaptive-allocator", application.getAppId(), v2v.getId(),
+                    CONTEXT_GENERATION_PERIOD, priorityPredictor, new FuzzyAllocator(), ciService);
+            // The inferences run on car-edge-1, nearby-vehicle-2 or the cloud, as chosen by the policy given after the model
+            List<InferenceTarget> inferenceTargets = new ArrayList<InferenceTarget>();
+            for (FogDevice device : fogDevices)
+                inferenceTargets.add(new InferenceTarget(device));
+            OffloadingPolicy offloadingPolicy = OffloadingPolicy.forName(args.length > 1 ? args[1] : "adaptive");
+            allocator.setOffloader(InferenceOffloader.create(carEdge1, inferenceTargets, fogDevices, offloadingPolicy,
+                    application, 500));
             CloudSim.addEntity(allocator);
 
             ContextGeneratorModule contextGenerator = new ContextGeneratorModule("context-generator", application.getAppId(), CONTEXT_GENERATION_PERIOD, allocator.getId());
@@ -78,6 +94,12 @@ public class VehicleSimulation {
             // =================================================================
             System.out.println("----------------------------------------------------------");
             System.out.printf("FINAL ENERGY REPORT: Total consumption = %.2f mJ\n", PowerModel.getTotalEnergyConsumed());
+            System.out.printf("CI SERVICE: %d decisions, mean latency = %.4f, max latency = %.4f\n",
+                    ciService.getCompletedCalls(), ciService.getMeanLatency(), ciService.getMaxLatency());
+            System.out.printf("INFERENCE: %.2f MI per request, vehicle radio energy = %.2f mJ\n", inferenceCpuLength,
+                    allocator.getOffloader().getRadioEnergy());
+            FleetSimulation.reportInference(inferenceTargets);
+            System.out.printf("NETWORK USAGE: %.2f\n", NetworkUsageMonitor.getNetworkUsage());
             System.out.println("----------------------------------------------------------");
 
         } catch (Exception e) {
@@ -88,62 +110,33 @@ public class VehicleSimulation {
     // ... (All other methods like createFogDevices, createApplication, etc. remain the same) ...
 
     private static void createFogDevices() {
-        FogDevice cloud = createFogDevice("cloud", 10000, 40000, 100, 10000, 0, 0.01, 107.339, 83.4333);
+        FogDevice cloud = FleetBuilder.createFogDevice("cloud", 10000, 40000, 100, 10000, 0, 0.01, 107.339, 83.4333);
         cloud.setParentId(-1);
         fogDevices.add(cloud);
-        FogDevice carEdge1 = createFogDevice("car-edge-1", 4000, 4000, 10000, 10000, 1, 0.0, 107.339, 83.4333);
+        FogDevice carEdge1 = FleetBuilder.createFogDevice("car-edge-1", 4000, 4000, 10000, 10000, 1, 0.0, 107.339, 83.4333);
         carEdge1.setParentId(cloud.getId());
         carEdge1.setUplinkLatency(100);
         fogDevices.add(carEdge1);
-        FogDevice nearbyVehicle2 = createFogDevice("nearby-vehicle-2", 3000, 2000, 10000, 10000, 2, 0.0, 87.53, 82.44);
+        FogDevice nearbyVehicle2 = FleetBuilder.createFogDevice("nearby-vehicle-2", 3000, 2000, 10000, 10000, 2, 0.0, 87.53, 82.44);
         nearbyVehicle2.setParentId(carEdge1.getId());
         nearbyVehicle2.setUplinkLatency(2);
         fogDevices.add(nearbyVehicle2);
     }
 
-    private static FogDevice createFogDevice(String nodeName, long mips,
-                                             int ram, long upBw, long downBw, int level, double ratePerMips, double busyPower, double idlePower) {
-        List<Pe> peList = new ArrayList<>();
-        peList.add(new Pe(0, new PeProvisionerSimple(mips)));
-        int hostId = FogUtils.generateEntityId();
-        long storage = 1000000;
-        int bw = 10000;
-        PowerHost host = new PowerHost(
-                hostId,
-                new RamProvisionerSimple(ram),
-                new BwProvisionerSimple(bw),
-                storage,
-                peList,
-                new VmSchedulerTimeShared(peList),
-                new FogLinearPowerModel(busyPower, idlePower)
-        );
-        List<Host> hostList = new ArrayList<>();
-        hostList.add(host);
-        String arch = "x86";
-        String os = "Linux";
-        String vmm = "Xen";
-        double time_zone = 10.0;
-        double cost = 3.0;
-        double costPerMem = 0.05;
-        double costPerStorage = 0.001;
-        double costPerBw = 0.0;
-        LinkedList<Storage> storageList = new LinkedList<>();
-        FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics(
-                arch, os, vmm, host, time_zone, cost, costPerMem,
-                costPerStorage, costPerBw);
-        FogDevice fogdevice = null;
-        try {
-            fogdevice = new FogDevice(nodeName, characteristics,
-                    new VmAllocationPolicySimple(hostList), storageList, 10, upBw, downBw, 0, ratePerMips);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        fogdevice.setLevel(level);
-        return fogdevice;
+    static Application createApplication(String appId, int userId) {
+        return createApplication(appId, userId, 0, 0);
     }
 
+    /**
+     * Creates the application, with the inference module if the inferences of the CI models are modelled. The
+     * allocator sends the tuple of each inference to the instance of the module on the target chosen by its policy,
+     * see {@link InferenceOffloader}.
+     *
+     * @param inferenceCpuLength the CPU length of an inference, or 0 if they are not modelled
+     * @param inferenceRequestSize the size of the request of an inference
+     */
     @SuppressWarnings({"serial"})
-    private static Application createApplication(String appId, int userId) {
+    static Application createApplication(String appId, int userId, double inferenceCpuLength, double inferenceRequestSize) {
         Application application = Application.createApplication(appId, userId);
         application.addAppModule("context-module", 10);
         application.addAppModule("allocator-module", 10);
@@ -151,6 +144,11 @@ public class VehicleSimulation {
         application.addAppEdge("SENSOR_DATA", "context-module", 1000, 500, "SENSOR_DATA", Tuple.UP, AppEdge.SENSOR);
         application.addAppEdge("context-module", "allocator-module", 2000, 500, "CONTEXT_TUTPLE", Tuple.UP, AppEdge.MODULE);
         application.addAppEdge("allocator-module", "v2v-module", 500, 500, "V2V_ALERT", Tuple.UP, AppEdge.MODULE);
+        if (inferenceCpuLength > 0) {
+            application.addAppModule(INFERENCE_MODULE, 10);
+            application.addAppEdge("allocator-module", INFERENCE_MODULE, inferenceCpuLength, inferenceRequestSize,
+                    INFERENCE_TUPLE_TYPE, Tuple.UP, AppEdge.MODULE);
+        }
         final AppLoop loop1 = new AppLoop(new ArrayList<String>() {{
             add("SENSOR_DATA");
             add("context-module");
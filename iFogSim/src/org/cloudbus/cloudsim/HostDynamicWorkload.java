@@ -285,6 +285,9 @@ public class HostDynamicWorkload extends Host {
 	public
 			void
 			addStateHistoryEntry(double time, double allocatedMips, double requestedMips, boolean isActive) {
+		if (!CloudSim.isStateHistoryRecorded()) {
+			return;
+		}
 
 		HostStateHistoryEntry newState = new HostStateHistoryEntry(
 				time,
@@ -11,6 +11,8 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.cloudbus.cloudsim.core.CloudSim;
+
 /**
  * Vm represents a VM: it runs inside a Host, sharing hostList with other VMs. It processes
  * cloudlets. This processing happens according to a policy, defined by the CloudletScheduler. Each
@@ -591,6 +593,9 @@ public class Vm {
 			double allocatedMips,
 			double requestedMips,
 			boolean isInMigration) {
+		if (!CloudSim.isStateHistoryRecorded()) {
+			return;
+		}
 		VmStateHistoryEntry newState = new VmStateHistoryEntry(
 				time,
 				allocatedMips,
@@ -0,0 +1,449 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements the future event queue as a calendar queue (R. Brown, "Calendar Queues: A
+ * Fast O(1) Priority Queue Implementation for the Simulation Event Set Problem", CACM 1988). Events
+ * are hashed by time into an array of buckets ("days") of a fixed width; each bucket keeps its
+ * events sorted. The number of buckets is doubled or halved as the queue grows or shrinks, and the
+ * bucket width is re-estimated from the separation of the first events at each resize, so adding
+ * and polling take constant expected time when event times are evenly spread. The iterator visits
+ * the events bucket by bucket, not in temporal order, and does not support removal.
+ *
+ * @see EventQueue
+ * @see FutureQueue
+ */
+public class CalendarEventQueue implements EventQueue {
+
+	/** The minimal number of buckets. */
+	private static final int MIN_BUCKETS = 16;
+
+	/** The maximal number of buckets. */
+	private static final int MAX_BUCKETS = 1 << 24;
+
+	/** The number of events sampled to estimate the bucket width on resize. */
+	private static final int WIDTH_SAMPLES = 25;
+
+	/** The buckets. Its length is always a power of two. */
+	private Bucket[] buckets;
+
+	/** The mask to map a virtual bucket number to an index of {@link #buckets}. */
+	private int mask;
+
+	/** The time span covered by each bucket. */
+	private double width;
+
+	/** The virtual bucket number (time / width) the search for the first event starts from. */
+	private long current = 0;
+
+	/** The number of events in the queue. */
+	private int size = 0;
+
+	/** The serial. */
+	private long serial = 0;
+
+	/** The serial of the next event added first, below those of all the other events. */
+	private long firstSerial = Long.MIN_VALUE;
+
+	/** The insertion order of the last added event. */
+	private long sequence = 0;
+
+	/**
+	 * Creates an empty queue whose buckets initially span one time unit.
+	 */
+	public CalendarEventQueue() {
+		this(1.0);
+	}
+
+	/**
+	 * Creates an empty queue with the given initial bucket width. The width is adjusted
+	 * automatically as the queue is resized; a good initial value is about three times the average
+	 * time between consecutive events.
+	 *
+	 * @param bucketWidth the initial time span covered by each bucket
+	 */
+	public CalendarEventQueue(double bucketWidth) {
+		if (bucketWidth <= 0) {
+			throw new IllegalArgumentException("The bucket width should be positive, but is:" + bucketWidth);
+		}
+		width = bucketWidth;
+		buckets = newBuckets(MIN_BUCKETS);
+		mask = MIN_BUCKETS - 1;
+	}
+
+	@Override
+	public void addEvent(SimEvent newEvent) {
+		newEvent.setSerial(serial++);
+		insert(newEvent);
+	}
+
+	@Override
+	public void addEventFirst(SimEvent newEvent) {
+		newEvent.setSerial(firstSerial++);
+		insert(newEvent);
+	}
+
+	@Override
+	public SimEvent peek() {
+		if (size == 0) {
+			return null;
+		}
+		return buckets[firstBucket()].first();
+	}
+
+	@Override
+	public SimEvent poll() {
+		if (size == 0) {
+			return null;
+		}
+		SimEvent first = buckets[firstBucket()].pollFirst();
+		size--;
+		shrinkIfNeeded();
+		return first;
+	}
+
+	@Override
+	public int pollAllAt(double time, List<SimEvent> events) {
+		if (size == 0 || peek().eventTime() != time) {
+			return 0;
+		}
+		// all the events at the same time are next to each other at the head of one bucket
+		Bucket bucket = buckets[firstBucket()];
+		int count = 0;
+		while (bucket.size() > 0 && bucket.first().eventTime() == time) {
+			events.add(bucket.pollFirst());
+			count++;
+		}
+		size -= count;
+		shrinkIfNeeded();
+		return count;
+	}
+
+	@Override
+	public Iterator<SimEvent> iterator() {
+		return new Iterator<SimEvent>() {
+
+			private int bucket = 0;
+
+			private int next = buckets.length > 0 ? buckets[0].head : 0;
+
+			@Override
+			public boolean hasNext() {
+				while (bucket < buckets.length) {
+					if (next < buckets[bucket].tail) {
+						return true;
+					}
+					bucket++;
+					if (bucket < buckets.length) {
+						next = buckets[bucket].head;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return buckets[bucket].items[next++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Use CalendarEventQueue.remove(SimEvent) instead.");
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		if (!buckets[indexOf(virtualBucket(event.eventTime()))].remove(event)) {
+			return false;
+		}
+		size--;
+		shrinkIfNeeded();
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<SimEvent> events) {
+		boolean modified = false;
+		for (SimEvent event : events) {
+			modified |= remove(event);
+		}
+		return modified;
+	}
+
+	@Override
+	public void clear() {
+		buckets = newBuckets(MIN_BUCKETS);
+		mask = MIN_BUCKETS - 1;
+		current = 0;
+		size = 0;
+	}
+
+	/**
+	 * Inserts an event whose serial has already been set.
+	 *
+	 * @param event the event
+	 */
+	private void insert(SimEvent event) {
+		event.setSequence(sequence++);
+		long virtual = virtualBucket(event.eventTime());
+		if (size == 0 || virtual < current) {
+			current = virtual;
+		}
+		buckets[indexOf(virtual)].insert(event);
+		size++;
+		if (size > 2 * buckets.length && buckets.length < MAX_BUCKETS) {
+			resize(buckets.length * 2);
+		}
+	}
+
+	/**
+	 * Finds the bucket holding the first event and moves the search position to it. The queue must
+	 * not be empty.
+	 *
+	 * @return the index of the bucket
+	 */
+	private int firstBucket() {
+		// scan one "year" of buckets starting from the current position
+		long virtual = current;
+		for (int n = 0; n < buckets.length; n++, virtual++) {
+			Bucket bucket = buckets[indexOf(virtual)];
+			if (bucket.size() > 0 && virtualBucket(bucket.first().eventTime()) == virtual) {
+				current = virtual;
+				return indexOf(virtual);
+			}
+		}
+
+		// the next event is more than a year ahead, look for it directly
+		int min = -1;
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i].size() > 0 && (min < 0 || buckets[i].first().precedes(buckets[min].first()))) {
+				min = i;
+			}
+		}
+		current = virtualBucket(buckets[min].first().eventTime());
+		return min;
+	}
+
+	/**
+	 * Halves the number of buckets if the queue became too sparse.
+	 */
+	private void shrinkIfNeeded() {
+		if (size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+			resize(buckets.length / 2);
+		}
+	}
+
+	/**
+	 * Rebuilds the calendar with a new number of buckets and a new bucket width estimated from the
+	 * first events of the queue.
+	 *
+	 * @param bucketCount the new number of buckets, a power of two
+	 */
+	private void resize(int bucketCount) {
+		int samples = Math.min(size, WIDTH_SAMPLES);
+		SimEvent[] first = new SimEvent[samples];
+		for (int i = 0; i < samples; i++) {
+			first[i] = buckets[firstBucket()].pollFirst();
+		}
+		width = estimateWidth(first);
+
+		Bucket[] old = buckets;
+		buckets = newBuckets(bucketCount);
+		mask = bucketCount - 1;
+		for (SimEvent event : first) {
+			buckets[indexOf(virtualBucket(event.eventTime()))].insert(event);
+		}
+		for (Bucket bucket : old) {
+			for (int i = bucket.head; i < bucket.tail; i++) {
+				SimEvent event = bucket.items[i];
+				buckets[indexOf(virtualBucket(event.eventTime()))].insert(event);
+			}
+		}
+		current = samples > 0 ? virtualBucket(first[0].eventTime()) : 0;
+	}
+
+	/**
+	 * Estimates the bucket width as three times the average separation of the given events,
+	 * ignoring separations larger than twice the average. The current width is kept if the events
+	 * are too close to each other to give an estimate.
+	 *
+	 * @param events the first events of the queue, in temporal order
+	 * @return the new bucket width
+	 */
+	private double estimateWidth(SimEvent[] events) {
+		if (events.length < 2) {
+			return width;
+		}
+		double average = (events[events.length - 1].eventTime() - events[0].eventTime()) / (events.length - 1);
+		if (average <= 0) {
+			return width;
+		}
+		double sum = 0;
+		int count = 0;
+		for (int i = 1; i < events.length; i++) {
+			double separation = events[i].eventTime() - events[i - 1].eventTime();
+			if (separation < 2 * average) {
+				sum += separation;
+				count++;
+			}
+		}
+		double estimate = 3 * (count > 0 && sum > 0 ? sum / count : average);
+		return estimate > 0 && !Double.isInfinite(estimate) ? estimate : width;
+	}
+
+	/**
+	 * Gets the virtual bucket number of a time, i.e. the number of bucket widths since time 0.
+	 *
+	 * @param time the time
+	 * @return the virtual bucket number
+	 */
+	private long virtualBucket(double time) {
+		return (long) Math.floor(time / width);
+	}
+
+	/**
+	 * Maps a virtual bucket number to an index of {@link #buckets}.
+	 *
+	 * @param virtual the virtual bucket number
+	 * @return the bucket index
+	 */
+	private int indexOf(long virtual) {
+		return (int) (virtual & mask);
+	}
+
+	/**
+	 * Creates an array of empty buckets.
+	 *
+	 * @param count the number of buckets
+	 * @return the buckets
+	 */
+	private static Bucket[] newBuckets(int count) {
+		Bucket[] result = new Bucket[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = new Bucket();
+		}
+		return result;
+	}
+
+	/**
+	 * A bucket of the calendar: an array of events sorted in temporal order, stored between
+	 * {@link #head} (inclusive) and {@link #tail} (exclusive). Polling the first event and appending
+	 * an event that follows all the others, the usual operations, do not shift the array.
+	 */
+	private static final class Bucket {
+
+		/** The events. */
+		private SimEvent[] items = new SimEvent[4];
+
+		/** The position of the first event. */
+		private int head = 0;
+
+		/** The position after the last event. */
+		private int tail = 0;
+
+		private int size() {
+			return tail - head;
+		}
+
+		private SimEvent first() {
+			return items[head];
+		}
+
+		private SimEvent pollFirst() {
+			SimEvent first = items[head];
+			items[head++] = null;
+			if (head == tail) {
+				head = tail = 0;
+			}
+			return first;
+		}
+
+		private void insert(SimEvent event) {
+			if (head == tail || !event.precedes(items[tail - 1])) {
+				ensureTailCapacity();
+				items[tail++] = event;
+				return;
+			}
+			int pos = search(event);
+			if (head > 0 && pos - head < tail - pos) {
+				System.arraycopy(items, head, items, head - 1, pos - head);
+				head--;
+				items[pos - 1] = event;
+			} else {
+				ensureTailCapacity();
+				pos = search(event);
+				System.arraycopy(items, pos, items, pos + 1, tail - pos);
+				items[pos] = event;
+				tail++;
+			}
+		}
+
+		private boolean remove(SimEvent event) {
+			int pos = search(event);
+			if (pos == tail || items[pos] != event) {
+				return false;
+			}
+			System.arraycopy(items, pos + 1, items, pos, tail - pos - 1);
+			items[--tail] = null;
+			if (head == tail) {
+				head = tail = 0;
+			}
+			return true;
+		}
+
+		/**
+		 * Finds the position of the first event that does not precede the given one.
+		 */
+		private int search(SimEvent event) {
+			int low = head;
+			int high = tail;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (items[mid].precedes(event)) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private void ensureTailCapacity() {
+			if (tail < items.length) {
+				return;
+			}
+			if (head > 0) {
+				System.arraycopy(items, head, items, 0, tail - head);
+				Arrays.fill(items, tail - head, tail, null);
+				tail -= head;
+				head = 0;
+			} else {
+				items = Arrays.copyOf(items, items.length * 2);
+			}
+		}
+	}
+
+}
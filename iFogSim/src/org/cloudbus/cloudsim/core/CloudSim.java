@@ -10,12 +10,10 @@ package org.cloudbus.cloudsim.core;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.predicates.Predicate;
@@ -39,31 +37,9 @@ public class CloudSim {
 	/** The Constant CLOUDSIM_VERSION_STRING. */
 	private static final String CLOUDSIM_VERSION_STRING = "3.0";
 
-	/** The id of CIS entity. */
-	private static int cisId = -1;
-
-	/** The id of CloudSimShutdown entity. */
-	@SuppressWarnings("unused")
-	private static int shutdownId = -1;
-
-	/** The CIS object. */
-	private static CloudInformationService cis = null;
-
 	/** The Constant NOT_FOUND. */
 	private static final int NOT_FOUND = -1;
 
-	/** The trace flag. */
-	@SuppressWarnings("unused")
-	private static boolean traceFlag = false;
-
-	/** The calendar. */
-	private static Calendar calendar = null;
-
-	/** The termination time. */
-	private static double terminateAt = -1;
-
-	/** The minimal time between events. Events within shorter periods after the last event are discarded. */
-	private static double minTimeBetweenEvents = 0.1;
 	
 	/**
 	 * Initialises all the common attributes.
@@ -78,21 +54,22 @@ public class CloudSim {
 	 */
 	private static void initCommonVariable(Calendar _calendar, boolean _traceFlag, int numUser)
 			throws Exception {
+		SimulationContext sim = SimulationContext.current();
 		initialize();
 		// NOTE: the order for the below 3 lines are important
-		traceFlag = _traceFlag;
+		sim.traceFlag = _traceFlag;
 
 		// Set the current Wall clock time as the starting time of
 		// simulation
 		if (_calendar == null) {
-			calendar = Calendar.getInstance();
+			sim.calendar = Calendar.getInstance();
 		} else {
-			calendar = _calendar;
+			sim.calendar = _calendar;
 		}
 
 		// creates a CloudSimShutdown object
 		CloudSimShutdown shutdown = new CloudSimShutdown("CloudSimShutdown", numUser);
-		shutdownId = shutdown.getId();
+		sim.shutdownId = shutdown.getId();
 	}
 
 	/**
@@ -117,14 +94,15 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static void init(int numUser, Calendar cal, boolean traceFlag) {
+		SimulationContext sim = SimulationContext.current();
 		try {
 			initCommonVariable(cal, traceFlag, numUser);
 
 			// create a GIS object
-			cis = new CloudInformationService("CloudInformationService");
+			sim.cis = new CloudInformationService("CloudInformationService");
 
 			// set all the above entity IDs
-			cisId = cis.getId();
+			sim.cisId = sim.cis.getId();
 		} catch (IllegalArgumentException s) {
 			Log.printLine("CloudSim.init(): The simulation has been terminated due to an unexpected error");
 			Log.printLine(s.getMessage());
@@ -163,7 +141,34 @@ public class CloudSim {
 	    }
 	    
 	    init(numUser, cal, traceFlag);
-	    minTimeBetweenEvents = periodBetweenEvents;
+	    SimulationContext.current().minTimeBetweenEvents = periodBetweenEvents;
+	}
+
+	/**
+	 * Initialises CloudSim parameters using the given future event queue. This method should be
+	 * called before creating any entities.
+	 * <p>
+	 * By default a {@link HeapEventQueue} is used. A {@link CalendarEventQueue} is usually faster
+	 * when hundreds of thousands of events are pending, while {@link FutureQueue} keeps the
+	 * original tree-based behaviour. All of them serve the events in the same order.
+	 * 
+	 * @param numUser the number of User Entities created
+	 * @param cal starting time for this simulation. If it is <tt>null</tt>, then the time will be
+	 *            taken from <tt>Calendar.getInstance()</tt>
+	 * @param traceFlag <tt>true</tt> if CloudSim trace need to be written
+	 * @param futureQueue an empty queue to store the future events
+	 * @see #init(int, Calendar, boolean)
+	 * @pre numUser >= 0
+	 * @post $none
+	 */
+	public static void init(int numUser, Calendar cal, boolean traceFlag, EventQueue futureQueue) {
+		if (futureQueue == null || futureQueue.size() > 0) {
+			throw new IllegalArgumentException("The future event queue should be empty and not null.");
+		}
+
+		init(numUser, cal, traceFlag);
+		// the entities created by init() have not scheduled any event yet
+		SimulationContext.current().future = futureQueue;
 	}
 	
 	
@@ -183,16 +188,17 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static double startSimulation() throws NullPointerException {
+		SimulationContext sim = SimulationContext.current();
 		Log.printLine("Starting CloudSim version " + CLOUDSIM_VERSION_STRING);
 		try {
 			double clock = run();
 
 			// reset all static variables
-			cisId = -1;
-			shutdownId = -1;
-			cis = null;
-			calendar = null;
-			traceFlag = false;
+			sim.cisId = -1;
+			sim.shutdownId = -1;
+			sim.cis = null;
+			sim.calendar = null;
+			sim.traceFlag = false;
 
 			return clock;
 		} catch (IllegalArgumentException e) {
@@ -229,7 +235,7 @@ public class CloudSim {
 	 * @return true, if successful; false otherwise.
 	 */
 	public static boolean terminateSimulation() {
-		running = false;
+		SimulationContext.current().running = false;
 		printMessage("Simulation: Reached termination time.");
 		return true;
 	}
@@ -241,10 +247,11 @@ public class CloudSim {
 	 * @return true, if successful otherwise.
 	 */
 	public static boolean terminateSimulation(double time) {
-		if (time <= clock) {
+		SimulationContext sim = SimulationContext.current();
+		if (time <= sim.clock) {
 			return false;
 		} else {
-			terminateAt = time;
+			sim.terminateAt = time;
 		}
 		return true;
 	}
@@ -255,7 +262,7 @@ public class CloudSim {
 	 * @return the minimum time between events.
 	 */
 	public static double getMinTimeBetweenEvents() {
-	    return minTimeBetweenEvents;
+	    return SimulationContext.current().minTimeBetweenEvents;
 	}
 
 	/**
@@ -268,10 +275,11 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static Calendar getSimulationCalendar() {
+		SimulationContext sim = SimulationContext.current();
 		// make a new copy
-		Calendar clone = calendar;
-		if (calendar != null) {
-			clone = (Calendar) calendar.clone();
+		Calendar clone = sim.calendar;
+		if (sim.calendar != null) {
+			clone = (Calendar) sim.calendar.clone();
 		}
 
 		return clone;
@@ -285,7 +293,7 @@ public class CloudSim {
 	 * @post $result >= -1
 	 */
 	public static int getCloudInfoServiceEntityId() {
-		return cisId;
+		return SimulationContext.current().cisId;
 	}
 
 	/**
@@ -298,59 +306,29 @@ public class CloudSim {
 	 * @post $none
 	 */
 	public static List<Integer> getCloudResourceList() {
-		if (cis == null) {
+		SimulationContext sim = SimulationContext.current();
+		if (sim.cis == null) {
 			return null;
 		}
 
-		return cis.getList();
+		return sim.cis.getList();
 	}
 
 	// ======== SIMULATION METHODS ===============//
 
-	/** The entities. */
-	private static List<SimEntity> entities;
-
-	/** The future event queue. */
-	protected static FutureQueue future;
-
-	/** The deferred event queue. */
-	protected static DeferredQueue deferred;
-
-	/** The simulation clock. */
-	private static double clock;
-
-	/** Flag for checking if the simulation is running. */
-	private static boolean running;
-
-	/** The entities by name. */
-	private static Map<String, SimEntity> entitiesByName;
-
-	// The predicates used in entity wait methods
-	/** The wait predicates. */
-	private static Map<Integer, Predicate> waitPredicates;
-
-	/** The paused. */
-	private static boolean paused = false;
-
-	/** The pause at. */
-	private static long pauseAt = -1;
-
-	/** The abrupt terminate. */
-	private static boolean abruptTerminate = false;
-
 	/**
 	 * Initialise the simulation for stand alone simulations. This function should be called at the
 	 * start of the simulation.
 	 */
 	protected static void initialize() {
+		SimulationContext sim = SimulationContext.current();
 		Log.printLine("Initialising...");
-		entities = new ArrayList<SimEntity>();
-		entitiesByName = new LinkedHashMap<String, SimEntity>();
-		future = new FutureQueue();
-		deferred = new DeferredQueue();
-		waitPredicates = new HashMap<Integer, Predicate>();
-		clock = 0;
-		running = false;
+		sim.entities = new ArrayList<SimEntity>();
+		sim.entitiesByName = new LinkedHashMap<String, SimEntity>();
+		sim.future = new HeapEventQueue();
+		sim.runnable = new RunnableSet();
+		sim.clock = 0;
+		sim.running = false;
 	}
 
 	// The two standard predicates
@@ -369,7 +347,17 @@ public class CloudSim {
 	 * @return the simulation time
 	 */
 	public static double clock() {
-		return clock;
+		return clock(SimulationContext.current());
+	}
+
+	/**
+	 * Gets the current time of a simulation.
+	 * 
+	 * @param sim the simulation
+	 * @return the simulation time
+	 */
+	private static double clock(SimulationContext sim) {
+		return sim.parallel != null ? sim.parallel.clock() : sim.clock;
 	}
 
 	/**
@@ -378,7 +366,31 @@ public class CloudSim {
 	 * @return The number of entities
 	 */
 	public static int getNumEntities() {
-		return entities.size();
+		return SimulationContext.current().entities.size();
+	}
+
+	/**
+	 * Gets the id of the entity being run by the current thread, i.e. the entity whose
+	 * {@link SimEntity#startEntity()}, {@link SimEntity#processEvent(SimEvent)} or
+	 * {@link SimEntity#shutdownEntity()} is being called. Components that give each entity its own
+	 * random numbers or ids use it, so that the entities get the same ones in a sequential and in a
+	 * parallel simulation.
+	 * 
+	 * @return the id of the entity, or -1 if no entity is being run
+	 */
+	public static int getRunningEntityId() {
+		SimulationContext sim = SimulationContext.current();
+		return sim.parallel != null ? sim.parallel.runningEntity() : sim.runningEntity;
+	}
+
+	/**
+	 * Tells whether the simulation of the current thread is being run by the parallel engine, see
+	 * {@link #setParallelExecution(SimulationPartitioning, int)}.
+	 * 
+	 * @return true while a parallel simulation runs
+	 */
+	public static boolean isRunningInParallel() {
+		return SimulationContext.current().parallel != null;
 	}
 
 	/**
@@ -388,7 +400,7 @@ public class CloudSim {
 	 * @return The entity, or if it could not be found
 	 */
 	public static SimEntity getEntity(int id) {
-		return entities.get(id);
+		return SimulationContext.current().entities.get(id);
 	}
 
 	/**
@@ -398,7 +410,7 @@ public class CloudSim {
 	 * @return The entity
 	 */
 	public static SimEntity getEntity(String name) {
-		return entitiesByName.get(name);
+		return SimulationContext.current().entitiesByName.get(name);
 	}
 
 	/**
@@ -408,7 +420,7 @@ public class CloudSim {
 	 * @return The entity's unique id number
 	 */
 	public static int getEntityId(String name) {
-		SimEntity obj = entitiesByName.get(name);
+		SimEntity obj = SimulationContext.current().entitiesByName.get(name);
 		if (obj == null) {
 			return NOT_FOUND;
 		} else {
@@ -458,7 +470,7 @@ public class CloudSim {
 		// create a new list to prevent the user from changing
 		// the list of entities used by Simulation
 		List<SimEntity> list = new LinkedList<SimEntity>();
-		list.addAll(entities);
+		list.addAll(SimulationContext.current().entities);
 		return list;
 	}
 
@@ -471,19 +483,23 @@ public class CloudSim {
 	 * @param e The new entity
 	 */
 	public static void addEntity(SimEntity e) {
+		SimulationContext sim = SimulationContext.current();
 		SimEvent evt;
-		if (running) {
+		if (sim.running) {
+			if (sim.parallel != null) {
+				throw new IllegalStateException("Entities can't be added during a parallel simulation.");
+			}
 			// Post an event to make this entity
-			evt = new SimEvent(SimEvent.CREATE, clock, 1, 0, 0, e);
-			future.addEvent(evt);
+			evt = new SimEvent(SimEvent.CREATE, sim.clock, 1, 0, 0, e);
+			sim.future.addEvent(evt);
 		}
 		if (e.getId() == -1) { // Only add once!
 			
 			//System.out.println("From CloudSim.addEntity(): Adding SimEntity "+e.getName());
-			int id = entities.size();
+			int id = sim.entities.size();
 			e.setId(id);
-			entities.add(e);
-			entitiesByName.put(e.getName(), e);
+			sim.entities.add(e);
+			sim.entitiesByName.put(e.getName(), e);
 		}
 	}
 
@@ -509,53 +525,65 @@ public class CloudSim {
 	 * @return true, if successful otherwise
 	 */
 	public static boolean runClockTick() {
+		SimulationContext sim = SimulationContext.current();
 		SimEntity ent;
 		boolean queue_empty;
-		
-		int entities_size = entities.size();
 
-		for (int i = 0; i < entities_size; i++) {
-			ent = entities.get(i);
+		// Only the entities that got events or were woken up since the last tick have work to do.
+		// They are run in id order, as if all the entities were checked.
+		int count = sim.runnable.takeAll();
+		for (int i = 0; i < count; i++) {
+			int id = sim.runnable.taken(i);
+			sim.runnable.unmark(id);
+			ent = sim.entities.get(id);
 			if (ent.getState() == SimEntity.RUNNABLE) {
+				sim.runningEntity = id;
 				ent.run();
 			}
 		}
+		sim.runningEntity = -1;
 				
 		// If there are more future events then deal with them
-		if (future.size() > 0) {
-			List<SimEvent> toRemove = new ArrayList<SimEvent>();
-			Iterator<SimEvent> fit = future.iterator();
+		if (sim.future.size() > 0) {
 			queue_empty = false;
-			SimEvent first = fit.next();
-			processEvent(first);
-			future.remove(first);
-
-			fit = future.iterator();
-
-			// Check if next events are at same time...
-			boolean trymore = fit.hasNext();
-			while (trymore) {
-				SimEvent next = fit.next();
-				if (next.eventTime() == first.eventTime()) {
-					processEvent(next);
-					toRemove.add(next);
-					trymore = fit.hasNext();
-				} else {
-					trymore = false;
+			double time = sim.future.peek().eventTime();
+
+			// Process all the events at the same time, including the ones they may create
+			sim.currentEvents.clear();
+			while (sim.future.pollAllAt(time, sim.currentEvents) > 0) {
+				for (int i = 0; i < sim.currentEvents.size(); i++) {
+					processEvent(sim.currentEvents.get(i));
 				}
+				sim.currentEvents.clear();
 			}
 
-			future.removeAll(toRemove);
-
 		} else {
 			queue_empty = true;
-			running = false;
+			sim.running = false;
 			printMessage("Simulation: No more future events");
 		}
 
 		return queue_empty;
 	}
 
+	/**
+	 * Adds an entity to the ones to be run in the next clock tick. This method is called whenever
+	 * an entity becomes runnable or gets an event while it is runnable.
+	 * 
+	 * @param id the id of the entity
+	 */
+	static void markRunnable(int id) {
+		SimulationContext sim = SimulationContext.current();
+		if (id < 0) {
+			return;
+		}
+		if (sim.parallel != null) {
+			sim.parallel.markRunnable(id);
+		} else if (sim.runnable != null) {
+			sim.runnable.add(id);
+		}
+	}
+
 	/**
 	 * Internal method used to stop the simulation. This method should <b>not</b> be used directly.
 	 */
@@ -570,9 +598,10 @@ public class CloudSim {
 	 * @param delay the delay
 	 */
 	public static void hold(int src, long delay) {
-		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
-		future.addEvent(e);
-		entities.get(src).setState(SimEntity.HOLDING);
+		SimulationContext sim = SimulationContext.current();
+		SimEvent e = newEvent(sim, SimEvent.HOLD_DONE, clock(sim) + delay, src, -1, -1, null);
+		schedule(sim, e);
+		sim.entities.get(src).setState(SimEntity.HOLDING);
 	}
 
 	/**
@@ -582,9 +611,10 @@ public class CloudSim {
 	 * @param delay the delay
 	 */
 	public static void pause(int src, double delay) {
-		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
-		future.addEvent(e);
-		entities.get(src).setState(SimEntity.HOLDING);
+		SimulationContext sim = SimulationContext.current();
+		SimEvent e = newEvent(sim, SimEvent.HOLD_DONE, clock(sim) + delay, src, -1, -1, null);
+		schedule(sim, e);
+		sim.entities.get(src).setState(SimEntity.HOLDING);
 	}
 
 	/**
@@ -601,8 +631,9 @@ public class CloudSim {
 			throw new IllegalArgumentException("Send delay can't be negative.");
 		}
 
-		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
-		future.addEvent(e);
+		SimulationContext sim = SimulationContext.current();
+		SimEvent e = newEvent(sim, SimEvent.SEND, clock(sim) + delay, src, dest, tag, data);
+		schedule(sim, e);
 	}
 
 	/**
@@ -615,12 +646,42 @@ public class CloudSim {
 	 * @param data the data
 	 */
 	public static void sendFirst(int src, int dest, double delay, int tag, Object data) {
+		SimulationContext sim = SimulationContext.current();
 		if (delay < 0) {
 			throw new IllegalArgumentException("Send delay can't be negative.");
 		}
 
-		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
-		future.addEventFirst(e);
+		if (sim.parallel != null) {
+			throw new IllegalStateException("Events can't be sent first during a parallel simulation.");
+		}
+
+		SimEvent e = newEvent(sim, SimEvent.SEND, sim.clock + delay, src, dest, tag, data);
+		sim.future.addEventFirst(e);
+	}
+
+	/**
+	 * Adds an event to the future event queue, or to the queue of its partition during a parallel
+	 * simulation.
+	 * 
+	 * @param e the event
+	 */
+	private static void schedule(SimEvent e) {
+		schedule(SimulationContext.current(), e);
+	}
+
+	/**
+	 * Adds an event to the future event queue of a simulation, or to the queue of its partition
+	 * during a parallel simulation.
+	 * 
+	 * @param sim the simulation
+	 * @param e the event
+	 */
+	private static void schedule(SimulationContext sim, SimEvent e) {
+		if (sim.parallel != null) {
+			sim.parallel.schedule(e);
+		} else {
+			sim.future.addEvent(e);
+		}
 	}
 
 	/**
@@ -632,10 +693,11 @@ public class CloudSim {
 	 * @param p the p
 	 */
 	public static void wait(int src, Predicate p) {
-		entities.get(src).setState(SimEntity.WAITING);
+		SimEntity ent = SimulationContext.current().entities.get(src);
+		ent.setState(SimEntity.WAITING);
 		if (p != SIM_ANY) {
 			// If a predicate has been used store it in order to check it
-			waitPredicates.put(src, p);
+			ent.setWaitPredicate(p);
 		}
 	}
 
@@ -647,16 +709,7 @@ public class CloudSim {
 	 * @return the int
 	 */
 	public static int waiting(int d, Predicate p) {
-		int count = 0;
-		SimEvent event;
-		Iterator<SimEvent> iterator = deferred.iterator();
-		while (iterator.hasNext()) {
-			event = iterator.next();
-			if ((event.getDestination() == d) && (p.match(event))) {
-				count++;
-			}
-		}
-		return count;
+		return SimulationContext.current().entities.get(d).getDeferredQueue().count(p);
 	}
 
 	/**
@@ -667,16 +720,7 @@ public class CloudSim {
 	 * @return the sim event
 	 */
 	public static SimEvent select(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iterator = deferred.iterator();
-		while (iterator.hasNext()) {
-			ev = iterator.next();
-			if (ev.getDestination() == src && p.match(ev)) {
-				iterator.remove();
-				break;
-			}
-		}
-		return ev;
+		return SimulationContext.current().entities.get(src).getDeferredQueue().removeFirst(p);
 	}
 
 	/**
@@ -687,15 +731,7 @@ public class CloudSim {
 	 * @return the sim event
 	 */
 	public static SimEvent findFirstDeferred(int src, Predicate p) {
-		SimEvent ev = null;
-		Iterator<SimEvent> iterator = deferred.iterator();
-		while (iterator.hasNext()) {
-			ev = iterator.next();
-			if (ev.getDestination() == src && p.match(ev)) {
-				break;
-			}
-		}
-		return ev;
+		return SimulationContext.current().entities.get(src).getDeferredQueue().findFirst(p);
 	}
 
 	/**
@@ -706,15 +742,23 @@ public class CloudSim {
 	 * @return the sim event
 	 */
 	public static SimEvent cancel(int src, Predicate p) {
+		SimulationContext sim = SimulationContext.current();
+		if (sim.parallel != null) {
+			return sim.parallel.cancel(src, p);
+		}
+
+		// the queue is not necessarily iterated in temporal order, so look for the earliest match
 		SimEvent ev = null;
-		Iterator<SimEvent> iter = future.iterator();
+		Iterator<SimEvent> iter = sim.future.iterator();
 		while (iter.hasNext()) {
-			ev = iter.next();
-			if (ev.getSource() == src && p.match(ev)) {
-				iter.remove();
-				break;
+			SimEvent next = iter.next();
+			if (next.getSource() == src && p.match(next) && (ev == null || next.precedes(ev))) {
+				ev = next;
 			}
 		}
+		if (ev != null) {
+			sim.future.remove(ev);
+		}
 
 		return ev;
 	}
@@ -728,16 +772,23 @@ public class CloudSim {
 	 * @return true, if successful
 	 */
 	public static boolean cancelAll(int src, Predicate p) {
+		SimulationContext sim = SimulationContext.current();
+		if (sim.parallel != null) {
+			return sim.parallel.cancelAll(src, p);
+		}
+
 		SimEvent ev = null;
-		int previousSize = future.size();
-		Iterator<SimEvent> iter = future.iterator();
+		int previousSize = sim.future.size();
+		List<SimEvent> toCancel = new ArrayList<SimEvent>();
+		Iterator<SimEvent> iter = sim.future.iterator();
 		while (iter.hasNext()) {
 			ev = iter.next();
 			if (ev.getSource() == src && p.match(ev)) {
-				iter.remove();
+				toCancel.add(ev);
 			}
 		}
-		return previousSize < future.size();
+		sim.future.removeAll(toCancel);
+		return previousSize < sim.future.size();
 	}
 
 	//
@@ -750,13 +801,24 @@ public class CloudSim {
 	 * @param e the e
 	 */
 	private static void processEvent(SimEvent e) {
-		int dest, src;
-		SimEntity dest_ent;
+		SimulationContext sim = SimulationContext.current();
 		// Update the system's clock
-		if (e.eventTime() < clock) {
+		if (e.eventTime() < sim.clock) {
 			throw new IllegalArgumentException("Past event detected.");
 		}
-		clock = e.eventTime();
+		sim.clock = e.eventTime();
+		dispatchEvent(e);
+	}
+
+	/**
+	 * Processes an event at the current time, without updating the clock.
+	 * 
+	 * @param e the e
+	 */
+	static void dispatchEvent(SimEvent e) {
+		SimulationContext sim = SimulationContext.current();
+		int dest, src;
+		SimEntity dest_ent;
 
 		// Ok now process it
 		switch (e.getType()) {
@@ -766,6 +828,7 @@ public class CloudSim {
 			case SimEvent.CREATE:
 				SimEntity newe = (SimEntity) e.getData();
 				addEntityDynamically(newe);
+				sim.recycle(e);
 				break;
 
 			case SimEvent.SEND:
@@ -775,19 +838,22 @@ public class CloudSim {
 					throw new IllegalArgumentException("Attempt to send to a null entity detected.");
 				} else {
 					int tag = e.getTag();
-					dest_ent = entities.get(dest);
+					dest_ent = sim.entities.get(dest);
 					if (dest_ent.getState() == SimEntity.WAITING) {
-						Integer destObj = Integer.valueOf(dest);
-						Predicate p = waitPredicates.get(destObj);
+						Predicate p = dest_ent.getWaitPredicate();
 						if ((p == null) || (tag == 9999) || (p.match(e))) {
-							dest_ent.setEventBuffer((SimEvent) e.clone());
+							// the event has left the future queue, so it can be handed over as is
+							dest_ent.setEventBuffer(e);
 							dest_ent.setState(SimEntity.RUNNABLE);
-							waitPredicates.remove(destObj);
+							dest_ent.setWaitPredicate(null);
 						} else {
-							deferred.addEvent(e);
+							dest_ent.getDeferredQueue().addEvent(e);
 						}
 					} else {
-						deferred.addEvent(e);
+						dest_ent.getDeferredQueue().addEvent(e);
+						if (dest_ent.getState() == SimEntity.RUNNABLE) {
+							markRunnable(dest);
+						}
 					}
 				}
 				break;
@@ -797,8 +863,9 @@ public class CloudSim {
 				if (src < 0) {
 					throw new IllegalArgumentException("Null entity holding.");
 				} else {
-					entities.get(src).setState(SimEntity.RUNNABLE);
+					sim.entities.get(src).setState(SimEntity.RUNNABLE);
 				}
+				sim.recycle(e);
 				break;
 
 			default:
@@ -811,12 +878,19 @@ public class CloudSim {
 	 * simulations.
 	 */
 	public static void runStart() {
-		running = true;
+		SimulationContext sim = SimulationContext.current();
+		sim.running = true;
 		// Start all the entities
-		for (SimEntity ent : entities) {
+		for (SimEntity ent : sim.entities) {
 			//System.out.println("From CloudSim.runStart(): Starting SimEntity "+ent.getName());
+			sim.runningEntity = ent.getId();
 			ent.startEntity();
 		}
+		sim.runningEntity = -1;
+		// Give every entity a first chance to run, as their initial state is RUNNABLE
+		for (SimEntity ent : sim.entities) {
+			markRunnable(ent.getId());
+		}
 
 		printMessage("Entities started.");
 	}
@@ -828,7 +902,7 @@ public class CloudSim {
 	 * @return if the simulation is still running, otherwise
 	 */
 	public static boolean running() {
-		return running;
+		return SimulationContext.current().running;
 	}
 
 	/**
@@ -837,8 +911,9 @@ public class CloudSim {
 	 * @return true, if successful otherwise.
 	 */
 	public static boolean pauseSimulation() {
-		paused = true;
-		return paused;
+		SimulationContext sim = SimulationContext.current();
+		sim.paused = true;
+		return sim.paused;
 	}
 
 	/**
@@ -848,10 +923,11 @@ public class CloudSim {
 	 * @return true, if successful otherwise.
 	 */
 	public static boolean pauseSimulation(long time) {
-		if (time <= clock) {
+		SimulationContext sim = SimulationContext.current();
+		if (time <= sim.clock) {
 			return false;
 		} else {
-			pauseAt = time;
+			sim.pauseAt = time;
 		}
 		return true;
 	}
@@ -862,13 +938,14 @@ public class CloudSim {
 	 * @return if the simulation has been restarted or or otherwise.
 	 */
 	public static boolean resumeSimulation() {
-		paused = false;
+		SimulationContext sim = SimulationContext.current();
+		sim.paused = false;
 
-		if (pauseAt <= clock) {
-			pauseAt = -1;
+		if (sim.pauseAt <= sim.clock) {
+			sim.pauseAt = -1;
 		}
 
-		return !paused;
+		return !sim.paused;
 	}
 
 	/**
@@ -878,29 +955,33 @@ public class CloudSim {
 	 * @return the double last clock value
 	 */
 	public static double run() {
-		if (!running) {
+		SimulationContext sim = SimulationContext.current();
+		if (!sim.running) {
 			runStart();
 		}
+		if (sim.partitioning != null) {
+			return runParallel();
+		}
 		while (true) {
-			if (runClockTick() || abruptTerminate) {
+			if (runClockTick() || sim.abruptTerminate) {
 				break;
 			}
 
 			// this block allows termination of simulation at a specific time
-			if (terminateAt > 0.0 && clock >= terminateAt) {
+			if (sim.terminateAt > 0.0 && sim.clock >= sim.terminateAt) {
 				terminateSimulation();
-				clock = terminateAt;
+				sim.clock = sim.terminateAt;
 				break;
 			}
 
-			if (pauseAt != -1
-					&& ((future.size() > 0 && clock <= pauseAt && pauseAt <= future.iterator().next()
-							.eventTime()) || future.size() == 0 && pauseAt <= clock)) {
+			if (sim.pauseAt != -1
+					&& ((sim.future.size() > 0 && sim.clock <= sim.pauseAt && sim.pauseAt <= sim.future.peek()
+							.eventTime()) || sim.future.size() == 0 && sim.pauseAt <= sim.clock)) {
 				pauseSimulation();
-				clock = pauseAt;
+				sim.clock = sim.pauseAt;
 			}
 
-			while (paused) {
+			while (sim.paused) {
 				try {
 					Thread.sleep(100);
 				} catch (InterruptedException e) {
@@ -917,44 +998,206 @@ public class CloudSim {
 		return clock;
 	}
 
+	/**
+	 * Runs the started simulation with the parallel engine.
+	 * 
+	 * @return the double last clock value
+	 */
+	private static double runParallel() {
+		SimulationContext sim = SimulationContext.current();
+		if (sim.paused || sim.pauseAt != -1) {
+			throw new IllegalStateException("A parallel simulation can't be paused.");
+		}
+		boolean terminated;
+		sim.parallel = new ParallelEngine(sim.entities, sim.future, sim.partitioning, sim.parallelThreads);
+		try {
+			terminated = sim.parallel.run(sim.terminateAt);
+			sim.clock = sim.parallel.getLastTime();
+		} finally {
+			sim.parallel.shutdown();
+			sim.parallel = null;
+		}
+
+		if (terminated) {
+			terminateSimulation();
+			sim.clock = sim.terminateAt;
+		} else if (!sim.abruptTerminate) {
+			sim.running = false;
+			printMessage("Simulation: No more future events");
+		}
+
+		double clock = clock();
+
+		finishSimulation();
+		runStop();
+
+		return clock;
+	}
+
 	/**
 	 * Internal method that allows the entities to terminate. This method should <b>not</b> be used
 	 * in user simulations.
 	 */
 	public static void finishSimulation() {
+		SimulationContext sim = SimulationContext.current();
 		// Allow all entities to exit their body method
-		if (!abruptTerminate) {
-			for (SimEntity ent : entities) {
+		if (!sim.abruptTerminate) {
+			for (SimEntity ent : sim.entities) {
 				if (ent.getState() != SimEntity.FINISHED) {
+					sim.runningEntity = ent.getId();
 					ent.run();
 				}
 			}
 		}
 
-		for (SimEntity ent : entities) {
+		for (SimEntity ent : sim.entities) {
+			sim.runningEntity = ent.getId();
 			ent.shutdownEntity();
 		}
+		sim.runningEntity = -1;
 
 		// reset all static variables
 		// Private data members
-		entities = null;
-		entitiesByName = null;
-		future = null;
-		deferred = null;
-		clock = 0L;
-		running = false;
-
-		waitPredicates = null;
-		paused = false;
-		pauseAt = -1;
-		abruptTerminate = false;
+		sim.entities = null;
+		sim.entitiesByName = null;
+		sim.future = null;
+		sim.clock = 0L;
+		sim.running = false;
+
+		sim.runnable = null;
+		sim.paused = false;
+		sim.pauseAt = -1;
+		sim.abruptTerminate = false;
+		sim.partitioning = null;
+		sim.parallelThreads = 1;
 	}
 
 	/**
 	 * Abruptally terminate.
 	 */
 	public static void abruptallyTerminate() {
-		abruptTerminate = true;
+		SimulationContext.current().abruptTerminate = true;
+	}
+
+	/**
+	 * Checks if the simulation has been abruptly terminated.
+	 * 
+	 * @return true, if {@link #abruptallyTerminate()} has been called
+	 */
+	static boolean isAbruptlyTerminated() {
+		return SimulationContext.current().abruptTerminate;
+	}
+
+	/**
+	 * Runs the next simulation on several threads. The entities are split into partitions, and the
+	 * events of different partitions are processed in parallel as long as no event sent by one
+	 * partition can reach another one in the meantime, which is guaranteed by the lookahead between
+	 * them. The entities process the same events in the same order as in a sequential simulation.
+	 * <p>
+	 * This method should be called before {@link #startSimulation()}. A parallel simulation can't be
+	 * paused, and its entities can't be added dynamically or use
+	 * {@link #sendFirst(int, int, double, int, Object)}. Entities that update a state shared with
+	 * other partitions should do it with {@link #runOrdered(Runnable)}.
+	 * 
+	 * @param simulationPartitioning the partitioning of the entities, or <tt>null</tt> to run the
+	 *            simulation sequentially
+	 * @param threads the number of threads
+	 */
+	public static void setParallelExecution(SimulationPartitioning simulationPartitioning, int threads) {
+		SimulationContext sim = SimulationContext.current();
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads should be positive, but is:" + threads);
+		}
+		if (sim.parallel != null) {
+			throw new IllegalStateException("A parallel simulation is already running.");
+		}
+		sim.partitioning = simulationPartitioning;
+		sim.parallelThreads = threads;
+	}
+
+	/**
+	 * Makes the simulations of the current context reuse the events their entities have processed
+	 * instead of allocating new ones, which lowers the garbage collection load of long simulations.
+	 * With pooling, an entity must not keep a reference to an event after its
+	 * {@link SimEntity#processEvent(SimEvent)} returns, only to the data of the event. Events taken
+	 * with {@link SimEntity#selectEvent(Predicate)} or {@link #cancel(int, Predicate)} outside of
+	 * {@link SimEntity#run()} are never reused. Events are not pooled during parallel simulations.
+	 * 
+	 * @param enabled whether the events are pooled
+	 */
+	public static void setEventPooling(boolean enabled) {
+		SimulationContext sim = SimulationContext.current();
+		if (!enabled) {
+			sim.eventPool = null;
+		} else if (sim.eventPool == null) {
+			sim.eventPool = new EventPool(EventPool.DEFAULT_CAPACITY);
+		}
+	}
+
+	/**
+	 * Checks if the events of the current context are pooled.
+	 * 
+	 * @return true, if {@link #setEventPooling(boolean)} enabled pooling
+	 */
+	public static boolean isEventPooling() {
+		return SimulationContext.current().eventPool != null;
+	}
+
+	/**
+	 * Sets whether the hosts, VMs and energy-aware VM schedulers of the current context record the
+	 * history of their state. The history grows with the simulated time, so long simulations which
+	 * do not read it can turn it off to bound their memory.
+	 * 
+	 * @param recorded whether the history is recorded, true by default
+	 */
+	public static void setStateHistoryRecorded(boolean recorded) {
+		SimulationContext.current().stateHistoryRecorded = recorded;
+	}
+
+	/**
+	 * Checks if the state history is recorded in the current context.
+	 * 
+	 * @return true, unless {@link #setStateHistoryRecorded(boolean)} turned it off
+	 */
+	public static boolean isStateHistoryRecorded() {
+		return SimulationContext.current().stateHistoryRecorded;
+	}
+
+	/**
+	 * Creates an event, reusing a processed one if events are pooled.
+	 * 
+	 * @param sim the simulation
+	 * @param evtype the internal type
+	 * @param time the time at which the event should occur
+	 * @param src the id of the entity who scheduled the event
+	 * @param dest the id of the entity the event will be sent to
+	 * @param tag the user defined type of the event
+	 * @param data the data the event is carrying
+	 * @return the event
+	 */
+	private static SimEvent newEvent(SimulationContext sim, int evtype, double time, int src, int dest, int tag,
+			Object data) {
+		if (sim.eventPool != null && sim.parallel == null) {
+			return sim.eventPool.obtain(evtype, time, src, dest, tag, data);
+		}
+		return new SimEvent(evtype, time, src, dest, tag, data);
+	}
+
+	/**
+	 * Runs an action that updates a state shared by several entities, such as a global statistic.
+	 * In a sequential simulation the action is run immediately. In a parallel simulation it may be
+	 * deferred until the partitions synchronise, and the actions of all the partitions are then run
+	 * in the order of the sequential simulation, with the clock at the time they were requested.
+	 * 
+	 * @param action the action
+	 */
+	public static void runOrdered(Runnable action) {
+		SimulationContext sim = SimulationContext.current();
+		if (sim.parallel != null) {
+			sim.parallel.runOrdered(action);
+		} else {
+			action.run();
+		}
 	}
 
 	/**
@@ -972,7 +1215,7 @@ public class CloudSim {
 	 * @return true, if is paused
 	 */
 	public static boolean isPaused() {
-		return paused;
+		return SimulationContext.current().paused;
 	}
 
 }
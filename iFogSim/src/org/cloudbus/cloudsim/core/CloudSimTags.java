@@ -265,6 +265,9 @@ public class CloudSimTags {
 
 	public static final int NextCycle = BASE + 48;
 
+	/** Denotes that the response to a call of an ExternalServiceEntity is due */
+	public static final int EXTERNAL_SERVICE_DUE = BASE + 49;
+
 	/** Private Constructor */
 	private CloudSimTags() {
 		throw new UnsupportedOperationException("CloudSim Tags cannot be instantiated");
@@ -8,15 +8,22 @@
 
 package org.cloudbus.cloudsim.core;
 
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.core.predicates.PredicateAny;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
 
 /**
- * This class implements the deferred event queue used by {@link Simulation}. The event queue uses a
- * linked list to store the events.
- * 
+ * This class implements the deferred event queue ("mailbox") of a {@link SimEntity}. Each entity
+ * owns one, so looking up the events waiting for an entity never scans the events of the others.
+ * The event queue uses a doubly linked list to store the events in temporal order. Optionally, the
+ * events are also linked per tag, so lookups with a {@link PredicateType} only visit the events
+ * with the wanted tags and lookups with a {@link PredicateAny} only look at the head of the queue.
+ *
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  * @see Simulation
@@ -24,65 +31,379 @@ import java.util.ListIterator;
  */
 public class DeferredQueue {
 
-	/** The list. */
-	private final List<SimEvent> list = new LinkedList<SimEvent>();
+	/** The first node of the list. */
+	private Node first;
+
+	/** The last node of the list. */
+	private Node last;
+
+	/** The number of events in the queue. */
+	private int size = 0;
+
+	/** The insertion order of the last added event. */
+	private long sequence = 0;
+
+	/** The maximal number of unlinked nodes kept for reuse. */
+	private static final int MAX_FREE_NODES = 64;
+
+	/** The unlinked nodes kept for reuse, linked through their next field. */
+	private Node freeNodes;
 
-	/** The max time. */
-	private double maxTime = -1;
+	/** The number of unlinked nodes kept for reuse. */
+	private int freeCount = 0;
+
+	/** The events linked per tag, or <tt>null</tt> if the queue is not indexed. */
+	private final Map<Integer, TagList> tagIndex;
+
+	/**
+	 * Creates an empty queue indexed by tag.
+	 */
+	public DeferredQueue() {
+		this(true);
+	}
+
+	/**
+	 * Creates an empty queue.
+	 *
+	 * @param indexByTag whether the events are also linked per tag
+	 */
+	public DeferredQueue(boolean indexByTag) {
+		tagIndex = indexByTag ? new HashMap<Integer, TagList>() : null;
+	}
 
 	/**
 	 * Adds a new event to the queue. Adding a new event to the queue preserves the temporal order
 	 * of the events.
-	 * 
+	 *
 	 * @param newEvent The event to be added to the queue.
 	 */
 	public void addEvent(SimEvent newEvent) {
 		// The event has to be inserted as the last of all events
 		// with the same event_time(). Yes, this matters.
+		Node node = newNode(newEvent, sequence++);
 		double eventTime = newEvent.eventTime();
-		if (eventTime >= maxTime) {
-			list.add(newEvent);
-			maxTime = eventTime;
-			return;
-		}
-
-		ListIterator<SimEvent> iterator = list.listIterator();
-		SimEvent event;
-		while (iterator.hasNext()) {
-			event = iterator.next();
-			if (event.eventTime() > eventTime) {
-				iterator.previous();
-				iterator.add(newEvent);
-				return;
+
+		Node previous = last;
+		while (previous != null && previous.event.eventTime() > eventTime) {
+			previous = previous.prev;
+		}
+		node.prev = previous;
+		node.next = previous == null ? first : previous.next;
+		if (node.prev == null) {
+			first = node;
+		} else {
+			node.prev.next = node;
+		}
+		if (node.next == null) {
+			last = node;
+		} else {
+			node.next.prev = node;
+		}
+		size++;
+
+		if (tagIndex != null) {
+			Integer tag = Integer.valueOf(newEvent.getTag());
+			TagList list = tagIndex.get(tag);
+			if (list == null) {
+				list = new TagList();
+				tagIndex.put(tag, list);
+			}
+			list.add(node);
+		}
+	}
+
+	/**
+	 * Counts the events matching a predicate.
+	 *
+	 * @param p the predicate
+	 * @return the number of matching events
+	 */
+	public int count(Predicate p) {
+		if (p instanceof PredicateAny) {
+			return size;
+		}
+		if (tagIndex != null && p instanceof PredicateType) {
+			PredicateType type = (PredicateType) p;
+			int count = 0;
+			for (int i = 0; i < type.getTagCount(); i++) {
+				TagList list = tagIndex.get(type.getTag(i));
+				if (list != null && !isRepeatedTag(type, i)) {
+					count += list.size;
+				}
+			}
+			return count;
+		}
+		int count = 0;
+		for (Node node = first; node != null; node = node.next) {
+			if (p.match(node.event)) {
+				count++;
 			}
 		}
+		return count;
+	}
+
+	/**
+	 * Gets the first event matching a predicate.
+	 *
+	 * @param p the predicate
+	 * @return the first matching event, or <tt>null</tt> if none matches
+	 */
+	public SimEvent findFirst(Predicate p) {
+		Node node = findFirstNode(p);
+		return node == null ? null : node.event;
+	}
 
-		list.add(newEvent);
+	/**
+	 * Removes the first event matching a predicate.
+	 *
+	 * @param p the predicate
+	 * @return the removed event, or <tt>null</tt> if none matches
+	 */
+	public SimEvent removeFirst(Predicate p) {
+		Node node = findFirstNode(p);
+		if (node == null) {
+			return null;
+		}
+		SimEvent event = node.event;
+		unlink(node);
+		return event;
 	}
 
 	/**
-	 * Returns an iterator to the events in the queue.
-	 * 
+	 * Returns an iterator to the events in the queue, in temporal order.
+	 *
 	 * @return the iterator
 	 */
 	public Iterator<SimEvent> iterator() {
-		return list.iterator();
+		return new Iterator<SimEvent>() {
+
+			private Node next = first;
+
+			private Node current = null;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				current = next;
+				next = next.next;
+				return current.event;
+			}
+
+			@Override
+			public void remove() {
+				if (current == null) {
+					throw new IllegalStateException();
+				}
+				unlink(current);
+				current = null;
+			}
+		};
 	}
 
 	/**
 	 * Returns the size of this event queue.
-	 * 
+	 *
 	 * @return the number of events in the queue.
 	 */
 	public int size() {
-		return list.size();
+		return size;
 	}
 
 	/**
 	 * Clears the queue.
 	 */
 	public void clear() {
-		list.clear();
+		first = null;
+		last = null;
+		size = 0;
+		if (tagIndex != null) {
+			tagIndex.clear();
+		}
+	}
+
+	/**
+	 * Finds the node of the first event matching a predicate.
+	 *
+	 * @param p the predicate
+	 * @return the node, or <tt>null</tt> if none matches
+	 */
+	private Node findFirstNode(Predicate p) {
+		if (p instanceof PredicateAny) {
+			return first;
+		}
+		if (tagIndex != null && p instanceof PredicateType) {
+			PredicateType type = (PredicateType) p;
+			Node result = null;
+			for (int i = 0; i < type.getTagCount(); i++) {
+				TagList list = tagIndex.get(type.getTag(i));
+				if (list != null && list.first != null
+						&& (result == null || list.first.precedes(result))) {
+					result = list.first;
+				}
+			}
+			return result;
+		}
+		for (Node node = first; node != null; node = node.next) {
+			if (p.match(node.event)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a tag of a predicate also appears earlier in the predicate.
+	 *
+	 * @param type the predicate
+	 * @param index the index of the tag
+	 * @return true, if the tag is repeated
+	 */
+	private static boolean isRepeatedTag(PredicateType type, int index) {
+		for (int i = 0; i < index; i++) {
+			if (type.getTag(i) == type.getTag(index)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes a node from the list and from its tag list.
+	 *
+	 * @param node the node
+	 */
+	private void unlink(Node node) {
+		if (node.prev == null) {
+			first = node.next;
+		} else {
+			node.prev.next = node.next;
+		}
+		if (node.next == null) {
+			last = node.prev;
+		} else {
+			node.next.prev = node.prev;
+		}
+		size--;
+
+		if (tagIndex != null) {
+			Integer tag = Integer.valueOf(node.event.getTag());
+			// empty tag lists are kept, an entity only uses a few tags
+			tagIndex.get(tag).remove(node);
+		}
+
+		if (freeCount < MAX_FREE_NODES) {
+			node.event = null;
+			node.prev = null;
+			node.next = freeNodes;
+			freeNodes = node;
+			freeCount++;
+		}
+	}
+
+	/**
+	 * Gets a node for a new event, reusing an unlinked one if possible. An entity usually takes
+	 * its events as fast as they arrive, so its queue stays short and rarely has to allocate.
+	 *
+	 * @param event the event
+	 * @param sequence the insertion order of the event
+	 * @return the node
+	 */
+	private Node newNode(SimEvent event, long sequence) {
+		Node node = freeNodes;
+		if (node == null) {
+			return new Node(event, sequence);
+		}
+		freeNodes = node.next;
+		freeCount--;
+		node.event = event;
+		node.sequence = sequence;
+		node.next = null;
+		return node;
+	}
+
+	/**
+	 * A node of the queue, linked both in temporal order and in the list of its tag.
+	 */
+	private static final class Node {
+
+		private SimEvent event;
+
+		/** The insertion order, the list is sorted by (event time, sequence). */
+		private long sequence;
+
+		private Node prev;
+
+		private Node next;
+
+		private Node tagPrev;
+
+		private Node tagNext;
+
+		private Node(SimEvent event, long sequence) {
+			this.event = event;
+			this.sequence = sequence;
+		}
+
+		private boolean precedes(Node node) {
+			double time = event.eventTime();
+			double otherTime = node.event.eventTime();
+			return time < otherTime || (time == otherTime && sequence < node.sequence);
+		}
+	}
+
+	/**
+	 * The nodes of the events with a given tag, in temporal order.
+	 */
+	private static final class TagList {
+
+		private Node first;
+
+		private Node last;
+
+		private int size = 0;
+
+		private void add(Node node) {
+			Node previous = last;
+			while (previous != null && node.precedes(previous)) {
+				previous = previous.tagPrev;
+			}
+			node.tagPrev = previous;
+			node.tagNext = previous == null ? first : previous.tagNext;
+			if (node.tagPrev == null) {
+				first = node;
+			} else {
+				node.tagPrev.tagNext = node;
+			}
+			if (node.tagNext == null) {
+				last = node;
+			} else {
+				node.tagNext.tagPrev = node;
+			}
+			size++;
+		}
+
+		private void remove(Node node) {
+			if (node.tagPrev == null) {
+				first = node.tagNext;
+			} else {
+				node.tagPrev.tagNext = node.tagNext;
+			}
+			if (node.tagNext == null) {
+				last = node.tagPrev;
+			} else {
+				node.tagNext.tagPrev = node.tagPrev;
+			}
+			node.tagPrev = null;
+			node.tagNext = null;
+			size--;
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+/**
+ * A bounded stack of processed events that can be reused for new ones, see
+ * {@link CloudSim#setEventPooling(boolean)}. Once an entity has processed the events it got,
+ * most simulations send new events at the same rate, so a small pool is enough to avoid
+ * allocating events in the steady state.
+ *
+ * @see SimEvent
+ */
+final class EventPool {
+
+	/** The default maximal number of pooled events. */
+	static final int DEFAULT_CAPACITY = 4096;
+
+	/** The pooled events. */
+	private final SimEvent[] free;
+
+	/** The number of pooled events. */
+	private int size = 0;
+
+	/**
+	 * Creates an empty pool.
+	 *
+	 * @param capacity the maximal number of pooled events
+	 */
+	EventPool(int capacity) {
+		free = new SimEvent[capacity];
+	}
+
+	/**
+	 * Gets an event, reusing a pooled one if possible.
+	 *
+	 * @param evtype the internal type
+	 * @param time the time at which the event should occur
+	 * @param src the id of the entity who scheduled the event
+	 * @param dest the id of the entity the event will be sent to
+	 * @param tag the user defined type of the event
+	 * @param data the data the event is carrying
+	 * @return the event
+	 */
+	SimEvent obtain(int evtype, double time, int src, int dest, int tag, Object data) {
+		if (size == 0) {
+			return new SimEvent(evtype, time, src, dest, tag, data);
+		}
+		SimEvent e = free[--size];
+		free[size] = null;
+		e.reset(evtype, time, src, dest, tag, data);
+		return e;
+	}
+
+	/**
+	 * Returns a processed event to the pool. The event must not be used afterwards.
+	 *
+	 * @param e the event
+	 */
+	void release(SimEvent e) {
+		if (size < free.length) {
+			// do not keep the data reachable while the event is pooled
+			e.reset(SimEvent.ENULL, -1, -1, -1, -1, null);
+			free[size++] = e;
+		}
+	}
+
+	/**
+	 * Gets the number of pooled events.
+	 *
+	 * @return the number of events
+	 */
+	int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ExternalServiceEntity turns the calls to a service outside the simulation, e.g. an HTTP server, into simulation
+ * events. An entity submits a call, which runs on its own, and keeps processing events; the response is sent back to
+ * it as an event with a {@link Response}, once the simulated latency of the call has elapsed. Many calls can be in
+ * flight at once, so that their wall-clock time overlaps with the simulation and with each other.
+ * <p>
+ * The simulated latency is either modelled, the same for every call, or measured, from the wall-clock time of the
+ * call scaled to simulated time. The simulation only waits for a call when it reaches the time of its response
+ * before the call has completed. Measured latencies make the simulation depend on the timing of the service.
+ * <p>
+ * In a parallel simulation, the service must be in the partition of the entities that use it.
+ *
+ * @since CloudSim Toolkit 3.0
+ */
+public class ExternalServiceEntity extends SimEntity {
+
+	/** The minimum simulated latency, or the latency of every call if it is not measured */
+	private final double minLatency;
+
+	/** The simulated time per second of wall-clock time of a call, or 0 if the latency is not measured */
+	private final double timeScale;
+
+	private long submittedCalls = 0;
+	private long completedCalls = 0;
+	private double totalLatency = 0;
+	private double maxLatency = 0;
+
+	/**
+	 * Creates a service whose calls all take the same simulated latency.
+	 *
+	 * @param name the name of the entity
+	 * @param latency the simulated latency of every call
+	 */
+	public ExternalServiceEntity(String name, double latency) {
+		this(name, latency, 0);
+	}
+
+	/**
+	 * Creates a service whose latency is measured.
+	 *
+	 * @param name the name of the entity
+	 * @param minLatency the minimum simulated latency of a call
+	 * @param timeScale the simulated time per second of wall-clock time of a call, or 0 for a latency of
+	 *            <tt>minLatency</tt>
+	 */
+	public ExternalServiceEntity(String name, double minLatency, double timeScale) {
+		super(name);
+		if (!(minLatency >= 0) || Double.isInfinite(minLatency)) {
+			throw new IllegalArgumentException("The latency must be non-negative and finite, but is:" + minLatency);
+		}
+		if (!(timeScale >= 0) || Double.isInfinite(timeScale)) {
+			throw new IllegalArgumentException("The time scale must be non-negative and finite, but is:" + timeScale);
+		}
+		this.minLatency = minLatency;
+		this.timeScale = timeScale;
+	}
+
+	/**
+	 * Submits a call to the service. The response is sent to the requester as an event with the given tag and a
+	 * {@link Response} as data.
+	 *
+	 * @param requesterId the id of the entity the response is sent to
+	 * @param responseTag the tag of the response event
+	 * @param call the call, already started
+	 * @return the request, which is also the data of the response
+	 */
+	public <T> Response<T> submit(int requesterId, int responseTag, CompletableFuture<T> call) {
+		if (!CloudSim.running()) {
+			throw new IllegalStateException("Calls can only be submitted during the simulation");
+		}
+		Response<T> response = new Response<T>(++submittedCalls, requesterId, responseTag, CloudSim.clock(),
+				System.nanoTime(), call);
+		schedule(getId(), minLatency, CloudSimTags.EXTERNAL_SERVICE_DUE, response);
+		return response;
+	}
+
+	@Override
+	public void processEvent(SimEvent ev) {
+		if (ev.getTag() == CloudSimTags.EXTERNAL_SERVICE_DUE) {
+			Response<?> response = (Response<?>) ev.getData();
+			// waits for the call only if it has not completed in the meantime
+			response.await();
+			double latency = minLatency;
+			if (timeScale > 0) {
+				latency = Math.max(minLatency, (response.completionNanos - response.submissionNanos) / 1e9 * timeScale);
+			}
+			response.latency = latency;
+			completedCalls++;
+			totalLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+			schedule(response.requesterId, response.submissionTime + latency - CloudSim.clock(), response.responseTag,
+					response);
+		}
+	}
+
+	@Override
+	public void startEntity() {
+		// do nothing
+	}
+
+	@Override
+	public void shutdownEntity() {
+		// do nothing
+	}
+
+	public long getSubmittedCalls() {
+		return submittedCalls;
+	}
+
+	public long getCompletedCalls() {
+		return completedCalls;
+	}
+
+	/**
+	 * Gets the mean simulated latency of the completed calls, or 0 if none is.
+	 */
+	public double getMeanLatency() {
+		return completedCalls == 0 ? 0 : totalLatency / completedCalls;
+	}
+
+	public double getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * A call to an external service and, once its response event is received, its result.
+	 *
+	 * @param <T> the type of the result
+	 */
+	public static class Response<T> {
+
+		private final long requestId;
+		private final int requesterId;
+		private final int responseTag;
+		private final double submissionTime;
+		private final long submissionNanos;
+		private final CompletableFuture<T> call;
+		private volatile long completionNanos;
+		private T result;
+		private Throwable failure;
+		private double latency = Double.NaN;
+
+		private Response(long requestId, int requesterId, int responseTag, double submissionTime,
+				long submissionNanos, CompletableFuture<T> call) {
+			this.requestId = requestId;
+			this.requesterId = requesterId;
+			this.responseTag = responseTag;
+			this.submissionTime = submissionTime;
+			this.submissionNanos = submissionNanos;
+			this.call = call;
+			// the wall-clock time of the call is taken when it completes, not when the simulation reaches it
+			call.whenComplete((result, failure) -> completionNanos = System.nanoTime());
+		}
+
+		private void await() {
+			try {
+				result = call.get();
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			}
+			if (completionNanos == 0) {
+				completionNanos = System.nanoTime();
+			}
+		}
+
+		/**
+		 * Gets the result of the call.
+		 *
+		 * @throws ExecutionException if the call failed
+		 */
+		public T getResult() throws ExecutionException {
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+			return result;
+		}
+
+		public boolean isFailed() {
+			return failure != null;
+		}
+
+		public long getRequestId() {
+			return requestId;
+		}
+
+		public double getSubmissionTime() {
+			return submissionTime;
+		}
+
+		/**
+		 * Gets the simulated latency of the call, or NaN until its response is due.
+		 */
+		public double getLatency() {
+			return latency;
+		}
+	}
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This class implements the future event queue as a 4-ary heap stored in a plain array. Compared to
+ * {@link FutureQueue}, adding and polling an event does not allocate any tree node and touches
+ * fewer cache lines, since the children of a node are contiguous in the array. The iterator visits
+ * the events in heap order, not in temporal order, and does not support removal.
+ *
+ * @see EventQueue
+ * @see FutureQueue
+ */
+public class HeapEventQueue implements EventQueue {
+
+	/** The number of children of each heap node. */
+	private static final int ARITY = 4;
+
+	/** The default initial capacity of the heap. */
+	private static final int DEFAULT_CAPACITY = 64;
+
+	/** The heap array. */
+	private SimEvent[] heap;
+
+	/** The number of events in the heap. */
+	private int size = 0;
+
+	/** The serial. */
+	private long serial = 0;
+
+	/** The serial of the next event added first, below those of all the other events. */
+	private long firstSerial = Long.MIN_VALUE;
+
+	/** The insertion order of the last added event. */
+	private long sequence = 0;
+
+	/**
+	 * Creates an empty queue.
+	 */
+	public HeapEventQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty queue with the given initial capacity.
+	 *
+	 * @param initialCapacity the number of events the queue can hold before growing
+	 */
+	public HeapEventQueue(int initialCapacity) {
+		heap = new SimEvent[Math.max(initialCapacity, ARITY)];
+	}
+
+	@Override
+	public void addEvent(SimEvent newEvent) {
+		newEvent.setSerial(serial++);
+		insert(newEvent);
+	}
+
+	@Override
+	public void addEventFirst(SimEvent newEvent) {
+		newEvent.setSerial(firstSerial++);
+		insert(newEvent);
+	}
+
+	/**
+	 * Adds an event whose serial and sequence were already set by the caller, so that the order of
+	 * the events can be decided outside of this queue.
+	 *
+	 * @param newEvent the event
+	 */
+	void addEventWithOrder(SimEvent newEvent) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, heap.length * 2);
+		}
+		siftUp(size++, newEvent);
+	}
+
+	@Override
+	public SimEvent peek() {
+		return size == 0 ? null : heap[0];
+	}
+
+	@Override
+	public SimEvent poll() {
+		if (size == 0) {
+			return null;
+		}
+		SimEvent first = heap[0];
+		removeAt(0);
+		return first;
+	}
+
+	@Override
+	public int pollAllAt(double time, List<SimEvent> events) {
+		int count = 0;
+		while (size > 0 && heap[0].eventTime() == time) {
+			events.add(heap[0]);
+			removeAt(0);
+			count++;
+		}
+		return count;
+	}
+
+	@Override
+	public Iterator<SimEvent> iterator() {
+		return new Iterator<SimEvent>() {
+
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return heap[next++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Use HeapEventQueue.remove(SimEvent) instead.");
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		for (int i = 0; i < size; i++) {
+			if (heap[i] == event) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean removeAll(Collection<SimEvent> events) {
+		if (events.isEmpty()) {
+			return false;
+		}
+		Set<SimEvent> toRemove = Collections.newSetFromMap(new IdentityHashMap<SimEvent, Boolean>());
+		toRemove.addAll(events);
+
+		// compact the array and restore the heap property bottom-up, O(n) overall
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			if (!toRemove.contains(heap[i])) {
+				heap[kept++] = heap[i];
+			}
+		}
+		boolean modified = kept < size;
+		Arrays.fill(heap, kept, size, null);
+		size = kept;
+		for (int i = (size - 2) / ARITY; i >= 0; i--) {
+			siftDown(i, heap[i]);
+		}
+		return modified;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(heap, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Inserts an event whose serial has already been set.
+	 *
+	 * @param event the event
+	 */
+	private void insert(SimEvent event) {
+		event.setSequence(sequence++);
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, heap.length * 2);
+		}
+		siftUp(size++, event);
+	}
+
+	/**
+	 * Removes the event at a given position of the heap.
+	 *
+	 * @param index the position
+	 */
+	private void removeAt(int index) {
+		int last = --size;
+		SimEvent moved = heap[last];
+		heap[last] = null;
+		if (index == last) {
+			return;
+		}
+		siftDown(index, moved);
+		if (heap[index] == moved) {
+			siftUp(index, moved);
+		}
+	}
+
+	/**
+	 * Moves an event up from a position until its parent precedes it.
+	 *
+	 * @param index the starting position
+	 * @param event the event
+	 */
+	private void siftUp(int index, SimEvent event) {
+		while (index > 0) {
+			int parent = (index - 1) / ARITY;
+			SimEvent p = heap[parent];
+			if (!event.precedes(p)) {
+				break;
+			}
+			heap[index] = p;
+			index = parent;
+		}
+		heap[index] = event;
+	}
+
+	/**
+	 * Moves an event down from a position until it precedes all its children.
+	 *
+	 * @param index the starting position
+	 * @param event the event
+	 */
+	private void siftDown(int index, SimEvent event) {
+		while (true) {
+			int firstChild = index * ARITY + 1;
+			if (firstChild >= size) {
+				break;
+			}
+			int lastChild = Math.min(firstChild + ARITY, size);
+			int min = firstChild;
+			for (int c = firstChild + 1; c < lastChild; c++) {
+				if (heap[c].precedes(heap[min])) {
+					min = c;
+				}
+			}
+			if (!heap[min].precedes(event)) {
+				break;
+			}
+			heap[index] = heap[min];
+			index = min;
+		}
+		heap[index] = event;
+	}
+
+}
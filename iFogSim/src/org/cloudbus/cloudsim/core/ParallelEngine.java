@@ -0,0 +1,830 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+
+/**
+ * Runs a simulation on several threads, with a conservative synchronisation of the partitions given
+ * by a {@link SimulationPartitioning}. Each partition has its own future event queue, clock and
+ * runnable entities. The simulation proceeds in rounds: at the start of a round, each partition
+ * gets a window end, the earliest time at which an event sent by another partition could reach it
+ * (the next event time of the other partition plus the lookahead between them). The partitions then
+ * process their events before their window ends in parallel, and the events they sent to each other
+ * are exchanged at the end of the round. Entities of the {@link SimulationPartitioning#GLOBAL}
+ * partition are run alone, before the other partitions, and only up to the first event of the other
+ * partitions. When no partition can make progress, the next timestamp is simulated sequentially.
+ * <p>
+ * The entities process the same events in the same order as with {@link CloudSim#runClockTick()}:
+ * events scheduled for the same time are ordered by the time they were sent, the clock tick they
+ * were sent in and the id of the entity that was running, which is the order in which the
+ * sequential simulation adds them to its future event queue. This order is stored in the serial and
+ * sequence of the events.
+ *
+ * @see CloudSim#setParallelExecution(SimulationPartitioning, int)
+ */
+final class ParallelEngine {
+
+	/** The position of the clock tick in the sequence of an event. */
+	private static final int PHASE_SHIFT = 51;
+
+	/** The position of the running entity in the sequence of an event. */
+	private static final int RUNNER_SHIFT = 27;
+
+	/** The last clock tick at the same time that can be ordered. */
+	private static final int MAX_PHASE = (1 << (63 - PHASE_SHIFT)) - 2;
+
+	/** The highest entity id that can be ordered. */
+	private static final int MAX_RUNNER = (1 << (PHASE_SHIFT - RUNNER_SHIFT)) - 1;
+
+	/** The highest number of events an entity can send while it runs once. */
+	private static final long MAX_INDEX = (1L << RUNNER_SHIFT) - 1;
+
+	/** Sorts the deferred actions in the order of the sequential simulation. */
+	private static final Comparator<OrderedAction> ACTION_ORDER = new Comparator<OrderedAction>() {
+
+		@Override
+		public int compare(OrderedAction a1, OrderedAction a2) {
+			if (a1.time != a2.time) {
+				return a1.time < a2.time ? -1 : 1;
+			}
+			return a1.order < a2.order ? -1 : (a1.order == a2.order ? 0 : 1);
+		}
+	};
+
+	/** The entities, indexed by id. */
+	private final List<SimEntity> entities;
+
+	/** The partitions; the last one holds the global entities. */
+	private final Partition[] partitions;
+
+	/** The partition of the global entities. */
+	private final Partition global;
+
+	/** The index of the partition of each entity. */
+	private final int[] partitionOf;
+
+	/** The minimal delay of an event from a partition to another, directly or through others. */
+	private final double[][] distance;
+
+	/** The minimal delay of an event from the global partition to the others. */
+	private final double[] globalLookahead;
+
+	/** The serials of the events scheduled before the parallel run are lower than this. */
+	private final long base;
+
+	/** The threads running the partitions, or <tt>null</tt> if they are run by the caller. */
+	private final ExecutorService executor;
+
+	/** The simulation run by the engine, also run by its threads. */
+	private final SimulationContext context = SimulationContext.current();
+
+	/** The partition run by the current thread. */
+	private final ThreadLocal<Partition> current = new ThreadLocal<Partition>();
+
+	/** The clock of the code that is not run by a partition. */
+	private double clock = 0;
+
+	/** The entities run in a sequential clock tick, from all the partitions. */
+	private int[] mergedIds = new int[16];
+
+	/** The actions of all the partitions to run at the end of a round. */
+	private final List<OrderedAction> actions = new ArrayList<OrderedAction>();
+
+	/** The partitions processing events in the current round. */
+	private final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+	/**
+	 * Creates the engine and moves the events of a sequential future event queue to the partitions.
+	 * All the entities must have been started.
+	 *
+	 * @param entities the entities, indexed by id
+	 * @param future the future event queue
+	 * @param partitioning the partitioning of the entities
+	 * @param threads the number of threads
+	 */
+	ParallelEngine(List<SimEntity> entities, EventQueue future, SimulationPartitioning partitioning, int threads) {
+		int count = partitioning.getPartitionCount();
+		if (count < 1) {
+			throw new IllegalArgumentException("The number of partitions should be positive, but is:" + count);
+		}
+		this.entities = entities;
+		partitions = new Partition[count + 1];
+		for (int i = 0; i <= count; i++) {
+			partitions[i] = new Partition(i);
+		}
+		global = partitions[count];
+
+		partitionOf = new int[entities.size()];
+		for (SimEntity entity : entities) {
+			int partition = partitioning.getPartition(entity);
+			if (partition == SimulationPartitioning.GLOBAL) {
+				partition = count;
+			} else if (partition < 0 || partition >= count) {
+				throw new IllegalArgumentException("Entity " + entity.getName() + " has an invalid partition:"
+						+ partition);
+			}
+			partitionOf[entity.getId()] = partition;
+			// every entity is run in the first clock tick, as after CloudSim.runStart()
+			partitions[partition].runnable.add(entity.getId());
+		}
+
+		distance = new double[count][count];
+		globalLookahead = new double[count];
+		for (int to = 0; to < count; to++) {
+			for (int from = 0; from < count; from++) {
+				distance[from][to] = from == to ? 0 : lookahead(partitioning, from, to);
+			}
+			globalLookahead[to] = lookahead(partitioning, SimulationPartitioning.GLOBAL, to);
+		}
+		// an event may reach a partition through other partitions sooner than directly
+		for (int via = 0; via < count; via++) {
+			for (int from = 0; from < count; from++) {
+				for (int to = 0; to < count; to++) {
+					double d = distance[from][via] + distance[via][to];
+					if (d < distance[from][to]) {
+						distance[from][to] = d;
+					}
+				}
+			}
+		}
+
+		long maxSerial = -1;
+		Iterator<SimEvent> iter = future.iterator();
+		while (iter.hasNext()) {
+			maxSerial = Math.max(maxSerial, iter.next().getSerial());
+		}
+		base = maxSerial + 1;
+		// keep the serial and sequence given by the sequential queue
+		iter = future.iterator();
+		while (iter.hasNext()) {
+			SimEvent e = iter.next();
+			partitions[targetOf(e)].queue.addEventWithOrder(e);
+		}
+		future.clear();
+
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+				private int created = 0;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "CloudSim-partition-" + created++);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			executor = null;
+		}
+	}
+
+	/**
+	 * Runs the simulation until there are no more future events, or until the first events at or
+	 * after a given time have been processed.
+	 *
+	 * @param terminateAt the time at which the simulation has to be terminated, or a negative value
+	 * @return true, if the simulation was terminated at the given time
+	 */
+	boolean run(double terminateAt) {
+		int count = partitions.length;
+		double[] next = new double[count];
+		double[] window = new double[count];
+
+		runMerged(1);
+		while (!CloudSim.isAbruptlyTerminated()) {
+			double first = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				next[i] = partitions[i].nextTime();
+				first = Math.min(first, next[i]);
+			}
+			if (first == Double.POSITIVE_INFINITY) {
+				return false;
+			}
+			if (terminateAt > 0.0 && first >= terminateAt) {
+				// as the sequential simulation, process the first events after the termination time
+				processMergedBatch(first);
+				return true;
+			}
+
+			computeWindows(next, window, terminateAt);
+			boolean progress = false;
+			for (int i = 0; i < count; i++) {
+				if (next[i] < window[i]) {
+					partitions[i].windowEnd = window[i];
+					partitions[i].limit = Math.max(partitions[i].limit, window[i]);
+				}
+			}
+
+			if (next[count - 1] < window[count - 1]) {
+				runAlone(global);
+				progress = true;
+			}
+
+			tasks.clear();
+			for (int i = 0; i < count - 1; i++) {
+				if (next[i] < window[i]) {
+					tasks.add(partitions[i].task);
+				}
+			}
+			if (!tasks.isEmpty()) {
+				runTasks();
+				exchangeEvents();
+				commitActions();
+				progress = true;
+			}
+
+			if (!progress) {
+				mergedTick(first);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stops the threads of the engine.
+	 */
+	void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gets the latest time simulated by a partition.
+	 *
+	 * @return the time
+	 */
+	double getLastTime() {
+		double time = 0;
+		for (Partition partition : partitions) {
+			time = Math.max(time, partition.clock);
+		}
+		return time;
+	}
+
+	/**
+	 * Gets the simulation time of the current thread.
+	 *
+	 * @return the time
+	 */
+	double clock() {
+		Partition partition = current.get();
+		return partition != null ? partition.clock : clock;
+	}
+
+	/**
+	 * Gets the entity being run by the current thread.
+	 *
+	 * @return the id of the entity, or -1 if the thread does not run a partition
+	 */
+	int runningEntity() {
+		Partition partition = current.get();
+		return partition != null ? partition.runner : -1;
+	}
+
+	/**
+	 * Schedules an event sent by the entity running in the current thread.
+	 *
+	 * @param e the event
+	 */
+	void schedule(SimEvent e) {
+		running().schedule(e, targetOf(e));
+	}
+
+	/**
+	 * Adds an entity to the ones to be run in the next clock tick of its partition.
+	 *
+	 * @param id the id of the entity
+	 */
+	void markRunnable(int id) {
+		partitions[partitionOf[id]].runnable.add(id);
+	}
+
+	/**
+	 * Runs an action that updates a state shared by all the partitions. While the partitions run in
+	 * parallel, the action is run at the end of the round, after the actions that the sequential
+	 * simulation runs before it.
+	 *
+	 * @param action the action
+	 */
+	void runOrdered(Runnable action) {
+		Partition partition = current.get();
+		if (partition == null || !partition.concurrent) {
+			action.run();
+			return;
+		}
+		partition.actions.add(new OrderedAction(partition.clock, partition.order(partition.actionIndex++), action));
+	}
+
+	/**
+	 * Removes the first event sent by an entity that matches a predicate. Only the events sent to the
+	 * partition of the entity, or sent in the current round, can be removed.
+	 *
+	 * @param src the id of the entity
+	 * @param p the predicate
+	 * @return the removed event, or <tt>null</tt> if none matches
+	 */
+	SimEvent cancel(int src, Predicate p) {
+		Partition partition = partitions[partitionOf[src]];
+		SimEvent ev = null;
+		Iterator<SimEvent> iter = partition.queue.iterator();
+		while (iter.hasNext()) {
+			SimEvent next = iter.next();
+			if (next.getSource() == src && p.match(next) && (ev == null || next.precedes(ev))) {
+				ev = next;
+			}
+		}
+		for (SimEvent next : partition.outbox) {
+			if (next.getSource() == src && p.match(next) && (ev == null || next.precedes(ev))) {
+				ev = next;
+			}
+		}
+		if (ev != null && !partition.queue.remove(ev)) {
+			partition.outbox.remove(ev);
+		}
+		return ev;
+	}
+
+	/**
+	 * Removes all the events sent by an entity that match a predicate, with the same restrictions as
+	 * {@link #cancel(int, Predicate)}.
+	 *
+	 * @param src the id of the entity
+	 * @param p the predicate
+	 * @return true, if at least one event was removed
+	 */
+	boolean cancelAll(int src, Predicate p) {
+		Partition partition = partitions[partitionOf[src]];
+		List<SimEvent> toCancel = new ArrayList<SimEvent>();
+		Iterator<SimEvent> iter = partition.queue.iterator();
+		while (iter.hasNext()) {
+			SimEvent ev = iter.next();
+			if (ev.getSource() == src && p.match(ev)) {
+				toCancel.add(ev);
+			}
+		}
+		boolean modified = partition.queue.removeAll(toCancel);
+		for (Iterator<SimEvent> it = partition.outbox.iterator(); it.hasNext();) {
+			SimEvent ev = it.next();
+			if (ev.getSource() == src && p.match(ev)) {
+				it.remove();
+				modified = true;
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * Computes the time up to which each partition can process its events in the next round.
+	 *
+	 * @param next the time of the next event of each partition
+	 * @param window the array to store the window ends in
+	 * @param terminateAt the time at which the simulation has to be terminated, or a negative value
+	 */
+	private void computeWindows(double[] next, double[] window, double terminateAt) {
+		int count = partitions.length - 1;
+		double firstRegular = Double.POSITIVE_INFINITY;
+		for (int to = 0; to < count; to++) {
+			firstRegular = Math.min(firstRegular, next[to]);
+			double end = next[count] + globalLookahead[to];
+			for (int from = 0; from < count; from++) {
+				if (from != to) {
+					end = Math.min(end, next[from] + distance[from][to]);
+				}
+			}
+			window[to] = end;
+		}
+		// the global entities may read the state of any entity
+		window[count] = firstRegular;
+
+		if (terminateAt > 0.0) {
+			for (int i = 0; i <= count; i++) {
+				window[i] = Math.min(window[i], terminateAt);
+			}
+		}
+	}
+
+	/**
+	 * Runs a partition while the other partitions are stopped.
+	 *
+	 * @param partition the partition
+	 */
+	private void runAlone(Partition partition) {
+		current.set(partition);
+		try {
+			partition.advance(partition.windowEnd);
+		} finally {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Runs the partitions of {@link #tasks} in parallel and waits for them.
+	 */
+	private void runTasks() {
+		if (executor == null || tasks.size() == 1) {
+			for (Callable<Void> task : tasks) {
+				try {
+					task.call();
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return;
+		}
+
+		List<Future<Void>> results;
+		try {
+			results = executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the partitions.", e);
+		}
+		for (Future<Void> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the partitions.", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Moves the events sent to other partitions during the round to their queues.
+	 */
+	private void exchangeEvents() {
+		for (Partition partition : partitions) {
+			List<SimEvent> outbox = partition.outbox;
+			for (int i = 0; i < outbox.size(); i++) {
+				SimEvent e = outbox.get(i);
+				partitions[targetOf(e)].queue.addEventWithOrder(e);
+			}
+			outbox.clear();
+		}
+	}
+
+	/**
+	 * Runs the actions deferred during the round, in the order of the sequential simulation.
+	 */
+	private void commitActions() {
+		for (Partition partition : partitions) {
+			actions.addAll(partition.actions);
+			partition.actions.clear();
+		}
+		if (actions.isEmpty()) {
+			return;
+		}
+		Collections.sort(actions, ACTION_ORDER);
+		for (OrderedAction action : actions) {
+			clock = action.time;
+			action.action.run();
+		}
+		actions.clear();
+	}
+
+	/**
+	 * Simulates all the events at a given time sequentially, with all the partitions stopped.
+	 *
+	 * @param time the time of the first event
+	 */
+	private void mergedTick(double time) {
+		int arrival;
+		while ((arrival = processMergedBatch(time)) >= 0) {
+			runMerged(arrival + 1);
+		}
+		double limit = Math.nextUp(time);
+		for (Partition partition : partitions) {
+			partition.limit = Math.max(partition.limit, limit);
+		}
+	}
+
+	/**
+	 * Processes the first batch of events at a given time in all the partitions, as
+	 * {@link CloudSim#runClockTick()} does.
+	 *
+	 * @param time the time
+	 * @return the clock tick the events were sent in, or -1 if there was no event at that time
+	 */
+	private int processMergedBatch(double time) {
+		int arrival = Integer.MAX_VALUE;
+		for (Partition partition : partitions) {
+			SimEvent head = partition.queue.peek();
+			if (head != null && head.eventTime() == time) {
+				arrival = Math.min(arrival, arrivalPhase(head));
+			}
+		}
+		if (arrival == Integer.MAX_VALUE) {
+			return -1;
+		}
+		for (Partition partition : partitions) {
+			SimEvent head = partition.queue.peek();
+			if (head != null && head.eventTime() == time && arrivalPhase(head) == arrival) {
+				current.set(partition);
+				try {
+					partition.processBatch(time, arrival);
+				} finally {
+					current.remove();
+				}
+			}
+		}
+		return arrival;
+	}
+
+	/**
+	 * Runs the runnable entities of all the partitions in id order, with all the partitions
+	 * stopped.
+	 *
+	 * @param phase the clock tick at the current time
+	 */
+	private void runMerged(int phase) {
+		int count = 0;
+		for (Partition partition : partitions) {
+			int n = partition.runnable.takeAll();
+			if (count + n > mergedIds.length) {
+				mergedIds = Arrays.copyOf(mergedIds, Math.max(mergedIds.length * 2, count + n));
+			}
+			for (int i = 0; i < n; i++) {
+				mergedIds[count++] = partition.runnable.taken(i);
+			}
+		}
+		Arrays.sort(mergedIds, 0, count);
+
+		for (int i = 0; i < count; i++) {
+			Partition partition = partitions[partitionOf[mergedIds[i]]];
+			partition.phase = phase;
+			current.set(partition);
+			try {
+				partition.run(mergedIds[i]);
+			} finally {
+				current.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets the partition run by the current thread.
+	 *
+	 * @return the partition
+	 */
+	private Partition running() {
+		Partition partition = current.get();
+		if (partition == null) {
+			throw new IllegalStateException("Only the entities can schedule events in a parallel simulation.");
+		}
+		return partition;
+	}
+
+	/**
+	 * Gets the index of the partition an event has to be processed by.
+	 *
+	 * @param e the event
+	 * @return the index of the partition
+	 */
+	private int targetOf(SimEvent e) {
+		int entity = e.getType() == SimEvent.SEND ? e.getDestination() : e.getSource();
+		if (entity < 0) {
+			throw new IllegalArgumentException("Attempt to send to a null entity detected.");
+		}
+		return partitionOf[entity];
+	}
+
+	/**
+	 * Gets the clock tick at the time of an event after which the sequential simulation processes
+	 * it, i.e. the tick the event was sent in if it was sent at that time, 0 otherwise. The events
+	 * scheduled before the simulation and in the first tick are processed together.
+	 *
+	 * @param e the event
+	 * @return the clock tick
+	 */
+	private int arrivalPhase(SimEvent e) {
+		long serial = e.getSerial();
+		double time = e.eventTime();
+		if (serial < base) {
+			return time == 0 ? 1 : 0;
+		}
+		double sendTime = Double.longBitsToDouble(serial - base);
+		if (sendTime < time) {
+			return 0;
+		}
+		return Math.max((int) (e.getSequence() >>> PHASE_SHIFT) - 1, 1);
+	}
+
+	/**
+	 * Gets the lookahead between two partitions.
+	 */
+	private static double lookahead(SimulationPartitioning partitioning, int from, int to) {
+		double lookahead = partitioning.getLookahead(from, to);
+		if (Double.isNaN(lookahead) || lookahead < 0) {
+			throw new IllegalArgumentException("The lookahead from partition " + from + " to partition " + to
+					+ " should not be negative, but is:" + lookahead);
+		}
+		return lookahead;
+	}
+
+	/**
+	 * The events, runnable entities and clock of a partition.
+	 */
+	private final class Partition {
+
+		/** The index of the partition. */
+		private final int index;
+
+		/** The future events of the entities of the partition. */
+		private final HeapEventQueue queue = new HeapEventQueue();
+
+		/** The entities of the partition to be run in the next clock tick. */
+		private final RunnableSet runnable = new RunnableSet();
+
+		/** The events sent to other partitions in the current round. */
+		private final List<SimEvent> outbox = new ArrayList<SimEvent>();
+
+		/** The actions deferred to the end of the current round. */
+		private final List<OrderedAction> actions = new ArrayList<OrderedAction>();
+
+		/** Processes the events of the partition up to the window end. */
+		private final Callable<Void> task = new Callable<Void>() {
+
+			@Override
+			public Void call() {
+				concurrent = true;
+				current.set(Partition.this);
+				SimulationContext previous = SimulationContext.bind(context);
+				try {
+					advance(windowEnd);
+				} finally {
+					SimulationContext.bind(previous);
+					current.remove();
+					concurrent = false;
+				}
+				return null;
+			}
+		};
+
+		/** The time of the partition. */
+		private double clock = 0;
+
+		/** The clock tick at the current time. */
+		private int phase = 1;
+
+		/** The id of the entity being run. */
+		private int runner = 0;
+
+		/** The number of events sent by the entity being run. */
+		private long sendIndex = 0;
+
+		/** The number of actions run by the entity being run. */
+		private long actionIndex = 0;
+
+		/** The end of the window of the current round. */
+		private double windowEnd = 0;
+
+		/** The events of the partition before this time may already have been processed. */
+		private double limit = 0;
+
+		/** Whether other partitions are running at the same time. */
+		private boolean concurrent = false;
+
+		private Partition(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Gets the time of the next event of the partition.
+		 */
+		private double nextTime() {
+			SimEvent head = queue.peek();
+			return head == null ? Double.POSITIVE_INFINITY : head.eventTime();
+		}
+
+		/**
+		 * Processes the events before a given time, running the entities after each batch.
+		 */
+		private void advance(double end) {
+			SimEvent head;
+			while ((head = queue.peek()) != null && head.eventTime() < end) {
+				processBatch(head.eventTime(), arrivalPhase(head));
+				int n = runnable.takeAll();
+				for (int i = 0; i < n; i++) {
+					run(runnable.taken(i));
+				}
+			}
+		}
+
+		/**
+		 * Processes the events at a given time that were sent in a given clock tick.
+		 */
+		private void processBatch(double time, int arrival) {
+			if (time < clock) {
+				throw new IllegalArgumentException("Past event detected.");
+			}
+			clock = time;
+			phase = arrival + 1;
+			SimEvent head;
+			while ((head = queue.peek()) != null && head.eventTime() == time && arrivalPhase(head) == arrival) {
+				CloudSim.dispatchEvent(queue.poll());
+			}
+		}
+
+		/**
+		 * Runs an entity of the partition, if it is runnable.
+		 */
+		private void run(int id) {
+			runnable.unmark(id);
+			SimEntity ent = entities.get(id);
+			if (ent.getState() == SimEntity.RUNNABLE) {
+				runner = id;
+				sendIndex = 0;
+				actionIndex = 0;
+				ent.run();
+			}
+		}
+
+		/**
+		 * Schedules an event sent by the entity being run.
+		 */
+		private void schedule(SimEvent e, int target) {
+			e.setSerial(base + Double.doubleToLongBits(clock));
+			e.setSequence(order(sendIndex++));
+			if (target == index) {
+				queue.addEventWithOrder(e);
+				return;
+			}
+			Partition dest = partitions[target];
+			if (e.eventTime() < dest.limit) {
+				throw new IllegalStateException("Lookahead violated: an event with tag " + e.getTag() + " sent by "
+						+ CloudSim.getEntityName(e.getSource()) + " at " + clock + " reaches "
+						+ CloudSim.getEntityName(e.getType() == SimEvent.SEND ? e.getDestination() : e.getSource())
+						+ " at " + e.eventTime() + ", but its partition may already be at " + dest.limit + ".");
+			}
+			if (concurrent) {
+				outbox.add(e);
+			} else {
+				dest.queue.addEventWithOrder(e);
+			}
+		}
+
+		/**
+		 * Gets the position of an event or action of the entity being run among the ones of the
+		 * current clock tick.
+		 */
+		private long order(long index) {
+			if (phase > MAX_PHASE || runner > MAX_RUNNER || index > MAX_INDEX) {
+				throw new IllegalStateException("Too many clock ticks, entities or events at time " + clock
+						+ " to order them in a parallel simulation.");
+			}
+			return ((long) (phase + 1) << PHASE_SHIFT) | ((long) runner << RUNNER_SHIFT) | index;
+		}
+	}
+
+	/**
+	 * An action deferred to the end of a round.
+	 */
+	private static final class OrderedAction {
+
+		private final double time;
+
+		private final long order;
+
+		private final Runnable action;
+
+		private OrderedAction(double time, long order, Runnable action) {
+			this.time = time;
+			this.order = order;
+			this.action = action;
+		}
+	}
+
+}
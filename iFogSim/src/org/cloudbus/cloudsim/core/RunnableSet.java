@@ -0,0 +1,95 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The ids of the entities that have to be run in the next clock tick. Each id is kept once, and
+ * the ids taken for a tick are sorted, so the entities are run in id order as if all of them were
+ * checked.
+ *
+ * @see CloudSim#runClockTick()
+ */
+final class RunnableSet {
+
+	/** The ids added since the last call to {@link #takeAll()}. */
+	private int[] ids = new int[16];
+
+	/** The number of ids in {@link #ids}. */
+	private int count = 0;
+
+	/** The ids taken by the last call to {@link #takeAll()}, swapped with {@link #ids}. */
+	private int[] taken = new int[16];
+
+	/** The entities whose ids were added and not yet unmarked. */
+	private final BitSet flags = new BitSet();
+
+	/**
+	 * Adds an id, unless it is already marked.
+	 *
+	 * @param id the id of the entity
+	 */
+	void add(int id) {
+		if (id < 0 || flags.get(id)) {
+			return;
+		}
+		flags.set(id);
+		if (count == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+		}
+		ids[count++] = id;
+	}
+
+	/**
+	 * Takes all the ids added so far, in id order. The ids stay marked, so adding them again has
+	 * no effect, until they are unmarked with {@link #unmark(int)}.
+	 *
+	 * @return the number of taken ids
+	 */
+	int takeAll() {
+		int[] swap = taken;
+		taken = ids;
+		ids = swap;
+		int n = count;
+		count = 0;
+		Arrays.sort(taken, 0, n);
+		return n;
+	}
+
+	/**
+	 * Gets an id taken by the last call to {@link #takeAll()}.
+	 *
+	 * @param index the position of the id
+	 * @return the id
+	 */
+	int taken(int index) {
+		return taken[index];
+	}
+
+	/**
+	 * Unmarks an id, so it can be added again.
+	 *
+	 * @param id the id of the entity
+	 */
+	void unmark(int id) {
+		flags.clear(id);
+	}
+
+	/**
+	 * Checks if no id was added since the last call to {@link #takeAll()}.
+	 *
+	 * @return true, if there is no id to take
+	 */
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+}
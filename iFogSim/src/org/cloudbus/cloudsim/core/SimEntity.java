@@ -42,6 +42,15 @@ public abstract class SimEntity implements Cloneable {
 	/** The entity's current state. */
 	private int state;
 
+	/** The events sent to this entity that are waiting to be processed. */
+	private final DeferredQueue deferredQueue = new DeferredQueue();
+
+	/** The predicate the entity is waiting for, or <tt>null</tt> if any event wakes it up. */
+	private Predicate waitPredicate;
+
+	/** The simulation the entity belongs to. */
+	private final SimulationContext context;
+
 	/**
 	 * Creates a new entity.
 	 * 
@@ -54,9 +63,19 @@ public abstract class SimEntity implements Cloneable {
 		this.name = name;
 		id = -1;
 		state = RUNNABLE;
+		context = SimulationContext.current();
 		CloudSim.addEntity(this);
 	}
 
+	/**
+	 * Gets the simulation this entity belongs to, i.e. the context of the thread that created it.
+	 * 
+	 * @return the simulation context
+	 */
+	public SimulationContext getContext() {
+		return context;
+	}
+
 	/**
 	 * Get the name of this entity.
 	 * 
@@ -404,6 +423,7 @@ public abstract class SimEntity implements Cloneable {
 
 		while (ev != null) {
 			processEvent(ev);
+			context.recycle(ev);
 			if (state != RUNNABLE) {
 				break;
 			}
@@ -452,6 +472,33 @@ public abstract class SimEntity implements Cloneable {
 		return state;
 	}
 
+	/**
+	 * Gets the deferred event queue of this entity.
+	 * 
+	 * @return the deferred event queue
+	 */
+	protected DeferredQueue getDeferredQueue() {
+		return deferredQueue;
+	}
+
+	/**
+	 * Gets the predicate the entity is waiting for.
+	 * 
+	 * @return the predicate, or <tt>null</tt> if any event wakes the entity up
+	 */
+	Predicate getWaitPredicate() {
+		return waitPredicate;
+	}
+
+	/**
+	 * Sets the predicate the entity is waiting for.
+	 * 
+	 * @param waitPredicate the predicate, or <tt>null</tt> if any event wakes the entity up
+	 */
+	void setWaitPredicate(Predicate waitPredicate) {
+		this.waitPredicate = waitPredicate;
+	}
+
 	/**
 	 * Gets the event buffer.
 	 * 
@@ -481,6 +528,9 @@ public abstract class SimEntity implements Cloneable {
 	 */
 	protected void setState(int state) {
 		this.state = state;
+		if (state == RUNNABLE) {
+			CloudSim.markRunnable(id);
+		}
 	}
 
 	/**
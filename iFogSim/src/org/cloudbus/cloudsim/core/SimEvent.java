@@ -18,10 +18,10 @@ package org.cloudbus.cloudsim.core;
 public class SimEvent implements Cloneable, Comparable<SimEvent> {
 
 	/** internal event type **/
-	private final int etype;
+	private int etype;
 
 	/** time at which event should occur **/
-	private final double time;
+	private double time;
 
 	/** time that the event was removed from the queue for service **/
 	private double endWaitingTime;
@@ -33,13 +33,16 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 	private int entDst;
 
 	/** the user defined type of the event **/
-	private final int tag;
+	private int tag;
 
 	/** any data the event is carrying **/
-	private final Object data;
+	private Object data;
 
 	private long serial = -1;
 
+	/** order in which the event was added to an {@link EventQueue}, breaks (time, serial) ties **/
+	private long sequence = -1;
+
 	// Internal event types
 
 	public static final int ENULL = 0;
@@ -82,10 +85,77 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 		data = null;
 	}
 
+	/**
+	 * Reinitializes this event for reuse, see {@link EventPool}.
+	 * 
+	 * @param evtype the internal type
+	 * @param time the time at which the event should occur
+	 * @param src the id of the entity who scheduled the event
+	 * @param dest the id of the entity the event will be sent to
+	 * @param tag the user defined type of the event
+	 * @param edata the data the event is carrying
+	 */
+	void reset(int evtype, double time, int src, int dest, int tag, Object edata) {
+		etype = evtype;
+		this.time = time;
+		endWaitingTime = -1.0;
+		entSrc = src;
+		entDst = dest;
+		this.tag = tag;
+		data = edata;
+		serial = -1;
+		sequence = -1;
+	}
+
 	protected void setSerial(long serial) {
 		this.serial = serial;
 	}
 
+	/**
+	 * Gets the serial of this event.
+	 * 
+	 * @return the serial
+	 */
+	long getSerial() {
+		return serial;
+	}
+
+	/**
+	 * Sets the insertion order of this event in an {@link EventQueue}.
+	 * 
+	 * @param sequence the insertion order
+	 */
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Gets the insertion order of this event in an {@link EventQueue}.
+	 * 
+	 * @return the insertion order
+	 */
+	long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Checks if this event has to be served before another one. Events are ordered by time and
+	 * serial, as in {@link #compareTo(SimEvent)}; events with the same time and serial (e.g. those
+	 * whose serial was set by the parallel engine) are served in insertion order.
+	 * 
+	 * @param event the other event
+	 * @return true, if this event precedes the given one
+	 */
+	boolean precedes(SimEvent event) {
+		if (time != event.time) {
+			return time < event.time;
+		}
+		if (serial != event.serial) {
+			return serial < event.serial;
+		}
+		return sequence < event.sequence;
+	}
+
 	/**
 	 * Used to set the time at which this event finished waiting in the event
 	 * 
@@ -0,0 +1,191 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The state of one simulation: its clock, future event queue, entities and the state of the
+ * monitors that collect its results. The static methods of {@link CloudSim} and of the monitors act
+ * on the context of the current thread, so several simulations can run at the same time in one JVM,
+ * each on its own thread:
+ *
+ * <pre>
+ * executor.submit(() -&gt; new SimulationContext().call(() -&gt; runScenario(config)));
+ * </pre>
+ *
+ * Threads that are not running a context use a default context shared by the whole JVM, so
+ * simulations started without a context behave as before. A context runs one simulation at a time;
+ * a new context should be used for each simulation whose results have to be kept apart.
+ *
+ * @see CloudSim
+ */
+public final class SimulationContext {
+
+	/** The context of the threads that are not running another one. */
+	private static final SimulationContext DEFAULT = new SimulationContext();
+
+	/** The context run by each thread. */
+	private static final ThreadLocal<SimulationContext> CURRENT = new ThreadLocal<SimulationContext>();
+
+	/** The state of other components, by class. */
+	private final Map<Class<?>, Object> states = new ConcurrentHashMap<Class<?>, Object>();
+
+	// The state of CloudSim, see the fields of the same name there
+
+	int cisId = -1;
+
+	int shutdownId = -1;
+
+	CloudInformationService cis = null;
+
+	boolean traceFlag = false;
+
+	Calendar calendar = null;
+
+	double terminateAt = -1;
+
+	double minTimeBetweenEvents = 0.1;
+
+	List<SimEntity> entities;
+
+	EventQueue future;
+
+	final List<SimEvent> currentEvents = new ArrayList<SimEvent>();
+
+	RunnableSet runnable;
+
+	double clock;
+
+	boolean running;
+
+	/** The entity being run by a sequential simulation, see CloudSim.getRunningEntityId(). */
+	int runningEntity = -1;
+
+	Map<String, SimEntity> entitiesByName;
+
+	boolean paused = false;
+
+	long pauseAt = -1;
+
+	boolean abruptTerminate = false;
+
+	SimulationPartitioning partitioning = null;
+
+	int parallelThreads = 1;
+
+	ParallelEngine parallel = null;
+
+	EventPool eventPool = null;
+
+	boolean stateHistoryRecorded = true;
+
+	/**
+	 * Creates an empty context.
+	 */
+	public SimulationContext() {
+	}
+
+	/**
+	 * Gets the context of the current thread.
+	 *
+	 * @return the context
+	 */
+	public static SimulationContext current() {
+		SimulationContext context = CURRENT.get();
+		return context != null ? context : DEFAULT;
+	}
+
+	/**
+	 * Runs a task with this context as the context of the current thread.
+	 *
+	 * @param task the task, usually building and running a simulation
+	 * @return the result of the task
+	 * @throws Exception if the task throws an exception
+	 */
+	public <V> V call(Callable<V> task) throws Exception {
+		SimulationContext previous = bind(this);
+		try {
+			return task.call();
+		} finally {
+			bind(previous);
+		}
+	}
+
+	/**
+	 * Runs a task with this context as the context of the current thread.
+	 *
+	 * @param task the task, usually building and running a simulation
+	 */
+	public void run(Runnable task) {
+		SimulationContext previous = bind(this);
+		try {
+			task.run();
+		} finally {
+			bind(previous);
+		}
+	}
+
+	/**
+	 * Gets the state a component keeps for this simulation, creating it on first use. Components
+	 * with static methods, such as monitors, use it instead of static fields.
+	 *
+	 * @param type the class of the state, used as key
+	 * @param factory creates the state of a new simulation
+	 * @return the state
+	 */
+	public <T> T getState(Class<T> type, Supplier<T> factory) {
+		Object state = states.get(type);
+		if (state == null) {
+			synchronized (states) {
+				state = states.get(type);
+				if (state == null) {
+					state = factory.get();
+					states.put(type, state);
+				}
+			}
+		}
+		return type.cast(state);
+	}
+
+	/**
+	 * Returns an event processed by an entity to the event pool, if events are pooled. Events are
+	 * not pooled during a parallel simulation, as they move between the threads of the partitions.
+	 *
+	 * @param e the event
+	 */
+	void recycle(SimEvent e) {
+		if (eventPool != null && parallel == null) {
+			eventPool.release(e);
+		}
+	}
+
+	/**
+	 * Sets the context of the current thread.
+	 *
+	 * @param context the context, or <tt>null</tt> for the default context
+	 * @return the previous context of the thread, or <tt>null</tt> if it used the default context
+	 */
+	static SimulationContext bind(SimulationContext context) {
+		SimulationContext previous = CURRENT.get();
+		if (context == null || context == DEFAULT) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(context);
+		}
+		return previous;
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+/**
+ * Splits the entities of a simulation into partitions that can be simulated in parallel, see
+ * {@link CloudSim#setParallelExecution(SimulationPartitioning, int)}.
+ * <p>
+ * The entities of a partition may only interact with the entities of other partitions through
+ * events, and an event sent to another partition must be delayed by at least the lookahead between
+ * the two partitions. Entities that read the state of other entities directly, such as controllers
+ * collecting results, belong to the {@link #GLOBAL} partition: its events are processed while all
+ * the other partitions are stopped, once they have processed all their earlier events.
+ *
+ * @see CloudSim#setParallelExecution(SimulationPartitioning, int)
+ */
+public interface SimulationPartitioning {
+
+	/** The partition of the entities that observe all the other partitions. */
+	int GLOBAL = -1;
+
+	/**
+	 * Gets the number of partitions, not counting the {@link #GLOBAL} partition.
+	 *
+	 * @return the number of partitions
+	 */
+	int getPartitionCount();
+
+	/**
+	 * Gets the partition of an entity.
+	 *
+	 * @param entity the entity
+	 * @return the partition, from 0 to {@link #getPartitionCount()} - 1, or {@link #GLOBAL}
+	 */
+	int getPartition(SimEntity entity);
+
+	/**
+	 * Gets the minimal delay of the events sent from the entities of a partition to the entities of
+	 * another partition.
+	 *
+	 * @param from the sending partition, or {@link #GLOBAL}
+	 * @param to the receiving partition
+	 * @return the minimal delay, or <tt>Double.POSITIVE_INFINITY</tt> if no event is ever sent
+	 */
+	double getLookahead(int from, int to);
+
+}
@@ -43,7 +43,7 @@ public class VmSchedulerTimeSharedOverbookingEnergy extends VmSchedulerTimeShare
 	private static double powerOffDuration = 0; //if host is idle for 1 hours, it's turned off.
 	
 	public void addUtilizationEntryTermination(double terminatedTime) {
-		if(this.utilizationHistories != null)
+		if(this.utilizationHistories != null && CloudSim.isStateHistoryRecorded())
 			this.utilizationHistories.add(new PowerUtilizationHistoryEntry(terminatedTime, 0));
 	}
 	
@@ -82,6 +82,8 @@ public class VmSchedulerTimeSharedOverbookingEnergy extends VmSchedulerTimeShare
 	}
 
 	private void addUtilizationEntry() {
+		if(!CloudSim.isStateHistoryRecorded())
+			return;
 		double time = CloudSim.clock();
 		double totalMips = getTotalMips();
 		double usingMips = totalMips - this.getAvailableMips();
@@ -45,6 +45,16 @@ public class Application {
 
 	protected DAG dag;
 
+	/**
+	 * Compiled dataflow of the application, built when first needed and dropped when the application changes
+	 */
+	private DataflowPlan dataflowPlan;
+
+	/**
+	 * Utilization model of the tuples created on periodic edges. It has no state, so all the tuples share it.
+	 */
+	private static final UtilizationModelFull UTILIZATION_MODEL_FULL = new UtilizationModelFull();
+
 	/**
 	 * Creates a plain vanilla application with no modules and edges.
 	 * @param appId
@@ -70,7 +80,7 @@ public class Application {
 				mips, ram, bw, size, vmm, new TupleScheduler(mips, 1), new HashMap<Pair<String, String>, SelectivityModel>());
 		
 		getModules().add(module);
-		
+		dataflowPlan = null;
 	}
 
 	/**
@@ -87,6 +97,7 @@ public class Application {
 				mips, ram, bw, size, vmm, new TupleScheduler(mips, 1), new HashMap<Pair<String, String>, SelectivityModel>());
 
 		getModules().add(module);
+		dataflowPlan = null;
 	}
 	
 	/**
@@ -104,6 +115,7 @@ public class Application {
 		AppEdge edge = new AppEdge(source, destination, tupleCpuLength, tupleNwLength, tupleType, direction, edgeType);
 		getEdges().add(edge);
 		getEdgeMap().put(edge.getTupleType(), edge);
+		dataflowPlan = null;
 	}
 	
 	/**
@@ -121,6 +133,7 @@ public class Application {
 		AppEdge edge = new AppEdge(source, destination, periodicity, tupleCpuLength, tupleNwLength, tupleType, direction, edgeType);
 		getEdges().add(edge);
 		getEdgeMap().put(edge.getTupleType(), edge);
+		dataflowPlan = null;
 	}
 	
 	/**
@@ -133,6 +146,7 @@ public class Application {
 	public void addTupleMapping(String moduleName, String inputTupleType, String outputTupleType, SelectivityModel selectivityModel){
 		AppModule module = getModuleByName(moduleName);
 		module.getSelectivityMap().put(new Pair<String, String>(inputTupleType, outputTupleType), selectivityModel);
+		dataflowPlan = null;
 	}
 	
 	/**
@@ -193,65 +207,37 @@ public class Application {
 	 * @return
 	 */
 	public List<Tuple> getResultantTuples(String moduleName, Tuple inputTuple, int sourceDeviceId, int sourceModuleId){
-		List<Tuple> tuples = new ArrayList<Tuple>();
-		AppModule module = getModuleByName(moduleName);
-		for(AppEdge edge : getEdges()){
-			if(edge.getSource().equals(moduleName)){
-				Pair<String, String> pair = new Pair<String, String>(inputTuple.getTupleType(), edge.getTupleType());
-				
-				if(module.getSelectivityMap().get(pair)==null)
-					continue;
-				SelectivityModel selectivityModel = module.getSelectivityMap().get(pair);
-				if(selectivityModel.canSelect()){
-					//TODO check if the edge is ACTUATOR, then create multiple tuples
-					if(edge.getEdgeType() == AppEdge.ACTUATOR){
-						//for(Integer actuatorId : module.getActuatorSubscriptions().get(edge.getTupleType())){
-							Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
-									(long) (edge.getTupleCpuLength()),
-									inputTuple.getNumberOfPes(),
-									(long) (edge.getTupleNwLength()),
-									inputTuple.getCloudletOutputSize(),
-									inputTuple.getUtilizationModelCpu(),
-									inputTuple.getUtilizationModelRam(),
-									inputTuple.getUtilizationModelBw()
-									);
-							tuple.setActualTupleId(inputTuple.getActualTupleId());
-							tuple.setUserId(inputTuple.getUserId());
-							tuple.setAppId(inputTuple.getAppId());
-							tuple.setDestModuleName(edge.getDestination());
-							tuple.setSrcModuleName(edge.getSource());
-							tuple.setDirection(Tuple.ACTUATOR);
-							tuple.setTupleType(edge.getTupleType());
-							tuple.setSourceDeviceId(sourceDeviceId);
-							tuple.setSourceModuleId(sourceModuleId);
-							//tuple.setActuatorId(actuatorId);
-							
-							tuples.add(tuple);
-						//}
-					}else{
-						Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
-								(long) (edge.getTupleCpuLength()),
-								inputTuple.getNumberOfPes(),
-								(long) (edge.getTupleNwLength()),
-								inputTuple.getCloudletOutputSize(),
-								inputTuple.getUtilizationModelCpu(),
-								inputTuple.getUtilizationModelRam(),
-								inputTuple.getUtilizationModelBw()
-								);
-						tuple.setActualTupleId(inputTuple.getActualTupleId());
-						tuple.setUserId(inputTuple.getUserId());
-						tuple.setAppId(inputTuple.getAppId());
-						tuple.setDestModuleName(edge.getDestination());
-						tuple.setSrcModuleName(edge.getSource());
-						tuple.setDirection(edge.getDirection());
-						tuple.setTupleType(edge.getTupleType());
-						tuple.setSourceModuleId(sourceModuleId);
-						tuple.setTraversedMicroservices(inputTuple.getTraversed());
-
-						tuples.add(tuple);
-					}
-				}
+		DataflowPlan.Output[] outputs = getDataflowPlan().getOutputs(moduleName, inputTuple.getTupleType());
+		List<Tuple> tuples = new ArrayList<Tuple>(outputs.length);
+		for(DataflowPlan.Output output : outputs){
+			if(!output.getSelectivityModel().canSelect())
+				continue;
+			AppEdge edge = output.getEdge();
+			Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
+					output.getTupleCpuLength(),
+					inputTuple.getNumberOfPes(),
+					output.getTupleNwLength(),
+					inputTuple.getCloudletOutputSize(),
+					inputTuple.getUtilizationModelCpu(),
+					inputTuple.getUtilizationModelRam(),
+					inputTuple.getUtilizationModelBw()
+					);
+			tuple.setActualTupleId(inputTuple.getActualTupleId());
+			tuple.setUserId(inputTuple.getUserId());
+			tuple.setAppId(inputTuple.getAppId());
+			tuple.setDestModuleName(edge.getDestination());
+			tuple.setSrcModuleName(edge.getSource());
+			tuple.setTupleType(edge.getTupleType());
+			tuple.setSourceModuleId(sourceModuleId);
+			//TODO check if the edge is ACTUATOR, then create multiple tuples
+			if(edge.getEdgeType() == AppEdge.ACTUATOR){
+				tuple.setDirection(Tuple.ACTUATOR);
+				tuple.setSourceDeviceId(sourceDeviceId);
+			}else{
+				tuple.setDirection(edge.getDirection());
+				tuple.setTraversedMicroservices(inputTuple.getTraversed());
 			}
+			tuples.add(tuple);
 		}
 		return tuples;
 	}
@@ -263,7 +249,7 @@ public class Application {
 	 * @return
 	 */
 	public Tuple createTuple(AppEdge edge, int sourceDeviceId, int sourceModuleId){
-		AppModule module = getModuleByName(edge.getSource());
+		AppModule module = getDataflowPlan().getModule(edge.getSource());
 		if(edge.getEdgeType() == AppEdge.ACTUATOR){
 			for(Integer actuatorId : module.getActuatorSubscriptions().get(edge.getTupleType())){
 				Tuple tuple = new Tuple(appId, FogUtils.generateTupleId(), edge.getDirection(),  
@@ -271,9 +257,9 @@ public class Application {
 						1,
 						(long) (edge.getTupleNwLength()),
 						100,
-						new UtilizationModelFull(), 
-						new UtilizationModelFull(), 
-						new UtilizationModelFull()
+						UTILIZATION_MODEL_FULL, 
+						UTILIZATION_MODEL_FULL, 
+						UTILIZATION_MODEL_FULL
 						);
 				tuple.setUserId(getUserId());
 				tuple.setAppId(getAppId());
@@ -293,9 +279,9 @@ public class Application {
 					1,
 					(long) (edge.getTupleNwLength()),
 					100,
-					new UtilizationModelFull(), 
-					new UtilizationModelFull(), 
-					new UtilizationModelFull()
+					UTILIZATION_MODEL_FULL, 
+					UTILIZATION_MODEL_FULL, 
+					UTILIZATION_MODEL_FULL
 					);
 			//tuple.setActualTupleId(inputTuple.getActualTupleId());
 			tuple.setUserId(getUserId());
@@ -322,12 +308,14 @@ public class Application {
 	}
 	public void setModules(List<AppModule> modules) {
 		this.modules = modules;
+		dataflowPlan = null;
 	}
 	public List<AppEdge> getEdges() {
 		return edges;
 	}
 	public void setEdges(List<AppEdge> edges) {
 		this.edges = edges;
+		dataflowPlan = null;
 	}
 	public GeoCoverage getGeoCoverage() {
 		return geoCoverage;
@@ -392,6 +380,21 @@ public class Application {
 			if (edge.getDirection() == Tuple.UP)
 				dag.addEdge(edge.getSource(), edge.getDestination());
 		}
+		dataflowPlan = new DataflowPlan(getModules(), getEdges());
+	}
+
+	/**
+	 * Gets the compiled dataflow of the application, used to create the tuples of its edges. It is built from the
+	 * modules, edges and tuple mappings when first needed, and again after they change through the methods of the
+	 * application.
+	 */
+	public DataflowPlan getDataflowPlan() {
+		DataflowPlan plan = dataflowPlan;
+		if (plan == null) {
+			plan = new DataflowPlan(getModules(), getEdges());
+			dataflowPlan = plan;
+		}
+		return plan;
 	}
 
 	public DAG getDAG() {
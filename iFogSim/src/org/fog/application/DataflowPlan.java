@@ -0,0 +1,122 @@
+package org.fog.application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.util.Pair;
+import org.fog.application.selectivity.SelectivityModel;
+
+/**
+ * Compiled dataflow of an application: for each module and each type of tuple it executes, the edges on which it emits
+ * resultant tuples, with their selectivity. It is built once from the modules, edges and tuple mappings of the
+ * application, so that finding the resultant tuples of an executed tuple takes two map lookups instead of a walk over
+ * all the edges.
+ * <p>
+ * The plan does not change once built. {@link Application} builds a new one when its modules, edges or tuple mappings
+ * change through its own methods.
+ */
+public class DataflowPlan {
+
+	private static final Output[] NO_OUTPUTS = new Output[0];
+
+	/** The outputs by module name and input tuple type, in the order of the edges of the application */
+	private final Map<String, Map<String, Output[]>> outputs;
+	/** The modules by name, the first one of the application for each name */
+	private final Map<String, AppModule> modules;
+
+	/**
+	 * An edge on which a module emits tuples, with the attributes of the tuples computed in advance.
+	 */
+	public static class Output {
+
+		private final AppEdge edge;
+		private final SelectivityModel selectivityModel;
+		private final long tupleCpuLength;
+		private final long tupleNwLength;
+
+		Output(AppEdge edge, SelectivityModel selectivityModel) {
+			this.edge = edge;
+			this.selectivityModel = selectivityModel;
+			this.tupleCpuLength = (long) edge.getTupleCpuLength();
+			this.tupleNwLength = (long) edge.getTupleNwLength();
+		}
+
+		public AppEdge getEdge() {
+			return edge;
+		}
+
+		public SelectivityModel getSelectivityModel() {
+			return selectivityModel;
+		}
+
+		public long getTupleCpuLength() {
+			return tupleCpuLength;
+		}
+
+		public long getTupleNwLength() {
+			return tupleNwLength;
+		}
+	}
+
+	public DataflowPlan(List<AppModule> appModules, List<AppEdge> edges) {
+		Map<String, AppModule> modules = new HashMap<String, AppModule>();
+		for (AppModule module : appModules) {
+			if (!modules.containsKey(module.getName()))
+				modules.put(module.getName(), module);
+		}
+		this.modules = Collections.unmodifiableMap(modules);
+
+		Map<String, Map<String, List<Output>>> lists = new HashMap<String, Map<String, List<Output>>>();
+		for (AppEdge edge : edges) {
+			AppModule module = modules.get(edge.getSource());
+			if (module == null)
+				continue;
+			for (Map.Entry<Pair<String, String>, SelectivityModel> mapping : module.getSelectivityMap().entrySet()) {
+				if (mapping.getValue() == null || !edge.getTupleType().equals(mapping.getKey().getSecond()))
+					continue;
+				Map<String, List<Output>> byInput = lists.get(module.getName());
+				if (byInput == null) {
+					byInput = new HashMap<String, List<Output>>();
+					lists.put(module.getName(), byInput);
+				}
+				List<Output> list = byInput.get(mapping.getKey().getFirst());
+				if (list == null) {
+					list = new ArrayList<Output>();
+					byInput.put(mapping.getKey().getFirst(), list);
+				}
+				list.add(new Output(edge, mapping.getValue()));
+			}
+		}
+		outputs = new HashMap<String, Map<String, Output[]>>();
+		for (Map.Entry<String, Map<String, List<Output>>> byModule : lists.entrySet()) {
+			Map<String, Output[]> byInput = new HashMap<String, Output[]>();
+			for (Map.Entry<String, List<Output>> list : byModule.getValue().entrySet())
+				byInput.put(list.getKey(), list.getValue().toArray(new Output[list.getValue().size()]));
+			outputs.put(byModule.getKey(), byInput);
+		}
+	}
+
+	/**
+	 * Gets the edges on which a module emits tuples when it executes a tuple of a given type.
+	 * @return the outputs, in the order of the edges of the application, to be read only
+	 */
+	public Output[] getOutputs(String moduleName, String inputTupleType) {
+		Map<String, Output[]> byInput = outputs.get(moduleName);
+		if (byInput == null)
+			return NO_OUTPUTS;
+		Output[] result = byInput.get(inputTupleType);
+		return result != null ? result : NO_OUTPUTS;
+	}
+
+	/**
+	 * Gets a module of the application by name.
+	 * @return the module, or null if there is none
+	 */
+	public AppModule getModule(String moduleName) {
+		return modules.get(moduleName);
+	}
+
+}
@@ -1,10 +1,19 @@
 package org.fog.entities;
 
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEvent;
 import org.cloudbus.cloudsim.power.PowerDatacenterBroker;
 
+/**
+ * The user of the applications. Unlike the brokers of CloudSim, it keeps no reference to the tuples returned to it,
+ * so that the memory of long simulations does not grow, unless it is asked to with
+ * {@link #setRetainReturnedCloudlets(boolean)}.
+ */
 public class FogBroker extends PowerDatacenterBroker{
 
+	private boolean retainReturnedCloudlets = false;
+
 	public FogBroker(String name) throws Exception {
 		super(name);
 		// TODO Auto-generated constructor stub
@@ -18,8 +27,8 @@ public class FogBroker extends PowerDatacenterBroker{
 
 	@Override
 	public void processEvent(SimEvent ev) {
-		// TODO Auto-generated method stub
-		
+		if(retainReturnedCloudlets && ev.getTag() == CloudSimTags.CLOUDLET_RETURN)
+			getCloudletReceivedList().add((Cloudlet) ev.getData());
 	}
 
 	@Override
@@ -27,6 +36,17 @@ public class FogBroker extends PowerDatacenterBroker{
 		// TODO Auto-generated method stub
 		
 	}
+
+	public boolean isRetainReturnedCloudlets() {
+		return retainReturnedCloudlets;
+	}
+
+	/**
+	 * Sets whether the cloudlets returned to the broker are kept in its list of received cloudlets.
+	 */
+	public void setRetainReturnedCloudlets(boolean retainReturnedCloudlets) {
+		this.retainReturnedCloudlets = retainReturnedCloudlets;
+	}
 	
 	
 
@@ -234,6 +234,14 @@ public class FogDevice extends PowerDatacenter {
         setClusterLinkBusy(false);
     }
 
+    @Override
+    public void startEntity() {
+        // iFogSim does not read the state history of the hosts and modules, which grows with the simulated time
+        if (Config.LONG_HORIZON_MODE)
+            CloudSim.setStateHistoryRecorded(false);
+        super.startEntity();
+    }
+
     /**
      * Overrides this method when making a new and different type of resource. <br>
      * <b>NOTE:</b> You do not need to override {@link #body()} method, if you use this method.
@@ -312,6 +320,9 @@ public class FogDevice extends PowerDatacenter {
         System.out.println(getName() + " is sending " + appModule.getName());
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.migrationStart(getId(), appModule.getName(), (double) object.get("delay"));
 
 
         sendNow(getId(), FogEvents.RELEASE_MODULE, appModule);
@@ -327,6 +338,9 @@ public class FogDevice extends PowerDatacenter {
         System.out.println(getName() + " is receiving " + appModule.getName());
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.migrationEnd(getId(), appModule.getName(), (double) object.get("delay"));
 
         sendNow(getId(), FogEvents.APP_SUBMIT, app);
         sendNow(getId(), FogEvents.LAUNCH_MODULE, appModule);
@@ -357,6 +371,8 @@ public class FogDevice extends PowerDatacenter {
     }
 
     private AppModule getModuleByName(String moduleName) {
+        if (getVmAllocationPolicy() instanceof AppModuleAllocationPolicy)
+            return ((AppModuleAllocationPolicy) getVmAllocationPolicy()).getModule(moduleName);
         AppModule module = null;
         for (Vm vm : getHost().getVmList()) {
             if (((AppModule) vm).getName().equals(moduleName)) {
@@ -367,6 +383,23 @@ public class FogDevice extends PowerDatacenter {
         return module;
     }
 
+    /**
+     * Gets the module of an application placed on this device, to execute the tuples sent to it. The modules are
+     * looked up in the index of the allocation policy, when it is an {@link AppModuleAllocationPolicy}.
+     *
+     * @return the module, the last one created if there are several, or null if there is none
+     */
+    protected AppModule getPlacedModule(String appId, String moduleName) {
+        if (getVmAllocationPolicy() instanceof AppModuleAllocationPolicy)
+            return ((AppModuleAllocationPolicy) getVmAllocationPolicy()).getModule(appId, moduleName);
+        AppModule module = null;
+        for (Vm vm : getHost().getVmList()) {
+            if (((AppModule) vm).getName().equals(moduleName) && ((AppModule) vm).getAppId().equals(appId))
+                module = (AppModule) vm;
+        }
+        return module;
+    }
+
     /**
      * Sending periodic tuple for an application edge. Note that for multiple instances of a single source module, only one tuple is sent DOWN while instanceCount number of tuples are sent UP.
      *
@@ -397,6 +430,7 @@ public class FogDevice extends PowerDatacenter {
         int actuatorId = ev.getSource();
         double delay = (double) ev.getData();
         getAssociatedActuatorIds().add(new Pair<Integer, Double>(actuatorId, delay));
+        TopologyIndex.getInstance().actuatorJoined(((Actuator) CloudSim.getEntity(actuatorId)).getActuatorType(), getId());
     }
 
 
@@ -424,27 +458,32 @@ public class FogDevice extends PowerDatacenter {
         double minTime = Double.MAX_VALUE;
         double timeDiff = currentTime - getLastProcessTime();
         double timeFrameDatacenterEnergy = 0.0;
+        // the log lines are only formatted when the log is enabled, as formatting them boxes every number
+        boolean log = !Log.isDisabled();
 
         for (PowerHost host : this.<PowerHost>getHostList()) {
-            Log.printLine();
+            if (log)
+                Log.printLine();
 
             double time = host.updateVmsProcessing(currentTime); // inform VMs to update processing
             if (time < minTime) {
                 minTime = time;
             }
 
-            Log.formatLine(
-                    "%.2f: [Host #%d] utilization is %.2f%%",
-                    currentTime,
-                    host.getId(),
-                    host.getUtilizationOfCpu() * 100);
+            if (log)
+                Log.formatLine(
+                        "%.2f: [Host #%d] utilization is %.2f%%",
+                        currentTime,
+                        host.getId(),
+                        host.getUtilizationOfCpu() * 100);
         }
 
         if (timeDiff > 0) {
-            Log.formatLine(
-                    "\nEnergy consumption for the last time frame from %.2f to %.2f:",
-                    getLastProcessTime(),
-                    currentTime);
+            if (log)
+                Log.formatLine(
+                        "\nEnergy consumption for the last time frame from %.2f to %.2f:",
+                        getLastProcessTime(),
+                        currentTime);
 
             for (PowerHost host : this.<PowerHost>getHostList()) {
                 double previousUtilizationOfCpu = host.getPreviousUtilizationOfCpu();
@@ -455,25 +494,28 @@ public class FogDevice extends PowerDatacenter {
                         timeDiff);
                 timeFrameDatacenterEnergy += timeFrameHostEnergy;
 
-                Log.printLine();
-                Log.formatLine(
-                        "%.2f: [Host #%d] utilization at %.2f was %.2f%%, now is %.2f%%",
-                        currentTime,
-                        host.getId(),
-                        getLastProcessTime(),
-                        previousUtilizationOfCpu * 100,
-                        utilizationOfCpu * 100);
-                Log.formatLine(
-                        "%.2f: [Host #%d] energy is %.2f W*sec",
-                        currentTime,
-                        host.getId(),
-                        timeFrameHostEnergy);
+                if (log) {
+                    Log.printLine();
+                    Log.formatLine(
+                            "%.2f: [Host #%d] utilization at %.2f was %.2f%%, now is %.2f%%",
+                            currentTime,
+                            host.getId(),
+                            getLastProcessTime(),
+                            previousUtilizationOfCpu * 100,
+                            utilizationOfCpu * 100);
+                    Log.formatLine(
+                            "%.2f: [Host #%d] energy is %.2f W*sec",
+                            currentTime,
+                            host.getId(),
+                            timeFrameHostEnergy);
+                }
             }
 
-            Log.formatLine(
-                    "\n%.2f: Data center's energy is %.2f W*sec\n",
-                    currentTime,
-                    timeFrameDatacenterEnergy);
+            if (log)
+                Log.formatLine(
+                        "\n%.2f: Data center's energy is %.2f W*sec\n",
+                        currentTime,
+                        timeFrameDatacenterEnergy);
         }
 
         setPower(getPower() + timeFrameDatacenterEnergy);
@@ -492,7 +534,8 @@ public class FogDevice extends PowerDatacenter {
 			}
 		}*/
 
-        Log.printLine();
+        if (log)
+            Log.printLine();
 
         setLastProcessTime(currentTime);
         return minTime;
@@ -511,9 +554,13 @@ public class FogDevice extends PowerDatacenter {
 
                         cloudletCompleted = true;
                         Tuple tuple = (Tuple) cl;
-                        TimeKeeper.getInstance().tupleEndedExecution(tuple);
+                        TimeKeeper.getInstance().tupleEndedExecution(tuple, getId());
+                        TraceRecorder trace = TraceRecorder.current();
+                        if (trace != null)
+                            trace.executionEnd(getId(), tuple.getCloudletId(), vm.getId(), tuple.getDestModuleName(), tuple.getCloudletLength());
                         Application application = getApplicationMap().get(tuple.getAppId());
-                        Logger.debug(getName(), "Completed execution of tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
+                        if (Logger.ENABLED)
+                            Logger.debug(getName(), "Completed execution of tuple " + tuple.getCloudletId() + "on " + tuple.getDestModuleName());
                         List<Tuple> resultantTuples = application.getResultantTuples(tuple.getDestModuleName(), tuple, getId(), vm.getId());
                         for (Tuple resTuple : resultantTuples) {
                             resTuple.setModuleCopyMap(new HashMap<String, Integer>(tuple.getModuleCopyMap()));
@@ -537,12 +584,7 @@ public class FogDevice extends PowerDatacenter {
         String destModule = resTuple.getDestModuleName();
         for (AppLoop loop : getApplicationMap().get(resTuple.getAppId()).getLoops()) {
             if (loop.hasEdge(srcModule, destModule) && loop.isStartModule(srcModule)) {
-                int tupleId = TimeKeeper.getInstance().getUniqueId();
-                resTuple.setActualTupleId(tupleId);
-                if (!TimeKeeper.getInstance().getLoopIdToTupleIds().containsKey(loop.getLoopId()))
-                    TimeKeeper.getInstance().getLoopIdToTupleIds().put(loop.getLoopId(), new ArrayList<Integer>());
-                TimeKeeper.getInstance().getLoopIdToTupleIds().get(loop.getLoopId()).add(tupleId);
-                TimeKeeper.getInstance().getEmitTimes().put(tupleId, CloudSim.clock());
+                resTuple.setActualTupleId(TimeKeeper.getInstance().loopTupleEmitted(loop.getLoopId()));
 
                 //Logger.debug(getName(), "\tSENDING\t"+tuple.getActualTupleId()+"\tSrc:"+srcModule+"\tDest:"+destModule);
 
@@ -550,14 +592,12 @@ public class FogDevice extends PowerDatacenter {
         }
     }
 
+    /**
+     * Gets the child whose subtree contains a device, or -1 if the device is not below this one.
+     * The lookup uses the {@link TopologyIndex} instead of walking the subtrees.
+     */
     protected int getChildIdWithRouteTo(int targetDeviceId) {
-        for (Integer childId : getChildrenIds()) {
-            if (targetDeviceId == childId)
-                return childId;
-            if (((FogDevice) CloudSim.getEntity(childId)).getChildIdWithRouteTo(targetDeviceId) != -1)
-                return childId;
-        }
-        return -1;
+        return TopologyIndex.getInstance().getChildIdWithRouteTo(this, targetDeviceId);
     }
 
     protected int getChildIdForTuple(Tuple tuple) {
@@ -631,8 +671,10 @@ public class FogDevice extends PowerDatacenter {
     public void addChild(int childId) {
         if (CloudSim.getEntityName(childId).toLowerCase().contains("sensor"))
             return;
-        if (!getChildrenIds().contains(childId) && childId != getId())
+        if (!getChildrenIds().contains(childId) && childId != getId()) {
             getChildrenIds().add(childId);
+            TopologyIndex.getInstance().childAdded(this, childId);
+        }
         if (!getChildToOperatorsMap().containsKey(childId))
             getChildToOperatorsMap().put(childId, new ArrayList<String>());
     }
@@ -666,8 +708,24 @@ public class FogDevice extends PowerDatacenter {
                 return;
             }
         }
+        boolean sent = false;
         for (int childId : getChildrenIds()) {
-            sendDown(tuple, childId);
+            if (Config.PRUNE_ACTUATOR_BROADCAST && !TopologyIndex.getInstance().hasActuatorBelow(childId, tuple.getDestModuleName()))
+                continue;
+            sendDown(sent ? tuple.copy() : tuple, childId);
+            sent = true;
+        }
+    }
+
+    /**
+     * Sends a tuple down to all the children, each one but the first with its own copy, so that the children do not
+     * share the execution state of the tuple.
+     */
+    protected void sendDownToChildren(Tuple tuple) {
+        boolean sent = false;
+        for (int childId : getChildrenIds()) {
+            sendDown(sent ? tuple.copy() : tuple, childId);
+            sent = true;
         }
     }
 
@@ -683,16 +741,20 @@ public class FogDevice extends PowerDatacenter {
 		/*if(getName().equals("d-0") && tuple.getTupleType().equals("_SENSOR")){
 			System.out.println(++numClients);
 		}*/
-        Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        if (Logger.ENABLED)
+            Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
+                    CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.tupleArrival(getId(), tuple.getCloudletId(), ev.getSource(), tuple.getTupleType(), tuple.getCloudletFileSize());
 		
 		/*if(CloudSim.getEntityName(ev.getSource()).equals("drone_0")||CloudSim.getEntityName(ev.getDestination()).equals("drone_0"))
 			System.out.println(CloudSim.clock()+" "+getName()+" Received tuple "+tuple.getCloudletId()+" with tupleType = "+tuple.getTupleType()+"\t| Source : "+
 		CloudSim.getEntityName(ev.getSource())+"|Dest : "+CloudSim.getEntityName(ev.getDestination()));*/
 
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        sendTupleAck(ev);
 
-        if (FogUtils.appIdToGeoCoverageMap.containsKey(tuple.getAppId())) {
+        if (FogUtils.getAppIdToGeoCoverageMap().containsKey(tuple.getAppId())) {
         }
 
         if (tuple.getDirection() == Tuple.ACTUATOR) {
@@ -721,11 +783,8 @@ public class FogDevice extends PowerDatacenter {
 
         if (appToModulesMap.containsKey(tuple.getAppId())) {
             if (appToModulesMap.get(tuple.getAppId()).contains(tuple.getDestModuleName())) {
-                int vmId = -1;
-                for (Vm vm : getHost().getVmList()) {
-                    if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
-                        vmId = vm.getId();
-                }
+                AppModule module = getPlacedModule(tuple.getAppId(), tuple.getDestModuleName());
+                int vmId = module != null ? module.getId() : -1;
                 if (vmId < 0
                         || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
                         tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
@@ -741,8 +800,7 @@ public class FogDevice extends PowerDatacenter {
                 if (tuple.getDirection() == Tuple.UP)
                     sendUp(tuple);
                 else if (tuple.getDirection() == Tuple.DOWN) {
-                    for (int childId : getChildrenIds())
-                        sendDown(tuple, childId);
+                    sendDownToChildren(tuple);
                 }
             } else {
                 sendUp(tuple);
@@ -751,8 +809,7 @@ public class FogDevice extends PowerDatacenter {
             if (tuple.getDirection() == Tuple.UP)
                 sendUp(tuple);
             else if (tuple.getDirection() == Tuple.DOWN) {
-                for (int childId : getChildrenIds())
-                    sendDown(tuple, childId);
+                sendDownToChildren(tuple);
             }
         }
     }
@@ -764,31 +821,27 @@ public class FogDevice extends PowerDatacenter {
         List<AppLoop> loops = app.getLoops();
         for (AppLoop loop : loops) {
             if (loop.hasEdge(srcModule, destModule) && loop.isEndModule(destModule)) {
-                Double startTime = TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                if (startTime == null)
-                    break;
-                if (!TimeKeeper.getInstance().getLoopIdToCurrentAverage().containsKey(loop.getLoopId())) {
-                    TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), 0.0);
-                    TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), 0);
-                }
-                double currentAverage = TimeKeeper.getInstance().getLoopIdToCurrentAverage().get(loop.getLoopId());
-                int currentCount = TimeKeeper.getInstance().getLoopIdToCurrentNum().get(loop.getLoopId());
-                double delay = CloudSim.clock() - TimeKeeper.getInstance().getEmitTimes().get(tuple.getActualTupleId());
-                TimeKeeper.getInstance().getEmitTimes().remove(tuple.getActualTupleId());
-                double newAverage = (currentAverage * currentCount + delay) / (currentCount + 1);
-                TimeKeeper.getInstance().getLoopIdToCurrentAverage().put(loop.getLoopId(), newAverage);
-                TimeKeeper.getInstance().getLoopIdToCurrentNum().put(loop.getLoopId(), currentCount + 1);
+                TimeKeeper.getInstance().loopTupleReceived(loop.getLoopId(), tuple.getActualTupleId());
                 break;
             }
         }
     }
 
     protected void processSensorJoining(SimEvent ev) {
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        sendTupleAck(ev);
+    }
+
+    /**
+     * Acknowledges a tuple or a joining sensor to the entity that sent it, see Config.SEND_TUPLE_ACKS.
+     */
+    protected void sendTupleAck(SimEvent ev) {
+        if (Config.SEND_TUPLE_ACKS)
+            send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
     }
 
     protected void executeTuple(SimEvent ev, String moduleName) {
-        Logger.debug(getName(), "Executing tuple on module " + moduleName);
+        if (Logger.ENABLED)
+            Logger.debug(getName(), "Executing tuple on module " + moduleName);
         Tuple tuple = (Tuple) ev.getData();
 
         AppModule module = getModuleByName(moduleName);
@@ -808,6 +861,9 @@ public class FogDevice extends PowerDatacenter {
         }
 
         TimeKeeper.getInstance().tupleStartedExecution(tuple);
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.executionStart(getId(), tuple.getCloudletId(), tuple.getVmId(), moduleName, tuple.getCloudletLength());
         updateAllocatedMips(moduleName);
         processCloudletSubmit(ev, false);
         updateAllocatedMips(moduleName);
@@ -868,6 +924,9 @@ public class FogDevice extends PowerDatacenter {
         send(getId(), networkDelay, FogEvents.UPDATE_NORTH_TUPLE_QUEUE);
         send(parentId, networkDelay + getUplinkLatency(), FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(getUplinkLatency(), tuple.getCloudletFileSize());
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.linkSend(getId(), tuple.getCloudletId(), parentId, tuple.getTupleType(), networkDelay + getUplinkLatency());
     }
 
     protected void sendUp(Tuple tuple) {
@@ -899,6 +958,9 @@ public class FogDevice extends PowerDatacenter {
         send(getId(), networkDelay, FogEvents.UPDATE_SOUTH_TUPLE_QUEUE);
         send(childId, networkDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.linkSend(getId(), tuple.getCloudletId(), childId, tuple.getTupleType(), networkDelay + latency);
     }
 
     protected void sendDown(Tuple tuple, int childId) {
@@ -1089,8 +1151,10 @@ public class FogDevice extends PowerDatacenter {
         // TODO Auto-generated method stub
         @SuppressWarnings("deprecation")
         Integer childIDobject = new Integer(childId);
-        if (getChildrenIds().contains(childId) && childId != getId())
+        if (getChildrenIds().contains(childId) && childId != getId()) {
             getChildrenIds().remove(childIDobject);
+            TopologyIndex.getInstance().childRemoved(this, childId);
+        }
         if (getChildToOperatorsMap().containsKey(childId)) {
             List<String> operatorName = getChildToOperatorsMap().get(childId);
             getChildToOperatorsMap().remove(childId, operatorName);
@@ -1173,6 +1237,9 @@ public class FogDevice extends PowerDatacenter {
         send(getId(), networkDelay, FogEvents.UPDATE_CLUSTER_TUPLE_QUEUE);
         send(clusterNodeID, networkDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
         NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.linkSend(getId(), tuple.getCloudletId(), clusterNodeID, tuple.getTupleType(), networkDelay + latency);
     }
 
     protected void setClusterLinkBusy(boolean busy) {
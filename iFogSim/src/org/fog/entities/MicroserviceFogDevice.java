@@ -2,7 +2,6 @@ package org.fog.entities;
 
 import org.apache.commons.math3.util.Pair;
 import org.cloudbus.cloudsim.Storage;
-import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmAllocationPolicy;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.SimEvent;
@@ -129,6 +128,9 @@ public class MicroserviceFogDevice extends FogDevice {
         } else {
             send(clusterNodeID, networkDelay + latency, FogEvents.TUPLE_ARRIVAL, tuple);
             NetworkUsageMonitor.sendingTuple(latency, tuple.getCloudletFileSize());
+            TraceRecorder trace = TraceRecorder.current();
+            if (trace != null)
+                trace.linkSend(getId(), tuple.getCloudletId(), clusterNodeID, tuple.getTupleType(), networkDelay + latency);
         }
     }
 
@@ -156,16 +158,20 @@ public class MicroserviceFogDevice extends FogDevice {
 
         Tuple tuple = (Tuple) ev.getData();
 
-        Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
-                CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        if (Logger.ENABLED)
+            Logger.debug(getName(), "Received tuple " + tuple.getCloudletId() + "with tupleType = " + tuple.getTupleType() + "\t| Source : " +
+                    CloudSim.getEntityName(ev.getSource()) + "|Dest : " + CloudSim.getEntityName(ev.getDestination()));
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.tupleArrival(getId(), tuple.getCloudletId(), ev.getSource(), tuple.getTupleType(), tuple.getCloudletFileSize());
 
         if (deviceType.equals(MicroserviceFogDevice.CLOUD)) {
             updateCloudTraffic();
         }
 
-        send(ev.getSource(), CloudSim.getMinTimeBetweenEvents(), FogEvents.TUPLE_ACK);
+        sendTupleAck(ev);
 
-        if (FogUtils.appIdToGeoCoverageMap.containsKey(tuple.getAppId())) {
+        if (FogUtils.getAppIdToGeoCoverageMap().containsKey(tuple.getAppId())) {
         }
 
         if (tuple.getDirection() == Tuple.ACTUATOR) {
@@ -210,11 +216,8 @@ public class MicroserviceFogDevice extends FogDevice {
         }
 
         if (tuple.getDestinationDeviceId() == getId()) {
-            int vmId = -1;
-            for (Vm vm : getHost().getVmList()) {
-                if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
-                    vmId = vm.getId();
-            }
+            AppModule module = getPlacedModule(tuple.getAppId(), tuple.getDestModuleName());
+            int vmId = module != null ? module.getId() : -1;
             if (vmId < 0
                     || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
                     tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
@@ -243,11 +246,8 @@ public class MicroserviceFogDevice extends FogDevice {
                 if (tuple.getDirection() == Tuple.DOWN) {
                     if (appToModulesMap.containsKey(tuple.getAppId())) {
                         if (appToModulesMap.get(tuple.getAppId()).contains(tuple.getDestModuleName())) {
-                            int vmId = -1;
-                            for (Vm vm : getHost().getVmList()) {
-                                if (((AppModule) vm).getName().equals(tuple.getDestModuleName()))
-                                    vmId = vm.getId();
-                            }
+                            AppModule module = getPlacedModule(tuple.getAppId(), tuple.getDestModuleName());
+                            int vmId = module != null ? module.getId() : -1;
                             if (vmId < 0
                                     || (tuple.getModuleCopyMap().containsKey(tuple.getDestModuleName()) &&
                                     tuple.getModuleCopyMap().get(tuple.getDestModuleName()) != vmId)) {
@@ -265,8 +265,7 @@ public class MicroserviceFogDevice extends FogDevice {
                     }
 
 
-                    for (int childId : getChildrenIds())
-                        sendDown(tuple, childId);
+                    sendDownToChildren(tuple);
 
                 } else {
                     Logger.error("Routing error", "Destination id -1 for UP tuple");
@@ -477,6 +476,9 @@ public class MicroserviceFogDevice extends FogDevice {
 
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.migrationEnd(getId(), appModule.getName(), (double) object.get("delay"));
     }
 
 
@@ -487,6 +489,9 @@ public class MicroserviceFogDevice extends FogDevice {
         System.out.println(getName() + " is sending " + appModule.getName());
         NetworkUsageMonitor.sendingModule((double) object.get("delay"), appModule.getSize());
         MigrationDelayMonitor.setMigrationDelay((double) object.get("delay"));
+        TraceRecorder trace = TraceRecorder.current();
+        if (trace != null)
+            trace.migrationStart(getId(), appModule.getName(), (double) object.get("delay"));
 
         if (moduleInstanceCount.containsKey(appModule.getAppId()) && moduleInstanceCount.get(appModule.getAppId()).containsKey(appModule.getName())) {
             int moduleCount = moduleInstanceCount.get(appModule.getAppId()).get(appModule.getName());
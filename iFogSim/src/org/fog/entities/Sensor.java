@@ -1,7 +1,5 @@
 package org.fog.entities;
 
-import java.util.ArrayList;
-
 import org.cloudbus.cloudsim.UtilizationModelFull;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.SimEntity;
@@ -28,6 +26,14 @@ public class Sensor extends SimEntity{
 	private double latency;
 
 	private int transmissionStartDelay = Config.TRANSMISSION_START_DELAY;
+
+	// the size of the tuples if it is not that of the edge of the sensor, or -1
+	private long tupleNwLength = -1;
+	// the emission scheduled last, the others being stale since the distribution changed
+	private int emission = 0;
+	private double lastEmissionTime = 0;
+	private long tuplesEmitted = 0;
+	private long bytesEmitted = 0;
 	
 	public Sensor(String name, int userId, String appId, int gatewayDeviceId, double latency, GeoLocation geoLocation, 
 			Distribution transmitDistribution, int cpuLength, int nwLength, String tupleType, String destModuleName) {
@@ -83,7 +89,7 @@ public class Sensor extends SimEntity{
 				_edge = edge;
 		}
 		long cpuLength = (long) _edge.getTupleCpuLength();
-		long nwLength = (long) _edge.getTupleNwLength();
+		long nwLength = tupleNwLength >= 0 ? tupleNwLength : (long) _edge.getTupleNwLength();
 		
 		Tuple tuple = new Tuple(getAppId(), FogUtils.generateTupleId(), Tuple.UP, cpuLength, 1, nwLength, outputSize, 
 				new UtilizationModelFull(), new UtilizationModelFull(), new UtilizationModelFull());
@@ -100,6 +106,19 @@ public class Sensor extends SimEntity{
 		tuple.setActualTupleId(actualTupleId);
 		
 		send(gatewayDeviceId, getLatency(), FogEvents.TUPLE_ARRIVAL,tuple);
+		lastEmissionTime = CloudSim.clock();
+		tuplesEmitted++;
+		bytesEmitted += nwLength;
+	}
+
+	/**
+	 * Changes the distribution of the time between the tuples while the sensor runs. The next tuple is sent after a
+	 * time drawn from the new distribution since the last tuple, or at once if that time has passed.
+	 */
+	public void changeTransmitDistribution(Distribution transmitDistribution) {
+		setTransmitDistribution(transmitDistribution);
+		double delay = Math.max(0, lastEmissionTime + transmitDistribution.getNextValue() - CloudSim.clock());
+		send(getId(), delay, FogEvents.EMIT_TUPLE, ++emission);
 	}
 	
 	protected int updateTimings(String src, String dest){
@@ -107,12 +126,7 @@ public class Sensor extends SimEntity{
 		for(AppLoop loop : application.getLoops()){
 			if(loop.hasEdge(src, dest)){
 				
-				int tupleId = TimeKeeper.getInstance().getUniqueId();
-				if(!TimeKeeper.getInstance().getLoopIdToTupleIds().containsKey(loop.getLoopId()))
-					TimeKeeper.getInstance().getLoopIdToTupleIds().put(loop.getLoopId(), new ArrayList<Integer>());
-				TimeKeeper.getInstance().getLoopIdToTupleIds().get(loop.getLoopId()).add(tupleId);
-				TimeKeeper.getInstance().getEmitTimes().put(tupleId, CloudSim.clock());
-				return tupleId;
+				return TimeKeeper.getInstance().loopTupleEmitted(loop.getLoopId());
 			}
 		}
 		return -1;
@@ -121,7 +135,8 @@ public class Sensor extends SimEntity{
 	@Override
 	public void startEntity() {
 		send(gatewayDeviceId, CloudSim.getMinTimeBetweenEvents(), FogEvents.SENSOR_JOINED, geoLocation);
-		send(getId(), getTransmitDistribution().getNextValue() + transmissionStartDelay, FogEvents.EMIT_TUPLE);
+		lastEmissionTime = CloudSim.clock() + transmissionStartDelay;
+		send(getId(), getTransmitDistribution().getNextValue() + transmissionStartDelay, FogEvents.EMIT_TUPLE, emission);
 	}
 
 	@Override
@@ -131,8 +146,10 @@ public class Sensor extends SimEntity{
 			//transmit(transmitDistribution.getNextValue());
 			break;
 		case FogEvents.EMIT_TUPLE:
+			if (ev.getData() instanceof Integer && (Integer) ev.getData() != emission)
+				break;
 			transmit();
-			send(getId(), getTransmitDistribution().getNextValue(), FogEvents.EMIT_TUPLE);
+			send(getId(), getTransmitDistribution().getNextValue(), FogEvents.EMIT_TUPLE, emission);
 			break;
 		}
 			
@@ -241,4 +258,23 @@ public class Sensor extends SimEntity{
 		return transmissionStartDelay;
 	}
 
+	/**
+	 * Sets the size of the tuples, or -1 for that of the edge of the sensor.
+	 */
+	public void setTupleNwLength(long tupleNwLength) {
+		this.tupleNwLength = tupleNwLength;
+	}
+
+	public long getTupleNwLength() {
+		return tupleNwLength;
+	}
+
+	public long getTuplesEmitted() {
+		return tuplesEmitted;
+	}
+
+	public long getBytesEmitted() {
+		return bytesEmitted;
+	}
+
 }
@@ -5,6 +5,7 @@ import java.util.Map;
 
 import org.cloudbus.cloudsim.Cloudlet;
 import org.cloudbus.cloudsim.UtilizationModel;
+import org.fog.utils.FogUtils;
 
 public class Tuple extends Cloudlet{
 
@@ -52,6 +53,28 @@ public class Tuple extends Cloudlet{
 		setDestinationDeviceId(-1);
 	}
 
+	/**
+	 * Creates a copy of the tuple for another device, with a new id but the same type and route, which has not been executed.
+	 * Devices which send a tuple to several children give each its own copy, as they execute the tuples they get.
+	 */
+	public Tuple copy() {
+		Tuple copy = new Tuple(getAppId(), FogUtils.generateTupleId(), getDirection(), getCloudletLength(), getNumberOfPes(),
+				getCloudletFileSize(), getCloudletOutputSize(), getUtilizationModelCpu(), getUtilizationModelRam(),
+				getUtilizationModelBw());
+		copy.setUserId(getUserId());
+		copy.setTupleType(getTupleType());
+		copy.setDestModuleName(getDestModuleName());
+		copy.setSrcModuleName(getSrcModuleName());
+		copy.setActualTupleId(getActualTupleId());
+		copy.setActuatorId(getActuatorId());
+		copy.setSourceDeviceId(getSourceDeviceId());
+		copy.setSourceModuleId(getSourceModuleId());
+		copy.setModuleCopyMap(new HashMap<String, Integer>(getModuleCopyMap()));
+		copy.setDestinationDeviceId(getDestinationDeviceId());
+		copy.setTraversedMicroservices(new HashMap<String, Integer>(getTraversed()));
+		return copy;
+	}
+
 	public int getActualTupleId() {
 		return actualTupleId;
 	}
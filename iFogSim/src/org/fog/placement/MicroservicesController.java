@@ -26,6 +26,11 @@ public class MicroservicesController extends SimEntity {
 
     protected List<Integer> clustering_levels;
 
+    /**
+     * Routes between the fog devices, kept to update the routing tables when links change
+     */
+    protected RoutingEngine routingEngine;
+
     /**
      * @param name
      * @param fogDevices
@@ -125,7 +130,9 @@ public class MicroservicesController extends SimEntity {
     }
 
     protected void generateRoutingTable() {
-        Map<Integer, Map<Integer, Integer>> routing = ShortestPathRoutingGenerator.generateRoutingTable(fogDevices);
+        routingEngine = new RoutingEngine(fogDevices);
+        Map<Integer, Map<Integer, Integer>> routing = routingEngine.getRoutingTables();
+        ShortestPathRoutingGenerator.printRoutingTable(routing, fogDevices);
 
         for (FogDevice f : fogDevices) {
             ((MicroserviceFogDevice) f).addRoutingTable(routing.get(f.getId()));
@@ -215,11 +222,12 @@ public class MicroservicesController extends SimEntity {
             case FogEvents.STOP_SIMULATION:
                 CloudSim.stopSimulation();
                 printTimeDetails();
+                TimeKeeper.getInstance().exportHistograms();
                 printPowerDetails();
                 printCostDetails();
                 printNetworkUsageDetails();
                 printQoSDetails();
-                System.exit(0);
+                CloudSim.abruptallyTerminate();
                 break;
         }
 
@@ -101,7 +101,7 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
                 printCostDetails();
                 printNetworkUsageDetails();
                 printMigrationDelayDetails();
-                System.exit(0);
+                CloudSim.abruptallyTerminate();
                 break;
             default:
                 super.processEvent(ev);
@@ -227,7 +227,7 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
             //printFogDeviceChildren(prevParent.getId());
         }
 
-        updateRoutingTable(fogDevice);
+        updateRoutingTable(fogDevice, prevParent, newParent);
 
     }
 
@@ -252,20 +252,12 @@ public class MicroservicesMobilityClusteringController extends MicroservicesCont
         }
     }
 
-    private void updateRoutingTable(FogDevice fogDevice) {
-
-        for (FogDevice f : fogDevices) {
-            if (f.getId() != fogDevice.getId()) {
-                // for mobile device update all to parent
-                ((MicroserviceFogDevice) fogDevice).updateRoutingTable(f.getId(), fogDevice.getParentId());
-
-                ////for other update route to mobile based on route to parent
-                int nextId = ((MicroserviceFogDevice) f).getRoutingTable().get(fogDevice.getParentId());
-                if (f.getId() != nextId)
-                    ((MicroserviceFogDevice) f).updateRoutingTable(fogDevice.getId(), nextId);
-                else
-                    ((MicroserviceFogDevice) f).updateRoutingTable(fogDevice.getId(), fogDevice.getId());
-            }
+    private void updateRoutingTable(FogDevice fogDevice, FogDevice prevParent, FogDevice newParent) {
+        Map<Integer, Map<Integer, Integer>> changedRoutes = routingEngine.update(fogDevice, prevParent, newParent);
+        for (int deviceId : changedRoutes.keySet()) {
+            MicroserviceFogDevice f = (MicroserviceFogDevice) CloudSim.getEntity(deviceId);
+            for (Map.Entry<Integer, Integer> route : changedRoutes.get(deviceId).entrySet())
+                f.updateRoutingTable(route.getKey(), route.getValue());
         }
     }
 
@@ -1,6 +1,7 @@
 package org.fog.policy;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +16,9 @@ public class AppModuleAllocationPolicy extends VmAllocationPolicy{
 	
 	private List<Integer> appModuleIds;
 	
+	/** The modules on the fog host by name, in the order of the VM list of the host */
+	private Map<String, List<AppModule>> modulesByName = new HashMap<String, List<AppModule>>();
+	
 	public AppModuleAllocationPolicy(List<? extends Host> list) {
 		super(list);
 		if(list.size()==1)
@@ -28,6 +32,7 @@ public class AppModuleAllocationPolicy extends VmAllocationPolicy{
 		boolean result = host.vmCreate(vm);
 		if (result) { // if vm were succesfully created in the host
 			getAppModuleIdsIds().add(vm.getId());
+			moduleCreated(vm);
 		}
 		
 		return result;
@@ -38,6 +43,8 @@ public class AppModuleAllocationPolicy extends VmAllocationPolicy{
 		boolean result = host.vmCreate(vm);
 		if (result) { // if vm were succesfully created in the host
 			getAppModuleIdsIds().add(vm.getId());
+			if (host == fogHost)
+				moduleCreated(vm);
 		}
 		
 		return result;
@@ -54,7 +61,48 @@ public class AppModuleAllocationPolicy extends VmAllocationPolicy{
 	public void deallocateHostForVm(Vm vm) {
 		if (fogHost != null) {
 			fogHost.vmDestroy(vm);
+			if (vm instanceof AppModule) {
+				List<AppModule> modules = modulesByName.get(((AppModule) vm).getName());
+				if (modules != null)
+					modules.remove(vm);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the first module of a given name on the fog host, whatever its application.
+	 * @return the module, or null if there is none
+	 */
+	public AppModule getModule(String moduleName) {
+		List<AppModule> modules = modulesByName.get(moduleName);
+		return modules == null || modules.isEmpty() ? null : modules.get(0);
+	}
+	
+	/**
+	 * Gets the module of an application on the fog host, the last one created if there are several.
+	 * @return the module, or null if there is none
+	 */
+	public AppModule getModule(String appId, String moduleName) {
+		List<AppModule> modules = modulesByName.get(moduleName);
+		if (modules == null)
+			return null;
+		for (int i = modules.size() - 1; i >= 0; i--) {
+			if (modules.get(i).getAppId().equals(appId))
+				return modules.get(i);
+		}
+		return null;
+	}
+	
+	private void moduleCreated(Vm vm) {
+		if (!(vm instanceof AppModule))
+			return;
+		String name = ((AppModule) vm).getName();
+		List<AppModule> modules = modulesByName.get(name);
+		if (modules == null) {
+			modules = new ArrayList<AppModule>(1);
+			modulesByName.put(name, modules);
 		}
+		modules.add((AppModule) vm);
 	}
 
 	@Override
@@ -0,0 +1,57 @@
+package org.fog.sweep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads its own copy of the classes of a package, and delegates the other classes to its parent. The scenarios keep
+ * their topology and settings in static fields, so each replica of a sweep loads the scenario with a new loader to
+ * get fresh fields, while sharing the simulator classes, whose state is kept per simulation.
+ */
+class IsolatingClassLoader extends ClassLoader {
+
+	private final String prefix;
+
+	IsolatingClassLoader(String packageName, ClassLoader parent) {
+		super(parent);
+		this.prefix = packageName + ".";
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!name.startsWith(prefix))
+			return super.loadClass(name, resolve);
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> loaded = findLoadedClass(name);
+			if (loaded == null) {
+				byte[] bytes = readClass(name);
+				loaded = defineClass(name, bytes, 0, bytes.length);
+			}
+			if (resolve)
+				resolveClass(loaded);
+			return loaded;
+		}
+	}
+
+	private byte[] readClass(String name) throws ClassNotFoundException {
+		InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+		if (in == null)
+			throw new ClassNotFoundException(name);
+		try {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1)
+					bytes.write(buffer, 0, read);
+				return bytes.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new ClassNotFoundException(name, e);
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.fog.sweep;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.fog.entities.FogDevice;
+import org.fog.utils.Config;
+import org.fog.utils.LatencyHistogram;
+import org.fog.utils.NetworkUsageMonitor;
+import org.fog.utils.TimeKeeper;
+
+/**
+ * The results of one replica of a sweep, read from the monitors of its simulation once it has ended: the average,
+ * 95th and 99th percentile delay of each application loop, the energy consumed and the cost of all the fog devices,
+ * the network usage as printed by the controller, and the time the replica took.
+ */
+public class ReplicaMetrics {
+
+	public static final String LOOP_LATENCY = "loop%d_latency";
+	public static final String LOOP_LATENCY_P95 = "loop%d_latency_p95";
+	public static final String LOOP_LATENCY_P99 = "loop%d_latency_p99";
+	public static final String ENERGY = "energy";
+	public static final String COST = "cost";
+	public static final String NETWORK_USAGE = "network_usage";
+	public static final String WALL_TIME = "wall_time_s";
+
+	private final Map<String, String> point;
+	private final int replica;
+	private final long seed;
+	private final SortedMap<String, Double> values = new TreeMap<String, Double>();
+	private Throwable failure;
+
+	public ReplicaMetrics(Map<String, String> point, int replica, long seed) {
+		this.point = point;
+		this.replica = replica;
+		this.seed = seed;
+	}
+
+	/**
+	 * Reads the results of the simulation of the current thread. Must be called in the context the scenario ran in.
+	 *
+	 * @param scenario the scenario class, whose static <tt>fogDevices</tt> field lists the devices
+	 * @param wallTimeMillis the time the replica took
+	 */
+	public void collect(Class<?> scenario, long wallTimeMillis) throws IllegalAccessException {
+		for (Map.Entry<Integer, Double> loop : TimeKeeper.getInstance().getLoopIdToCurrentAverage().entrySet()) {
+			values.put(String.format(LOOP_LATENCY, loop.getKey()), loop.getValue());
+			LatencyHistogram histogram = TimeKeeper.getInstance().getLoopDelayHistogram(loop.getKey());
+			if (histogram != null) {
+				values.put(String.format(LOOP_LATENCY_P95, loop.getKey()), histogram.getValueAtPercentile(95));
+				values.put(String.format(LOOP_LATENCY_P99, loop.getKey()), histogram.getValueAtPercentile(99));
+			}
+		}
+		Collection<?> fogDevices = getFogDevices(scenario);
+		if (fogDevices != null) {
+			double energy = 0, cost = 0;
+			for (Object device : fogDevices) {
+				if (device instanceof FogDevice) {
+					energy += ((FogDevice) device).getEnergyConsumption();
+					cost += ((FogDevice) device).getTotalCost();
+				}
+			}
+			values.put(ENERGY, energy);
+			values.put(COST, cost);
+		}
+		values.put(NETWORK_USAGE, NetworkUsageMonitor.getNetworkUsage() / Config.MAX_SIMULATION_TIME);
+		values.put(WALL_TIME, wallTimeMillis / 1000.0);
+	}
+
+	private static Collection<?> getFogDevices(Class<?> scenario) throws IllegalAccessException {
+		Field field;
+		try {
+			field = scenario.getDeclaredField("fogDevices");
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+		if (!Modifier.isStatic(field.getModifiers()) || !Collection.class.isAssignableFrom(field.getType()))
+			return null;
+		field.setAccessible(true);
+		return (Collection<?>) field.get(null);
+	}
+
+	public Map<String, String> getPoint() {
+		return point;
+	}
+
+	public int getReplica() {
+		return replica;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public SortedMap<String, Double> getValues() {
+		return values;
+	}
+
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public void setFailure(Throwable failure) {
+		this.failure = failure;
+	}
+
+}
@@ -0,0 +1,338 @@
+package org.fog.sweep;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.utils.FogUtils;
+
+/**
+ * Runs a scenario over a grid of parameters, see {@link SweepSpec}, and writes the mean, standard deviation and
+ * confidence interval of each metric of {@link ReplicaMetrics} for each combination of parameters.
+ * <p>
+ * The replicas run in parallel on a thread pool, each in its own {@link SimulationContext} and with its own copy of
+ * the scenario classes, loaded by an {@link IsolatingClassLoader}: the parameters are set in the static fields of that
+ * copy before its main method is called. The console output of a replica goes to its log file, or is discarded.
+ * The scenario must not call <tt>System.exit</tt> and must only depend on the random numbers of
+ * {@link FogUtils#getRandom()} for the seeds to make the replicas reproducible.
+ * <pre>
+ * java -cp ... org.fog.sweep.SweepRunner sweep.properties
+ * </pre>
+ */
+public class SweepRunner {
+
+	/** The console output of the replica run by each thread. */
+	private static final ThreadLocal<PrintStream> REPLICA_OUTPUT = new ThreadLocal<PrintStream>();
+
+	private final SweepSpec spec;
+
+	public SweepRunner(SweepSpec spec) {
+		this.spec = spec;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: SweepRunner <sweep.properties>");
+			return;
+		}
+		new SweepRunner(SweepSpec.load(new File(args[0]))).run();
+	}
+
+	/**
+	 * Runs all the replicas and writes the results.
+	 *
+	 * @return the results of the replicas, grouped by combination of parameters
+	 */
+	public List<ReplicaMetrics> run() throws IOException, InterruptedException, ReflectiveOperationException {
+		// fail before running anything if the parameters do not match the scenario
+		Class<?> scenario = loadScenario();
+		for (Map<String, String> point : spec.getPoints())
+			setParameters(scenario, point);
+		if (spec.getLogs() != null && !spec.getLogs().isDirectory() && !spec.getLogs().mkdirs())
+			throw new IOException("Cannot create the log directory " + spec.getLogs());
+
+		final PrintStream console = System.out;
+		PrintStream consoleErr = System.err;
+		PrintStream dispatch = new PrintStream(new ReplicaOutputStream(console), true);
+		System.setOut(dispatch);
+		System.setErr(new PrintStream(new ReplicaOutputStream(consoleErr), true));
+		ExecutorService executor = Executors.newFixedThreadPool(spec.getThreads());
+		List<ReplicaMetrics> results = new ArrayList<ReplicaMetrics>();
+		try {
+			List<Future<ReplicaMetrics>> futures = new ArrayList<Future<ReplicaMetrics>>();
+			for (final Map<String, String> point : spec.getPoints()) {
+				for (int r = 0; r < spec.getReplications(); r++) {
+					final ReplicaMetrics replica = new ReplicaMetrics(point, r, spec.getSeed() + r);
+					futures.add(executor.submit(new Callable<ReplicaMetrics>() {
+						@Override
+						public ReplicaMetrics call() throws Exception {
+							runReplica(replica);
+							return replica;
+						}
+					}));
+				}
+			}
+			for (Future<ReplicaMetrics> future : futures) {
+				ReplicaMetrics replica;
+				try {
+					replica = future.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("A replica could not be run", e.getCause());
+				}
+				results.add(replica);
+				console.println("Replica " + results.size() + " of " + futures.size() + " " + label(replica)
+						+ (replica.getFailure() != null ? " failed: " + replica.getFailure() : " done"));
+			}
+		} finally {
+			executor.shutdownNow();
+			System.setOut(console);
+			System.setErr(consoleErr);
+		}
+
+		writeSummary(results);
+		if (spec.getRaw() != null)
+			writeReplicas(results);
+		return results;
+	}
+
+	private void runReplica(final ReplicaMetrics replica) throws IOException {
+		PrintStream output = spec.getLogs() != null
+				? new PrintStream(new FileOutputStream(new File(spec.getLogs(), logName(replica))), true)
+				: new PrintStream(new OutputStream() {
+					@Override
+					public void write(int b) {
+					}
+				});
+		REPLICA_OUTPUT.set(output);
+		try {
+			new SimulationContext().call(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					FogUtils.setRandomSeed(replica.getSeed());
+					Class<?> scenario = loadScenario();
+					setParameters(scenario, replica.getPoint());
+					Method main = scenario.getMethod("main", String[].class);
+					long start = System.currentTimeMillis();
+					main.invoke(null, (Object) spec.getArgs());
+					replica.collect(scenario, System.currentTimeMillis() - start);
+					return null;
+				}
+			});
+		} catch (Exception e) {
+			Throwable failure = e instanceof InvocationTargetException ? e.getCause() : e;
+			replica.setFailure(failure);
+			failure.printStackTrace(output);
+		} finally {
+			REPLICA_OUTPUT.remove();
+			output.close();
+		}
+	}
+
+	private Class<?> loadScenario() throws ClassNotFoundException {
+		String name = spec.getScenario();
+		int lastDot = name.lastIndexOf('.');
+		if (lastDot < 0)
+			throw new IllegalArgumentException("The scenario " + name + " should be in a package");
+		ClassLoader loader = new IsolatingClassLoader(name.substring(0, lastDot), SweepRunner.class.getClassLoader());
+		return Class.forName(name, true, loader);
+	}
+
+	private static void setParameters(Class<?> scenario, Map<String, String> point) throws IllegalAccessException {
+		for (Map.Entry<String, String> parameter : point.entrySet()) {
+			Field field;
+			try {
+				field = scenario.getDeclaredField(parameter.getKey());
+			} catch (NoSuchFieldException e) {
+				throw new IllegalArgumentException("The scenario has no field " + parameter.getKey());
+			}
+			int modifiers = field.getModifiers();
+			if (!Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers))
+				throw new IllegalArgumentException("The field " + parameter.getKey() + " should be static and not final");
+			field.setAccessible(true);
+			field.set(null, convert(field.getType(), parameter.getValue()));
+		}
+	}
+
+	private static Object convert(Class<?> type, String value) {
+		if (type == int.class || type == Integer.class)
+			return Integer.valueOf(value);
+		if (type == long.class || type == Long.class)
+			return Long.valueOf(value);
+		if (type == double.class || type == Double.class)
+			return Double.valueOf(value);
+		if (type == boolean.class || type == Boolean.class) {
+			if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+				throw new IllegalArgumentException("Not a boolean:" + value);
+			return Boolean.valueOf(value);
+		}
+		if (type == String.class)
+			return value;
+		throw new IllegalArgumentException("Parameters of type " + type.getName() + " are not supported");
+	}
+
+	private void writeSummary(List<ReplicaMetrics> results) throws IOException {
+		SortedSet<String> metrics = metricNames(results);
+		PrintWriter out = new PrintWriter(spec.getOutput(), "UTF-8");
+		try {
+			StringBuilder header = new StringBuilder();
+			for (String parameter : spec.getParameters().keySet())
+				header.append(parameter).append(',');
+			header.append("replications,failures");
+			for (String metric : metrics)
+				header.append(',').append(metric).append("_mean,").append(metric).append("_stddev,")
+						.append(metric).append("_ci_low,").append(metric).append("_ci_high");
+			out.println(header);
+
+			// the replicas of a point are consecutive, see run()
+			for (int from = 0; from < results.size(); from += spec.getReplications()) {
+				List<ReplicaMetrics> replicas = results.subList(from, from + spec.getReplications());
+				StringBuilder row = new StringBuilder();
+				for (String value : replicas.get(0).getPoint().values())
+					row.append(value).append(',');
+				int failures = 0;
+				for (ReplicaMetrics replica : replicas) {
+					if (replica.getFailure() != null)
+						failures++;
+				}
+				row.append(replicas.size() - failures).append(',').append(failures);
+				for (String metric : metrics) {
+					SummaryStatistics statistics = new SummaryStatistics();
+					for (ReplicaMetrics replica : replicas) {
+						Double value = replica.getValues().get(metric);
+						if (replica.getFailure() == null && value != null)
+							statistics.addValue(value);
+					}
+					appendStatistics(row, statistics);
+				}
+				out.println(row);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Appends the mean, the standard deviation and the bounds of the Student's t confidence interval of the mean,
+	 * leaving empty the values that cannot be computed from the number of samples.
+	 */
+	private void appendStatistics(StringBuilder row, SummaryStatistics statistics) {
+		long n = statistics.getN();
+		row.append(',');
+		if (n == 0) {
+			row.append(",,,");
+			return;
+		}
+		double mean = statistics.getMean();
+		row.append(mean).append(',');
+		if (n < 2) {
+			row.append(",,");
+			return;
+		}
+		double stdDev = statistics.getStandardDeviation();
+		double t = new TDistribution(n - 1).inverseCumulativeProbability((1 + spec.getConfidence()) / 2);
+		double halfWidth = t * stdDev / Math.sqrt(n);
+		row.append(stdDev).append(',').append(mean - halfWidth).append(',').append(mean + halfWidth);
+	}
+
+	private void writeReplicas(List<ReplicaMetrics> results) throws IOException {
+		SortedSet<String> metrics = metricNames(results);
+		PrintWriter out = new PrintWriter(spec.getRaw(), "UTF-8");
+		try {
+			StringBuilder header = new StringBuilder();
+			for (String parameter : spec.getParameters().keySet())
+				header.append(parameter).append(',');
+			header.append("replica,seed,failure");
+			for (String metric : metrics)
+				header.append(',').append(metric);
+			out.println(header);
+			for (ReplicaMetrics replica : results) {
+				StringBuilder row = new StringBuilder();
+				for (String value : replica.getPoint().values())
+					row.append(value).append(',');
+				row.append(replica.getReplica()).append(',').append(replica.getSeed()).append(',');
+				if (replica.getFailure() != null)
+					row.append(replica.getFailure().getClass().getSimpleName());
+				for (String metric : metrics) {
+					Double value = replica.getValues().get(metric);
+					row.append(',').append(value != null ? value.toString() : "");
+				}
+				out.println(row);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static SortedSet<String> metricNames(List<ReplicaMetrics> results) {
+		SortedSet<String> metrics = new TreeSet<String>();
+		for (ReplicaMetrics replica : results)
+			metrics.addAll(replica.getValues().keySet());
+		return metrics;
+	}
+
+	private static String label(ReplicaMetrics replica) {
+		return replica.getPoint() + " #" + replica.getReplica();
+	}
+
+	private String logName(ReplicaMetrics replica) {
+		StringBuilder name = new StringBuilder(spec.getScenario().substring(spec.getScenario().lastIndexOf('.') + 1));
+		for (Map.Entry<String, String> parameter : replica.getPoint().entrySet())
+			name.append('_').append(parameter.getKey()).append('-').append(parameter.getValue());
+		name.append("_r").append(replica.getReplica()).append(".log");
+		return name.toString().replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+
+	/**
+	 * Writes to the output of the replica run by the current thread, or to the console for the other threads.
+	 */
+	private static class ReplicaOutputStream extends OutputStream {
+
+		private final OutputStream console;
+
+		ReplicaOutputStream(OutputStream console) {
+			this.console = console;
+		}
+
+		private OutputStream target() {
+			PrintStream output = REPLICA_OUTPUT.get();
+			return output != null ? output : console;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			target().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target().flush();
+		}
+
+	}
+
+}
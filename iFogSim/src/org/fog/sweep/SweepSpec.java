@@ -0,0 +1,159 @@
+package org.fog.sweep;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The description of a parameter sweep, read from a properties file:
+ * <pre>
+ * scenario=org.fog.test.perfeval.DCNSFog
+ * param.numOfAreas=1,2,4
+ * param.CLOUD=false,true
+ * replications=10
+ * seed=42
+ * threads=8
+ * confidence=0.95
+ * output=sweep.csv
+ * raw=sweep-replicas.csv
+ * logs=sweep-logs
+ * </pre>
+ * Each <tt>param.</tt> key names a static field of the scenario class and lists the values it takes. The scenario is
+ * run for every combination of the values, <tt>replications</tt> times each, with the seeds <tt>seed</tt>,
+ * <tt>seed + 1</tt>, ... so that the replicas of different combinations share their random numbers.
+ * The other keys are optional: <tt>threads</tt> defaults to the number of processors, <tt>replications</tt> and
+ * <tt>seed</tt> to 1, <tt>confidence</tt> to 0.95 and <tt>output</tt> to <tt>sweep.csv</tt>. The results of each
+ * replica are written to <tt>raw</tt> and the console output of each replica to a file in <tt>logs</tt> when given,
+ * and <tt>args</tt> holds the space separated arguments passed to the main method of the scenario.
+ */
+public class SweepSpec {
+
+	public static final String PARAMETER_PREFIX = "param.";
+
+	private final String scenario;
+	private final Map<String, List<String>> parameters;
+	private final String[] args;
+	private final int replications;
+	private final long seed;
+	private final int threads;
+	private final double confidence;
+	private final File output;
+	private final File raw;
+	private final File logs;
+
+	public SweepSpec(Properties properties) {
+		scenario = properties.getProperty("scenario");
+		if (scenario == null || scenario.trim().isEmpty())
+			throw new IllegalArgumentException("The sweep has no scenario class");
+		parameters = new TreeMap<String, List<String>>();
+		for (String key : properties.stringPropertyNames()) {
+			if (!key.startsWith(PARAMETER_PREFIX))
+				continue;
+			List<String> values = new ArrayList<String>();
+			for (String value : properties.getProperty(key).split(",")) {
+				if (!value.trim().isEmpty())
+					values.add(value.trim());
+			}
+			if (values.isEmpty())
+				throw new IllegalArgumentException("The parameter " + key + " has no value");
+			parameters.put(key.substring(PARAMETER_PREFIX.length()), values);
+		}
+		String arguments = properties.getProperty("args", "").trim();
+		args = arguments.isEmpty() ? new String[0] : arguments.split("\\s+");
+		replications = Integer.parseInt(properties.getProperty("replications", "1").trim());
+		seed = Long.parseLong(properties.getProperty("seed", "1").trim());
+		threads = Integer.parseInt(properties.getProperty("threads",
+				String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+		confidence = Double.parseDouble(properties.getProperty("confidence", "0.95").trim());
+		output = new File(properties.getProperty("output", "sweep.csv").trim());
+		raw = properties.containsKey("raw") ? new File(properties.getProperty("raw").trim()) : null;
+		logs = properties.containsKey("logs") ? new File(properties.getProperty("logs").trim()) : null;
+		if (replications < 1)
+			throw new IllegalArgumentException("The number of replications should be positive, but is:" + replications);
+		if (threads < 1)
+			throw new IllegalArgumentException("The number of threads should be positive, but is:" + threads);
+		if (confidence <= 0 || confidence >= 1)
+			throw new IllegalArgumentException("The confidence level should be between 0 and 1, but is:" + confidence);
+	}
+
+	public static SweepSpec load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return new SweepSpec(properties);
+	}
+
+	/**
+	 * Gets all the combinations of the parameter values, each mapping the parameter names, in alphabetical order, to
+	 * their values.
+	 */
+	public List<Map<String, String>> getPoints() {
+		List<Map<String, String>> points = new ArrayList<Map<String, String>>();
+		points.add(new LinkedHashMap<String, String>());
+		for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+			List<Map<String, String>> expanded = new ArrayList<Map<String, String>>();
+			for (Map<String, String> point : points) {
+				for (String value : parameter.getValue()) {
+					Map<String, String> next = new LinkedHashMap<String, String>(point);
+					next.put(parameter.getKey(), value);
+					expanded.add(next);
+				}
+			}
+			points = expanded;
+		}
+		return points;
+	}
+
+	public String getScenario() {
+		return scenario;
+	}
+
+	public Map<String, List<String>> getParameters() {
+		return Collections.unmodifiableMap(parameters);
+	}
+
+	public String[] getArgs() {
+		return args.clone();
+	}
+
+	public int getReplications() {
+		return replications;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public double getConfidence() {
+		return confidence;
+	}
+
+	public File getOutput() {
+		return output;
+	}
+
+	public File getRaw() {
+		return raw;
+	}
+
+	public File getLogs() {
+		return logs;
+	}
+
+}
@@ -23,4 +23,26 @@ public class Config {
 	public static double clusteringLatency = 2.0; //milisecond
 
 	public static final int TRANSMISSION_START_DELAY = 50;
+
+	// Acknowledge every tuple arrival with a TUPLE_ACK event. The entities of iFogSim ignore them, so they can be
+	// disabled to save one event per tuple, unless a custom sensor or module relies on them
+	public static boolean SEND_TUPLE_ACKS = true;
+
+	// Broadcast the tuples sent to actuators only into the subtrees holding an actuator of their type. Off by default,
+	// as the copies sent into the other subtrees still count in the network usage
+	public static boolean PRUNE_ACTUATOR_BROADCAST = false;
+
+	// Write the histograms of the loop delays and of the CPU times of the tuples to this CSV file when the simulation
+	// ends, see TimeKeeper#writeHistograms. No file is written if null
+	public static String LATENCY_HISTOGRAM_FILE = null;
+
+	// Also keep the histograms over consecutive windows of this length of simulated time, or none if 0
+	public static double LATENCY_HISTOGRAM_WINDOW = 0;
+
+	// Long simulations: the hosts and modules record no state history, and TimeKeeper keeps no list of the tuple ids
+	// of each loop and forgets the emit times and CPU start times older than LONG_HORIZON_EXPIRY, e.g. of the tuples
+	// dropped by a selectivity, so that the memory used does not grow with the simulated time. The loops taking longer
+	// than LONG_HORIZON_EXPIRY are not measured
+	public static boolean LONG_HORIZON_MODE = false;
+	public static double LONG_HORIZON_EXPIRY = 10000;
 }
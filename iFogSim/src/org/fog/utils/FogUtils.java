@@ -2,32 +2,164 @@ package org.fog.utils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
 
 public class FogUtils {
-	private static int TUPLE_ID = 1;
-	private static int ENTITY_ID = 1;
-	private static int ACTUAL_TUPLE_ID = 1;
-	
+
+	/**
+	 * The ids and coverage maps of one simulation, see SimulationContext.
+	 * The random numbers taken by an entity while it runs come from the entity's own generator, so that each entity
+	 * gets the same ones whatever the order in which the entities run, and a parallel simulation gets the results of
+	 * the sequential one. So do the tuple ids taken while a parallel simulation runs, from the entity's own range.
+	 */
+	private static class State {
+		private final IdSequence tupleId = new IdSequence();
+		private final AtomicInteger entityId = new AtomicInteger(1);
+		private final IdSequence actualTupleId = new IdSequence();
+		private final Map<String, GeoCoverage> appIdToGeoCoverageMap = new HashMap<String, GeoCoverage>();
+		private long seed = new Random().nextLong();
+		private Random random = new Random(seed);
+		/** The generators of the entities, indexed by entity id, made when an entity first draws */
+		private volatile Random[] entityRandoms;
+
+		private Random entityRandom(int entityId){
+			Random[] randoms = entityRandoms;
+			if(randoms == null){
+				synchronized(this){
+					if(entityRandoms == null)
+						entityRandoms = new Random[CloudSim.getNumEntities()];
+					randoms = entityRandoms;
+				}
+			}
+			// the entities added while the simulation runs share the generator of the simulation
+			if(entityId >= randoms.length)
+				return random;
+			if(randoms[entityId] == null)
+				randoms[entityId] = new Random(entitySeed(seed, entityId));
+			return randoms[entityId];
+		}
+	}
+
+	/**
+	 * Ids taken from a counter until a parallel simulation runs, then from a range of each entity: the i-th id of the
+	 * entity in slot s is first + s + i * slots, where the slot of an entity is its id plus one. The entities added
+	 * while the simulation runs and the code run outside of the entities share slot 0. A slot has (2^31 - first) /
+	 * slots ids, and an IllegalStateException is thrown when one of them is used up, rather than giving an id twice.
+	 */
+	private static class IdSequence {
+		private final AtomicInteger next = new AtomicInteger(1);
+		private volatile int[] taken;
+		private int first;
+		private int perSlot;
+
+		private int generate(){
+			int entityId = CloudSim.getRunningEntityId();
+			int[] slots = taken;
+			if(slots == null){
+				if(entityId < 0 || !CloudSim.isRunningInParallel())
+					return next.getAndIncrement();
+				slots = makeRanges();
+			}
+			int slot = entityId + 1 < slots.length ? entityId + 1 : 0;
+			if(slot == 0){
+				synchronized(this){
+					return take(slots, 0);
+				}
+			}
+			// a slot is only used by the thread running its entity
+			return take(slots, slot);
+		}
+
+		private synchronized int[] makeRanges(){
+			if(taken == null){
+				first = next.get();
+				perSlot = (Integer.MAX_VALUE - first) / (CloudSim.getNumEntities() + 1);
+				taken = new int[CloudSim.getNumEntities() + 1];
+			}
+			return taken;
+		}
+
+		private int take(int[] slots, int slot){
+			if(slots[slot] == perSlot)
+				throw new IllegalStateException("The " + perSlot + " tuple ids of " + (slot == 0 ? "the simulation"
+						: CloudSim.getEntityName(slot - 1)) + " are used up, the simulation has too many entities to run"
+						+ " in parallel for that long");
+			return first + slot + slots[slot]++ * slots.length;
+		}
+	}
+
+	private static State state(){
+		return SimulationContext.current().getState(State.class, State::new);
+	}
+
+	/**
+	 * Gets the seed of the generator of an entity, mixed as by SplittableRandom so that entities with close ids get
+	 * unrelated numbers.
+	 */
+	private static long entitySeed(long seed, int entityId){
+		long z = seed + (entityId + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	public static int generateTupleId(){
-		return TUPLE_ID++;
+		return state().tupleId.generate();
 	}
-	
+
 	public static String getSensorTypeFromSensorName(String sensorName){
 		return sensorName.substring(sensorName.indexOf('-')+1, sensorName.lastIndexOf('-'));
 	}
-	
+
 	public static int generateEntityId(){
-		return ENTITY_ID++;
+		return state().entityId.getAndIncrement();
 	}
-	
+
 	public static int generateActualTupleId(){
-		return ACTUAL_TUPLE_ID++;
+		return state().actualTupleId.generate();
 	}
-	
+
 	public static int USER_ID = 1;
-	
+
 	//public static int MAX = 10000000;
 	public static int MAX = 10000000;
-	
-	public static Map<String, GeoCoverage> appIdToGeoCoverageMap = new HashMap<String, GeoCoverage>();
+
+	public static Map<String, GeoCoverage> getAppIdToGeoCoverageMap(){
+		return state().appIdToGeoCoverageMap;
+	}
+
+	/**
+	 * Seeds the random numbers of the current simulation, so that it can be replicated.
+	 * Must be called before the application and its distributions are created.
+	 */
+	public static void setRandomSeed(long seed){
+		State state = state();
+		synchronized(state){
+			state.seed = seed;
+			state.random = new Random(seed);
+			state.entityRandoms = null;
+		}
+	}
+
+	/**
+	 * Gets the random numbers of the current simulation, used by selectivity models. While an entity runs, these are
+	 * the numbers of the entity, seeded from the simulation and the id of the entity.
+	 */
+	public static Random getRandom(){
+		State state = state();
+		int entityId = CloudSim.getRunningEntityId();
+		return entityId < 0 ? state.random : state.entityRandom(entityId);
+	}
+
+	/**
+	 * Creates a random number generator seeded from the current simulation, for distributions
+	 * that keep their own generator.
+	 */
+	public static Random createRandom(){
+		return new Random(getRandom().nextLong());
+	}
 }
@@ -0,0 +1,203 @@
+package org.fog.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hash map from int to double with open addressing, which stores its entries in primitive arrays instead of boxing
+ * them. Its primitive methods allocate nothing, except when the map grows. It can also be used as a
+ * {@link Map}&lt;Integer, Double&gt;, at the cost of boxing, and then does not support removing entries through the
+ * iterators of its views.
+ */
+public class IntDoubleHashMap extends AbstractMap<Integer, Double> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] keys;
+	private double[] values;
+	private boolean[] used;
+	private int size = 0;
+	private int mask;
+
+	public IntDoubleHashMap() {
+		allocate(MIN_CAPACITY);
+	}
+
+	public IntDoubleHashMap(Map<Integer, Double> map) {
+		this();
+		for (Map.Entry<Integer, Double> entry : map.entrySet())
+			put(entry.getKey().intValue(), entry.getValue().doubleValue());
+	}
+
+	/**
+	 * Gets the value of a key.
+	 * @param missing the value returned if the key is not in the map
+	 */
+	public double get(int key, double missing) {
+		int slot = find(key);
+		return slot >= 0 ? values[slot] : missing;
+	}
+
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	public void put(int key, double value) {
+		int slot = hash(key);
+		while (used[slot]) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		used[slot] = true;
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > keys.length / 2)
+			grow();
+	}
+
+	/**
+	 * Removes a key.
+	 * @param missing the value returned if the key is not in the map
+	 * @return the value the key had
+	 */
+	public double remove(int key, double missing) {
+		int slot = find(key);
+		if (slot < 0)
+			return missing;
+		double value = values[slot];
+		// shift back the entries after the removed one, so that no probe sequence is broken
+		int free = slot;
+		int next = (free + 1) & mask;
+		while (used[next]) {
+			int home = hash(keys[next]);
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		used[free] = false;
+		size--;
+		return value;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		if (size > 0)
+			allocate(MIN_CAPACITY);
+	}
+
+	@Override
+	public Double get(Object key) {
+		if (!(key instanceof Integer))
+			return null;
+		int slot = find((Integer) key);
+		return slot >= 0 ? values[slot] : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && find((Integer) key) >= 0;
+	}
+
+	@Override
+	public Double put(Integer key, Double value) {
+		Double previous = get(key);
+		put(key.intValue(), value.doubleValue());
+		return previous;
+	}
+
+	@Override
+	public Double remove(Object key) {
+		Double previous = get(key);
+		if (previous != null)
+			remove(((Integer) key).intValue(), 0);
+		return previous;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, Double>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Double>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, Double>> iterator() {
+				return new Iterator<Map.Entry<Integer, Double>>() {
+					private int slot = advance(0);
+
+					private int advance(int from) {
+						while (from < used.length && !used[from])
+							from++;
+						return from;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return slot < used.length;
+					}
+
+					@Override
+					public Map.Entry<Integer, Double> next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						Map.Entry<Integer, Double> entry = new SimpleImmutableEntry<Integer, Double>(keys[slot],
+								values[slot]);
+						slot = advance(slot + 1);
+						return entry;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private int find(int key) {
+		int slot = hash(key);
+		while (used[slot]) {
+			if (keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new double[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		double[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i])
+				put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+}
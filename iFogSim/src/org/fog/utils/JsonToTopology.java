@@ -33,11 +33,12 @@ import org.json.simple.JSONValue;
 
 public class JsonToTopology {
 
-	private static List<FogDevice> fogDevices = new ArrayList<FogDevice>();
-	private static List<Sensor> sensors = new ArrayList<Sensor>();
-	private static List<Actuator> actuators = new ArrayList<Actuator>();
+	// the entities of the topology being read, one instance per call so that topologies can be read concurrently
+	private final List<FogDevice> fogDevices = new ArrayList<FogDevice>();
+	private final List<Sensor> sensors = new ArrayList<Sensor>();
+	private final List<Actuator> actuators = new ArrayList<Actuator>();
  
-	private static boolean isFogDevice(String name){
+	private boolean isFogDevice(String name){
 		for(FogDevice fogDevice : fogDevices){
 			if(fogDevice.getName().equalsIgnoreCase(name))
 				return true;
@@ -46,7 +47,7 @@ public class JsonToTopology {
 		
 	}
 	
-	private static FogDevice getFogDevice(String name){
+	private FogDevice getFogDevice(String name){
 		for(FogDevice fogDevice : fogDevices){
 			if(fogDevice.getName().equalsIgnoreCase(name))
 				return fogDevice;
@@ -54,7 +55,7 @@ public class JsonToTopology {
 		return null;
 	}
 	
-	private static boolean isActuator(String name){
+	private boolean isActuator(String name){
 		for(Actuator actuator : actuators){
 			if(actuator.getName().equalsIgnoreCase(name))
 				return true;
@@ -62,7 +63,7 @@ public class JsonToTopology {
 		return false;
 	}
 	
-	private static Actuator getActuator(String name){
+	private Actuator getActuator(String name){
 		for(Actuator actuator : actuators){
 			if(actuator.getName().equalsIgnoreCase(name))
 				return actuator;
@@ -70,7 +71,7 @@ public class JsonToTopology {
 		return null;
 	}
 	
-	private static boolean isSensor(String name){
+	private boolean isSensor(String name){
 		for(Sensor sensor : sensors){
 			if(sensor.getName().equalsIgnoreCase(name))
 				return true;
@@ -78,7 +79,7 @@ public class JsonToTopology {
 		return false;
 	}
 	
-	private static Sensor getSensor(String name){
+	private Sensor getSensor(String name){
 		for(Sensor sensor : sensors){
 			if(sensor.getName().equalsIgnoreCase(name))
 				return sensor;
@@ -87,12 +88,10 @@ public class JsonToTopology {
 	}
 	
 	public static PhysicalTopology getPhysicalTopology(int userId, String appId, String physicalTopologyFile) throws Exception{
-				
-		fogDevices = new ArrayList<FogDevice>();
-		sensors = new ArrayList<Sensor>();
-		actuators = new ArrayList<Actuator>();
-		
-		
+		return new JsonToTopology().readPhysicalTopology(userId, appId, physicalTopologyFile);
+	}
+	
+	private PhysicalTopology readPhysicalTopology(int userId, String appId, String physicalTopologyFile) throws Exception{
 		try {
 			JSONObject doc = (JSONObject) JSONValue.parse(new FileReader(physicalTopologyFile));
     		JSONArray nodes = (JSONArray) doc.get("nodes");
@@ -210,7 +209,7 @@ public class JsonToTopology {
 		return fogdevice;
 	}
 
-	private static void connectEntities(String src, String dst, double lat) {
+	private void connectEntities(String src, String dst, double lat) {
 		if(isFogDevice(src) && isFogDevice(dst)){
 			FogDevice srcDev = getFogDevice(src);
 			FogDevice destDev = getFogDevice(dst);
@@ -0,0 +1,156 @@
+package org.fog.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in fixed memory, with log-linear buckets in the way of HdrHistogram: the values are counted
+ * in units of a given resolution, and each power of two of units is split into the same number of linear buckets, so
+ * that the values read back have the same relative precision over the whole range.
+ * <p>
+ * Recording a value only increments a counter. The values above the highest trackable value are counted in the last
+ * bucket. The histogram is not thread safe.
+ */
+public class LatencyHistogram {
+
+	private final double resolution;
+	private final int subBucketBits;
+	private final long subBucketMask;
+	private final int subBucketHalfCount;
+	private final long highestTrackableUnits;
+	private final long[] counts;
+
+	private long totalCount = 0;
+	/** The sum of the recorded values in units, which unlike a sum of doubles does not depend on their order */
+	private long totalUnits = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	/**
+	 * @param resolution the smallest difference between two values that is measured, e.g. 0.001
+	 * @param highestTrackableValue the highest value measured, e.g. 1e7
+	 * @param subBucketBits the log2 of the number of buckets per power of two, 8 giving a relative error below 1%
+	 */
+	public LatencyHistogram(double resolution, double highestTrackableValue, int subBucketBits) {
+		if (!(resolution > 0) || !(highestTrackableValue >= resolution))
+			throw new IllegalArgumentException("Invalid histogram range: resolution " + resolution + ", highest value "
+					+ highestTrackableValue);
+		if (subBucketBits < 1 || subBucketBits > 16)
+			throw new IllegalArgumentException("The bits of the sub-buckets must be between 1 and 16, but are:"
+					+ subBucketBits);
+		this.resolution = resolution;
+		this.subBucketBits = subBucketBits;
+		this.subBucketMask = (1L << subBucketBits) - 1;
+		this.subBucketHalfCount = 1 << (subBucketBits - 1);
+		double highestUnits = Math.ceil(highestTrackableValue / resolution);
+		if (highestUnits >= Long.MAX_VALUE / 2)
+			throw new IllegalArgumentException("The histogram range is too wide: resolution " + resolution
+					+ ", highest value " + highestTrackableValue);
+		this.highestTrackableUnits = (long) highestUnits;
+		this.counts = new long[index(highestTrackableUnits) + 1];
+	}
+
+	/**
+	 * Creates an empty histogram with the same range and precision as this one.
+	 */
+	public LatencyHistogram copyEmpty() {
+		return new LatencyHistogram(resolution, highestTrackableUnits * resolution, subBucketBits);
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 */
+	public void record(double value) {
+		long units = value > 0 ? Math.min(Math.round(value / resolution), highestTrackableUnits) : 0;
+		counts[index(units)]++;
+		totalCount++;
+		totalUnits += units;
+		if (totalCount == 1) {
+			min = value;
+			max = value;
+		} else {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+	}
+
+	/**
+	 * Adds the values recorded by another histogram of the same range and precision.
+	 */
+	public void add(LatencyHistogram other) {
+		if (other.counts.length != counts.length || other.resolution != resolution)
+			throw new IllegalArgumentException("The histograms do not have the same range and precision");
+		if (other.totalCount == 0)
+			return;
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		min = totalCount == 0 ? other.min : Math.min(min, other.min);
+		max = totalCount == 0 ? other.max : Math.max(max, other.max);
+		totalCount += other.totalCount;
+		totalUnits += other.totalUnits;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		totalUnits = 0;
+		min = Double.NaN;
+		max = Double.NaN;
+	}
+
+	/**
+	 * Gets the value below which a given percentage of the recorded values are, within the precision of the histogram.
+	 * @param percentile the percentage, between 0 and 100
+	 * @return the value, or NaN if no value was recorded
+	 */
+	public double getValueAtPercentile(double percentile) {
+		if (totalCount == 0)
+			return Double.NaN;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.max(min, Math.min(max, highestEquivalentUnits(i) * resolution));
+		}
+		return max;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Gets the mean of the recorded values, rounded to the resolution, or NaN if no value was recorded.
+	 */
+	public double getMean() {
+		return totalCount == 0 ? Double.NaN : totalUnits * resolution / totalCount;
+	}
+
+	/**
+	 * Gets the lowest value recorded, or NaN if no value was recorded.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the highest value recorded, or NaN if no value was recorded.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	private int index(long units) {
+		int bucket = 64 - subBucketBits - Long.numberOfLeadingZeros(units | subBucketMask);
+		return (bucket << (subBucketBits - 1)) + (int) (units >>> bucket);
+	}
+
+	private long highestEquivalentUnits(int index) {
+		if (index < 2 * subBucketHalfCount)
+			return index;
+		int bucket = (index >> (subBucketBits - 1)) - 1;
+		long subBucket = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		return ((subBucket + 1) << bucket) - 1;
+	}
+
+}
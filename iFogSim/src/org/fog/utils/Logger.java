@@ -22,13 +22,20 @@ public class Logger {
 		if(!ENABLED)
 			return;
 		if(Logger.LOG_LEVEL <= Logger.DEBUG)
-			System.out.println(df.format(CloudSim.clock())+" : "+name+" : "+message);
+			System.out.println(format(CloudSim.clock())+" : "+name+" : "+message);
 	}
+	private static String format(double time){
+		// DecimalFormat is not thread-safe, and the entities of a parallel simulation may log at the same time
+		synchronized(df){
+			return df.format(time);
+		}
+	}
+	
 	public static void error(String name, String message){
 		if(!ENABLED)
 			return;
 		if(Logger.LOG_LEVEL <= Logger.ERROR)
-			System.out.println(df.format(CloudSim.clock())+" : "+name+" : "+message);
+			System.out.println(format(CloudSim.clock())+" : "+name+" : "+message);
 	}
 	
 }
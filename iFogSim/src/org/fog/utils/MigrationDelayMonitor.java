@@ -1,14 +1,29 @@
 package org.fog.utils;
 
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
 public class MigrationDelayMonitor {
 	
-	private static double migrationDelay = 0.0;
+	private double migrationDelay = 0.0;
 	
 	public static double getMigrationDelay() {
-		return migrationDelay;
+		return current().migrationDelay;
 	}
 
-	public static void setMigrationDelay(double migrationDelayReceived) {
-		migrationDelay += migrationDelayReceived;
+	public static void setMigrationDelay(final double migrationDelayReceived) {
+		final MigrationDelayMonitor monitor = current();
+		CloudSim.runOrdered(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(monitor){
+					monitor.migrationDelay += migrationDelayReceived;
+				}
+			}
+		});
+	}
+	
+	private static MigrationDelayMonitor current(){
+		return SimulationContext.current().getState(MigrationDelayMonitor.class, MigrationDelayMonitor::new);
 	}
 }
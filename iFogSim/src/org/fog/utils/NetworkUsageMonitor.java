@@ -1,18 +1,38 @@
 package org.fog.utils;
 
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
 public class NetworkUsageMonitor {
 
-	private static double networkUsage = 0.0;
+	private double networkUsage = 0.0;
 	
 	public static void sendingTuple(double latency, double tupleNwSize){
-		networkUsage += latency*tupleNwSize;
+		addNetworkUsage(latency*tupleNwSize);
 	}
 	
 	public static void sendingModule(double latency, long moduleSize){
-		networkUsage += latency*moduleSize;
+		addNetworkUsage(latency*moduleSize);
 	}
 	
 	public static double getNetworkUsage(){
-		return networkUsage;
+		return current().networkUsage;
+	}
+	
+	private static NetworkUsageMonitor current(){
+		return SimulationContext.current().getState(NetworkUsageMonitor.class, NetworkUsageMonitor::new);
+	}
+	
+	// the sum is made in simulation order, so that parallel simulations get the same total
+	private static void addNetworkUsage(final double usage){
+		final NetworkUsageMonitor monitor = current();
+		CloudSim.runOrdered(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(monitor){
+					monitor.networkUsage += usage;
+				}
+			}
+		});
 	}
 }
@@ -0,0 +1,484 @@
+package org.fog.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.fog.entities.FogDevice;
+
+/**
+ * Computes the shortest paths between fog devices, over the links from each device to its parent, its children and
+ * its cluster members, weighted by their latencies. Each device gets the next device to route to for every
+ * destination.
+ * <p>
+ * The links are kept in adjacency arrays and the paths from each source are found with Dijkstra's algorithm, in
+ * parallel for large topologies. When links change, e.g. when a mobile device changes parent or joins a cluster,
+ * {@link #update(FogDevice...)} only recomputes the paths of the sources that may use the changed links, or only the
+ * paths to and from a leaf device that changed parent.
+ */
+public class RoutingEngine {
+
+    /** The number of devices from which the paths are computed in parallel. */
+    public static int PARALLEL_THRESHOLD = 256;
+
+    private static final int UNREACHABLE = -1;
+
+    private final List<FogDevice> fogDevices;
+    /** The index of each device, by id */
+    private final Map<Integer, Integer> indexes = new HashMap<>();
+    private final int[] ids;
+
+    /** The devices linked to each device, in increasing index order */
+    private final int[][] neighbours;
+    /** The latencies of the links of {@link #neighbours} */
+    private final double[][] latencies;
+
+    /** The latency of the shortest path from each source to each destination */
+    private final double[][] distances;
+    /** The index of the next device on the shortest path from each source to each destination */
+    private final int[][] nextHops;
+
+    public RoutingEngine(List<FogDevice> fogDevices) {
+        this.fogDevices = new ArrayList<>(fogDevices);
+        int size = fogDevices.size();
+        ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = fogDevices.get(i).getId();
+            indexes.put(ids[i], i);
+        }
+
+        List<Set<Integer>> links = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            links.add(new LinkedHashSet<Integer>());
+        for (int i = 0; i < size; i++) {
+            for (int j : linkedDevices(i)) {
+                links.get(i).add(j);
+                links.get(j).add(i);
+            }
+        }
+        neighbours = new int[size][];
+        latencies = new double[size][];
+        for (int i = 0; i < size; i++) {
+            TreeMap<Integer, Double> link = new TreeMap<>();
+            for (int j : links.get(i))
+                link.put(j, latency(i, j));
+            setLinks(i, link);
+        }
+
+        distances = new double[size][];
+        nextHops = new int[size][];
+        int[] sources = new int[size];
+        for (int i = 0; i < size; i++)
+            sources[i] = i;
+        computePaths(sources);
+    }
+
+    public List<FogDevice> getFogDevices() {
+        return fogDevices;
+    }
+
+    /**
+     * Gets the next device to route to from a device to each reachable device, including itself.
+     */
+    public Map<Integer, Integer> getRoutingTable(int sourceId) {
+        int source = index(sourceId);
+        Map<Integer, Integer> routing = new HashMap<>();
+        for (int destination = 0; destination < ids.length; destination++) {
+            if (nextHops[source][destination] != UNREACHABLE)
+                routing.put(ids[destination], ids[nextHops[source][destination]]);
+        }
+        return routing;
+    }
+
+    /**
+     * Gets the routing tables of all the devices.
+     * @return the next device to route to, by source device id then destination device id
+     */
+    public Map<Integer, Map<Integer, Integer>> getRoutingTables() {
+        Map<Integer, Map<Integer, Integer>> routing = new HashMap<>();
+        for (int id : ids)
+            routing.put(id, getRoutingTable(id));
+        return routing;
+    }
+
+    /**
+     * Gets the next device to route to from a device to another, or -1 if there is no path between them.
+     */
+    public int getNextHop(int sourceId, int destinationId) {
+        int next = nextHops[index(sourceId)][index(destinationId)];
+        return next != UNREACHABLE ? ids[next] : UNREACHABLE;
+    }
+
+    /**
+     * Gets the latency of the shortest path from a device to another, or -1 if there is no path between them.
+     */
+    public double getLatency(int sourceId, int destinationId) {
+        double distance = distances[index(sourceId)][index(destinationId)];
+        return distance != Double.POSITIVE_INFINITY ? distance : -1;
+    }
+
+    /**
+     * Updates the paths after the links of some devices changed: their parent, their children, their cluster members
+     * or the latencies of these links. All the devices whose links changed must be given, e.g. a mobile device, its
+     * previous parent and its new parent.
+     * @return the routes that changed, by source device id then destination device id, with the next device to route
+     * to or -1 if there is no path anymore
+     */
+    public Map<Integer, Map<Integer, Integer>> update(FogDevice... changedDevices) {
+        // the changed links, by the indexes of their ends, with their previous and new latencies (-1 if absent)
+        Map<Long, double[]> changes = new HashMap<>();
+        for (FogDevice device : changedDevices) {
+            int u = index(device.getId());
+            Set<Integer> candidates = new LinkedHashSet<>();
+            for (int v : neighbours[u])
+                candidates.add(v);
+            candidates.addAll(linkedDevices(u));
+            for (int v : candidates) {
+                long key = u < v ? ((long) u << 32) | v : ((long) v << 32) | u;
+                if (v == u || changes.containsKey(key))
+                    continue;
+                double before = linkLatency(u, v);
+                double after = latency(u, v);
+                if (before != after)
+                    changes.put(key, new double[] {before, after});
+            }
+        }
+        Map<Integer, Map<Integer, Integer>> changedRoutes = new HashMap<>();
+        if (changes.isEmpty())
+            return changedRoutes;
+
+        Map<Integer, TreeMap<Integer, Double>> newLinks = new HashMap<>();
+        for (Map.Entry<Long, double[]> change : changes.entrySet()) {
+            int u = (int) (change.getKey() >>> 32);
+            int v = (int) (long) change.getKey();
+            for (int[] ends : new int[][] {{u, v}, {v, u}}) {
+                TreeMap<Integer, Double> link = newLinks.get(ends[0]);
+                if (link == null) {
+                    link = new TreeMap<>();
+                    for (int n = 0; n < neighbours[ends[0]].length; n++)
+                        link.put(neighbours[ends[0]][n], latencies[ends[0]][n]);
+                    newLinks.put(ends[0], link);
+                }
+                if (change.getValue()[1] < 0)
+                    link.remove(ends[1]);
+                else
+                    link.put(ends[1], change.getValue()[1]);
+            }
+        }
+
+        int leaf = movedLeaf(changes, newLinks);
+        int[] sources = leaf >= 0 ? new int[] {leaf} : affectedSources(changes);
+        int[][] previousNextHops = nextHops.clone();
+        for (Map.Entry<Integer, TreeMap<Integer, Double>> link : newLinks.entrySet())
+            setLinks(link.getKey(), link.getValue());
+        if (leaf >= 0) {
+            // no path goes through a leaf, so the other paths only change on their last link, to the leaf
+            int parent = neighbours[leaf].length > 0 ? neighbours[leaf][0] : UNREACHABLE;
+            for (int s = 0; s < ids.length; s++) {
+                if (s == leaf)
+                    continue;
+                int next = parent == UNREACHABLE || nextHops[s][parent] == UNREACHABLE ? UNREACHABLE
+                        : s == parent ? leaf : nextHops[s][parent];
+                distances[s][leaf] = next == UNREACHABLE ? Double.POSITIVE_INFINITY
+                        : distances[s][parent] + latencies[leaf][0];
+                if (nextHops[s][leaf] != next) {
+                    nextHops[s][leaf] = next;
+                    changedRoute(changedRoutes, s, leaf, next);
+                }
+            }
+        }
+        computePaths(sources);
+        for (int s : sources) {
+            for (int destination = 0; destination < ids.length; destination++) {
+                if (nextHops[s][destination] != previousNextHops[s][destination])
+                    changedRoute(changedRoutes, s, destination, nextHops[s][destination]);
+            }
+        }
+        return changedRoutes;
+    }
+
+    /**
+     * Gets the device whose links changed if it is a leaf before and after the change, e.g. a mobile device changing
+     * parent, or -1.
+     */
+    private int movedLeaf(Map<Long, double[]> changes, Map<Integer, TreeMap<Integer, Double>> newLinks) {
+        int leaf = UNREACHABLE;
+        for (int candidate : newLinks.keySet()) {
+            if (neighbours[candidate].length <= 1 && newLinks.get(candidate).size() <= 1)
+                leaf = candidate;
+        }
+        if (leaf == UNREACHABLE)
+            return UNREACHABLE;
+        for (long key : changes.keySet()) {
+            if ((int) (key >>> 32) != leaf && (int) key != leaf)
+                return UNREACHABLE;
+        }
+        return leaf;
+    }
+
+    /**
+     * Gets the sources that route over a removed or slower link, or whose paths may be shortened by a new or faster
+     * link.
+     */
+    private int[] affectedSources(Map<Long, double[]> changes) {
+        List<Integer> affected = new ArrayList<>();
+        for (int s = 0; s < ids.length; s++) {
+            double[] distance = distances[s];
+            for (Map.Entry<Long, double[]> change : changes.entrySet()) {
+                int u = (int) (change.getKey() >>> 32);
+                int v = (int) (long) change.getKey();
+                double before = change.getValue()[0];
+                double after = change.getValue()[1];
+                if (before >= 0 && (after < 0 || after > before)
+                        && (distance[v] == distance[u] + before || distance[u] == distance[v] + before)) {
+                    affected.add(s);
+                    break;
+                }
+                if (after >= 0 && (before < 0 || after < before)
+                        && (distance[u] + after <= distance[v] || distance[v] + after <= distance[u])) {
+                    affected.add(s);
+                    break;
+                }
+            }
+        }
+        int[] sources = new int[affected.size()];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = affected.get(i);
+        return sources;
+    }
+
+    private void changedRoute(Map<Integer, Map<Integer, Integer>> changedRoutes, int source, int destination,
+            int next) {
+        Map<Integer, Integer> routes = changedRoutes.get(ids[source]);
+        if (routes == null) {
+            routes = new HashMap<>();
+            changedRoutes.put(ids[source], routes);
+        }
+        routes.put(ids[destination], next != UNREACHABLE ? ids[next] : UNREACHABLE);
+    }
+
+    private int index(int deviceId) {
+        Integer index = indexes.get(deviceId);
+        if (index == null)
+            throw new IllegalArgumentException("Unknown fog device:" + deviceId);
+        return index;
+    }
+
+    /**
+     * Gets the devices a device has a link to, from its own point of view.
+     */
+    private Collection<Integer> linkedDevices(int i) {
+        FogDevice device = fogDevices.get(i);
+        List<Integer> linked = new ArrayList<>();
+        addLinkedDevice(linked, device.getParentId());
+        if (device.getChildrenIds() != null) {
+            for (int id : device.getChildrenIds())
+                addLinkedDevice(linked, id);
+        }
+        if (device.getClusterMembers() != null) {
+            for (int id : device.getClusterMembers())
+                addLinkedDevice(linked, id);
+        }
+        return linked;
+    }
+
+    private void addLinkedDevice(List<Integer> linked, int id) {
+        Integer index = indexes.get(id);
+        if (index != null)
+            linked.add(index);
+    }
+
+    /**
+     * Gets the latency of the link between two devices as seen by the first of them in the list, or by the other if
+     * the first one has no link to it, or -1 if there is no link.
+     */
+    private double latency(int i, int j) {
+        double latency = directLatency(fogDevices.get(Math.min(i, j)), fogDevices.get(Math.max(i, j)));
+        return latency >= 0 ? latency : directLatency(fogDevices.get(Math.max(i, j)), fogDevices.get(Math.min(i, j)));
+    }
+
+    private static double directLatency(FogDevice from, FogDevice to) {
+        List<Integer> children = from.getChildrenIds();
+        List<Integer> cluster = from.getClusterMembers();
+        if (to.getId() == from.getParentId()) {
+            return from.getUplinkLatency();
+        } else if (children != null && children.contains(to.getId())) {
+            return from.getChildToLatencyMap().get(to.getId());
+        } else if (cluster != null && cluster.contains(to.getId())) {
+            return from.getClusterMembersToLatencyMap().get(to.getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the latency of the current link between two devices, or -1 if there is none.
+     */
+    private double linkLatency(int i, int j) {
+        int n = Arrays.binarySearch(neighbours[i], j);
+        return n >= 0 ? latencies[i][n] : -1;
+    }
+
+    private void setLinks(int i, TreeMap<Integer, Double> link) {
+        neighbours[i] = new int[link.size()];
+        latencies[i] = new double[link.size()];
+        int n = 0;
+        for (Map.Entry<Integer, Double> entry : link.entrySet()) {
+            neighbours[i][n] = entry.getKey();
+            latencies[i][n++] = entry.getValue();
+        }
+    }
+
+    private void computePaths(final int[] sources) {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), sources.length / PARALLEL_THRESHOLD + 1);
+        if (threads <= 1) {
+            ShortestPaths paths = new ShortestPaths(ids.length);
+            for (int source : sources)
+                paths.compute(source);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int first = t;
+                final int step = threads;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        ShortestPaths paths = new ShortestPaths(ids.length);
+                        for (int i = first; i < sources.length; i += step)
+                            paths.compute(sources[i]);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the routes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The routes could not be computed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Dijkstra's algorithm with a binary heap of device indexes, ordered by distance then index so that the paths do
+     * not depend on the order in which they are computed. The heap is reused from one source to the next.
+     */
+    private class ShortestPaths {
+
+        private final int[] heap;
+        /** The position of each device in the heap, or -1 */
+        private final int[] positions;
+        private int heapSize;
+        private double[] distance;
+
+        ShortestPaths(int size) {
+            heap = new int[size];
+            positions = new int[size];
+        }
+
+        void compute(int source) {
+            int size = ids.length;
+            distance = new double[size];
+            int[] next = new int[size];
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            Arrays.fill(next, UNREACHABLE);
+            Arrays.fill(positions, -1);
+            heapSize = 0;
+
+            distance[source] = 0;
+            next[source] = source;
+            push(source);
+            while (heapSize > 0) {
+                int u = pop();
+                int[] linked = neighbours[u];
+                double[] latency = latencies[u];
+                for (int n = 0; n < linked.length; n++) {
+                    int v = linked[n];
+                    double alternative = distance[u] + latency[n];
+                    if (alternative < distance[v]) {
+                        boolean queued = positions[v] >= 0;
+                        distance[v] = alternative;
+                        next[v] = u == source ? v : next[u];
+                        if (queued)
+                            siftUp(positions[v]);
+                        else
+                            push(v);
+                    }
+                }
+            }
+            distances[source] = distance;
+            nextHops[source] = next;
+        }
+
+        private boolean before(int a, int b) {
+            return distance[a] < distance[b] || (distance[a] == distance[b] && a < b);
+        }
+
+        private void push(int device) {
+            heap[heapSize] = device;
+            positions[device] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        private int pop() {
+            int top = heap[0];
+            positions[top] = -2;
+            int last = heap[--heapSize];
+            if (heapSize > 0) {
+                heap[0] = last;
+                positions[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int position) {
+            int device = heap[position];
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+                if (!before(device, heap[parent]))
+                    break;
+                heap[position] = heap[parent];
+                positions[heap[position]] = position;
+                position = parent;
+            }
+            heap[position] = device;
+            positions[device] = position;
+        }
+
+        private void siftDown(int position) {
+            int device = heap[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= heapSize)
+                    break;
+                if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+                    child++;
+                if (!before(heap[child], device))
+                    break;
+                heap[position] = heap[child];
+                positions[heap[position]] = position;
+                position = child;
+            }
+            heap[position] = device;
+            positions[device] = position;
+        }
+    }
+
+}
@@ -1,23 +1,32 @@
 package org.fog.utils;
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.commons.math3.util.Pair;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
 import org.fog.entities.Tuple;
 
 public class TimeKeeper {
 
-	private static TimeKeeper instance;
-	
 	private long simulationStartTime;
 	private int count; 
-	private Map<Integer, Double> emitTimes;
+	private IntDoubleHashMap emitTimes;
 	private Map<Integer, Double> endTimes;
 	private Map<Integer, List<Integer>> loopIdToTupleIds;
-	private Map<Integer, Double> tupleIdToCpuStartTime;
+	private IntDoubleHashMap tupleIdToCpuStartTime;
+	// the emit times and CPU start times in the order they were recorded, to expire them in long-horizon mode
+	private TimedIds emitTimeQueue = new TimedIds();
+	private TimedIds cpuStartTimeQueue = new TimedIds();
 	private Map<String, Double> tupleTypeToAverageCpuTime;
 	private Map<String, Integer> tupleTypeToExecutedTupleCount;
 	
@@ -30,33 +39,340 @@ public class TimeKeeper {
 	private Map<Integer, Map<String, Map<Integer, Pair<Integer, Double>>>> costCalcData = new HashMap<>();
 	// last execution time
 	private Map<Integer, Double> tupleIdToExecutionTime = new HashMap<>();
+
+	/** The range and precision of the latency histograms: from 0.001 to 10^7 time units, within 1% */
+	private static final double HISTOGRAM_RESOLUTION = 0.001;
+	private static final double HISTOGRAM_HIGHEST_VALUE = 1e7;
+	private static final int HISTOGRAM_SUB_BUCKET_BITS = 8;
+	private static final double[] HISTOGRAM_PERCENTILES = {50, 95, 99, 99.9};
+
+	// histograms of the loop delays by loop id, of the CPU times by tuple type and by device id
+	private HistogramSeries[] loopIdToDelayHistogram = new HistogramSeries[0];
+	private Map<String, HistogramSeries> tupleTypeToCpuTimeHistogram = new HashMap<>();
+	private HistogramSeries[] deviceIdToCpuTimeHistogram = new HistogramSeries[0];
+	private double histogramWindowStart = 0;
+	// the rows of the windows of the histograms which have ended, see Config.LATENCY_HISTOGRAM_WINDOW
+	private List<String> histogramWindowRows = new ArrayList<>();
+
+	/**
+	 * Queue of ids with the times recorded for them, in the order they were recorded.
+	 */
+	private static class TimedIds {
+		int[] ids = new int[16];
+		double[] times = new double[16];
+		int head = 0;
+		int size = 0;
+
+		void add(int id, double time) {
+			if (size == ids.length) {
+				int[] newIds = new int[ids.length * 2];
+				double[] newTimes = new double[ids.length * 2];
+				for (int i = 0; i < size; i++) {
+					newIds[i] = ids[(head + i) % ids.length];
+					newTimes[i] = times[(head + i) % ids.length];
+				}
+				ids = newIds;
+				times = newTimes;
+				head = 0;
+			}
+			ids[(head + size) % ids.length] = id;
+			times[(head + size) % ids.length] = time;
+			size++;
+		}
+
+		/**
+		 * Removes from a map the ids recorded before a given time, unless a later time was recorded for them since.
+		 */
+		void expire(IntDoubleHashMap map, double before) {
+			while (size > 0 && times[head] < before) {
+				if (map.get(ids[head], Double.NaN) == times[head])
+					map.remove(ids[head], Double.NaN);
+				head = (head + 1) % ids.length;
+				size--;
+			}
+		}
+	}
+
+	/**
+	 * The histogram of a metric over the whole simulation, and over the current window if windows are enabled.
+	 */
+	private static class HistogramSeries {
+		final String scope;
+		final String key;
+		final LatencyHistogram total;
+		LatencyHistogram window;
+
+		HistogramSeries(String scope, String key) {
+			this.scope = scope;
+			this.key = key;
+			this.total = new LatencyHistogram(HISTOGRAM_RESOLUTION, HISTOGRAM_HIGHEST_VALUE, HISTOGRAM_SUB_BUCKET_BITS);
+		}
+
+		void record(double value) {
+			total.record(value);
+			if (Config.LATENCY_HISTOGRAM_WINDOW > 0) {
+				if (window == null)
+					window = total.copyEmpty();
+				window.record(value);
+			}
+		}
+	}
 	
 	public static TimeKeeper getInstance(){
-		if(instance == null)
-			instance = new TimeKeeper();
-		return instance;
+		// one instance per simulation, see SimulationContext
+		return SimulationContext.current().getState(TimeKeeper.class, TimeKeeper::new);
 	}
 	
-	public int getUniqueId(){
+	public synchronized int getUniqueId(){
 		return count++;
 	}
 	
+	/**
+	 * Records that a tuple starting an application loop is emitted now.
+	 * The times are recorded in simulation order, as all the recording methods, so that parallel simulations get the
+	 * same delays, histograms and averages.
+	 * @param loopId the id of the loop
+	 * @return the id identifying the tuple until the end of the loop
+	 */
+	public int loopTupleEmitted(final int loopId){
+		// taken from the range of the emitting entity, as the emitting entities may run in parallel
+		final int tupleId = FogUtils.generateActualTupleId();
+		CloudSim.runOrdered(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(TimeKeeper.this){
+					List<Integer> tupleIds = loopIdToTupleIds.get(loopId);
+					if(tupleIds == null){
+						tupleIds = new ArrayList<Integer>();
+						loopIdToTupleIds.put(loopId, tupleIds);
+					}
+					double now = CloudSim.clock();
+					if(Config.LONG_HORIZON_MODE){
+						// the ids are not kept, and the tuples which never end the loop are forgotten
+						emitTimeQueue.expire(emitTimes, now - Config.LONG_HORIZON_EXPIRY);
+						emitTimeQueue.add(tupleId, now);
+					} else {
+						tupleIds.add(tupleId);
+					}
+					emitTimes.put(tupleId, now);
+				}
+			}
+		});
+		return tupleId;
+	}
+	
+	/**
+	 * Records that a tuple reached the end of an application loop now, and updates the average delay of the loop.
+	 * Only the first copy of a tuple to end the loop is counted.
+	 * @param loopId the id of the loop
+	 * @param actualTupleId the id returned by {@link #loopTupleEmitted(int)} for the tuple
+	 */
+	public void loopTupleReceived(final int loopId, final int actualTupleId){
+		CloudSim.runOrdered(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(TimeKeeper.this){
+					double startTime = emitTimes.remove(actualTupleId, Double.NaN);
+					if(Double.isNaN(startTime))
+						return;
+					double delay = CloudSim.clock() - startTime;
+					endHistogramWindows();
+					if(loopId >= loopIdToDelayHistogram.length)
+						loopIdToDelayHistogram = Arrays.copyOf(loopIdToDelayHistogram, loopId + 1);
+					if(loopIdToDelayHistogram[loopId] == null)
+						loopIdToDelayHistogram[loopId] = new HistogramSeries("loop", String.valueOf(loopId));
+					loopIdToDelayHistogram[loopId].record(delay);
+					if(!loopIdToCurrentAverage.containsKey(loopId)){
+						loopIdToCurrentAverage.put(loopId, 0.0);
+						loopIdToCurrentNum.put(loopId, 0);
+					}
+					double currentAverage = loopIdToCurrentAverage.get(loopId);
+					int currentCount = loopIdToCurrentNum.get(loopId);
+					loopIdToCurrentAverage.put(loopId, (currentAverage*currentCount + delay)/(currentCount+1));
+					loopIdToCurrentNum.put(loopId, currentCount+1);
+				}
+			}
+		});
+	}
+	
 	public void tupleStartedExecution(Tuple tuple){
-		tupleIdToCpuStartTime.put(tuple.getCloudletId(), CloudSim.clock());
+		final int tupleId = tuple.getCloudletId();
+		CloudSim.runOrdered(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(TimeKeeper.this){
+					double now = CloudSim.clock();
+					if(Config.LONG_HORIZON_MODE){
+						// the start times are kept after the end of the tuples, as copies of a tuple sent down may start again
+						cpuStartTimeQueue.expire(tupleIdToCpuStartTime, now - Config.LONG_HORIZON_EXPIRY);
+						cpuStartTimeQueue.add(tupleId, now);
+					}
+					tupleIdToCpuStartTime.put(tupleId, now);
+				}
+			}
+		});
 	}
 	
 	public void tupleEndedExecution(Tuple tuple){
-		if(!tupleIdToCpuStartTime.containsKey(tuple.getCloudletId()))
+		tupleEndedExecution(tuple, -1);
+	}
+	
+	/**
+	 * Records that a tuple ended its execution now, and updates the average CPU time of its type.
+	 * @param tuple the tuple
+	 * @param deviceId the id of the device which executed it, or -1 if unknown
+	 */
+	public void tupleEndedExecution(Tuple tuple, final int deviceId){
+		final int tupleId = tuple.getCloudletId();
+		final String tupleType = tuple.getTupleType();
+		CloudSim.runOrdered(new Runnable() {
+			@Override
+			public void run() {
+				synchronized(TimeKeeper.this){
+					double startTime = tupleIdToCpuStartTime.get(tupleId, Double.NaN);
+					if(Double.isNaN(startTime))
+						return;
+					double executionTime = CloudSim.clock() - startTime;
+					endHistogramWindows();
+					HistogramSeries series = tupleTypeToCpuTimeHistogram.get(tupleType);
+					if(series == null){
+						series = new HistogramSeries("tuple_type", tupleType);
+						tupleTypeToCpuTimeHistogram.put(tupleType, series);
+					}
+					series.record(executionTime);
+					if(deviceId >= 0){
+						if(deviceId >= deviceIdToCpuTimeHistogram.length)
+							deviceIdToCpuTimeHistogram = Arrays.copyOf(deviceIdToCpuTimeHistogram, deviceId + 1);
+						if(deviceIdToCpuTimeHistogram[deviceId] == null)
+							deviceIdToCpuTimeHistogram[deviceId] = new HistogramSeries("device", CloudSim.getEntityName(deviceId));
+						deviceIdToCpuTimeHistogram[deviceId].record(executionTime);
+					}
+					if(!tupleTypeToAverageCpuTime.containsKey(tupleType)){
+						tupleTypeToAverageCpuTime.put(tupleType, executionTime);
+						tupleTypeToExecutedTupleCount.put(tupleType, 1);
+					} else{
+						double currentAverage = tupleTypeToAverageCpuTime.get(tupleType);
+						int currentCount = tupleTypeToExecutedTupleCount.get(tupleType);
+						tupleTypeToAverageCpuTime.put(tupleType, (currentAverage*currentCount+executionTime)/(currentCount+1));
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Gets the histogram of the delays of an application loop.
+	 * @return the histogram, or null if no tuple ended the loop yet
+	 */
+	public synchronized LatencyHistogram getLoopDelayHistogram(int loopId){
+		return loopId >= 0 && loopId < loopIdToDelayHistogram.length && loopIdToDelayHistogram[loopId] != null
+				? loopIdToDelayHistogram[loopId].total : null;
+	}
+	
+	/**
+	 * Gets the histogram of the CPU times of the tuples of a given type.
+	 * @return the histogram, or null if no tuple of this type was executed yet
+	 */
+	public synchronized LatencyHistogram getTupleTypeCpuTimeHistogram(String tupleType){
+		HistogramSeries series = tupleTypeToCpuTimeHistogram.get(tupleType);
+		return series != null ? series.total : null;
+	}
+	
+	/**
+	 * Gets the histogram of the CPU times of the tuples executed by a device.
+	 * @return the histogram, or null if the device executed no tuple yet
+	 */
+	public synchronized LatencyHistogram getDeviceCpuTimeHistogram(int deviceId){
+		return deviceId >= 0 && deviceId < deviceIdToCpuTimeHistogram.length && deviceIdToCpuTimeHistogram[deviceId] != null
+				? deviceIdToCpuTimeHistogram[deviceId].total : null;
+	}
+	
+	/**
+	 * Writes the latency histograms as CSV: one row per loop, tuple type and device over the whole simulation so far,
+	 * preceded by one row per window which has ended if windows are enabled, see
+	 * {@link Config#LATENCY_HISTOGRAM_WINDOW}. The windows without samples have no row.
+	 */
+	public synchronized void writeHistograms(Writer writer){
+		PrintWriter out = new PrintWriter(writer);
+		out.print("scope,key,window_start,window_end,count,min,mean");
+		for(double percentile : HISTOGRAM_PERCENTILES)
+			out.print(",p" + formatPercentile(percentile));
+		out.println(",max");
+		endHistogramWindows();
+		for(String row : histogramWindowRows)
+			out.println(row);
+		double now = CloudSim.clock();
+		for(HistogramSeries series : getHistogramSeries()){
+			if(Config.LATENCY_HISTOGRAM_WINDOW > 0 && series.window != null && series.window.getTotalCount() > 0)
+				out.println(histogramRow(series, series.window, histogramWindowStart, now));
+		}
+		for(HistogramSeries series : getHistogramSeries())
+			out.println(histogramRow(series, series.total, 0, now));
+		out.flush();
+	}
+	
+	/**
+	 * Writes the latency histograms to the file set in {@link Config#LATENCY_HISTOGRAM_FILE}, if any. Called by the
+	 * controllers when the simulation ends.
+	 */
+	public void exportHistograms(){
+		if(Config.LATENCY_HISTOGRAM_FILE == null)
+			return;
+		try(FileWriter writer = new FileWriter(Config.LATENCY_HISTOGRAM_FILE)){
+			writeHistograms(writer);
+		} catch(IOException e){
+			Logger.error("Latency histograms", "Could not write " + Config.LATENCY_HISTOGRAM_FILE + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Ends the windows of the histograms which ended before now, and keeps their rows. As the windows are cut at the
+	 * current clock, this and the recording of the samples run in simulation order, from {@link CloudSim#runOrdered},
+	 * so that a partition ahead in time does not end a window before the samples of the others are recorded in it.
+	 */
+	private void endHistogramWindows(){
+		double interval = Config.LATENCY_HISTOGRAM_WINDOW;
+		double now = CloudSim.clock();
+		if(interval <= 0 || now < histogramWindowStart + interval)
 			return;
-		double executionTime = CloudSim.clock() - tupleIdToCpuStartTime.get(tuple.getCloudletId());
-		if(!tupleTypeToAverageCpuTime.containsKey(tuple.getTupleType())){
-			tupleTypeToAverageCpuTime.put(tuple.getTupleType(), executionTime);
-			tupleTypeToExecutedTupleCount.put(tuple.getTupleType(), 1);
-		} else{
-			double currentAverage = tupleTypeToAverageCpuTime.get(tuple.getTupleType());
-			int currentCount = tupleTypeToExecutedTupleCount.get(tuple.getTupleType());
-			tupleTypeToAverageCpuTime.put(tuple.getTupleType(), (currentAverage*currentCount+executionTime)/(currentCount+1));
+		double windowEnd = histogramWindowStart + interval;
+		for(HistogramSeries series : getHistogramSeries()){
+			if(series.window != null && series.window.getTotalCount() > 0){
+				histogramWindowRows.add(histogramRow(series, series.window, histogramWindowStart, windowEnd));
+				series.window.reset();
+			}
+		}
+		// the windows without samples are skipped
+		histogramWindowStart += interval * Math.floor((now - histogramWindowStart) / interval);
+	}
+	
+	private List<HistogramSeries> getHistogramSeries(){
+		List<HistogramSeries> result = new ArrayList<>();
+		for(HistogramSeries series : loopIdToDelayHistogram){
+			if(series != null)
+				result.add(series);
 		}
+		result.addAll(new TreeMap<>(tupleTypeToCpuTimeHistogram).values());
+		for(HistogramSeries series : deviceIdToCpuTimeHistogram){
+			if(series != null)
+				result.add(series);
+		}
+		return result;
+	}
+	
+	private static String histogramRow(HistogramSeries series, LatencyHistogram histogram, double start, double end){
+		StringBuilder row = new StringBuilder();
+		row.append(series.scope).append(',').append(series.key).append(',').append(start).append(',').append(end)
+				.append(',').append(histogram.getTotalCount()).append(',').append(histogram.getMin())
+				.append(',').append(histogram.getMean());
+		for(double percentile : HISTOGRAM_PERCENTILES)
+			row.append(',').append(histogram.getValueAtPercentile(percentile));
+		row.append(',').append(histogram.getMax());
+		return row.toString();
+	}
+	
+	private static String formatPercentile(double percentile){
+		return percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile);
 	}
 	
 	public Map<Integer, List<Integer>> loopIdToTupleIds(){
@@ -65,12 +381,12 @@ public class TimeKeeper {
 	
 	private TimeKeeper(){
 		count = 1;
-		setEmitTimes(new HashMap<Integer, Double>());
+		setEmitTimes(new IntDoubleHashMap());
 		setEndTimes(new HashMap<Integer, Double>());
 		setLoopIdToTupleIds(new HashMap<Integer, List<Integer>>());
 		setTupleTypeToAverageCpuTime(new HashMap<String, Double>());
 		setTupleTypeToExecutedTupleCount(new HashMap<String, Integer>());
-		setTupleIdToCpuStartTime(new HashMap<Integer, Double>());
+		setTupleIdToCpuStartTime(new IntDoubleHashMap());
 		setLoopIdToCurrentAverage(new HashMap<Integer, Double>());
 		setLoopIdToCurrentNum(new HashMap<Integer, Integer>());
 	}
@@ -88,7 +404,8 @@ public class TimeKeeper {
 	}
 
 	public void setEmitTimes(Map<Integer, Double> emitTimes) {
-		this.emitTimes = emitTimes;
+		this.emitTimes = emitTimes instanceof IntDoubleHashMap ? (IntDoubleHashMap) emitTimes
+				: new IntDoubleHashMap(emitTimes);
 	}
 
 	public Map<Integer, Double> getEndTimes() {
@@ -130,7 +447,8 @@ public class TimeKeeper {
 	}
 
 	public void setTupleIdToCpuStartTime(Map<Integer, Double> tupleIdToCpuStartTime) {
-		this.tupleIdToCpuStartTime = tupleIdToCpuStartTime;
+		this.tupleIdToCpuStartTime = tupleIdToCpuStartTime instanceof IntDoubleHashMap
+				? (IntDoubleHashMap) tupleIdToCpuStartTime : new IntDoubleHashMap(tupleIdToCpuStartTime);
 	}
 
 	public long getSimulationStartTime() {
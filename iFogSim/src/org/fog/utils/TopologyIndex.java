@@ -0,0 +1,280 @@
+package org.fog.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.fog.entities.FogDevice;
+
+/**
+ * Index of the tree of fog devices, to find in O(log n) which child of a device leads to one of its descendants.
+ * Each device is labelled with the interval between its entry and its exit in a depth-first walk of the tree, so that
+ * the intervals of the descendants of a device are nested in its own interval.
+ * <p>
+ * The index is built from the children of the fog devices the first time it is used. The labels are spread apart, so
+ * that when a device changes parent, see {@link FogDevice#addChild(int)}, only its subtree is labelled again, in the
+ * free space at the end of the interval of its new parent. The index is rebuilt when there is no space left, which
+ * takes hundreds of moves to the same parent.
+ */
+public class TopologyIndex {
+
+	/** The share of the free space of a parent given to a subtree that moves to it */
+	private static final int MOVE_SHARE = 32;
+
+	private boolean built = false;
+	/** The devices, by entity id */
+	private Node[] nodes = new Node[0];
+	/** The gateway devices of the actuators, by actuator type */
+	private final Map<String, Set<Integer>> actuatorGateways = new HashMap<String, Set<Integer>>();
+	/** The sorted entry labels of the gateways of each actuator type, cleared when labels change */
+	private final Map<String, long[]> actuatorLabels = new HashMap<String, long[]>();
+
+	private static class Node {
+		final int id;
+		int parent = -1;
+		final List<Integer> children = new ArrayList<Integer>();
+		long entry;
+		long exit;
+		/** The children sorted by entry label, and their entry labels, or null to recompute them */
+		int[] sortedChildren;
+		long[] childEntries;
+
+		Node(int id) {
+			this.id = id;
+		}
+	}
+
+	public static TopologyIndex getInstance() {
+		// one instance per simulation, see SimulationContext
+		return SimulationContext.current().getState(TopologyIndex.class, TopologyIndex::new);
+	}
+
+	/**
+	 * Gets the child of a device whose subtree contains a device.
+	 * @param device the device
+	 * @param targetDeviceId the id of the device to reach
+	 * @return the id of the child, or -1 if the target is not a descendant of the device
+	 */
+	public synchronized int getChildIdWithRouteTo(FogDevice device, int targetDeviceId) {
+		ensureBuilt();
+		Node node = node(device.getId());
+		Node target = node(targetDeviceId);
+		if (node == null || target == null || !isStrictDescendant(target, node))
+			return -1;
+		sortChildren(node);
+		int position = Arrays.binarySearch(node.childEntries, target.entry);
+		if (position < 0)
+			position = -position - 2;
+		return node.sortedChildren[position];
+	}
+
+	/**
+	 * Tells whether a device or one of its descendants is the gateway of an actuator of a given type.
+	 */
+	public synchronized boolean hasActuatorBelow(int deviceId, String actuatorType) {
+		ensureBuilt();
+		Node node = node(deviceId);
+		if (node == null)
+			return true;
+		long[] labels = actuatorLabels.get(actuatorType);
+		if (labels == null) {
+			Set<Integer> gateways = actuatorGateways.get(actuatorType);
+			if (gateways == null)
+				return false;
+			List<Long> entries = new ArrayList<Long>();
+			for (int gateway : gateways) {
+				Node gatewayNode = node(gateway);
+				if (gatewayNode != null)
+					entries.add(gatewayNode.entry);
+			}
+			labels = new long[entries.size()];
+			for (int i = 0; i < labels.length; i++)
+				labels[i] = entries.get(i);
+			Arrays.sort(labels);
+			actuatorLabels.put(actuatorType, labels);
+		}
+		int position = Arrays.binarySearch(labels, node.entry);
+		if (position < 0)
+			position = -position - 1;
+		return position < labels.length && labels[position] <= node.exit;
+	}
+
+	/**
+	 * Records that an actuator of a given type is connected to a gateway device.
+	 */
+	public synchronized void actuatorJoined(String actuatorType, int gatewayDeviceId) {
+		Set<Integer> gateways = actuatorGateways.get(actuatorType);
+		if (gateways == null) {
+			gateways = new HashSet<Integer>();
+			actuatorGateways.put(actuatorType, gateways);
+		}
+		gateways.add(gatewayDeviceId);
+		actuatorLabels.remove(actuatorType);
+	}
+
+	/**
+	 * Updates the index after a device got a child, which may have moved from another parent.
+	 */
+	public synchronized void childAdded(FogDevice parent, int childId) {
+		if (!built)
+			return;
+		Node parentNode = node(parent.getId());
+		Node child = node(childId);
+		if (parentNode == null || child == null || child.parent == parentNode.id)
+			return;
+		if (parentNode == child || isStrictDescendant(parentNode, child)) {
+			// the topology is not a tree anymore, it will be indexed as far as possible when used
+			built = false;
+			return;
+		}
+		if (child.parent >= 0) {
+			Node previous = node(child.parent);
+			previous.children.remove(Integer.valueOf(childId));
+			previous.sortedChildren = null;
+		}
+		child.parent = parentNode.id;
+		parentNode.children.add(childId);
+		parentNode.sortedChildren = null;
+
+		// label the subtree again after the last child of its new parent
+		long last = parentNode.entry;
+		for (int sibling : parentNode.children) {
+			if (sibling != childId)
+				last = Math.max(last, node(sibling).exit);
+		}
+		long step = (parentNode.exit - last) / ((long) MOVE_SHARE * (2 * subtreeSize(child) + 1));
+		if (step < 1) {
+			built = false;
+			return;
+		}
+		label(child, last, step);
+		actuatorLabels.clear();
+	}
+
+	/**
+	 * Updates the index after a device lost a child. Nothing changes if the child has moved to another parent already.
+	 */
+	public synchronized void childRemoved(FogDevice parent, int childId) {
+		if (!built)
+			return;
+		Node child = node(childId);
+		if (child != null && child.parent == parent.getId())
+			built = false;
+	}
+
+	private Node node(int id) {
+		return id >= 0 && id < nodes.length ? nodes[id] : null;
+	}
+
+	private static boolean isStrictDescendant(Node node, Node ancestor) {
+		return ancestor.entry < node.entry && node.exit < ancestor.exit;
+	}
+
+	private void sortChildren(Node node) {
+		if (node.sortedChildren != null)
+			return;
+		Integer[] children = node.children.toArray(new Integer[node.children.size()]);
+		Arrays.sort(children, (a, b) -> Long.compare(nodes[a].entry, nodes[b].entry));
+		node.sortedChildren = new int[children.length];
+		node.childEntries = new long[children.length];
+		for (int i = 0; i < children.length; i++) {
+			node.sortedChildren[i] = children[i];
+			node.childEntries[i] = nodes[children[i]].entry;
+		}
+	}
+
+	private int subtreeSize(Node root) {
+		int size = 0;
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			size++;
+			for (int child : node.children)
+				stack.push(nodes[child]);
+		}
+		return size;
+	}
+
+	/**
+	 * Labels a subtree in depth-first order, from the label after a given one.
+	 * @return the last label used
+	 */
+	private long label(Node node, long last, long step) {
+		node.entry = last += step;
+		for (int child : node.children)
+			last = label(nodes[child], last, step);
+		node.exit = last += step;
+		node.sortedChildren = null;
+		return last;
+	}
+
+	private void ensureBuilt() {
+		if (built)
+			return;
+		int maxId = -1;
+		List<FogDevice> devices = new ArrayList<FogDevice>();
+		for (SimEntity entity : CloudSim.getEntityList()) {
+			if (entity instanceof FogDevice) {
+				devices.add((FogDevice) entity);
+				maxId = Math.max(maxId, entity.getId());
+			}
+		}
+		nodes = new Node[maxId + 1];
+		for (FogDevice device : devices)
+			nodes[device.getId()] = new Node(device.getId());
+		for (FogDevice device : devices) {
+			if (device.getChildrenIds() == null)
+				continue;
+			for (int childId : device.getChildrenIds()) {
+				Node child = node(childId);
+				// a device in two subtrees is indexed in the first one
+				if (child != null && child.parent < 0 && child.id != device.getId()) {
+					child.parent = device.getId();
+					nodes[device.getId()].children.add(childId);
+				}
+			}
+		}
+		// the labels are spread over the range of long, to make room for the devices that move
+		long spacing = Long.MAX_VALUE / 4 / (2 * devices.size() + 2);
+		// the walk starts from the roots, and then from the devices of cycles which have no root
+		long last = 0;
+		Set<Integer> labelled = new HashSet<Integer>();
+		for (int pass = 0; pass < 2; pass++) {
+			for (FogDevice device : devices) {
+				Node node = nodes[device.getId()];
+				if (labelled.contains(node.id) || (pass == 0 && node.parent >= 0))
+					continue;
+				if (pass == 1) {
+					nodes[node.parent].children.remove(Integer.valueOf(node.id));
+					node.parent = -1;
+				}
+				last = label(node, last, spacing);
+				markLabelled(node, labelled);
+			}
+		}
+		actuatorLabels.clear();
+		built = true;
+	}
+
+	private void markLabelled(Node root, Set<Integer> labelled) {
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			labelled.add(node.id);
+			for (int child : node.children)
+				stack.push(nodes[child]);
+		}
+	}
+
+}
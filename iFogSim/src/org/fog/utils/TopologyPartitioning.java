@@ -0,0 +1,181 @@
+package org.fog.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimEntity;
+import org.cloudbus.cloudsim.core.SimulationPartitioning;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogDevice;
+import org.fog.entities.Sensor;
+
+/**
+ * Partitions a fog topology for a parallel simulation, see
+ * {@link CloudSim#setParallelExecution(SimulationPartitioning, int)}.
+ * Each subtree below the cloud is kept in one partition, with the sensors and actuators of its gateways, and the
+ * subtrees are spread over the partitions so that they have about the same number of entities. The cloud joins the
+ * first partition. Controllers, brokers and the other entities are global, since they read the state of all the
+ * devices.
+ * The lookahead between two partitions is the lowest latency of the links between them, or the minimal time between
+ * events if lower, as acknowledgements are sent back after that time. The topology must not change during the
+ * simulation.
+ */
+public class TopologyPartitioning implements SimulationPartitioning {
+
+	private final List<FogDevice> fogDevices;
+	private final List<Sensor> sensors;
+	private final List<Actuator> actuators;
+	private final int partitionCount;
+
+	/** The partition of each fog device, sensor and actuator, computed on first use. */
+	private Map<Integer, Integer> entityIdToPartition;
+	private double[][] lookahead;
+
+	public TopologyPartitioning(List<FogDevice> fogDevices, List<Sensor> sensors, List<Actuator> actuators,
+			int partitionCount) {
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException("The number of partitions should be positive, but is:" + partitionCount);
+		}
+		this.fogDevices = fogDevices;
+		this.sensors = sensors;
+		this.actuators = actuators;
+		this.partitionCount = partitionCount;
+	}
+
+	@Override
+	public int getPartitionCount() {
+		return partitionCount;
+	}
+
+	@Override
+	public int getPartition(SimEntity entity) {
+		partition();
+		Integer partition = entityIdToPartition.get(entity.getId());
+		return partition != null ? partition : GLOBAL;
+	}
+
+	@Override
+	public double getLookahead(int from, int to) {
+		if (from == GLOBAL) {
+			return 0;
+		}
+		partition();
+		return lookahead[from][to];
+	}
+
+	private void partition() {
+		if (entityIdToPartition != null)
+			return;
+		Map<Integer, FogDevice> deviceById = new HashMap<Integer, FogDevice>();
+		for (FogDevice device : fogDevices)
+			deviceById.put(device.getId(), device);
+
+		// group the devices by the child of the cloud they are connected through
+		Map<Integer, List<Integer>> subtrees = new HashMap<Integer, List<Integer>>();
+		List<Integer> roots = new ArrayList<Integer>();
+		for (FogDevice device : fogDevices) {
+			int top = topOfSubtree(device, deviceById);
+			if (top == -1) {
+				roots.add(device.getId());
+				continue;
+			}
+			if (!subtrees.containsKey(top))
+				subtrees.put(top, new ArrayList<Integer>());
+			subtrees.get(top).add(device.getId());
+		}
+		final Map<Integer, Integer> entityCount = new HashMap<Integer, Integer>();
+		for (Integer top : subtrees.keySet())
+			entityCount.put(top, subtrees.get(top).size());
+		for (Sensor sensor : sensors) {
+			FogDevice gateway = deviceById.get(sensor.getGatewayDeviceId());
+			int top = gateway != null ? topOfSubtree(gateway, deviceById) : -1;
+			if (top != -1)
+				entityCount.put(top, entityCount.get(top) + 1);
+		}
+
+		// largest subtrees first, each one to the partition with the fewest entities
+		List<Integer> tops = new ArrayList<Integer>(subtrees.keySet());
+		Collections.sort(tops, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer t1, Integer t2) {
+				int byCount = Integer.compare(entityCount.get(t2), entityCount.get(t1));
+				return byCount != 0 ? byCount : Integer.compare(t1, t2);
+			}
+		});
+		int[] load = new int[partitionCount];
+		load[0] = roots.size();
+		entityIdToPartition = new HashMap<Integer, Integer>();
+		for (Integer root : roots)
+			entityIdToPartition.put(root, 0);
+		for (Integer top : tops) {
+			int lightest = 0;
+			for (int p = 1; p < partitionCount; p++) {
+				if (load[p] < load[lightest])
+					lightest = p;
+			}
+			load[lightest] += entityCount.get(top);
+			for (Integer deviceId : subtrees.get(top))
+				entityIdToPartition.put(deviceId, lightest);
+		}
+		for (Sensor sensor : sensors) {
+			Integer partition = entityIdToPartition.get(sensor.getGatewayDeviceId());
+			if (partition != null)
+				entityIdToPartition.put(sensor.getId(), partition);
+		}
+		for (Actuator actuator : actuators) {
+			Integer partition = entityIdToPartition.get(actuator.getGatewayDeviceId());
+			if (partition != null)
+				entityIdToPartition.put(actuator.getId(), partition);
+		}
+
+		lookahead = new double[partitionCount][partitionCount];
+		for (double[] row : lookahead)
+			Arrays.fill(row, Double.POSITIVE_INFINITY);
+		for (FogDevice device : fogDevices) {
+			FogDevice parent = deviceById.get(device.getParentId());
+			if (parent != null) {
+				double latency = device.getUplinkLatency();
+				Double downLatency = parent.getChildToLatencyMap().get(device.getId());
+				if (downLatency != null)
+					latency = Math.min(latency, downLatency);
+				addLink(device.getId(), parent.getId(), latency);
+			}
+			if (device.getClusterMembersToLatencyMap() != null) {
+				for (Map.Entry<Integer, Double> member : device.getClusterMembersToLatencyMap().entrySet())
+					addLink(device.getId(), member.getKey(), member.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Gets the child of the cloud a device is connected through, or -1 for the cloud itself.
+	 */
+	private int topOfSubtree(FogDevice device, Map<Integer, FogDevice> deviceById) {
+		FogDevice parent = deviceById.get(device.getParentId());
+		if (parent == null)
+			return -1;
+		while (deviceById.containsKey(parent.getParentId())) {
+			device = parent;
+			parent = deviceById.get(parent.getParentId());
+		}
+		return device.getId();
+	}
+
+	private void addLink(int deviceId, int otherId, double latency) {
+		Integer from = entityIdToPartition.get(deviceId);
+		Integer to = entityIdToPartition.get(otherId);
+		if (from == null || to == null || from.equals(to))
+			return;
+		// tuples take the link latency, acknowledgements the minimal time between events
+		double delay = Math.min(latency, CloudSim.getMinTimeBetweenEvents());
+		lookahead[from][to] = Math.min(lookahead[from][to], delay);
+		lookahead[to][from] = Math.min(lookahead[to][from], delay);
+	}
+
+}
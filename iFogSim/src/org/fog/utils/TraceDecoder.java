@@ -0,0 +1,180 @@
+package org.fog.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+
+/**
+ * Decodes the files written by {@link TraceRecorder} into CSV or JSON lines, one line per event, with the names of
+ * the entities, tuple types and modules resolved.
+ * <p>
+ * Usage: <code>java org.fog.utils.TraceDecoder [-json] trace-file</code>, the decoded events being printed.
+ */
+public class TraceDecoder {
+
+	public static final String[] TYPE_NAMES = { "name", "entity", "tuple_arrival", "execution_start", "execution_end",
+			"link_send", "migration_start", "migration_end" };
+
+	private final DataInputStream in;
+	private final List<String> names = new ArrayList<String>();
+	private final Map<Integer, String> entities = new HashMap<Integer, String>();
+
+	public TraceDecoder(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+		int magic = this.in.readInt();
+		if (magic != TraceRecorder.MAGIC)
+			throw new IOException("Not a trace file");
+		int version = this.in.readInt();
+		if (version != TraceRecorder.VERSION)
+			throw new IOException("Unsupported trace version: " + version);
+	}
+
+	/**
+	 * Decodes all the events and writes them in CSV, with the columns time, event, device, tuple, peer, name, value.
+	 */
+	public void writeCsv(Writer out) throws IOException {
+		out.write("time,event,device,tuple,peer,name,value\n");
+		Event event = new Event();
+		while (next(event)) {
+			out.write(Double.toString(event.time));
+			out.write(',');
+			out.write(TYPE_NAMES[event.type]);
+			out.write(',');
+			out.write(csv(entityName(event.device)));
+			out.write(',');
+			out.write(event.tuple >= 0 ? Integer.toString(event.tuple) : "");
+			out.write(',');
+			out.write(csv(peerName(event)));
+			out.write(',');
+			out.write(csv(event.name));
+			out.write(',');
+			out.write(Double.toString(event.value));
+			out.write('\n');
+		}
+		out.flush();
+	}
+
+	/**
+	 * Decodes all the events and writes them as JSON objects, one per line.
+	 */
+	public void writeJson(Writer out) throws IOException {
+		Event event = new Event();
+		while (next(event)) {
+			out.write("{\"time\":" + event.time);
+			out.write(",\"event\":\"" + TYPE_NAMES[event.type] + "\"");
+			out.write(",\"device\":\"" + JSONValue.escape(entityName(event.device)) + "\"");
+			if (event.tuple >= 0)
+				out.write(",\"tuple\":" + event.tuple);
+			String peer = peerName(event);
+			if (!peer.isEmpty())
+				out.write(",\"peer\":\"" + JSONValue.escape(peer) + "\"");
+			if (event.name != null)
+				out.write(",\"name\":\"" + JSONValue.escape(event.name) + "\"");
+			out.write(",\"value\":" + event.value + "}\n");
+		}
+		out.flush();
+	}
+
+	/**
+	 * An event read from a trace.
+	 */
+	public static class Event {
+		public byte type;
+		public double time;
+		public int device;
+		public int tuple;
+		/** The entity for tuple arrivals and link sends, the module VM for executions, -1 otherwise */
+		public int peer;
+		/** The tuple type or module, or null */
+		public String name;
+		public double value;
+	}
+
+	/**
+	 * Reads the next event, the names being recorded on the way.
+	 * @param event the event to fill
+	 * @return false at the end of the trace
+	 */
+	public boolean next(Event event) throws IOException {
+		while (true) {
+			int type;
+			try {
+				type = in.readByte();
+			} catch (EOFException e) {
+				return false;
+			}
+			if (type == TraceRecorder.NAME) {
+				int id = in.readInt();
+				String name = in.readUTF();
+				while (names.size() <= id)
+					names.add(null);
+				names.set(id, name);
+			} else if (type == TraceRecorder.ENTITY) {
+				entities.put(in.readInt(), in.readUTF());
+			} else if (type > TraceRecorder.ENTITY && type < TYPE_NAMES.length) {
+				event.type = (byte) type;
+				event.time = in.readDouble();
+				event.device = in.readInt();
+				event.tuple = in.readInt();
+				event.peer = in.readInt();
+				int name = in.readInt();
+				event.name = name >= 0 ? names.get(name) : null;
+				event.value = in.readDouble();
+				return true;
+			} else {
+				throw new IOException("Unknown record type: " + type);
+			}
+		}
+	}
+
+	public String entityName(int id) {
+		String name = entities.get(id);
+		return name != null ? name : Integer.toString(id);
+	}
+
+	private String peerName(Event event) {
+		if (event.peer < 0)
+			return "";
+		if (event.type == TraceRecorder.TUPLE_ARRIVAL || event.type == TraceRecorder.LINK_SEND)
+			return entityName(event.peer);
+		return Integer.toString(event.peer);
+	}
+
+	private static String csv(String value) {
+		if (value == null)
+			return "";
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean json = args.length == 2 && args[0].equals("-json");
+		if (args.length != (json ? 2 : 1)) {
+			System.err.println("Usage: TraceDecoder [-json] trace-file");
+			System.exit(1);
+		}
+		try (InputStream file = new FileInputStream(new File(args[args.length - 1]))) {
+			TraceDecoder decoder = new TraceDecoder(file);
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+			if (json)
+				decoder.writeJson(out);
+			else
+				decoder.writeCsv(out);
+		}
+	}
+
+}
@@ -0,0 +1,375 @@
+package org.fog.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
+/**
+ * Records the events of the fog devices in a compact binary file: tuple arrivals, starts and ends of execution, tuples
+ * sent on links and module migrations. The records are written into a ring buffer allocated once, which a background
+ * thread writes to the file, so that recording allocates nothing but the names seen for the first time. The file is
+ * decoded with {@link TraceDecoder}.
+ * <p>
+ * A recorder is started for the simulation of the current thread, see {@link SimulationContext}. The fog devices get
+ * it with {@link #current()}, which returns null, at the cost of a volatile read, when no recorder is started:
+ * <pre>
+ * TraceRecorder trace = TraceRecorder.current();
+ * if (trace != null)
+ *     trace.tupleArrival(getId(), tuple.getCloudletId(), ev.getSource(), tuple.getTupleType(), ...);
+ * </pre>
+ * When the ring buffer is full, recording waits for the background thread, so no record is lost. An interrupt of the
+ * recording thread does not stop the wait, the interrupt status is set again once the record is taken.
+ * <p>
+ * The file starts with {@link #MAGIC} and {@link #VERSION}, followed by records of a type byte and: for names and
+ * entities, an int id and the name in modified UTF-8; for events, the time as a double, the device, tuple and peer ids
+ * as ints, the id of a name as an int and a value as a double.
+ */
+public class TraceRecorder implements Closeable {
+
+	public static final int MAGIC = 0x49465452; // "IFTR"
+	public static final int VERSION = 1;
+
+	/** A name of a tuple type or module: id, name */
+	public static final byte NAME = 0;
+	/** A name of an entity: id, name */
+	public static final byte ENTITY = 1;
+	/** A tuple arrived at a device: peer is the sender, name the tuple type, value the network length */
+	public static final byte TUPLE_ARRIVAL = 2;
+	/** A device started executing a tuple: peer is the module VM, name the module, value the CPU length */
+	public static final byte EXECUTION_START = 3;
+	/** A device ended executing a tuple: peer is the module VM, name the module, value the CPU length */
+	public static final byte EXECUTION_END = 4;
+	/** A device sent a tuple on a link: peer is the receiver, name the tuple type, value the delay until arrival */
+	public static final byte LINK_SEND = 5;
+	/** A device started sending a module away: name is the module, value the migration delay */
+	public static final byte MIGRATION_START = 6;
+	/** A device received a migrating module: name is the module, value the migration delay */
+	public static final byte MIGRATION_END = 7;
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** The number of recorders started, to return quickly from {@link #current()} when there is none */
+	private static volatile int started = 0;
+
+	/** The recorder of a simulation context */
+	private static class Holder {
+		TraceRecorder recorder;
+	}
+
+	/** Opens the stream of a recorder, once it is known that the simulation has none */
+	private interface StreamOpener {
+		OutputStream open() throws IOException;
+	}
+
+	private final Holder holder;
+	private final DataOutputStream out;
+	private final Thread writer;
+
+	// the ring buffer, one array per field
+	private final int capacity;
+	private final byte[] types;
+	private final double[] times;
+	private final int[] devices;
+	private final int[] tuples;
+	private final int[] peers;
+	private final int[] names;
+	private final double[] values;
+	private int head = 0;
+	private int count = 0;
+	/** Whether records are no longer taken, because the recorder is closed or the file could not be written */
+	private boolean closed = false;
+	/** Whether {@link #close()} was called */
+	private boolean closing = false;
+	private IOException failure;
+
+	private final Map<String, Integer> nameIds = new HashMap<String, Integer>();
+	private final List<String> nameList = new ArrayList<String>();
+	private boolean[] entityNamed = new boolean[0];
+
+	/**
+	 * Starts recording the simulation of the current thread to a file.
+	 * @return the recorder, to be closed at the end of the simulation
+	 */
+	public static TraceRecorder start(File file) throws IOException {
+		return start(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Starts recording the simulation of the current thread to a file.
+	 * @param capacity the number of records of the ring buffer
+	 * @return the recorder, to be closed at the end of the simulation
+	 */
+	public static TraceRecorder start(File file, int capacity) throws IOException {
+		return start(() -> new FileOutputStream(file), file.getName(), capacity);
+	}
+
+	/**
+	 * Starts recording the simulation of the current thread to a stream, which is closed with the recorder.
+	 * @param capacity the number of records of the ring buffer
+	 * @return the recorder, to be closed at the end of the simulation
+	 */
+	public static TraceRecorder start(OutputStream stream, int capacity) throws IOException {
+		return start(() -> stream, "stream", capacity);
+	}
+
+	private static TraceRecorder start(StreamOpener opener, String name, int capacity) throws IOException {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive, but is:" + capacity);
+		Holder holder = SimulationContext.current().getState(Holder.class, Holder::new);
+		synchronized (holder) {
+			if (holder.recorder != null)
+				throw new IllegalStateException("A trace is already recorded for this simulation");
+			holder.recorder = new TraceRecorder(opener.open(), name, capacity, holder);
+		}
+		synchronized (TraceRecorder.class) {
+			started++;
+		}
+		return holder.recorder;
+	}
+
+	/**
+	 * Gets the recorder of the simulation of the current thread.
+	 * @return the recorder, or null if none is started
+	 */
+	public static TraceRecorder current() {
+		if (started == 0)
+			return null;
+		return SimulationContext.current().getState(Holder.class, Holder::new).recorder;
+	}
+
+	private TraceRecorder(OutputStream stream, String name, int capacity, Holder holder) throws IOException {
+		this.holder = holder;
+		this.capacity = capacity;
+		types = new byte[capacity];
+		times = new double[capacity];
+		devices = new int[capacity];
+		tuples = new int[capacity];
+		peers = new int[capacity];
+		names = new int[capacity];
+		values = new double[capacity];
+		out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "trace-writer-" + name);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public void tupleArrival(int deviceId, int tupleId, int senderId, String tupleType, double nwLength) {
+		record(TUPLE_ARRIVAL, deviceId, tupleId, senderId, tupleType, nwLength);
+	}
+
+	public void executionStart(int deviceId, int tupleId, int vmId, String moduleName, double cpuLength) {
+		record(EXECUTION_START, deviceId, tupleId, vmId, moduleName, cpuLength);
+	}
+
+	public void executionEnd(int deviceId, int tupleId, int vmId, String moduleName, double cpuLength) {
+		record(EXECUTION_END, deviceId, tupleId, vmId, moduleName, cpuLength);
+	}
+
+	public void linkSend(int deviceId, int tupleId, int receiverId, String tupleType, double delay) {
+		record(LINK_SEND, deviceId, tupleId, receiverId, tupleType, delay);
+	}
+
+	public void migrationStart(int deviceId, String moduleName, double delay) {
+		record(MIGRATION_START, deviceId, -1, -1, moduleName, delay);
+	}
+
+	public void migrationEnd(int deviceId, String moduleName, double delay) {
+		record(MIGRATION_END, deviceId, -1, -1, moduleName, delay);
+	}
+
+	private synchronized void record(byte type, int deviceId, int tupleId, int peerId, String name, double value) {
+		if (closed)
+			return;
+		entity(deviceId);
+		if (type == TUPLE_ARRIVAL || type == LINK_SEND)
+			entity(peerId);
+		put(type, CloudSim.clock(), deviceId, tupleId, peerId, name != null ? intern(name) : -1, value);
+	}
+
+	/**
+	 * Gets the id of a name, recording the name the first time it appears.
+	 */
+	private int intern(String name) {
+		Integer id = nameIds.get(name);
+		if (id == null) {
+			id = nameList.size();
+			nameIds.put(name, id);
+			nameList.add(name);
+			put(NAME, 0, -1, -1, -1, id, 0);
+		}
+		return id;
+	}
+
+	/**
+	 * Records the name of an entity the first time it appears.
+	 */
+	private void entity(int entityId) {
+		if (entityId < 0)
+			return;
+		if (entityId >= entityNamed.length)
+			entityNamed = Arrays.copyOf(entityNamed, Math.max(entityId + 1, 2 * entityNamed.length));
+		if (entityNamed[entityId])
+			return;
+		entityNamed[entityId] = true;
+		// the name is read here, as the entities belong to the simulation of this thread and not of the writer
+		String name = CloudSim.getEntityName(entityId);
+		put(ENTITY, 0, entityId, -1, -1, intern(name != null ? name : ""), 0);
+	}
+
+	private void put(byte type, double time, int deviceId, int tupleId, int peerId, int nameId, double value) {
+		// the record is not dropped on an interrupt, as the records after a NAME or ENTITY record refer to its id
+		boolean interrupted = false;
+		while (count == capacity && !closed) {
+			notifyAll();
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (count == capacity)
+			return;
+		int slot = (head + count) % capacity;
+		types[slot] = type;
+		times[slot] = time;
+		devices[slot] = deviceId;
+		tuples[slot] = tupleId;
+		peers[slot] = peerId;
+		names[slot] = nameId;
+		values[slot] = value;
+		if (++count == capacity / 2)
+			notifyAll();
+	}
+
+	/**
+	 * Writes the records as they come, until the recorder is closed and the buffer is empty.
+	 */
+	private void write() {
+		try {
+			while (true) {
+				synchronized (this) {
+					while (count == 0 && !closed)
+						wait();
+					if (count == 0)
+						break;
+				}
+				// the records are written without holding the lock, which only protects head and count
+				int available;
+				int from;
+				synchronized (this) {
+					available = count;
+					from = head;
+				}
+				for (int i = 0; i < available; i++) {
+					int slot = (from + i) % capacity;
+					writeRecord(slot);
+				}
+				synchronized (this) {
+					head = (from + available) % capacity;
+					count -= available;
+					notifyAll();
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			synchronized (this) {
+				failure = e;
+				closed = true;
+				notifyAll();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeRecord(int slot) throws IOException {
+		byte type = types[slot];
+		out.writeByte(type);
+		if (type == NAME) {
+			String name;
+			synchronized (this) {
+				name = nameList.get(names[slot]);
+			}
+			out.writeInt(names[slot]);
+			out.writeUTF(name);
+		} else if (type == ENTITY) {
+			String name;
+			synchronized (this) {
+				name = nameList.get(names[slot]);
+			}
+			out.writeInt(devices[slot]);
+			out.writeUTF(name);
+		} else {
+			out.writeDouble(times[slot]);
+			out.writeInt(devices[slot]);
+			out.writeInt(tuples[slot]);
+			out.writeInt(peers[slot]);
+			out.writeInt(names[slot]);
+			out.writeDouble(values[slot]);
+		}
+	}
+
+	/**
+	 * Stops recording, waits until all the records are written and closes the file. Only the first call has an
+	 * effect, even if the file could not be written.
+	 * @throws IOException if the file could not be written or closed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closing)
+				return;
+			closing = true;
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (holder) {
+			if (holder.recorder == this)
+				holder.recorder = null;
+		}
+		synchronized (TraceRecorder.class) {
+			started--;
+		}
+		IOException error;
+		synchronized (this) {
+			error = failure;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (error == null)
+				error = e;
+			else if (error != e)
+				error.addSuppressed(e);
+		}
+		if (error != null)
+			throw error;
+	}
+
+}
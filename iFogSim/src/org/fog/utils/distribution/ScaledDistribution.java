@@ -0,0 +1,42 @@
+package org.fog.utils.distribution;
+
+/**
+ * A distribution whose values are those of another distribution times a factor, e.g. to slow down a sensor.
+ */
+public class ScaledDistribution extends Distribution{
+
+	private Distribution distribution;
+	private double factor;
+
+	public ScaledDistribution(Distribution distribution, double factor) {
+		super();
+		if (!(factor > 0))
+			throw new IllegalArgumentException("The factor should be positive, but is:" + factor);
+		this.distribution = distribution;
+		this.factor = factor;
+	}
+
+	@Override
+	public double getNextValue() {
+		return distribution.getNextValue() * factor;
+	}
+
+	public Distribution getDistribution() {
+		return distribution;
+	}
+
+	public double getFactor() {
+		return factor;
+	}
+
+	@Override
+	public int getDistributionType() {
+		return distribution.getDistributionType();
+	}
+
+	@Override
+	public double getMeanInterTransmitTime() {
+		return distribution.getMeanInterTransmitTime() * factor;
+	}
+
+}
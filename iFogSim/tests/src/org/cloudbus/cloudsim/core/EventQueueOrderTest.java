@@ -0,0 +1,54 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that the future event queues keep all the events, and serve them in the same order, when several events are
+ * added first at the same time as other events.
+ */
+public class EventQueueOrderTest {
+
+	public static void main(String[] args) {
+		check(new FutureQueue(), "FutureQueue");
+		check(new HeapEventQueue(), "HeapEventQueue");
+		check(new CalendarEventQueue(), "CalendarEventQueue");
+		System.out.println("EventQueueOrderTest passed");
+	}
+
+	/**
+	 * Queues events tagged by their expected order, and checks the order they are served in.
+	 */
+	private static void check(EventQueue queue, String name) {
+		queue.addEvent(event(5, 3));
+		queue.addEventFirst(event(5, 1));
+		queue.addEventFirst(event(5, 2));
+		queue.addEvent(event(5, 4));
+		queue.addEventFirst(event(3, 0));
+		queue.addEvent(event(7, 5));
+		if (queue.size() != 6)
+			fail(name + " holds " + queue.size() + " events instead of 6");
+		List<Integer> tags = new ArrayList<Integer>();
+		SimEvent first = queue.poll();
+		tags.add(first.getTag());
+		List<SimEvent> events = new ArrayList<SimEvent>();
+		queue.pollAllAt(5, events);
+		for (SimEvent e : events)
+			tags.add(e.getTag());
+		for (SimEvent e; (e = queue.poll()) != null;)
+			tags.add(e.getTag());
+		if (!tags.equals(Arrays.asList(0, 1, 2, 3, 4, 5)))
+			fail(name + " served the events in the order " + tags);
+	}
+
+	private static SimEvent event(double time, int tag) {
+		return new SimEvent(SimEvent.SEND, time, 0, 0, tag, null);
+	}
+
+	private static void fail(String message) {
+		System.err.println("EventQueueOrderTest failed: " + message);
+		System.exit(1);
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.fog.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.Storage;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.cloudbus.cloudsim.sdn.overbooking.BwProvisionerOverbooking;
+import org.cloudbus.cloudsim.sdn.overbooking.PeProvisionerOverbooking;
+import org.fog.application.AppEdge;
+import org.fog.application.AppLoop;
+import org.fog.application.Application;
+import org.fog.application.selectivity.FractionalSelectivity;
+import org.fog.entities.Actuator;
+import org.fog.entities.FogBroker;
+import org.fog.entities.FogDevice;
+import org.fog.entities.FogDeviceCharacteristics;
+import org.fog.entities.Sensor;
+import org.fog.entities.Tuple;
+import org.fog.placement.Controller;
+import org.fog.placement.ModuleMapping;
+import org.fog.placement.ModulePlacementEdgewards;
+import org.fog.policy.AppModuleAllocationPolicy;
+import org.fog.scheduler.StreamOperatorScheduler;
+import org.fog.utils.distribution.DeterministicDistribution;
+import org.fog.utils.distribution.UniformDistribution;
+
+/**
+ * Checks that a parallel simulation prints exactly the results of the sequential one for a fixed seed, on the VR game
+ * of VRGameFog with a gateway per partition below the cloud. The selectivity of the client draws random numbers and
+ * every device creates tuples, so the results depend on the random numbers and tuple ids each entity gets. The
+ * latency histograms, over the whole simulation and over windows, are compared as well.
+ */
+public class ParallelDeterminismTest {
+
+	private static final long SEED = 7;
+	private static final int GATEWAYS = 4;
+	private static final int MOBILES_PER_GATEWAY = 5;
+	private static final double HISTOGRAM_WINDOW = 50;
+
+	public static void main(String[] args) throws Exception {
+		Log.disable();
+		Config.LATENCY_HISTOGRAM_WINDOW = HISTOGRAM_WINDOW;
+		String sequential = run(0);
+		String parallel = run(2);
+		check(sequential.contains("Energy Consumed") && sequential.contains("Total network usage")
+				&& sequential.contains("loop,1," + HISTOGRAM_WINDOW + ","),
+				"the sequential run printed no results:\n" + sequential);
+		check(sequential.equals(parallel), "the parallel run with 2 partitions differs from the sequential run:\n"
+				+ diff(sequential, parallel));
+		check(parallel.equals(run(2)), "two parallel runs with 2 partitions differ");
+		check(sequential.equals(run(GATEWAYS)), "the parallel run with " + GATEWAYS
+				+ " partitions differs from the sequential run");
+		System.out.println("ParallelDeterminismTest passed");
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			System.err.println("ParallelDeterminismTest failed: " + message);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the game in a new simulation context and gets what it prints, without the wall-clock execution time,
+	 * followed by the latency histograms.
+	 * @param partitions the number of partitions, or 0 to run sequentially
+	 */
+	private static String run(final int partitions) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(output, true, "UTF-8"));
+		try {
+			new SimulationContext().call(() -> {
+				simulate(partitions);
+				return null;
+			});
+		} finally {
+			System.setOut(stdout);
+		}
+		StringBuilder results = new StringBuilder();
+		for (String line : output.toString("UTF-8").split("\n")) {
+			if (!line.startsWith("EXECUTION TIME"))
+				results.append(line).append('\n');
+		}
+		return results.toString();
+	}
+
+	private static void simulate(int partitions) throws Exception {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		FogUtils.setRandomSeed(SEED);
+		String appId = "vr_game";
+		FogBroker broker = new FogBroker("broker");
+		Application application = createApplication(appId, broker.getId());
+
+		List<FogDevice> fogDevices = new ArrayList<FogDevice>();
+		List<Sensor> sensors = new ArrayList<Sensor>();
+		List<Actuator> actuators = new ArrayList<Actuator>();
+		FogDevice cloud = createFogDevice("cloud", 44800, 40000, 100, 10000, 0, 0.01, 16 * 103, 16 * 83.25);
+		cloud.setParentId(-1);
+		fogDevices.add(cloud);
+		for (int g = 0; g < GATEWAYS; g++) {
+			FogDevice gateway = createFogDevice("d-" + g, 2800, 4000, 10000, 10000, 1, 0.0, 107.339, 83.4333);
+			gateway.setParentId(cloud.getId());
+			gateway.setUplinkLatency(4);
+			fogDevices.add(gateway);
+			for (int m = 0; m < MOBILES_PER_GATEWAY; m++) {
+				String id = g + "-" + m;
+				FogDevice mobile = createFogDevice("m-" + id, 1000, 1000, 10000, 270, 2, 0, 87.53, 82.44);
+				mobile.setParentId(gateway.getId());
+				mobile.setUplinkLatency(2);
+				fogDevices.add(mobile);
+				// the sensors of odd mobiles draw their periods from the generator of the simulation
+				Sensor eegSensor = new Sensor("s-" + id, "EEG", broker.getId(), appId, m % 2 == 0
+						? new DeterministicDistribution(5) : new UniformDistribution(4, 6));
+				eegSensor.setGatewayDeviceId(mobile.getId());
+				eegSensor.setLatency(6.0);
+				sensors.add(eegSensor);
+				Actuator display = new Actuator("a-" + id, broker.getId(), appId, "DISPLAY");
+				display.setGatewayDeviceId(mobile.getId());
+				display.setLatency(1.0);
+				actuators.add(display);
+			}
+		}
+
+		ModuleMapping moduleMapping = ModuleMapping.createModuleMapping();
+		moduleMapping.addModuleToDevice("connector", "cloud");
+		Controller controller = new Controller("master-controller", fogDevices, sensors, actuators);
+		controller.submitApplication(application, 0,
+				new ModulePlacementEdgewards(fogDevices, sensors, actuators, application, moduleMapping));
+		if (partitions > 0)
+			CloudSim.setParallelExecution(new TopologyPartitioning(fogDevices, sensors, actuators, partitions), partitions);
+		TimeKeeper.getInstance().setSimulationStartTime(Calendar.getInstance().getTimeInMillis());
+		CloudSim.startSimulation();
+		StringWriter histograms = new StringWriter();
+		TimeKeeper.getInstance().writeHistograms(histograms);
+		System.out.print(histograms);
+		CloudSim.stopSimulation();
+	}
+
+	private static FogDevice createFogDevice(String nodeName, long mips, int ram, long upBw, long downBw, int level,
+			double ratePerMips, double busyPower, double idlePower) throws Exception {
+		List<Pe> peList = new ArrayList<Pe>();
+		peList.add(new Pe(0, new PeProvisionerOverbooking(mips)));
+		PowerHost host = new PowerHost(FogUtils.generateEntityId(), new RamProvisionerSimple(ram),
+				new BwProvisionerOverbooking(10000), 1000000, peList, new StreamOperatorScheduler(peList),
+				new FogLinearPowerModel(busyPower, idlePower));
+		List<Host> hostList = new ArrayList<Host>();
+		hostList.add(host);
+		FogDeviceCharacteristics characteristics = new FogDeviceCharacteristics("x86", "Linux", "Xen", host, 10.0, 3.0,
+				0.05, 0.001, 0.0);
+		FogDevice device = new FogDevice(nodeName, characteristics, new AppModuleAllocationPolicy(hostList),
+				new LinkedList<Storage>(), 10, upBw, downBw, 0, ratePerMips);
+		device.setLevel(level);
+		return device;
+	}
+
+	private static Application createApplication(String appId, int userId) {
+		Application application = Application.createApplication(appId, userId);
+		application.setUserId(userId);
+		application.addAppModule("client", 10);
+		application.addAppModule("concentration_calculator", 10);
+		application.addAppModule("connector", 10);
+		application.addAppEdge("EEG", "client", 3000, 500, "EEG", Tuple.UP, AppEdge.SENSOR);
+		application.addAppEdge("client", "concentration_calculator", 3500, 500, "_SENSOR", Tuple.UP, AppEdge.MODULE);
+		application.addAppEdge("concentration_calculator", "connector", 100, 1000, 1000, "PLAYER_GAME_STATE", Tuple.UP,
+				AppEdge.MODULE);
+		application.addAppEdge("concentration_calculator", "client", 14, 500, "CONCENTRATION", Tuple.DOWN,
+				AppEdge.MODULE);
+		application.addAppEdge("connector", "client", 100, 28, 1000, "GLOBAL_GAME_STATE", Tuple.DOWN, AppEdge.MODULE);
+		application.addAppEdge("client", "DISPLAY", 1000, 500, "SELF_STATE_UPDATE", Tuple.DOWN, AppEdge.ACTUATOR);
+		application.addAppEdge("client", "DISPLAY", 1000, 500, "GLOBAL_STATE_UPDATE", Tuple.DOWN, AppEdge.ACTUATOR);
+		application.addTupleMapping("client", "EEG", "_SENSOR", new FractionalSelectivity(0.9));
+		application.addTupleMapping("client", "CONCENTRATION", "SELF_STATE_UPDATE", new FractionalSelectivity(1.0));
+		application.addTupleMapping("concentration_calculator", "_SENSOR", "CONCENTRATION",
+				new FractionalSelectivity(1.0));
+		application.addTupleMapping("client", "GLOBAL_GAME_STATE", "GLOBAL_STATE_UPDATE",
+				new FractionalSelectivity(1.0));
+		List<AppLoop> loops = new ArrayList<AppLoop>();
+		loops.add(new AppLoop(Arrays.asList("EEG", "client", "concentration_calculator", "client", "DISPLAY")));
+		application.setLoops(loops);
+		return application;
+	}
+
+	/**
+	 * Gets the first line that differs between two outputs.
+	 */
+	private static String diff(String expected, String actual) {
+		String[] e = expected.split("\n");
+		String[] a = actual.split("\n");
+		for (int i = 0; i < Math.min(e.length, a.length); i++) {
+			if (!e[i].equals(a[i]))
+				return "line " + (i + 1) + ": expected <" + e[i] + "> but was <" + a[i] + ">";
+		}
+		return "expected " + e.length + " lines but was " + a.length;
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.fog.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
+/**
+ * Checks that a recorder whose stream fails while the simulation runs still reports the failure when it is closed,
+ * closes its stream and lets the simulation start a new recorder, and that an interrupt of the simulation thread does
+ * not lose records.
+ */
+public class TraceRecorderTest {
+
+	/** A stream which cannot be written, and tells when it was first written and whether it was closed */
+	private static class FailingStream extends OutputStream {
+
+		private final CountDownLatch failed = new CountDownLatch(1);
+		private volatile boolean closed = false;
+
+		@Override
+		public void write(int b) throws IOException {
+			failed.countDown();
+			throw new IOException("disk full");
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			failed.countDown();
+			throw new IOException("disk full");
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	/** A stream which blocks from its first write until it is released */
+	private static class BlockingStream extends ByteArrayOutputStream {
+
+		private final CountDownLatch written = new CountDownLatch(1);
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		@Override
+		public void write(int b) {
+			block();
+			super.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			block();
+			super.write(b, off, len);
+		}
+
+		private void block() {
+			written.countDown();
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Log.disable();
+		new SimulationContext().call(() -> {
+			CloudSim.init(1, Calendar.getInstance(), false);
+			failingWriter();
+			failingClose();
+			interruptedRecording();
+			return null;
+		});
+		System.out.println("TraceRecorderTest passed");
+	}
+
+	/**
+	 * The writer fails before the recorder is closed.
+	 */
+	private static void failingWriter() throws Exception {
+		FailingStream stream = new FailingStream();
+		TraceRecorder trace = TraceRecorder.start(stream, 16);
+		// more records than the buffer of the file holds, so that the writer writes to the stream
+		for (int i = 0; i < 10000 && stream.failed.getCount() > 0; i++)
+			trace.migrationStart(-1, "module-" + i, i);
+		check(stream.failed.await(10, TimeUnit.SECONDS), "the stream was never written");
+		IOException failure = null;
+		try {
+			trace.close();
+		} catch (IOException e) {
+			failure = e;
+		}
+		check(failure != null && "disk full".equals(failure.getMessage()), "the failure of the writer was not thrown: "
+				+ failure);
+		check(stream.closed, "the stream was not closed");
+		check(TraceRecorder.current() == null, "the recorder is still the current one");
+		// a second close has no effect
+		trace.close();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TraceRecorder next = TraceRecorder.start(bytes, 16);
+		check(TraceRecorder.current() == next, "a new recorder could not be started");
+		next.migrationStart(-1, "module", 1);
+		next.close();
+		check(bytes.size() > 8, "the new recorder wrote nothing");
+		check(TraceRecorder.current() == null, "the new recorder is still the current one");
+	}
+
+	/**
+	 * The records are only written to the stream when the recorder is closed.
+	 */
+	private static void failingClose() throws Exception {
+		FailingStream stream = new FailingStream();
+		TraceRecorder trace = TraceRecorder.start(stream, 16);
+		trace.migrationStart(-1, "module", 1);
+		IOException failure = null;
+		try {
+			trace.close();
+		} catch (IOException e) {
+			failure = e;
+		}
+		check(failure != null, "the failure of the stream was not thrown");
+		check(stream.closed, "the stream was not closed");
+		check(TraceRecorder.current() == null, "the recorder is still the current one");
+	}
+
+	/**
+	 * The simulation thread is interrupted while the buffer is full, the records must still all be written, so that the
+	 * names of the events can be decoded.
+	 */
+	private static void interruptedRecording() throws Exception {
+		BlockingStream stream = new BlockingStream();
+		TraceRecorder trace = TraceRecorder.start(stream, 4);
+		Thread release = new Thread(() -> {
+			try {
+				stream.written.await();
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				// released at once
+			}
+			stream.released.countDown();
+		});
+		release.start();
+		int records = 5000;
+		Thread.currentThread().interrupt();
+		for (int i = 0; i < records; i++)
+			trace.migrationStart(-1, "module-" + i, i);
+		check(Thread.interrupted(), "the interrupt status was not kept");
+		trace.close();
+		release.join();
+
+		TraceDecoder decoder = new TraceDecoder(new ByteArrayInputStream(stream.toByteArray()));
+		TraceDecoder.Event event = new TraceDecoder.Event();
+		int decoded = 0;
+		while (decoder.next(event)) {
+			check(("module-" + decoded).equals(event.name), "event " + decoded + " is named " + event.name);
+			decoded++;
+		}
+		check(decoded == records, decoded + " events were decoded instead of " + records);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			System.err.println("TraceRecorderTest failed: " + message);
+			System.exit(1);
+		}
+	}
+
+}